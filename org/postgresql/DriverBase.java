@@ -19,6 +19,7 @@ import java.util.TimerTask;
 
 import org.postgresql.core.Logger;
 import org.postgresql.util.GT;
+import org.postgresql.util.HashedWheelTimer;
 import org.postgresql.util.HostSpec;
 import org.postgresql.util.PSQLException;
 import org.postgresql.util.PSQLState;
@@ -34,6 +35,7 @@ public abstract class DriverBase implements Driver {
     private static final Logger logger = new Logger();
     private static boolean logLevelSet = false;
     private static Timer cancelTimer=null;
+    private static HashedWheelTimer timeoutTimer=null;
     // Helper to retrieve default properties from classloader resource
     // properties files.
     private Properties defaultProperties;
@@ -382,9 +384,23 @@ public abstract class DriverBase implements Driver {
                 { "binaryTransfer", Boolean.FALSE,
                   "Use binary format for sending and receiving data if possible." },
                 { "binaryTransferEnable", Boolean.FALSE,
-                  "Comma separated list of types to enable binary transfer. Either OID numbers or names." },
+                  "Comma separated list of types to enable binary transfer. Either OID numbers or names; names of extension types such as hstore are looked up on the server." },
                 { "binaryTransferDisable", Boolean.FALSE,
                   "Comma separated list of types to disable binary transfer. Either OID numbers or names. Overrides values in the driver default set and values set with binaryTransferEnable." },
+                { "logHandler", Boolean.FALSE,
+                  "Where log messages go: driverManager (DriverManager's log writer, the default), jdk (java.util.logging, under org.postgresql), or the name of a class implementing org.postgresql.core.LogHandler." },
+                { "logCategories", Boolean.FALSE,
+                  "Comma separated list of category=level pairs overriding loglevel for a category of messages, e.g. protocol=2 to trace the messages exchanged with the server." },
+                { "logAsync", Boolean.FALSE,
+                  "Queue log messages in a bounded buffer and write them from a background thread; messages are dropped when the buffer is full." },
+                { "protocolCapture", Boolean.FALSE,
+                  "Directory in which to record everything each connection sends and receives, for replay with org.postgresql.core.trace.ProtocolReplay. Protocol version 3 only." },
+                { "jmxMetrics", Boolean.FALSE,
+                  "Publish the connection's metrics (see PGConnection.getMetrics) as an MXBean on the platform MBean server." },
+                { "queryListener", Boolean.FALSE,
+                  "The name of a class implementing PGQueryListener, with a public no-argument constructor, to add to each connection." },
+                { "lazyHStore", Boolean.FALSE,
+                  "Return hstore values from getObject as read-only maps that decode each key and value the first time it is accessed." },
                 { "charSet", Boolean.FALSE,
                   "When connecting to a pre-7.3 server, the database encoding to assume is in use." },
                 { "compatible", Boolean.FALSE,
@@ -392,10 +408,36 @@ public abstract class DriverBase implements Driver {
                   new String[] { "7.1", "7.2", "7.3", "7.4", "8.0", "8.1", "8.2" } },
                 { "loginTimeout", Boolean.FALSE,
                   "The login timeout, in seconds; 0 means no timeout beyond the normal TCP connection timout." },
+                { "loadBalanceHosts", Boolean.FALSE,
+                  "How to order the hosts of a multi-host URL for each connection: in the given order, randomly, round-robin, or hosts that failed least recently first.",
+                  new String[] { "none", "random", "roundRobin", "leastRecentlyFailed" } },
+                { "hostRecheckSeconds", Boolean.FALSE,
+                  "When loadBalanceHosts is not none, how long, in seconds, a host that failed to connect is tried only after the others; doubles with every consecutive failure." },
+                { "connectStaggerMillis", Boolean.FALSE,
+                  "When positive, connection attempts to the hosts of a multi-host URL are started this many milliseconds apart instead of waiting for each to fail, and the first to complete is used; 0 tries hosts one after another." },
+                { "notificationWaitMillis", Boolean.FALSE,
+                  "How long, in milliseconds, each wait of a notification listener's background thread on an idle connection lasts; other threads using the connection end the wait early." },
                 { "socketTimeout", Boolean.FALSE,
                   "The timeout value for socket read operations, in seconds; 0 means no timeout." },
+                { "queryTimeoutMode", Boolean.FALSE,
+                  "How Statement.setQueryTimeout is enforced: 'cancel' schedules a cancel request on a timer, 'socket' uses a read deadline on the connection's socket and sends the cancel request from the executing thread.",
+                  new String[] { "cancel", "socket" } },
+                { "scrollableResultHeapBytes", Boolean.FALSE,
+                  "The bytes of rows a scrollable result set keeps on the heap; beyond that its older rows are kept in a temporary file and read back when needed. 0 keeps all rows on the heap. Protocol version 3 only." },
+                { "offHeapResultRows", Boolean.FALSE,
+                  "Keep the rows of results outside the Java heap, in direct buffers, decoding each row when a result set moves to it. Protocol version 3 only." },
                 { "tcpKeepAlive", Boolean.FALSE,
                   "Enable or disable TCP keep-alive probe." },
+                { "receiveBufferSize", Boolean.FALSE,
+                  "SO_RCVBUF for the connection's socket, in bytes, set before connecting; -1 uses the system default. Protocol version 3 only." },
+                { "sendBufferSize", Boolean.FALSE,
+                  "SO_SNDBUF for the connection's socket, in bytes, set before connecting; -1 uses the system default. Protocol version 3 only." },
+                { "inputBufferSize", Boolean.FALSE,
+                  "The initial size, in bytes, of the driver's buffer for data read from the socket. Protocol version 3 only." },
+                { "maxInputBufferSize", Boolean.FALSE,
+                  "The size, in bytes, the input buffer may grow to while the server sends more than fits; it shrinks back at the end of each response. 0 keeps the initial size. Protocol version 3 only." },
+                { "outputBufferSize", Boolean.FALSE,
+                  "The size, in bytes, of the driver's buffer for data written to the socket. Protocol version 3 only." },
                 { "stringtype", Boolean.FALSE,
                   "The type to bind String parameters as (usually 'varchar'; 'unspecified' allows implicit casting to other types)",
                   new String[] { "varchar", "unspecified" } },
@@ -640,6 +682,11 @@ public abstract class DriverBase implements Driver {
         }
     }
 
+    /**
+     * @deprecated use {@link #scheduleTimeout(Runnable, long)}, which does not
+     * retain cancelled tasks.
+     */
+    @Deprecated
     public synchronized  static void addTimerTask(TimerTask timerTask, long milliSeconds)
     {
 
@@ -650,6 +697,29 @@ public abstract class DriverBase implements Driver {
         cancelTimer.schedule( timerTask, milliSeconds );
     }
 
+    /**
+     * Schedule a task on the driver-wide timeout wheel. This is used to
+     * enforce query timeouts, so arming and cancelling must stay cheap.
+     *
+     * @param task the task to run once the delay expires
+     * @param milliSeconds the delay, in milliseconds
+     * @return a handle to cancel the task with
+     */
+    public static HashedWheelTimer.Timeout scheduleTimeout(Runnable task, long milliSeconds)
+    {
+        HashedWheelTimer timer;
+        synchronized (DriverBase.class) {
+            if ( timeoutTimer == null )
+            {
+                // 100ms resolution over a ~51s wheel; query timeouts are
+                // specified in seconds so this is plenty.
+                timeoutTimer = new HashedWheelTimer("PostgreSQL JDBC driver timeout timer", 100, 512);
+            }
+            timer = timeoutTimer;
+        }
+        return timer.schedule( task, milliSeconds );
+    }
+
     private synchronized Properties getDefaultProperties() throws IOException {
         if (defaultProperties != null)
             return defaultProperties;
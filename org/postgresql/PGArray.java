@@ -0,0 +1,29 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql;
+
+import java.sql.SQLException;
+
+/**
+ * PostgreSQL extensions to java.sql.Array. All Arrays returned by the
+ * driver implement PGArray.
+ */
+public interface PGArray
+{
+    /**
+     * Return a one-dimensional array of a numeric or boolean type as a Java
+     * primitive array, without boxing the elements: <code>int[]</code> for
+     * int2 and int4, <code>long[]</code> for int8, <code>float[]</code>,
+     * <code>double[]</code> or <code>boolean[]</code>.
+     *
+     * @return the elements of the array
+     * @throws SQLException if the array has more than one dimension,
+     *   contains NULL, or has an element type with no primitive equivalent
+     */
+    public Object getPrimitiveArray() throws SQLException;
+}
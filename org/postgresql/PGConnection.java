@@ -27,6 +27,43 @@ public interface PGConnection
      */
     public PGNotification[] getNotifications() throws SQLException;
 
+    /**
+     * Like {@link #getNotifications()}, but if no notifications have been
+     * received yet, waits on the connection for up to
+     * <code>timeoutMillis</code> milliseconds for one to arrive. A timeout
+     * of 0 waits indefinitely. The connection cannot be used by other
+     * threads while this method is waiting.
+     * Returns null if there have been no notifications.
+     *
+     * @param timeoutMillis how long to wait, in milliseconds
+     */
+    public PGNotification[] getNotifications(int timeoutMillis) throws SQLException;
+
+    /**
+     * Register a listener to be called as notifications arrive, without the
+     * need to poll {@link #getNotifications()}. While at least one listener
+     * is registered a background thread waits on the connection whenever
+     * it is idle, and every notification received is handed to the
+     * listeners instead of being returned by <code>getNotifications</code>.
+     *<p>
+     * A statement executed on the connection by another thread ends the
+     * background thread's wait straight away; the wait is otherwise
+     * renewed every <code>notificationWaitMillis</code> milliseconds (a
+     * connection property, 100 by default).
+     *
+     * @param listener the listener to add
+     */
+    public void addNotificationListener(PGNotificationListener listener) throws SQLException;
+
+    /**
+     * Unregister a listener added by
+     * {@link #addNotificationListener(PGNotificationListener)}. The
+     * background thread stops once the last listener is removed.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeNotificationListener(PGNotificationListener listener);
+
     /**
      * This returns the COPY API for the current connection.
      * @since 8.4
@@ -116,5 +153,56 @@ public interface PGConnection
      * @return PID of backned server process. 
      */
     public int getBackendPID();
+
+    /**
+     * Return the counters and timings collected for this connection. The
+     * returned object is live: its values change as the connection is
+     * used.
+     */
+    public PGMetrics getMetrics();
+
+    /**
+     * Add a listener that is told when each statement, batch, fetch or
+     * COPY starts and completes on this connection, with its timings. A
+     * connection without listeners does no extra work.
+     *
+     * @param listener the listener to add
+     */
+    public void addQueryListener(PGQueryListener listener);
+
+    /**
+     * Remove a listener added with {@link #addQueryListener}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeQueryListener(PGQueryListener listener);
+
+    /**
+     * Send a statement without waiting for its result, so that a thread
+     * need not be held for each statement in flight. Statements are
+     * pipelined on the connection and complete in the order they were
+     * sent.
+     *
+     * @param sql the statement, with <code>?</code> placeholders
+     * @param params the parameter values, set with setObject, or null
+     * @return the pending result
+     * @throws SQLException if the statement could not be sent
+     * @see PGStatement#executeAsync()
+     */
+    public PGQueryFuture executeAsync(String sql, Object[] params) throws SQLException;
+
+    /**
+     * Create an Array of the given element type from a Java array. Unlike
+     * java.sql.Connection.createArrayOf this also accepts primitive arrays
+     * such as <code>int[]</code> or <code>double[]</code>. Where the
+     * connection sends arrays of this type in binary, the elements are
+     * encoded directly, without building a text literal.
+     *
+     * @param typeName the SQL name of the element type, e.g. "float8"
+     * @param elements a primitive array, or an array of objects, possibly
+     *   nested for multi-dimensional values
+     * @return an Array that can be passed to PreparedStatement.setArray
+     */
+    public Array createArrayOf(String typeName, Object elements) throws SQLException;
 }
 
@@ -0,0 +1,117 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql;
+
+/**
+ * Counters and timings kept by a connection, or summed over the
+ * connections obtained from a DataSource. Values only grow; take two
+ * readings and subtract them to measure an interval. With the
+ * <code>jmxMetrics</code> connection property the same values are
+ * published as attributes of an MXBean.
+ *
+ * @see PGConnection#getMetrics()
+ */
+public interface PGMetrics
+{
+    /**
+     * @return the number of times the driver waited for the server to
+     *   answer messages it had sent
+     */
+    public long getRoundTrips();
+
+    /**
+     * @return the number of bytes written to the server's socket
+     */
+    public long getBytesSent();
+
+    /**
+     * @return the number of bytes read from the server's socket
+     */
+    public long getBytesReceived();
+
+    /**
+     * @return the number of Parse messages sent
+     */
+    public long getParseCount();
+
+    /**
+     * @return the number of Bind messages sent
+     */
+    public long getBindCount();
+
+    /**
+     * @return the number of Execute messages sent
+     */
+    public long getExecuteCount();
+
+    /**
+     * @return the number of executions of a server-prepared statement that
+     *   did not need a Parse message
+     */
+    public long getPreparedStatementHits();
+
+    /**
+     * @return the number of rows received
+     */
+    public long getRowsFetched();
+
+    /**
+     * @return the number of statements or batches executed
+     */
+    public long getQueryCount();
+
+    /**
+     * @return the total time, in nanoseconds, between sending statements or
+     *   batches and having read all of their results
+     */
+    public long getQueryNanos();
+
+    /**
+     * @return the time, in nanoseconds, threads spent waiting for another
+     *   thread to release the connection (for example at the end of a COPY)
+     */
+    public long getLockWaitNanos();
+
+    /**
+     * @return the time, in nanoseconds, spent blocked reading from or
+     *   writing to the server's socket
+     */
+    public long getNetworkNanos();
+
+    /**
+     * @return the time, in nanoseconds, spent reading results that was not
+     *   spent waiting on the network, i.e. decoding protocol messages and
+     *   handing rows to result sets
+     */
+    public long getDecodeNanos();
+
+    /**
+     * @return the median latency of statements and batches, in
+     *   microseconds
+     */
+    public long getQueryLatencyMedianMicros();
+
+    /**
+     * @return the 99th percentile latency of statements and batches, in
+     *   microseconds
+     */
+    public long getQueryLatency99thPercentileMicros();
+
+    /**
+     * @return the highest latency of statements and batches, in
+     *   microseconds
+     */
+    public long getQueryLatencyMaxMicros();
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the given percentile of statement and batch latencies, in
+     *   microseconds, accurate to within 12.5%
+     */
+    public long getQueryLatencyPercentileMicros(double percentile);
+}
@@ -0,0 +1,27 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql;
+
+/**
+ * Callback for asynchronous notifications delivered by a connection.
+ *
+ * @see PGConnection#addNotificationListener(PGNotificationListener)
+ */
+public interface PGNotificationListener
+{
+    /**
+     * Called once for every notification received on the connection.
+     * Notifications are delivered in the order they were received, on the
+     * connection's notification thread, and without holding any driver
+     * locks; the listener may therefore use the connection itself, but it
+     * delays delivery of further notifications until it returns.
+     *
+     * @param notification the notification that was received
+     */
+    public void notification(PGNotification notification);
+}
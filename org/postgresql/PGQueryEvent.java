@@ -0,0 +1,106 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql;
+
+import java.sql.SQLException;
+
+/**
+ * One execution reported to a {@link PGQueryListener}. The timings split
+ * the total time into sending the request, waiting for the server's first
+ * response byte, receiving the rest of the response, and decoding it; they
+ * add up to {@link #getTotalNanos()}. Connections using the version 2
+ * protocol only report the total.
+ */
+public interface PGQueryEvent
+{
+    /** A statement, or a group of statements in one string. */
+    public static final int EXECUTE = 0;
+    /** A batch of statements executed together. */
+    public static final int BATCH = 1;
+    /** A fetch of further rows from an open cursor. */
+    public static final int FETCH = 2;
+    /** The start of a COPY; the data transfer itself is not included. */
+    public static final int COPY = 3;
+
+    /**
+     * @return one of {@link #EXECUTE}, {@link #BATCH}, {@link #FETCH} or
+     *   {@link #COPY}
+     */
+    public int getType();
+
+    /**
+     * @return the SQL with parameter placeholders and without parameter
+     *   values; for a batch of different statements, the distinct
+     *   statements separated by semicolons. Built when first called.
+     */
+    public String getSql();
+
+    /**
+     * @return the number of statements in a batch, otherwise 1
+     */
+    public int getBatchSize();
+
+    /**
+     * @return the time the execution started, as
+     *   System.currentTimeMillis()
+     */
+    public long getStartTimeMillis();
+
+    /**
+     * @return the time from start to having read all results, in
+     *   nanoseconds
+     */
+    public long getTotalNanos();
+
+    /**
+     * @return the time spent building and writing the request, in
+     *   nanoseconds
+     */
+    public long getSendNanos();
+
+    /**
+     * @return the time spent waiting for the server to start answering, in
+     *   nanoseconds; this is where the server executes the statement
+     */
+    public long getServerWaitNanos();
+
+    /**
+     * @return the time spent reading the response from the network after
+     *   its first byte, in nanoseconds
+     */
+    public long getReceiveNanos();
+
+    /**
+     * @return the time spent decoding protocol messages, in nanoseconds
+     */
+    public long getDecodeNanos();
+
+    /**
+     * @return the number of rows received
+     */
+    public long getRowCount();
+
+    /**
+     * @return the first error reported by the server or the driver, or
+     *   null if the execution succeeded
+     */
+    public SQLException getError();
+
+    /**
+     * @return the object stored with {@link #setAttachment(Object)}
+     */
+    public Object getAttachment();
+
+    /**
+     * Store an object with this event, e.g. a tracing span opened in
+     * {@link PGQueryListener#queryStarted(PGQueryEvent)} that is closed in
+     * {@link PGQueryListener#queryCompleted(PGQueryEvent)}. All listeners
+     * of a connection see the same event, so they share the attachment.
+     */
+    public void setAttachment(Object attachment);
+}
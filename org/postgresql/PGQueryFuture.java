@@ -0,0 +1,35 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql;
+
+import java.util.concurrent.Future;
+
+/**
+ * The pending result of a statement sent with
+ * {@link PGConnection#executeAsync(String, Object[])} or
+ * {@link PGStatement#executeAsync()}. <code>get()</code> returns a
+ * <code>java.sql.ResultSet</code> for a statement that returns rows, and
+ * otherwise the update count as an <code>Integer</code>; if the statement
+ * failed it throws an ExecutionException caused by the SQLException.
+ *<p>
+ * A statement cannot be cancelled once it has been sent, so
+ * <code>cancel</code> always returns false.
+ */
+public interface PGQueryFuture extends Future
+{
+    /**
+     * Run <code>listener</code> when the result is available, or now if it
+     * already is. Listeners run on the thread that reads the connection's
+     * results, so they should be quick; they may send more statements with
+     * <code>executeAsync</code> but must not execute statements on the same
+     * connection synchronously.
+     *
+     * @param listener the code to run
+     */
+    public void addListener(Runnable listener);
+}
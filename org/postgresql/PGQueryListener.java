@@ -0,0 +1,41 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql;
+
+/**
+ * Callback around every statement, batch, cursor fetch and COPY sent by a
+ * connection; suitable for slow query logs, sampling profilers or tracing
+ * spans. Listeners are called on the thread using the connection while it
+ * holds the connection's lock, so they should return quickly and must not
+ * use the connection themselves. Exceptions thrown by a listener are
+ * logged and otherwise ignored.
+ *<p>
+ * A connection without listeners does no extra work, so listeners cost
+ * nothing until they are added.
+ *
+ * @see PGConnection#addQueryListener(PGQueryListener)
+ */
+public interface PGQueryListener
+{
+    /**
+     * Called before anything is sent to the server. Only the type, SQL and
+     * batch size of the event are known at this point.
+     *
+     * @param event describes the execution; the same object is passed to
+     *   {@link #queryCompleted(PGQueryEvent)}
+     */
+    public void queryStarted(PGQueryEvent event);
+
+    /**
+     * Called once all results have been read, or the execution failed.
+     *
+     * @param event the event passed to {@link #queryStarted(PGQueryEvent)},
+     *   now with its timings filled in
+     */
+    public void queryCompleted(PGQueryEvent event);
+}
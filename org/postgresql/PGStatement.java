@@ -82,4 +82,18 @@ public interface PGStatement
      * @see #setPrepareThreshold(int)
      */
     public int getPrepareThreshold();
+
+    /**
+     * Send this PreparedStatement with its current parameters without
+     * waiting for the result. Statements sent this way are pipelined: many
+     * can be in flight on a connection, and their results are read in order
+     * by a thread of the connection. Other uses of the connection wait until
+     * all of them have completed. The parameters can be changed and the
+     * statement sent again as soon as this method returns.
+     *
+     * @return the pending result
+     * @throws SQLException if the statement could not be sent
+     * @see PGConnection#executeAsync(String, Object[])
+     */
+    public PGQueryFuture executeAsync() throws SQLException;
 }
@@ -0,0 +1,104 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.DriverBase;
+
+/**
+ * Queues messages in a bounded ring buffer and hands them to another
+ * handler from a background thread, so a thread using a connection never
+ * waits for log output. When the buffer is full messages are dropped rather
+ * than blocking, and the number dropped is logged once there is room again.
+ */
+public class AsyncLogHandler implements LogHandler {
+    private static final int CAPACITY = 8192;
+
+    // One handler, and so one thread, per delegate.
+    private static final Map shared = new HashMap();
+
+    private final LogHandler delegate;
+    private final BlockingQueue queue = new ArrayBlockingQueue(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @return the asynchronous handler writing to <code>delegate</code>,
+     *   shared by every connection using that delegate
+     */
+    public static synchronized AsyncLogHandler forHandler(LogHandler delegate) {
+        AsyncLogHandler handler = (AsyncLogHandler) shared.get(delegate);
+        if (handler == null) {
+            handler = new AsyncLogHandler(delegate);
+            shared.put(delegate, handler);
+        }
+        return handler;
+    }
+
+    private AsyncLogHandler(LogHandler delegate) {
+        this.delegate = delegate;
+        Thread writer = new Thread("PostgreSQL JDBC log writer") {
+            public void run() {
+                drain();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void publish(long timeMillis, int level, String connectionID, String category, String message, Throwable t) {
+        if (!queue.offer(new Message(timeMillis, level, connectionID, category, message, t)))
+            dropped.incrementAndGet();
+    }
+
+    private void drain() {
+        while (true) {
+            Message m;
+            try {
+                m = (Message) queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long lost = dropped.getAndSet(0);
+            if (lost > 0)
+                write(m.timeMillis, DriverBase.INFO, "driver", null, lost + " log messages were dropped because the log buffer was full.", null);
+            write(m.timeMillis, m.level, m.connectionID, m.category, m.message, m.t);
+        }
+    }
+
+    private void write(long timeMillis, int level, String connectionID, String category, String message, Throwable t) {
+        try {
+            delegate.publish(timeMillis, level, connectionID, category, message, t);
+        } catch (RuntimeException e) {
+            // Nowhere left to report this; keep the writer alive.
+        }
+    }
+
+    private static final class Message {
+        final long timeMillis;
+        final int level;
+        final String connectionID;
+        final String category;
+        final String message;
+        final Throwable t;
+
+        Message(long timeMillis, int level, String connectionID, String category, String message, Throwable t) {
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.connectionID = connectionID;
+            this.category = category;
+            this.message = message;
+            this.t = t;
+        }
+    }
+}
@@ -139,6 +139,9 @@ public interface BaseConnection extends PGConnection, Connection
     // Get the bind-string-as-varchar config flag
     public boolean getStringVarcharFlag();
 
+    // Get the flag to return hstore values as lazily decoded read-only maps
+    public boolean getLazyHStore();
+
     /**
      * Get the current transaction state of this connection.
      * 
@@ -154,4 +157,19 @@ public interface BaseConnection extends PGConnection, Connection
      * @return True for binary transfer, false for text transfer.
      */
     public boolean binaryTransferSend(int oid);
+
+    /**
+     * @return the cache of statement descriptions and column metadata this
+     *   connection shares with others, or null if it does not share them
+     */
+    public DescriptionCache getDescriptionCache();
+
+    /**
+     * Share statement descriptions and column metadata with the other
+     * connections using the given cache.
+     *
+     * @param cache the cache to use, or null to stop sharing
+     * @throws SQLException if the connection's search path cannot be read
+     */
+    public void setDescriptionCache(DescriptionCache cache) throws SQLException;
 }
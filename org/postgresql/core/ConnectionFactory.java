@@ -42,7 +42,8 @@ public abstract class ConnectionFactory {
      *<p>
      * Currently, protocol versions 3 (7.4+) and 2 (pre-7.4) are supported.
      *
-     * @param hostSpecs at least one host and port to connect to; multiple elements for round-robin failover
+     * @param hostSpecs at least one host and port to connect to; multiple elements for failover,
+     *    ordered by {@link HostChooser} before they are tried
      * @param user the username to authenticate with; may not be null.
      * @param database the database on the server to connect to; may not be null.
      * @param info extra properties controlling the connection;
@@ -53,6 +54,7 @@ public abstract class ConnectionFactory {
      */
     public static ProtocolConnection openConnection(HostSpec[] hostSpecs, String user, String database, Properties info, Logger logger) throws SQLException {
         String protoName = info.getProperty("protocolVersion");
+        hostSpecs = HostChooser.orderHosts(hostSpecs, info, logger);
 
         for (int i = 0; i < versions.length; ++i)
         {
@@ -0,0 +1,295 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.postgresql.PGMetrics;
+import org.postgresql.util.LatencyHistogram;
+
+/**
+ * The metrics of one connection. Counters are atomic, as the thread using
+ * the connection and the reader of its asynchronous queries may update
+ * them at the same time; any thread may read them.
+ */
+public class ConnectionMetrics implements PGMetrics
+{
+    private static final AtomicInteger nextMBeanId = new AtomicInteger();
+
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong parseCount = new AtomicLong();
+    private final AtomicLong bindCount = new AtomicLong();
+    private final AtomicLong executeCount = new AtomicLong();
+    private final AtomicLong preparedStatementHits = new AtomicLong();
+    private final AtomicLong rowsFetched = new AtomicLong();
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+    private final AtomicLong networkNanos = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+
+    private volatile boolean closed;
+
+    //
+    // Recording
+    //
+
+    public void roundTrip()
+    {
+        roundTrips.incrementAndGet();
+    }
+
+    public void bytesSent(int n, long nanos)
+    {
+        bytesSent.addAndGet(n);
+        networkNanos.addAndGet(nanos);
+    }
+
+    public void bytesReceived(long n, long nanos)
+    {
+        if (n > 0)
+            bytesReceived.addAndGet(n);
+        networkNanos.addAndGet(nanos);
+    }
+
+    public void parse()
+    {
+        parseCount.incrementAndGet();
+    }
+
+    public void bind()
+    {
+        bindCount.incrementAndGet();
+    }
+
+    public void execute()
+    {
+        executeCount.incrementAndGet();
+    }
+
+    public void preparedStatementHit()
+    {
+        preparedStatementHits.incrementAndGet();
+    }
+
+    public void rowFetched()
+    {
+        rowsFetched.incrementAndGet();
+    }
+
+    public void query(long nanos)
+    {
+        queryCount.incrementAndGet();
+        queryNanos.addAndGet(nanos);
+        queryLatency.record(nanos / 1000);
+    }
+
+    public void lockWait(long nanos)
+    {
+        lockWaitNanos.addAndGet(nanos);
+    }
+
+    public void decode(long nanos)
+    {
+        decodeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Mark the connection as closed; its values no longer change.
+     */
+    public void close()
+    {
+        closed = true;
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Add the values of this connection to <code>total</code>, which must
+     * not be in use by a connection.
+     */
+    public void addTo(ConnectionMetrics total)
+    {
+        total.roundTrips.addAndGet(roundTrips.get());
+        total.bytesSent.addAndGet(bytesSent.get());
+        total.bytesReceived.addAndGet(bytesReceived.get());
+        total.parseCount.addAndGet(parseCount.get());
+        total.bindCount.addAndGet(bindCount.get());
+        total.executeCount.addAndGet(executeCount.get());
+        total.preparedStatementHits.addAndGet(preparedStatementHits.get());
+        total.rowsFetched.addAndGet(rowsFetched.get());
+        total.queryCount.addAndGet(queryCount.get());
+        total.queryNanos.addAndGet(queryNanos.get());
+        total.lockWaitNanos.addAndGet(lockWaitNanos.get());
+        total.networkNanos.addAndGet(networkNanos.get());
+        total.decodeNanos.addAndGet(decodeNanos.get());
+        total.queryLatency.add(queryLatency);
+    }
+
+    /**
+     * Add the query latencies of this connection to <code>total</code>.
+     */
+    public void addQueryLatencyTo(LatencyHistogram total)
+    {
+        total.add(queryLatency);
+    }
+
+    //
+    // PGMetrics
+    //
+
+    public long getRoundTrips()
+    {
+        return roundTrips.get();
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
+    public long getParseCount()
+    {
+        return parseCount.get();
+    }
+
+    public long getBindCount()
+    {
+        return bindCount.get();
+    }
+
+    public long getExecuteCount()
+    {
+        return executeCount.get();
+    }
+
+    public long getPreparedStatementHits()
+    {
+        return preparedStatementHits.get();
+    }
+
+    public long getRowsFetched()
+    {
+        return rowsFetched.get();
+    }
+
+    public long getQueryCount()
+    {
+        return queryCount.get();
+    }
+
+    public long getQueryNanos()
+    {
+        return queryNanos.get();
+    }
+
+    public long getLockWaitNanos()
+    {
+        return lockWaitNanos.get();
+    }
+
+    public long getNetworkNanos()
+    {
+        return networkNanos.get();
+    }
+
+    public long getDecodeNanos()
+    {
+        return decodeNanos.get();
+    }
+
+    public long getQueryLatencyMedianMicros()
+    {
+        return queryLatency.getPercentile(50);
+    }
+
+    public long getQueryLatency99thPercentileMicros()
+    {
+        return queryLatency.getPercentile(99);
+    }
+
+    public long getQueryLatencyMaxMicros()
+    {
+        return queryLatency.getMax();
+    }
+
+    public long getQueryLatencyPercentileMicros(double percentile)
+    {
+        return queryLatency.getPercentile(percentile);
+    }
+
+    //
+    // JMX
+    //
+
+    /**
+     * Publish metrics as an MXBean on the platform MBean server, under
+     * <code>org.postgresql:type=&lt;type&gt;,name=&lt;name&gt;,id=&lt;n&gt;</code>.
+     * Failures are logged and otherwise ignored, as metrics are not worth
+     * failing a connection for.
+     *
+     * @return the name the MBean was registered under, or null
+     */
+    public static ObjectName registerMBean(PGMetrics metrics, String type, String name, Logger logger)
+    {
+        try
+        {
+            ObjectName objectName = new ObjectName("org.postgresql:type=" + type
+                                                   + ",name=" + ObjectName.quote(name)
+                                                   + ",id=" + nextMBeanId.incrementAndGet());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(metrics, PGMetrics.class, true), objectName);
+            return objectName;
+        }
+        catch (JMException e)
+        {
+            logger.info("Could not register metrics MBean for " + name, e);
+        }
+        catch (SecurityException e)
+        {
+            logger.info("Could not register metrics MBean for " + name, e);
+        }
+        return null;
+    }
+
+    public static void unregisterMBean(ObjectName objectName, Logger logger)
+    {
+        if (objectName == null)
+            return;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch (JMException e)
+        {
+            logger.debug("Could not unregister metrics MBean " + objectName, e);
+        }
+        catch (SecurityException e)
+        {
+            logger.debug("Could not unregister metrics MBean " + objectName, e);
+        }
+    }
+}
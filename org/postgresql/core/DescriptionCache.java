@@ -0,0 +1,267 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statement descriptions and column metadata shared by the connections of
+ * a DataSource, so that a query described by one connection need not be
+ * described again by the others.
+ *<p>
+ * A statement description is the fields of its result and the parameter
+ * types the server inferred, keyed by user, search path, SQL text and
+ * the parameter types the statement was parsed with. The cache holds its
+ * own copies of the fields, so that a connection changing the fields of
+ * its results cannot affect the others. Column metadata is the table,
+ * schema, name, nullability and auto-increment of a table column, as
+ * looked up for ResultSetMetaData, keyed by table OID and column number.
+ *<p>
+ * Everything is discarded when the schema may have changed: when a
+ * connection using the cache runs DDL or fails with an error that suggests
+ * the schema changed, or when {@link #invalidate()} is called, which must
+ * be done after schema changes made by other clients. Each invalidation
+ * starts a new generation; descriptions received for an earlier
+ * generation are not added.
+ */
+public class DescriptionCache
+{
+    private final int maxStatements;
+    private final Map statements;
+    private final Map columns;
+    private volatile int generation;
+
+    private long hits;
+    private long misses;
+
+    public DescriptionCache(int maxStatements)
+    {
+        this.maxStatements = maxStatements;
+        this.statements = new LruMap(maxStatements);
+        this.columns = new LruMap(maxStatements * 8);
+    }
+
+    /**
+     * A map that drops its least recently used entry beyond a maximum size.
+     */
+    private static class LruMap extends LinkedHashMap
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruMap(int maxSize)
+        {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry eldest)
+        {
+            return size() > maxSize;
+        }
+    }
+
+    private static class Statement
+    {
+        Field[] fields;
+        int[] parameterTypes;
+    }
+
+    private static class Column
+    {
+        String columnName;
+        String tableName;
+        String schemaName;
+        int nullable;
+        boolean autoIncrement;
+    }
+
+    /**
+     * @return the key of a statement's description
+     */
+    public static String statementKey(String user, String searchPath, String sql, int[] parameterTypes)
+    {
+        StringBuilder key = new StringBuilder(user.length() + searchPath.length() + sql.length() + parameterTypes.length * 6 + 3);
+        key.append(user).append('\0');
+        key.append(searchPath).append('\0');
+        for (int i = 0; i < parameterTypes.length; ++i)
+            key.append(parameterTypes[i]).append(',');
+        return key.append('\0').append(sql).toString();
+    }
+
+    public int getMaxStatements()
+    {
+        return maxStatements;
+    }
+
+    /**
+     * @return the current generation, to pass to the methods that add
+     *   descriptions received for it
+     */
+    public int getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Discard everything, starting a new generation.
+     */
+    public synchronized void invalidate()
+    {
+        generation++;
+        statements.clear();
+        columns.clear();
+    }
+
+    /**
+     * @return a copy of the fields of a statement's result, or null if
+     *   they are not known
+     */
+    public synchronized Field[] getFields(String key)
+    {
+        Statement statement = (Statement) statements.get(key);
+        if (statement == null || statement.fields == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(statement.fields);
+    }
+
+    /**
+     * @return the parameter types the server inferred for a statement, or
+     *   null if they are not known
+     */
+    public synchronized int[] getParameterTypes(String key)
+    {
+        Statement statement = (Statement) statements.get(key);
+        return (statement == null ? null : statement.parameterTypes);
+    }
+
+    public synchronized void putFields(String key, int generation, Field[] fields)
+    {
+        if (generation == this.generation)
+            statement(key).fields = copy(fields);
+    }
+
+    private static Field[] copy(Field[] fields)
+    {
+        Field[] copy = new Field[fields.length];
+        for (int i = 0; i < fields.length; ++i)
+            copy[i] = fields[i].copyWithFormat(fields[i].getFormat());
+        return copy;
+    }
+
+    public synchronized void putParameterTypes(String key, int generation, int[] parameterTypes)
+    {
+        if (generation == this.generation)
+            statement(key).parameterTypes = parameterTypes;
+    }
+
+    private Statement statement(String key)
+    {
+        Statement statement = (Statement) statements.get(key);
+        if (statement == null)
+        {
+            statement = new Statement();
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    private static Long columnKey(Field field)
+    {
+        return new Long(((long) field.getTableOid() << 32) | (field.getPositionInTable() & 0xffffffffL));
+    }
+
+    /**
+     * Copy the cached metadata of a field's column into the field.
+     *
+     * @return whether the column's metadata was cached
+     */
+    public synchronized boolean getColumn(Field field)
+    {
+        Column column = (Column) columns.get(columnKey(field));
+        if (column == null)
+            return false;
+        field.setColumnName(column.columnName);
+        field.setTableName(column.tableName);
+        field.setSchemaName(column.schemaName);
+        field.setNullable(column.nullable);
+        field.setAutoIncrement(column.autoIncrement);
+        return true;
+    }
+
+    /**
+     * Cache the metadata of a field's column.
+     */
+    public synchronized void putColumn(Field field, int generation)
+    {
+        if (generation != this.generation)
+            return;
+        Column column = new Column();
+        column.columnName = field.getColumnName();
+        column.tableName = field.getTableName();
+        column.schemaName = field.getSchemaName();
+        column.nullable = field.getNullable();
+        column.autoIncrement = field.getAutoIncrement();
+        columns.put(columnKey(field), column);
+    }
+
+    /**
+     * @return how many times the fields of a statement were found
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return how many times the fields of a statement were not found
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return whether a statement with the given command status may have
+     *   changed the schema
+     */
+    public static boolean isSchemaChange(String commandStatus)
+    {
+        return commandStatus.startsWith("CREATE") || commandStatus.startsWith("ALTER") || commandStatus.startsWith("DROP");
+    }
+
+    /**
+     * @return whether a statement with the given command status and SQL
+     *   text may have changed the search path, the current schema, or the
+     *   current user that <code>$user</code> in the search path stands for
+     */
+    public static boolean isSearchPathChange(String commandStatus, String sql)
+    {
+        if (!commandStatus.equals("SET") && !commandStatus.equals("RESET") && !commandStatus.startsWith("DISCARD"))
+            return false;
+        String lower = sql.toLowerCase();
+        return lower.indexOf("search_path") >= 0 || lower.indexOf("schema") >= 0 || lower.indexOf("all") >= 0
+               || lower.indexOf("role") >= 0 || lower.indexOf("authorization") >= 0;
+    }
+
+    /**
+     * @return whether an error with the given SQLSTATE suggests that the
+     *   schema changed: feature not supported (a cached plan must not
+     *   change its result type), undefined table or undefined column
+     */
+    public static boolean isSchemaChangeError(String sqlState)
+    {
+        return "0A000".equals(sqlState) || "42P01".equals(sqlState) || "42703".equals(sqlState);
+    }
+}
@@ -0,0 +1,69 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.io.PrintWriter;
+import java.sql.DriverManager;
+import java.util.TimeZone;
+
+/**
+ * Writes messages to DriverManager's log writer, if one is set, as
+ * <code>HH:mm:ss.SSS (connectionID) message</code>. Each message is built
+ * without any shared state, so the only lock taken is the writer's.
+ */
+public class DriverManagerLogHandler implements LogHandler {
+    public static final DriverManagerLogHandler INSTANCE = new DriverManagerLogHandler();
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    public void publish(long timeMillis, int level, String connectionID, String category, String message, Throwable t) {
+        PrintWriter writer = DriverManager.getLogWriter();
+        if (writer == null)
+            return;
+
+        StringBuilder sb = new StringBuilder(message.length() + 24);
+        appendTime(sb, timeMillis);
+        sb.append('(').append(connectionID).append(") ");
+        sb.append(message);
+        String line = sb.toString();
+
+        // synchronize to ensure that the exception (if any) does
+        // not get split up from the corresponding log message
+        synchronized (writer) {
+            writer.println(line);
+            if (t != null)
+                t.printStackTrace(writer);
+        }
+    }
+
+    // For brevity we only log the time, not date or timezone (the main reason
+    // for the timestamp is to see delays etc. between log lines, not to pin
+    // down an instant in time)
+    static void appendTime(StringBuilder sb, long timeMillis) {
+        long local = (timeMillis + TimeZone.getDefault().getOffset(timeMillis)) % MILLIS_PER_DAY;
+        if (local < 0)
+            local += MILLIS_PER_DAY;
+        int millis = (int) local;
+        appendDigits(sb, millis / 3600000, 2);
+        sb.append(':');
+        appendDigits(sb, millis / 60000 % 60, 2);
+        sb.append(':');
+        appendDigits(sb, millis / 1000 % 60, 2);
+        sb.append('.');
+        appendDigits(sb, millis % 1000, 3);
+        sb.append(' ');
+    }
+
+    private static void appendDigits(StringBuilder sb, int value, int digits) {
+        if (digits == 3 && value < 100)
+            sb.append('0');
+        if (value < 10)
+            sb.append('0');
+        sb.append(value);
+    }
+}
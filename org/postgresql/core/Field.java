@@ -132,6 +132,22 @@ public class Field
         this.format = format;
     }
 
+    /*
+     * @param format the format of the copy's data (text=0, binary=1)
+     * @return a copy of this Field, including the cached metadata, with
+     * the given format
+     */
+    public Field copyWithFormat(int format)
+    {
+        Field copy = new Field(columnLabel, columnName, oid, length, mod, tableOid, positionInTable);
+        copy.format = format;
+        copy.tableName = tableName;
+        copy.schemaName = schemaName;
+        copy.nullable = nullable;
+        copy.autoIncrement = autoIncrement;
+        return copy;
+    }
+
     /*
      * @return the columns' table oid, zero if no oid available
      */
@@ -0,0 +1,196 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.postgresql.util.GT;
+import org.postgresql.util.HostSpec;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+/**
+ * Decides the order in which the hosts of a multi-host URL are tried.
+ *<p>
+ * The "loadBalanceHosts" connection property selects the strategy:
+ * <ul>
+ * <li><code>none</code> (the default) tries hosts in the order given;</li>
+ * <li><code>random</code> shuffles them for every connection;</li>
+ * <li><code>roundRobin</code> rotates the starting host for every connection
+ *     made with the same host list;</li>
+ * <li><code>leastRecentlyFailed</code> prefers hosts that have never failed,
+ *     then those whose last failure is oldest.</li>
+ * </ul>
+ * With any strategy but <code>none</code>, hosts that failed recently (as
+ * recorded in {@link HostHealthRegistry}) are moved to the end of the list
+ * until their backoff expires. The backoff starts at "hostRecheckSeconds"
+ * and doubles with every consecutive failure, up to 32 times that value.
+ * Such hosts are still tried as a last resort.
+ */
+public class HostChooser
+{
+    public static final String NONE = "none";
+    public static final String RANDOM = "random";
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String LEAST_RECENTLY_FAILED = "leastRecentlyFailed";
+
+    private static final int MAX_BACKOFF_SHIFT = 5;
+
+    // Round-robin counters are kept for this many host lists at most; past
+    // that they all start again from the first host.
+    private static final int MAX_ROUND_ROBIN_LISTS = 256;
+
+    private static final Random random = new Random();
+    private static final ConcurrentHashMap roundRobinCounters = new ConcurrentHashMap();
+
+    private HostChooser()
+    {
+    }
+
+    /**
+     * Order hosts for a connection attempt according to the connection
+     * properties.
+     *
+     * @param hostSpecs the hosts from the connection URL
+     * @param info the connection properties
+     * @param logger the logger to use for this connection
+     * @return the same hosts in the order to try them
+     * @throws PSQLException if the load balancing properties are invalid
+     */
+    public static HostSpec[] orderHosts(HostSpec[] hostSpecs, Properties info, Logger logger) throws PSQLException
+    {
+        String strategy = info.getProperty("loadBalanceHosts", NONE);
+        long recheckMillis = 10000;
+        String recheck = info.getProperty("hostRecheckSeconds");
+        if (recheck != null)
+        {
+            try
+            {
+                recheckMillis = Long.parseLong(recheck) * 1000;
+            }
+            catch (NumberFormatException nfe)
+            {
+                throw new PSQLException(GT.tr("Invalid hostRecheckSeconds value: {0}", recheck), PSQLState.CONNECTION_UNABLE_TO_CONNECT, nfe);
+            }
+        }
+
+        if (hostSpecs.length <= 1 || NONE.equals(strategy))
+            return hostSpecs;
+
+        List hosts = new ArrayList(Arrays.asList(hostSpecs));
+        if (RANDOM.equals(strategy))
+        {
+            Collections.shuffle(hosts, random);
+        }
+        else if (ROUND_ROBIN.equals(strategy))
+        {
+            String key = hosts.toString();
+            AtomicInteger counter = (AtomicInteger) roundRobinCounters.get(key);
+            if (counter == null)
+            {
+                if (roundRobinCounters.size() >= MAX_ROUND_ROBIN_LISTS)
+                    roundRobinCounters.clear();
+                AtomicInteger newCounter = new AtomicInteger();
+                counter = (AtomicInteger) roundRobinCounters.putIfAbsent(key, newCounter);
+                if (counter == null)
+                    counter = newCounter;
+            }
+            int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % hosts.size();
+            Collections.rotate(hosts, -start);
+        }
+        else if (LEAST_RECENTLY_FAILED.equals(strategy))
+        {
+            // Shuffle first so that hosts which never failed share the load.
+            // Failure times are read once, as other connections may report
+            // failures while sorting.
+            Collections.shuffle(hosts, random);
+            final long[] lastFailure = new long[hosts.size()];
+            Integer[] indexes = new Integer[hosts.size()];
+            for (int i = 0; i < indexes.length; ++i)
+            {
+                lastFailure[i] = HostHealthRegistry.getLastFailure((HostSpec) hosts.get(i));
+                indexes[i] = Integer.valueOf(i);
+            }
+            Arrays.sort(indexes, new Comparator() {
+                public int compare(Object a, Object b) {
+                    long fa = lastFailure[((Integer) a).intValue()];
+                    long fb = lastFailure[((Integer) b).intValue()];
+                    return fa < fb ? -1 : (fa == fb ? 0 : 1);
+                }
+            });
+            List sorted = new ArrayList(hosts.size());
+            for (int i = 0; i < indexes.length; ++i)
+                sorted.add(hosts.get(indexes[i].intValue()));
+            hosts = sorted;
+        }
+        else
+        {
+            throw new PSQLException(GT.tr("Invalid loadBalanceHosts value: {0}", strategy), PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+        }
+
+        // Move hosts that are still backing off to the end, soonest
+        // retry first, keeping the chosen order among the others.
+        long now = System.currentTimeMillis();
+        List available = new ArrayList(hosts.size());
+        final List backingOff = new ArrayList();
+        final long[] retryAt = new long[hosts.size()];
+        for (int i = 0; i < hosts.size(); ++i)
+        {
+            HostSpec host = (HostSpec) hosts.get(i);
+            long retry = retryTime(host, recheckMillis);
+            if (retry > now)
+            {
+                retryAt[backingOff.size()] = retry;
+                backingOff.add(host);
+            }
+            else
+            {
+                available.add(host);
+            }
+        }
+
+        if (!backingOff.isEmpty())
+        {
+            if (logger.logDebug())
+                logger.debug("Hosts backing off after recent failures: " + backingOff);
+
+            Integer[] indexes = new Integer[backingOff.size()];
+            for (int i = 0; i < indexes.length; ++i)
+                indexes[i] = Integer.valueOf(i);
+            Arrays.sort(indexes, new Comparator() {
+                public int compare(Object a, Object b) {
+                    long ra = retryAt[((Integer) a).intValue()];
+                    long rb = retryAt[((Integer) b).intValue()];
+                    return ra < rb ? -1 : (ra == rb ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < indexes.length; ++i)
+                available.add(backingOff.get(indexes[i].intValue()));
+        }
+
+        return (HostSpec[]) available.toArray(new HostSpec[available.size()]);
+    }
+
+    private static long retryTime(HostSpec host, long recheckMillis)
+    {
+        int failures = HostHealthRegistry.getConsecutiveFailures(host);
+        if (failures == 0 || recheckMillis <= 0)
+            return 0;
+
+        long backoff = recheckMillis << Math.min(failures - 1, MAX_BACKOFF_SHIFT);
+        return HostHealthRegistry.getLastFailure(host) + backoff;
+    }
+}
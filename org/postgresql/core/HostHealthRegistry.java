@@ -0,0 +1,109 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.postgresql.util.HostSpec;
+
+/**
+ * Driver-wide record of connection failures per host, shared by all
+ * connections so that one client's failed attempt steers the others away
+ * from the same host. Only the facts are recorded here; how long a failed
+ * host is avoided is decided by {@link HostChooser}.
+ */
+public class HostHealthRegistry
+{
+    private static final ConcurrentHashMap statuses = new ConcurrentHashMap();
+
+    private static final class Status
+    {
+        long lastFailure;
+        int consecutiveFailures;
+    }
+
+    private HostHealthRegistry()
+    {
+    }
+
+    /**
+     * Record a failed attempt to connect to the given host.
+     */
+    public static void reportFailure(HostSpec hostSpec)
+    {
+        Status status = (Status) statuses.get(hostSpec);
+        if (status == null)
+        {
+            Status newStatus = new Status();
+            status = (Status) statuses.putIfAbsent(hostSpec, newStatus);
+            if (status == null)
+                status = newStatus;
+        }
+
+        synchronized (status)
+        {
+            status.lastFailure = System.currentTimeMillis();
+            status.consecutiveFailures++;
+        }
+    }
+
+    /**
+     * Record a successful connection to the given host, clearing any
+     * failure history.
+     */
+    public static void reportSuccess(HostSpec hostSpec)
+    {
+        Status status = (Status) statuses.get(hostSpec);
+        if (status == null)
+            return;
+
+        synchronized (status)
+        {
+            status.consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * @return the time of the most recent failure, in milliseconds since
+     *   the epoch, or 0 if the host has never failed
+     */
+    public static long getLastFailure(HostSpec hostSpec)
+    {
+        Status status = (Status) statuses.get(hostSpec);
+        if (status == null)
+            return 0;
+
+        synchronized (status)
+        {
+            return status.lastFailure;
+        }
+    }
+
+    /**
+     * @return the number of failures since the last successful connection
+     */
+    public static int getConsecutiveFailures(HostSpec hostSpec)
+    {
+        Status status = (Status) statuses.get(hostSpec);
+        if (status == null)
+            return 0;
+
+        synchronized (status)
+        {
+            return status.consecutiveFailures;
+        }
+    }
+
+    /**
+     * Forget all recorded failures.
+     */
+    public static void clear()
+    {
+        statuses.clear();
+    }
+}
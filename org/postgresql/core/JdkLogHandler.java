@@ -0,0 +1,59 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.postgresql.DriverBase;
+
+/**
+ * Sends messages to java.util.logging, under the logger
+ * <code>org.postgresql</code>, or <code>org.postgresql.&lt;category&gt;</code>
+ * for categorized messages. INFO messages are logged at Level.INFO and
+ * DEBUG messages at Level.FINE. Logging frameworks such as SLF4J or log4j
+ * can pick the messages up from there with their java.util.logging bridge.
+ */
+public class JdkLogHandler implements LogHandler {
+    public static final JdkLogHandler INSTANCE = new JdkLogHandler();
+
+    private static final String ROOT = "org.postgresql";
+
+    public void publish(long timeMillis, int level, String connectionID, String category, String message, Throwable t) {
+        java.util.logging.Logger logger = getLogger(category);
+        Level jdkLevel = (level >= DriverBase.DEBUG ? Level.FINE : Level.INFO);
+        if (!logger.isLoggable(jdkLevel))
+            return;
+
+        LogRecord record = new LogRecord(jdkLevel, "(" + connectionID + ") " + message);
+        record.setMillis(timeMillis);
+        record.setLoggerName(logger.getName());
+        // The caller would be this class; do not let the record look for it.
+        record.setSourceClassName(null);
+        record.setSourceMethodName(null);
+        record.setThrown(t);
+        logger.log(record);
+    }
+
+    /**
+     * @return the driver log level matching the level configured for the
+     *   category in java.util.logging
+     */
+    public int getLogLevel(String category) {
+        java.util.logging.Logger logger = getLogger(category);
+        if (logger.isLoggable(Level.FINE))
+            return DriverBase.DEBUG;
+        if (logger.isLoggable(Level.INFO))
+            return DriverBase.INFO;
+        return DriverBase.OFF;
+    }
+
+    private static java.util.logging.Logger getLogger(String category) {
+        return java.util.logging.Logger.getLogger(category == null ? ROOT : ROOT + "." + category);
+    }
+}
@@ -0,0 +1,33 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+/**
+ * Destination of the driver's log messages. A handler is chosen per
+ * connection with the <code>logHandler</code> connection property, and may
+ * be shared by many connections and threads, so implementations must be
+ * thread safe. A class named by the property needs a public no-argument
+ * constructor.
+ *
+ * @see Logger
+ */
+public interface LogHandler {
+    /**
+     * Write one message. Only messages that pass the level of the logger
+     * are published.
+     *
+     * @param timeMillis when the message was logged
+     * @param level DriverBase.INFO or DriverBase.DEBUG
+     * @param connectionID the ID of the connection, or "driver"
+     * @param category the category of the logger, such as
+     *   {@link Logger#PROTOCOL}, or null
+     * @param message the message
+     * @param t an exception to log with the message, or null
+     */
+    void publish(long timeMillis, int level, String connectionID, String category, String message, Throwable t);
+}
@@ -7,89 +7,198 @@
 */
 package org.postgresql.core;
 
-import java.text.SimpleDateFormat;
-import java.text.FieldPosition;
-import java.sql.DriverManager;
-import java.io.PrintWriter;
-import java.util.Date;
+import java.util.Collections;
+import java.util.Map;
 
 import org.postgresql.DriverBase;
 
 /**
  * Poor man's logging infrastructure. This just deals with maintaining a per-
- * connection ID and log level, and timestamping output.
+ * connection ID and log level, and hands messages that pass the level to a
+ * {@link LogHandler}, by default {@link DriverManagerLogHandler}.
+ *<p>
+ * Messages can be given as a pattern with <code>{0}</code>, <code>{1}</code>
+ * ... placeholders and separate arguments, in which case the message is only
+ * built if it is going to be logged. Loggers for a category (such as
+ * {@link #PROTOCOL}) can be given their own level, so that for instance
+ * protocol tracing can be enabled without the rest of the debug output.
  */
 public final class Logger {
-    // For brevity we only log the time, not date or timezone (the main reason
-    // for the timestamp is to see delays etc. between log lines, not to pin
-    // down an instant in time)
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss.SSS ");
-    private final FieldPosition dummyPosition = new FieldPosition(0);
-    private final StringBuffer buffer = new StringBuffer();
-    private final String connectionIDString;
-
-    private int level = 0;
+    /**
+     * The category of messages exchanged with the server.
+     */
+    public static final String PROTOCOL = "protocol";
+
+    private final String connectionID;
+    private final String category;
+    private final Map categoryLevels;
+    private volatile LogHandler handler;
+
+    // For category loggers, the connection's logger whose level and handler
+    // are used unless the category has its own.
+    private final Logger parent;
+    private volatile boolean levelSet;
+    private volatile int level = 0;
 
     public Logger() {
-        connectionIDString = "(driver) ";
+        this("driver", null, Collections.EMPTY_MAP, DriverManagerLogHandler.INSTANCE, null);
     }
 
     public Logger(int connectionID) {
-        connectionIDString = "(" + connectionID + ") ";
+        this(String.valueOf(connectionID), null, Collections.EMPTY_MAP, DriverManagerLogHandler.INSTANCE, null);
+    }
+
+    /**
+     * @param connectionID the ID of the connection
+     * @param handler where to send messages
+     * @param categoryLevels maps category names to Integer log levels that
+     *   override this logger's level in {@link #forCategory}
+     */
+    public Logger(int connectionID, LogHandler handler, Map categoryLevels) {
+        this(String.valueOf(connectionID), null, categoryLevels, handler, null);
+    }
+
+    private Logger(String connectionID, String category, Map categoryLevels, LogHandler handler, Logger parent) {
+        this.connectionID = connectionID;
+        this.category = category;
+        this.categoryLevels = categoryLevels;
+        this.handler = handler;
+        this.parent = parent;
+    }
+
+    /**
+     * Return a logger for the same connection that logs messages of the
+     * given category. It uses the level configured for the category if
+     * there is one, and otherwise follows the level of the connection's
+     * logger, including later changes to it. The same goes for the handler.
+     */
+    public Logger forCategory(String category) {
+        Logger root = (parent != null ? parent : this);
+        Logger logger = new Logger(connectionID, category, categoryLevels, null, root);
+        Integer categoryLevel = (Integer) categoryLevels.get(category);
+        if (categoryLevel != null)
+            logger.setLogLevel(categoryLevel.intValue());
+        return logger;
     }
 
     public void setLogLevel(int level) {
         this.level = level;
+        this.levelSet = true;
     }
 
     public int getLogLevel() {
+        if (parent != null && !levelSet)
+            return parent.getLogLevel();
         return level;
     }
 
+    public void setHandler(LogHandler handler) {
+        this.handler = handler;
+    }
+
+    public LogHandler getHandler() {
+        LogHandler h = handler;
+        if (h == null && parent != null)
+            return parent.getHandler();
+        return h;
+    }
+
     public boolean logDebug() {
-        return level >= DriverBase.DEBUG;
+        return getLogLevel() >= DriverBase.DEBUG;
     }
 
     public boolean logInfo() {
-        return level >= DriverBase.INFO;
+        return getLogLevel() >= DriverBase.INFO;
     }
 
     public void debug(String str) {
-        debug(str, null);
+        debug(str, (Throwable) null);
     }
 
     public void debug(String str, Throwable t) {
         if (logDebug())
-            log(str, t);
+            publish(DriverBase.DEBUG, str, t);
+    }
+
+    public void debug(String pattern, Object arg) {
+        if (logDebug())
+            publish(DriverBase.DEBUG, format(pattern, new Object[] { arg }), null);
+    }
+
+    public void debug(String pattern, Object arg1, Object arg2) {
+        if (logDebug())
+            publish(DriverBase.DEBUG, format(pattern, new Object[] { arg1, arg2 }), null);
+    }
+
+    public void debug(String pattern, Object[] args) {
+        if (logDebug())
+            publish(DriverBase.DEBUG, format(pattern, args), null);
     }
 
     public void info(String str) {
-        info(str, null);
+        info(str, (Throwable) null);
     }
 
     public void info(String str, Throwable t) {
         if (logInfo())
-            log(str, t);
+            publish(DriverBase.INFO, str, t);
+    }
+
+    public void info(String pattern, Object arg) {
+        if (logInfo())
+            publish(DriverBase.INFO, format(pattern, new Object[] { arg }), null);
+    }
+
+    public void info(String pattern, Object arg1, Object arg2) {
+        if (logInfo())
+            publish(DriverBase.INFO, format(pattern, new Object[] { arg1, arg2 }), null);
     }
 
+    /**
+     * Log a message whatever the level.
+     */
     public void log(String str, Throwable t) {
-        PrintWriter writer = DriverManager.getLogWriter();
-        if (writer == null)
-            return;
-
-        synchronized (this) {
-            buffer.setLength(0);
-            dateFormat.format(new Date(), buffer, dummyPosition);
-            buffer.append(connectionIDString);
-            buffer.append(str);
-            
-            // synchronize to ensure that the exception (if any) does
-            // not get split up from the corresponding log message
-            synchronized (writer) {
-                writer.println(buffer.toString());        
-                if (t != null)
-                    t.printStackTrace(writer);
-            }
+        publish(DriverBase.INFO, str, t);
+    }
+
+    private void publish(int messageLevel, String str, Throwable t) {
+        getHandler().publish(System.currentTimeMillis(), messageLevel, connectionID, category, str, t);
+    }
+
+    /**
+     * Substitute <code>{n}</code> placeholders with the n-th argument.
+     * Unlike MessageFormat there is no quoting and arguments are formatted
+     * with String.valueOf.
+     */
+    static String format(String pattern, Object[] args) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 16 * args.length);
+        int start = 0;
+        for (int open = pattern.indexOf('{'); open >= 0; open = pattern.indexOf('{', open + 1)) {
+            int close = pattern.indexOf('}', open);
+            if (close < 0)
+                break;
+            int index = parseIndex(pattern, open + 1, close);
+            if (index < 0 || index >= args.length)
+                continue;
+            sb.append(pattern, start, open);
+            sb.append(args[index]);
+            start = close + 1;
+            open = close;
+        }
+        sb.append(pattern, start, pattern.length());
+        return sb.toString();
+    }
+
+    private static int parseIndex(String s, int start, int end) {
+        if (start == end)
+            return -1;
+        int n = 0;
+        for (int i = start; i < end; ++i) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            n = n * 10 + (c - '0');
         }
+        return n;
     }
 }
@@ -0,0 +1,222 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+
+import org.postgresql.util.BufferReleaser;
+
+/**
+ * The rows of a result, as a List of <code>byte[][]</code> tuples, kept
+ * outside the Java heap. Each row is stored as the body of its V3
+ * DataRow message, a field count followed by each field's length and
+ * bytes, in direct buffers. One long per row locates it. The first
+ * kilobyte of rows is kept in a heap buffer, so that the many results
+ * of one or a few rows take no direct memory at all.
+ *<p>
+ * A row is decoded into a new <code>byte[][]</code> every time it is
+ * got. A result set holds only its current row that way, so a large
+ * result adds only short-lived objects to the heap. Replaced and inserted
+ * rows are appended; the space of the rows they replace is not reused.
+ * The direct buffers are freed when the list is closed, without waiting
+ * for the garbage collector (see {@link BufferReleaser}). As a row read
+ * from freed memory could crash the JVM, the methods of the list are
+ * synchronized, and rows cannot be got once it is closed.
+ */
+public class OffHeapRowList extends AbstractList
+{
+    private static final int HEAP_CHUNK_SIZE = 1024;
+    private static final int MIN_CHUNK_SIZE = 8192;
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    // Row i is at offset (int) index[i] of chunks[index[i] >>> 32], or
+    // is a null tuple if index[i] is NULL_TUPLE.
+    private static final long NULL_TUPLE = -1;
+
+    private long[] index = new long[16];
+    private int size;
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private ByteBuffer chunk;    // the last chunk, positioned where the next row goes
+    private int nextChunkSize = MIN_CHUNK_SIZE;
+    private boolean closed;
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized Object get(int i)
+    {
+        checkOpen();
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        long location = index[i];
+        if (location == NULL_TUPLE)
+            return null;
+
+        ByteBuffer buf = chunks[(int) (location >>> 32)].duplicate();
+        buf.position((int) location);
+        byte[][] tuple = new byte[buf.getShort() & 0xffff][];
+        for (int c = 0; c < tuple.length; ++c)
+        {
+            int length = buf.getInt();
+            if (length >= 0)
+            {
+                tuple[c] = new byte[length];
+                buf.get(tuple[c]);
+            }
+        }
+        return tuple;
+    }
+
+    public synchronized Object set(int i, Object element)
+    {
+        Object old = get(i);
+        index[i] = store((byte[][]) element);
+        return old;
+    }
+
+    public synchronized void add(int i, Object element)
+    {
+        if (i < 0 || i > size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        long location = store((byte[][]) element);
+        ensureIndex();
+        System.arraycopy(index, i, index, i + 1, size - i);
+        index[i] = location;
+        size++;
+        modCount++;
+    }
+
+    public synchronized Object remove(int i)
+    {
+        Object old = get(i);
+        System.arraycopy(index, i + 1, index, i, size - i - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * Receive the rest of a DataRow message, after its length, as the
+     * next row. Space for it is allocated before anything is read, so if
+     * that fails with an OutOfMemoryError the message is still to be read.
+     *
+     * @param pgStream the stream to read the message from
+     * @param length the length of the rest of the message
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void receive(PGStream pgStream, int length) throws IOException
+    {
+        ensureIndex();
+        long location = reserve(length);
+        pgStream.Receive(chunk, length);
+        index[size++] = location;
+        modCount++;
+    }
+
+    /**
+     * Release the rows, freeing their direct memory. The list cannot be
+     * used afterwards.
+     */
+    public synchronized void close()
+    {
+        closed = true;
+        for (int i = 0; i < chunkCount; ++i)
+            BufferReleaser.release(chunks[i]);
+        index = new long[16];
+        size = 0;
+        chunks = new ByteBuffer[4];
+        chunkCount = 0;
+        chunk = null;
+        nextChunkSize = MIN_CHUNK_SIZE;
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+            throw new IllegalStateException("The result rows have been closed.");
+    }
+
+    private void ensureIndex()
+    {
+        if (size == index.length)
+        {
+            long[] grown = new long[size * 2];
+            System.arraycopy(index, 0, grown, 0, size);
+            index = grown;
+        }
+    }
+
+    /**
+     * Make room for <code>length</code> bytes at the position of the last
+     * chunk.
+     *
+     * @return the location of that position
+     */
+    private long reserve(int length)
+    {
+        checkOpen();
+        if (chunk == null || chunk.remaining() < length)
+        {
+            // Chunks grow with the result, so that small results take
+            // little memory and large ones few chunks.
+            ByteBuffer allocated;
+            if (chunk == null && length <= HEAP_CHUNK_SIZE)
+            {
+                allocated = ByteBuffer.allocate(HEAP_CHUNK_SIZE);
+            }
+            else
+            {
+                allocated = ByteBuffer.allocateDirect(Math.max(length, nextChunkSize));
+                if (nextChunkSize < MAX_CHUNK_SIZE)
+                    nextChunkSize *= 2;
+            }
+
+            if (chunkCount == chunks.length)
+            {
+                ByteBuffer[] grown = new ByteBuffer[chunkCount * 2];
+                System.arraycopy(chunks, 0, grown, 0, chunkCount);
+                chunks = grown;
+            }
+            chunks[chunkCount++] = allocated;
+            chunk = allocated;
+        }
+        return ((long) (chunkCount - 1) << 32) | chunk.position();
+    }
+
+    private long store(byte[][] tuple)
+    {
+        if (tuple == null)
+            return NULL_TUPLE;
+
+        int length = 2;
+        for (int c = 0; c < tuple.length; ++c)
+            length += 4 + (tuple[c] == null ? 0 : tuple[c].length);
+
+        long location = reserve(length);
+        chunk.putShort((short) tuple.length);
+        for (int c = 0; c < tuple.length; ++c)
+        {
+            if (tuple[c] == null)
+            {
+                chunk.putInt( -1);
+            }
+            else
+            {
+                chunk.putInt(tuple[c].length);
+                chunk.put(tuple[c]);
+            }
+        }
+        return location;
+    }
+}
@@ -94,6 +94,25 @@ public class Oid {
         return "<unknown:" + oid + ">";
     }
 
+    /**
+     * @return true if {@link #valueOf(String)} accepts <code>oid</code>,
+     *   that is, it is a number or the name of a constant of this class
+     */
+    public static boolean isKnown(String oid) {
+        try {
+            Long.parseLong(oid);
+            return true;
+        } catch (NumberFormatException ex) {
+        }
+        Field[] fields = Oid.class.getFields();
+        for (int i = 0; i < fields.length; ++i) {
+            if (fields[i].getName().equalsIgnoreCase(oid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static int valueOf(String oid) throws PSQLException {
         try {
             return (int)Long.parseLong(oid);
@@ -8,6 +8,7 @@
 package org.postgresql.core;
 
 import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.FilterOutputStream;
@@ -16,8 +17,11 @@ import java.io.EOFException;
 import java.io.Writer;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 
+import org.postgresql.core.trace.ProtocolCapture;
 import org.postgresql.util.GT;
 import org.postgresql.util.HostSpec;
 import org.postgresql.util.PSQLState;
@@ -38,6 +42,9 @@ public class PGStream
     private final byte[] _int2buf;
 
     private Socket connection;
+    private int inputBufferSize = 8192;
+    private int maxInputBufferSize;
+    private int outputBufferSize = 8192;
     private VisibleBufferedInputStream pg_input;
     private OutputStream pg_output;
     private byte[] streamBuffer;
@@ -45,6 +52,17 @@ public class PGStream
     private Encoding encoding;
     private Writer encodingWriter;
 
+    private final ConnectionMetrics metrics = new ConnectionMetrics();
+    private volatile ProtocolCapture capture;
+
+    // The read deadline, as System.currentTimeMillis(), the task to run
+    // when it passes, or null if none is armed, the socket timeout to
+    // restore, and whether the deadline comes before that timeout.
+    private long readDeadline;
+    private Runnable readDeadlineTask;
+    private int readDeadlineSoTimeout;
+    private boolean readDeadlineFirst;
+
     /**
      * Constructor:  Connect to the PostgreSQL back end and return
      * a stream connection.
@@ -53,10 +71,30 @@ public class PGStream
      * @exception IOException if an IOException occurs below it.
      */
     public PGStream(HostSpec hostSpec) throws IOException
+    {
+        this(hostSpec, -1, -1);
+    }
+
+    /**
+     * Constructor:  Connect to the PostgreSQL back end and return
+     * a stream connection, with the given socket buffer sizes. They are
+     * set before connecting, as the receive buffer size bounds the TCP
+     * window that can be negotiated.
+     *
+     * @param hostSpec the host and port to connect to
+     * @param receiveBufferSize SO_RCVBUF for the socket, or -1 for the system default
+     * @param sendBufferSize SO_SNDBUF for the socket, or -1 for the system default
+     * @exception IOException if an IOException occurs below it.
+     */
+    public PGStream(HostSpec hostSpec, int receiveBufferSize, int sendBufferSize) throws IOException
     {
         this.hostSpec = hostSpec;
 
         Socket socket = new Socket();
+        if (receiveBufferSize > 0)
+            socket.setReceiveBufferSize(receiveBufferSize);
+        if (sendBufferSize > 0)
+            socket.setSendBufferSize(sendBufferSize);
         socket.connect(new InetSocketAddress(hostSpec.getHost(), hostSpec.getPort()));
         changeSocket(socket);
         setEncoding(Encoding.getJVMEncoding("US-ASCII"));
@@ -86,6 +124,50 @@ public class PGStream
         return pg_input.available() > 0 || connection.getInputStream().available() > 0;
     }
 
+    /**
+     * Wait for backend input to become available, giving up after the
+     * specified time. No input is consumed.
+     *<p>
+     * A configured socket timeout is about reads that hang, not about a
+     * connection that has nothing to say: the wait goes on in slices no
+     * longer than the socket timeout, so that it never expires it.
+     *
+     * @param timeoutMillis the maximum time to wait, in milliseconds; must be positive
+     * @return true if input (or EOF) is available, false if the wait timed out
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean waitForInput(int timeoutMillis) throws IOException {
+        if (pg_input.available() > 0)
+            return true;
+
+        int soTimeout = connection.getSoTimeout();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try
+        {
+            while (true)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                int slice = (int) (soTimeout > 0 ? Math.min(remaining, soTimeout) : remaining);
+                connection.setSoTimeout(slice);
+                try
+                {
+                    pg_input.peek();
+                    return true;
+                }
+                catch (SocketTimeoutException ste)
+                {
+                    // Wait out the rest.
+                }
+            }
+        }
+        finally
+        {
+            connection.setSoTimeout(soTimeout);
+        }
+    }
+
     /**
      * Switch this stream to using a new socket. Any existing socket
      * is <em>not</em> closed; it's assumed that we are changing to
@@ -103,13 +185,119 @@ public class PGStream
         connection.setTcpNoDelay(true);
 
         // Buffer sizes submitted by Sverre H Huseby <sverrehu@online.no>
-        pg_input = new VisibleBufferedInputStream(connection.getInputStream(), 8192);
-        pg_output = new BufferedOutputStream(connection.getOutputStream(), 8192);
+        pg_input = new VisibleBufferedInputStream(new MeteredInputStream(connection.getInputStream()), inputBufferSize, maxInputBufferSize);
+        pg_output = new BufferedOutputStream(new MeteredOutputStream(connection.getOutputStream()), outputBufferSize);
 
         if (encoding != null)
             setEncoding(encoding);
     }
 
+    /**
+     * Change the sizes of the buffers between this stream and its socket,
+     * which are 8192 bytes by default. This must be done before anything
+     * is sent or received; the sizes are kept by {@link #changeSocket}.
+     *
+     * @param inputBufferSize the initial size of the input buffer
+     * @param maxInputBufferSize the size the input buffer may grow to while
+     *   the server sends more than fits, shrinking back at the end of the
+     *   response, or 0 for a fixed size
+     * @param outputBufferSize the size of the output buffer
+     * @throws IOException if something goes wrong
+     */
+    public void setBufferSizes(int inputBufferSize, int maxInputBufferSize, int outputBufferSize) throws IOException {
+        this.inputBufferSize = inputBufferSize;
+        this.maxInputBufferSize = maxInputBufferSize;
+        this.outputBufferSize = outputBufferSize;
+        changeSocket(connection);
+    }
+
+    /**
+     * @return the current size of the input buffer
+     */
+    public int getInputBufferSize() {
+        return pg_input.getBufferSize();
+    }
+
+    /**
+     * Run a task once reading from the backend goes on past the given
+     * time, and then carry on reading. The deadline is checked after each
+     * read from the socket, and a read that blocks is bounded by a socket
+     * timeout set here and restored by {@link #clearReadDeadline}, so it
+     * costs two changes of the socket timeout rather than one for each
+     * message. A configured socket timeout that expires first keeps its
+     * meaning of a broken connection.
+     *
+     * @param deadline the time, as System.currentTimeMillis()
+     * @param task the task to run, at most once, from the reading thread
+     * @throws IOException if the socket timeout cannot be set
+     */
+    public void setReadDeadline(long deadline, Runnable task) throws IOException {
+        int soTimeout = connection.getSoTimeout();
+        long remaining = Math.max(1, deadline - System.currentTimeMillis());
+        readDeadlineFirst = soTimeout <= 0 || remaining < soTimeout;
+        connection.setSoTimeout(readDeadlineFirst ? (int) Math.min(remaining, Integer.MAX_VALUE) : soTimeout);
+        readDeadline = deadline;
+        readDeadlineTask = task;
+        readDeadlineSoTimeout = soTimeout;
+    }
+
+    /**
+     * Disarm the deadline set by {@link #setReadDeadline}, if it has not
+     * passed yet.
+     *
+     * @throws IOException if the socket timeout cannot be restored
+     */
+    public void clearReadDeadline() throws IOException {
+        if (readDeadlineTask == null)
+            return;
+        readDeadlineTask = null;
+        connection.setSoTimeout(readDeadlineSoTimeout);
+    }
+
+    /**
+     * Run the task of a read deadline that has passed, restoring the
+     * socket timeout first.
+     *
+     * @param timedOut whether a read just timed out
+     * @return whether the deadline had passed
+     */
+    private boolean checkReadDeadline(boolean timedOut) throws IOException {
+        Runnable task = readDeadlineTask;
+        if (task == null)
+            return false;
+        if (timedOut ? !readDeadlineFirst : System.currentTimeMillis() < readDeadline)
+            return false;
+        readDeadlineTask = null;
+        connection.setSoTimeout(readDeadlineSoTimeout);
+        task.run();
+        return true;
+    }
+
+    /**
+     * Return an input buffer that grew while receiving a large response
+     * to its initial size. Called at the end of each response.
+     */
+    public void shrinkInputBuffer() {
+        pg_input.shrink();
+    }
+
+    /**
+     * @return the metrics of the connection using this stream, which
+     *   include the bytes and time spent on its socket
+     */
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record everything sent and received from now on.
+     *
+     * @param capture where to record, or null to stop recording
+     */
+    public void setCapture(ProtocolCapture capture) {
+        this.capture = capture;
+    }
+
     public Encoding getEncoding() {
         return encoding;
     }
@@ -459,6 +647,27 @@ public class PGStream
         }
     }
 
+    /**
+     * Reads in a given number of bytes from the backend into a buffer,
+     * at its position, copying them straight from the input buffer.
+     *
+     * @param buf buffer to store result
+     * @param siz number of bytes to read
+     * @exception IOException if a data I/O error occurs
+     */
+    public void Receive(ByteBuffer buf, int siz) throws IOException
+    {
+        while (siz > 0)
+        {
+            if (!pg_input.ensureBytes(1))
+                throw new EOFException();
+            int w = Math.min(siz, pg_input.available());
+            buf.put(pg_input.getBuffer(), pg_input.getIndex(), w);
+            pg_input.skip(w);
+            siz -= w;
+        }
+    }
+
     public void Skip(int size) throws IOException {
         long s = 0;
         while (s < size) {
@@ -543,5 +752,108 @@ public class PGStream
         pg_output.close();
         pg_input.close();
         connection.close();
+        metrics.close();
+        if (capture != null)
+            capture.close();
+    }
+
+    /*
+     * The socket streams are only used when the buffers above them need
+     * to be filled or flushed, so timing every call costs little.
+     */
+
+    private class MeteredInputStream extends FilterInputStream
+    {
+        MeteredInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        public int read() throws IOException
+        {
+            long start = System.nanoTime();
+            int b;
+            while (true)
+            {
+                try
+                {
+                    b = in.read();
+                    break;
+                }
+                catch (SocketTimeoutException ste)
+                {
+                    if (!checkReadDeadline(true))
+                        throw ste;
+                }
+            }
+            checkReadDeadline(false);
+            metrics.bytesReceived(b < 0 ? 0 : 1, System.nanoTime() - start);
+            if (b >= 0 && capture != null)
+                capture.received(new byte[] { (byte) b }, 0, 1);
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            long start = System.nanoTime();
+            int n;
+            while (true)
+            {
+                try
+                {
+                    n = in.read(b, off, len);
+                    break;
+                }
+                catch (SocketTimeoutException ste)
+                {
+                    if (!checkReadDeadline(true))
+                        throw ste;
+                }
+            }
+            checkReadDeadline(false);
+            metrics.bytesReceived(n, System.nanoTime() - start);
+            if (n > 0 && capture != null)
+                capture.received(b, off, n);
+            return n;
+        }
+
+        public long skip(long n) throws IOException
+        {
+            // Skipped bytes still belong in a capture, and a read deadline
+            // must be seen while skipping too.
+            if (capture != null || readDeadlineTask != null)
+                return read(new byte[(int) Math.min(n, 8192)]);
+
+            long start = System.nanoTime();
+            long skipped = in.skip(n);
+            metrics.bytesReceived(skipped, System.nanoTime() - start);
+            return skipped;
+        }
+    }
+
+    private class MeteredOutputStream extends FilterOutputStream
+    {
+        MeteredOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        public void write(int b) throws IOException
+        {
+            long start = System.nanoTime();
+            out.write(b);
+            metrics.bytesSent(1, System.nanoTime() - start);
+            if (capture != null)
+                capture.sent(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            metrics.bytesSent(len, System.nanoTime() - start);
+            if (capture != null)
+                capture.sent(b, off, len);
+        }
     }
 }
@@ -11,6 +11,8 @@ package org.postgresql.core;
 import java.sql.SQLException;
 import java.io.InputStream;
 
+import org.postgresql.util.StreamWrapper;
+
 /**
  * Abstraction of a list of parameters to be substituted into a Query.
  * The protocol-specific details of how to efficiently store and stream
@@ -120,6 +122,31 @@ public interface ParameterList {
      */
     void setBytea(int index, InputStream stream, int length) throws SQLException;
 
+    /**
+     * Binds a binary bytea value held by a StreamWrapper. The parameter's
+     * type is implicitly set to 'bytea'. The wrapper's stream is got
+     * each time the value is sent, so a wrapper that returns a new stream
+     * every time can be sent by any number of executions.
+     *
+     * @param index the 1-based parameter index to bind.
+     * @param value the parameter data.
+     * @throws SQLException on error or if <code>index</code> is out of range
+     */
+    void setBytea(int index, StreamWrapper value) throws SQLException;
+
+    /**
+     * Binds a text value of UTF-8 encoded bytes held by a StreamWrapper.
+     * The wrapper's stream is got each time the value is sent, so a
+     * wrapper that returns a new stream every time can be sent by any
+     * number of executions.
+     *
+     * @param index the 1-based parameter index to bind.
+     * @param value the UTF-8 encoded parameter data.
+     * @param oid the type OID of the parameter, or <code>0</code> to infer the type.
+     * @throws SQLException on error or if <code>index</code> is out of range
+     */
+    void setText(int index, StreamWrapper value, int oid) throws SQLException;
+
     /**
      * Binds given byte[] value to a parameter. The bytes must already
      * be in correct format matching the OID.
@@ -148,6 +148,11 @@ public interface ProtocolConnection {
      * Return the process ID (PID) of the backend server process handling this connection.
      */
     public int getBackendPID();
+
+    /**
+     * Return the metrics collected for this connection.
+     */
+    public ConnectionMetrics getMetrics();
     
     /**
      * Return true if the connection is to the FoundationDB SQL layer, 
@@ -54,4 +54,27 @@ public interface Query {
     void close();
 
     boolean isStatementDescribed();
+
+    /**
+     * Flag in {@link #getColumnUsage}: a column was read with getString.
+     */
+    int READ_AS_STRING = 1;
+
+    /**
+     * Flag in {@link #getColumnUsage}: a column was read with a getter
+     * other than getString.
+     */
+    int READ_AS_VALUE = 2;
+
+    /**
+     * Returns where result sets of this query record how each column is
+     * read, as a combination of the READ_AS_ flags per column, so that
+     * later executions can receive each column in the format that is
+     * cheapest to read that way.
+     *
+     * @param columns the number of columns of the result
+     * @return the flags of each column, to be updated, or null if this
+     *  query does not keep them
+     */
+    int[] getColumnUsage(int columns);
 }
@@ -10,6 +10,7 @@ package org.postgresql.core;
 
 import java.sql.SQLException;
 
+import org.postgresql.PGQueryListener;
 import org.postgresql.copy.CopyOperation;
 
 /**
@@ -100,6 +101,13 @@ public interface QueryExecutor {
      */
     static int QUERY_NO_BINARY_TRANSFER = 256;
 
+    /**
+     * Flag for query execution that indicates the rows are kept for a
+     * scrollable result set, and may be spilled to a temporary file
+     * beyond the connection's scrollableResultHeapBytes.
+     */
+    static int QUERY_SPILL_ROWS = 512;
+
     /**
      * Execute a Query, passing results to a provided ResultHandler.
      *
@@ -152,6 +160,78 @@ public interface QueryExecutor {
                  int flags)
     throws SQLException;
 
+    /**
+     * Execute a Query with a time limit, passing results to a provided ResultHandler.
+     * If the limit expires before the query has completed, a cancel request is sent
+     * to the server and the resulting error is passed to the handler.
+     *
+     * @param query the query to execute
+     * @param parameters the parameters for the query
+     * @param handler a ResultHandler responsible for handling results generated
+     *  by this query
+     * @param maxRows the maximum number of rows to retrieve
+     * @param fetchSize if QUERY_FORWARD_CURSOR is set, the preferred number of rows to retrieve before suspending
+     * @param flags a combination of QUERY_* flags indicating how to handle the query.
+     * @param timeout the time limit in milliseconds; 0 means no limit
+     *
+     * @throws SQLException if query execution fails
+     * @see #execute(Query, ParameterList, ResultHandler, int, int, int)
+     */
+    void execute(Query query,
+                 ParameterList parameters,
+                 ResultHandler handler,
+                 int maxRows,
+                 int fetchSize,
+                 int flags,
+                 int timeout)
+    throws SQLException;
+
+    /**
+     * Execute several Query with a single time limit covering all of them.
+     *
+     * @param queries the queries to execute
+     * @param parameterLists the parameter lists for the queries
+     * @param handler a ResultHandler responsible for handling results generated
+     *  by this query
+     * @param maxRows the maximum number of rows to retrieve
+     * @param fetchSize if QUERY_FORWARD_CURSOR is set, the preferred number of rows to retrieve before suspending
+     * @param flags a combination of QUERY_* flags indicating how to handle the query.
+     * @param timeout the time limit in milliseconds; 0 means no limit
+     *
+     * @throws SQLException if query execution fails
+     * @see #execute(Query[], ParameterList[], ResultHandler, int, int, int)
+     */
+    void execute(Query[] queries,
+                 ParameterList[] parameterLists,
+                 ResultHandler handler,
+                 int maxRows,
+                 int fetchSize,
+                 int flags,
+                 int timeout)
+    throws SQLException;
+
+    /**
+     * Send a Query without waiting for its results. The results are passed
+     * to the handler, ending with a call to its handleCompletion method, by
+     * another thread, in the order queries were submitted. Until the results
+     * of all submitted queries have been received, other executions wait.
+     *
+     * @param query the query to execute
+     * @param parameters the parameters for the query
+     * @param handler a ResultHandler responsible for handling results generated
+     *  by this query; it must not throw from handleCompletion
+     * @param maxRows the maximum number of rows to retrieve
+     * @param flags a combination of QUERY_* flags indicating how to handle the query.
+     *
+     * @throws SQLException if the query could not be sent
+     */
+    void executeAsync(Query query,
+                      ParameterList parameters,
+                      ResultHandler handler,
+                      int maxRows,
+                      int flags)
+    throws SQLException;
+
     /**
      * Fetch additional rows from a cursor.
      *
@@ -196,6 +276,19 @@ public interface QueryExecutor {
      */
     void processNotifies() throws SQLException;
 
+    /**
+     * Like {@link #processNotifies()}, but if nothing has been received yet
+     * waits for up to <code>timeoutMillis</code> milliseconds for a message to
+     * arrive on an idle connection. On the v3 protocol other threads may use
+     * the connection during the wait, which then ends early; on the v2
+     * protocol the connection is locked for the duration of the wait.
+     *
+     * @param timeoutMillis how long to wait, in milliseconds; 0 does not wait
+     * @return false if the connection was not idle (i.e. in a transaction)
+     *   and so could not be read from, true otherwise
+     */
+    boolean processNotifies(int timeoutMillis) throws SQLException;
+
     //
     // Fastpath interface.
     //
@@ -230,4 +323,30 @@ public interface QueryExecutor {
      * @throws SQLException when initializing the given query fails
      */
     CopyOperation startCopy(String sql, boolean suppressBegin) throws SQLException;
+
+    /**
+     * Add a listener to be called around every execution.
+     *
+     * @param listener the listener to add
+     */
+    void addQueryListener(PGQueryListener listener);
+
+    /**
+     * Remove a listener added with {@link #addQueryListener}.
+     *
+     * @param listener the listener to remove
+     */
+    void removeQueryListener(PGQueryListener listener);
+
+    /**
+     * Share statement descriptions with other connections through the
+     * given cache. Protocol versions that do not describe statements
+     * ignore it. Descriptions are shared only while the search path stays
+     * the one given; a statement that may change it ends the sharing.
+     *
+     * @param cache the cache to use, or null for none
+     * @param searchPath the connection's search path, part of the key of
+     *   every description
+     */
+    void setDescriptionCache(DescriptionCache cache, String searchPath);
 }
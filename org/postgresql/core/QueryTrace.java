@@ -0,0 +1,203 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.LinkedHashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.postgresql.PGQueryEvent;
+
+/**
+ * The event recorded for one traced execution. Created by
+ * {@link QueryTracer#start}, filled in by the query executor and completed
+ * by {@link QueryTracer#finish}.
+ */
+public class QueryTrace implements PGQueryEvent
+{
+    private final int type;
+    private final Object query; // a Query, Query[] or SQL String
+    private final int batchSize;
+    private final long startTimeMillis;
+    final long startNanos;
+    long rowsBefore;
+
+    private String sql;
+    long totalNanos;
+    private long serverWaitNanos;
+    private long receiveNanos;
+    private long decodeNanos;
+    long rowCount;
+    private SQLException error;
+    private Object attachment;
+
+    QueryTrace(int type, Object query, int batchSize, long rowsBefore)
+    {
+        this.type = type;
+        this.query = query;
+        this.batchSize = batchSize;
+        this.startTimeMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.rowsBefore = rowsBefore;
+    }
+
+    /**
+     * Account for one wait for results.
+     *
+     * @param waitNanos time until the first byte of the response arrived
+     * @param networkNanos time blocked on the socket while reading the
+     *   response, including <code>waitNanos</code>
+     * @param elapsedNanos the total time spent reading the response
+     */
+    public void results(long waitNanos, long networkNanos, long elapsedNanos)
+    {
+        serverWaitNanos += waitNanos;
+        receiveNanos += Math.max(0, networkNanos - waitNanos);
+        decodeNanos += Math.max(0, elapsedNanos - Math.max(networkNanos, waitNanos));
+    }
+
+    /**
+     * Record an error, unless one was recorded already.
+     */
+    public void error(SQLException e)
+    {
+        if (error == null)
+            error = e;
+    }
+
+    /**
+     * @return a handler that records the first error passed to
+     *   <code>handler</code> in this trace
+     */
+    public ResultHandler wrap(final ResultHandler handler)
+    {
+        return new ResultHandler() {
+                   public void handleResultRows(Query fromQuery, Field[] fields, List tuples, ResultCursor cursor) {
+                       handler.handleResultRows(fromQuery, fields, tuples, cursor);
+                   }
+
+                   public void handleCommandStatus(String status, int updateCount, long insertOID) {
+                       handler.handleCommandStatus(status, updateCount, insertOID);
+                   }
+
+                   public void handleWarning(SQLWarning warning) {
+                       handler.handleWarning(warning);
+                   }
+
+                   public void handleError(SQLException newError) {
+                       error(newError);
+                       handler.handleError(newError);
+                   }
+
+                   public void handleCompletion() throws SQLException {
+                       handler.handleCompletion();
+                   }
+               };
+    }
+
+    //
+    // PGQueryEvent
+    //
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public String getSql()
+    {
+        if (sql == null)
+        {
+            if (query instanceof Query[])
+            {
+                // distinct statements, in order of first use
+                Set distinct = new LinkedHashSet();
+                Query[] queries = (Query[]) query;
+                for (int i = 0; i < queries.length; ++i)
+                    distinct.add(queries[i].toString());
+
+                StringBuffer sb = new StringBuffer();
+                for (Iterator i = distinct.iterator(); i.hasNext(); )
+                {
+                    if (sb.length() > 0)
+                        sb.append("; ");
+                    sb.append(i.next());
+                }
+                sql = sb.toString();
+            }
+            else
+            {
+                sql = String.valueOf(query);
+            }
+        }
+        return sql;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public long getStartTimeMillis()
+    {
+        return startTimeMillis;
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+    public long getSendNanos()
+    {
+        return Math.max(0, totalNanos - serverWaitNanos - receiveNanos - decodeNanos);
+    }
+
+    public long getServerWaitNanos()
+    {
+        return serverWaitNanos;
+    }
+
+    public long getReceiveNanos()
+    {
+        return receiveNanos;
+    }
+
+    public long getDecodeNanos()
+    {
+        return decodeNanos;
+    }
+
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    public SQLException getError()
+    {
+        return error;
+    }
+
+    public Object getAttachment()
+    {
+        return attachment;
+    }
+
+    public void setAttachment(Object attachment)
+    {
+        this.attachment = attachment;
+    }
+
+    public String toString()
+    {
+        return "PGQueryEvent(type=" + type + ",totalNanos=" + totalNanos + ",rows=" + rowCount + ",sql=" + getSql() + ")";
+    }
+}
@@ -0,0 +1,128 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import org.postgresql.PGQueryListener;
+
+/**
+ * The query listeners of a connection. Query executors check
+ * {@link #isEnabled()} and only then create a {@link QueryTrace}, so a
+ * connection without listeners allocates nothing for tracing.
+ */
+public class QueryTracer
+{
+    private static final PGQueryListener[] NO_LISTENERS = new PGQueryListener[0];
+
+    private final ConnectionMetrics metrics;
+    private final Logger logger;
+
+    // Copied on write, so that executions read it without locking.
+    private volatile PGQueryListener[] listeners = NO_LISTENERS;
+
+    public QueryTracer(ConnectionMetrics metrics, Logger logger)
+    {
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    public synchronized void addListener(PGQueryListener listener)
+    {
+        PGQueryListener[] newListeners = new PGQueryListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    public synchronized void removeListener(PGQueryListener listener)
+    {
+        for (int i = 0; i < listeners.length; ++i)
+        {
+            if (listeners[i] == listener)
+            {
+                PGQueryListener[] newListeners = new PGQueryListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, newListeners.length - i);
+                listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return listeners.length != 0;
+    }
+
+    /**
+     * Start tracing an execution and notify the listeners.
+     *
+     * @param type one of the PGQueryEvent constants
+     * @param query the Query, Query[] or SQL String being executed
+     * @param batchSize the number of statements executed
+     * @return the trace, or null if there are no listeners
+     */
+    public QueryTrace start(int type, Object query, int batchSize)
+    {
+        PGQueryListener[] current = listeners;
+        if (current.length == 0)
+            return null;
+
+        QueryTrace trace = new QueryTrace(type, query, batchSize, metrics.getRowsFetched());
+        for (int i = 0; i < current.length; ++i)
+        {
+            try
+            {
+                current[i].queryStarted(trace);
+            }
+            catch (RuntimeException e)
+            {
+                logger.info("Query listener failed", e);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Count the rows of a trace from now on, for an execution whose
+     * results are read only after those of the executions sent before it.
+     *
+     * @param trace the trace returned by {@link #start}, or null
+     */
+    public void countRowsFromNow(QueryTrace trace)
+    {
+        if (trace != null)
+            trace.rowsBefore = metrics.getRowsFetched();
+    }
+
+    /**
+     * Complete a trace and notify the listeners.
+     *
+     * @param trace the trace returned by {@link #start}, or null
+     */
+    public void finish(QueryTrace trace)
+    {
+        if (trace == null)
+            return;
+
+        trace.totalNanos = System.nanoTime() - trace.startNanos;
+        trace.rowCount = metrics.getRowsFetched() - trace.rowsBefore;
+
+        PGQueryListener[] current = listeners;
+        for (int i = 0; i < current.length; ++i)
+        {
+            try
+            {
+                current[i].queryCompleted(trace);
+            }
+            catch (RuntimeException e)
+            {
+                logger.info("Query listener failed", e);
+            }
+        }
+    }
+}
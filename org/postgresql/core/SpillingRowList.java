@@ -0,0 +1,423 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+
+import org.postgresql.util.BufferReleaser;
+
+/**
+ * The rows of a result, as a List of <code>byte[][]</code> tuples, that
+ * keeps at most a given number of bytes of rows on the heap. When more
+ * are added, the oldest rows on the heap are written to a temporary file
+ * and read back, through a memory mapping, whenever they are asked for.
+ *<p>
+ * This lets a scrollable result set hold more rows than fit in memory.
+ * Rows that are replaced or inserted after spilling are kept on the heap
+ * until the next time the budget is exceeded. Spilled rows are decoded
+ * again every time they are got, so callers should not expect the same
+ * array back twice.
+ *<p>
+ * The temporary file is deleted when the list is closed, or as soon as
+ * it is opened where the platform allows that. Its mappings are released
+ * on close (see {@link BufferReleaser}), as a file that is still mapped
+ * cannot be deleted on Windows. If it cannot be written the remaining
+ * rows are kept on the heap. As a row read from a released mapping could
+ * crash the JVM, the methods of the list are synchronized, and rows
+ * cannot be got once it is closed.
+ */
+public class SpillingRowList extends AbstractList
+{
+    // Rows are mapped a segment at a time; rows that cross the end of a
+    // segment are read from the channel instead.
+    private static final int SEGMENT_SIZE = 1 << 26;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    // Estimated heap overhead of a tuple and of each of its columns.
+    private static final int ROW_OVERHEAD = 16;
+    private static final int COLUMN_OVERHEAD = 16;
+
+    private final long heapBudget;
+    private final Logger logger;
+
+    // Row i is heapRows[i] if that is not null, and otherwise the row
+    // written to the file at offset spilled[i]. A null tuple is kept as
+    // NULL_TUPLE.
+    private Object[] heapRows = new Object[16];
+    private long[] spilled = new long[16];
+    private int size;
+    private long heapBytes;
+
+    // No row before this index is on the heap.
+    private int spillFrom;
+
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private boolean deleteOnClose;
+    private boolean spillFailed;
+    private long written;             // bytes in the file
+    private ByteBuffer writeBuffer;   // bytes to be appended to the file
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private boolean closed;
+
+    private static final Object NULL_TUPLE = new Object();
+
+    /**
+     * @param heapBudget the bytes of rows to keep on the heap
+     * @param logger where to report a failure to spill
+     */
+    public SpillingRowList(long heapBudget, Logger logger)
+    {
+        this.heapBudget = heapBudget;
+        this.logger = logger;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized Object get(int index)
+    {
+        if (closed)
+            throw new IllegalStateException("The result rows have been closed.");
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        Object row = heapRows[index];
+        if (row != null)
+            return (row == NULL_TUPLE ? null : row);
+
+        try
+        {
+            return read(spilled[index]);
+        }
+        catch (IOException ioe)
+        {
+            throw new IllegalStateException("Could not read a result row from " + file, ioe);
+        }
+    }
+
+    public synchronized Object set(int index, Object element)
+    {
+        Object old = get(index);
+        if (heapRows[index] != null)
+            heapBytes -= estimate(heapRows[index]);
+        heapRows[index] = (element == null ? NULL_TUPLE : element);
+        heapBytes += estimate(heapRows[index]);
+        if (index < spillFrom)
+            spillFrom = index;
+        spillIfNeeded();
+        return old;
+    }
+
+    public synchronized void add(int index, Object element)
+    {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        if (size == heapRows.length)
+        {
+            Object[] grownRows = new Object[size * 2];
+            long[] grownSpilled = new long[size * 2];
+            System.arraycopy(heapRows, 0, grownRows, 0, size);
+            System.arraycopy(spilled, 0, grownSpilled, 0, size);
+            heapRows = grownRows;
+            spilled = grownSpilled;
+        }
+        System.arraycopy(heapRows, index, heapRows, index + 1, size - index);
+        System.arraycopy(spilled, index, spilled, index + 1, size - index);
+        size++;
+        modCount++;
+
+        heapRows[index] = (element == null ? NULL_TUPLE : element);
+        heapBytes += estimate(heapRows[index]);
+        if (index < spillFrom)
+            spillFrom = index;
+        spillIfNeeded();
+    }
+
+    public synchronized Object remove(int index)
+    {
+        Object old = get(index);
+        if (heapRows[index] != null)
+            heapBytes -= estimate(heapRows[index]);
+        System.arraycopy(heapRows, index + 1, heapRows, index, size - index - 1);
+        System.arraycopy(spilled, index + 1, spilled, index, size - index - 1);
+        size--;
+        heapRows[size] = null;
+        modCount++;
+        if (index < spillFrom)
+            spillFrom--;
+        return old;
+    }
+
+    /**
+     * @return how many rows are in the temporary file rather than on the heap
+     */
+    public synchronized int getSpilledRowCount()
+    {
+        int count = 0;
+        for (int i = 0; i < size; ++i)
+        {
+            if (heapRows[i] == null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Discard the rows and delete the temporary file, if any. The list
+     * cannot be used afterwards.
+     */
+    public synchronized void close()
+    {
+        closed = true;
+        heapRows = new Object[16];
+        spilled = new long[16];
+        size = 0;
+        heapBytes = 0;
+        spillFrom = 0;
+        for (int i = 0; i < segments.length; ++i)
+            BufferReleaser.release(segments[i]);
+        segments = new MappedByteBuffer[0];
+        writeBuffer = null;
+        if (raf != null)
+        {
+            try
+            {
+                raf.close();
+            }
+            catch (IOException ioe)
+            {
+                // Nothing to do; the file is deleted below.
+            }
+            raf = null;
+            channel = null;
+        }
+        if (deleteOnClose)
+            file.delete();
+    }
+
+    private static long estimate(Object row)
+    {
+        if (row == NULL_TUPLE)
+            return ROW_OVERHEAD;
+        byte[][] tuple = (byte[][]) row;
+        long bytes = ROW_OVERHEAD;
+        for (int i = 0; i < tuple.length; ++i)
+            bytes += COLUMN_OVERHEAD + (tuple[i] == null ? 0 : tuple[i].length);
+        return bytes;
+    }
+
+    //
+    // Spilling
+    //
+
+    private void spillIfNeeded()
+    {
+        if (heapBytes <= heapBudget || spillFailed)
+            return;
+
+        // Spill down to three quarters of the budget, so that a run of
+        // additions spills in batches.
+        try
+        {
+            if (raf == null)
+                open();
+            long target = heapBudget - heapBudget / 4;
+            long remaining = heapBytes;
+            int end = spillFrom;
+            for (; remaining > target && end < size; ++end)
+            {
+                Object row = heapRows[end];
+                if (row != null)
+                {
+                    spilled[end] = append(row);
+                    remaining -= estimate(row);
+                }
+            }
+            flushWrites();
+
+            // Only rows that are safely in the file leave the heap.
+            for (; spillFrom < end; ++spillFrom)
+                heapRows[spillFrom] = null;
+            heapBytes = remaining;
+        }
+        catch (IOException ioe)
+        {
+            spillFailed = true;
+            logger.info("Could not spill result rows to a temporary file; keeping them in memory.", ioe);
+        }
+    }
+
+    private void open() throws IOException
+    {
+        file = File.createTempFile("pgjdbc", ".rows");
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        // Where the file can be deleted while open, its space is released
+        // whenever the list goes away, closed or not.
+        deleteOnClose = !file.delete();
+    }
+
+    /**
+     * @return the offset the row is written at
+     */
+    private long append(Object row) throws IOException
+    {
+        long offset = written + writeBuffer.position();
+        if (row == NULL_TUPLE)
+        {
+            reserve(4);
+            writeBuffer.putInt( -1);
+            return offset;
+        }
+
+        byte[][] tuple = (byte[][]) row;
+        reserve(4);
+        writeBuffer.putInt(tuple.length);
+        for (int i = 0; i < tuple.length; ++i)
+        {
+            reserve(4);
+            if (tuple[i] == null)
+            {
+                writeBuffer.putInt( -1);
+                continue;
+            }
+            writeBuffer.putInt(tuple[i].length);
+
+            int off = 0;
+            while (off < tuple[i].length)
+            {
+                if (!writeBuffer.hasRemaining())
+                    flushWrites();
+                int n = Math.min(writeBuffer.remaining(), tuple[i].length - off);
+                writeBuffer.put(tuple[i], off, n);
+                off += n;
+            }
+        }
+        return offset;
+    }
+
+    private void reserve(int bytes) throws IOException
+    {
+        if (writeBuffer.remaining() < bytes)
+            flushWrites();
+    }
+
+    private void flushWrites() throws IOException
+    {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining())
+            written += channel.write(writeBuffer, written);
+        writeBuffer.clear();
+    }
+
+    //
+    // Reading back
+    //
+
+    private Object read(long offset) throws IOException
+    {
+        ByteBuffer buf = mapped(offset, 4);
+        int columns = (buf != null ? buf.getInt() : readInt(offset));
+        if (columns < 0)
+            return null;
+
+        byte[][] tuple = new byte[columns][];
+        long position = offset + 4;
+        for (int i = 0; i < columns; ++i)
+        {
+            int length;
+            if (buf != null && buf.remaining() >= 4)
+                length = buf.getInt();
+            else
+            {
+                buf = null;
+                length = readInt(position);
+            }
+            position += 4;
+            if (length < 0)
+                continue;
+
+            tuple[i] = new byte[length];
+            if (buf != null && buf.remaining() >= length)
+            {
+                buf.get(tuple[i]);
+            }
+            else
+            {
+                buf = null;
+                readFully(ByteBuffer.wrap(tuple[i]), position);
+            }
+            position += length;
+        }
+        return tuple;
+    }
+
+    /**
+     * @return a buffer positioned at <code>offset</code> in the mapping of
+     *   its segment, with at least <code>length</code> bytes remaining, or
+     *   null if the segment ends before that
+     */
+    private ByteBuffer mapped(long offset, int length) throws IOException
+    {
+        int index = (int) (offset / SEGMENT_SIZE);
+        long start = (long) index * SEGMENT_SIZE;
+        int within = (int) (offset - start);
+        if (within + length > SEGMENT_SIZE)
+            return null;
+
+        if (index >= segments.length)
+        {
+            MappedByteBuffer[] grown = new MappedByteBuffer[index + 1];
+            System.arraycopy(segments, 0, grown, 0, segments.length);
+            segments = grown;
+        }
+
+        // The last segment is mapped again once more has been written.
+        long available = Math.min(SEGMENT_SIZE, written - start);
+        MappedByteBuffer segment = segments[index];
+        if (segment == null || segment.capacity() < available)
+        {
+            BufferReleaser.release(segment);
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, start, available);
+            segments[index] = segment;
+        }
+
+        ByteBuffer buf = segment.duplicate();
+        buf.position(within);
+        return buf;
+    }
+
+    private int readInt(long position) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        readFully(buf, position);
+        return buf.getInt(0);
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException
+    {
+        while (buf.hasRemaining())
+        {
+            int n = channel.read(buf, position);
+            if (n < 0)
+                throw new IOException("Unexpected end of " + file);
+            position += n;
+        }
+    }
+}
@@ -8,6 +8,7 @@
 package org.postgresql.core;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 import org.postgresql.util.GT;
 
 class UTF8Encoding extends Encoding {
@@ -20,7 +21,9 @@ class UTF8Encoding extends Encoding {
     private static final int MIN_4_BYTES = 0x10000;
     private static final int MAX_CODE_POINT = 0x10ffff;
 
-    private char[] decoderArray = new char[1024];
+    // A decode buffer for reuse, taken by one decode at a time; a decode
+    // that finds it taken uses its own, so decoding never blocks.
+    private final AtomicReference decoderArray = new AtomicReference(new char[1024]);
     
     // helper for decode
     private final static void checkByte(int ch, int pos, int len) throws IOException {
@@ -75,10 +78,10 @@ class UTF8Encoding extends Encoding {
      * @return a decoded string
      * @throws IOException if something goes wrong
      */
-    public synchronized String decode(byte[] data, int offset, int length) throws IOException {
-        char[] cdata = decoderArray;
-        if (cdata.length < length)
-            cdata = decoderArray = new char[length];
+    public String decode(byte[] data, int offset, int length) throws IOException {
+        char[] cdata = (char[]) decoderArray.getAndSet(null);
+        if (cdata == null || cdata.length < length)
+            cdata = new char[Math.max(length, 1024)];
 
         int in = offset;
         int out = 0;
@@ -149,16 +152,20 @@ class UTF8Encoding extends Encoding {
                     cdata[out++] = (char) ch;
                 }
             }
+
+            // Check if we ran past the end without seeing an exception.
+            if (in > end)
+                throw new IOException("Illegal UTF-8 sequence: multibyte sequence was truncated");
+
+            return new String(cdata, 0, out);
         }
         catch (ArrayIndexOutOfBoundsException a)
         {
             throw new IOException("Illegal UTF-8 sequence: multibyte sequence was truncated");
         }
-
-        // Check if we ran past the end without seeing an exception.
-        if (in > end)
-            throw new IOException("Illegal UTF-8 sequence: multibyte sequence was truncated");
-
-        return new String(cdata, 0, out);
+        finally
+        {
+            decoderArray.set(cdata);
+        }
     }
 }
@@ -14,6 +14,12 @@ import java.io.InputStream;
 /**
  * A faster version of BufferedInputStream. Does no synchronisation and
  * allows direct access to the used byte[] buffer. 
+ *<p>
+ * The buffer can be made adaptive by giving it a maximum size: it then
+ * doubles, up to that size, whenever a read from the wrapped stream fills
+ * it, so that a stream with a lot of data waiting is read in large
+ * chunks, and goes back to its initial size when {@link #shrink()} is
+ * called, which the owner does at the end of each response.
  * 
  * @author Mikko Tiihonen
  */
@@ -52,6 +58,16 @@ public class VisibleBufferedInputStream extends InputStream {
      */
     private int endIndex;
 
+    /**
+     * The size the buffer starts at, and an adaptive buffer shrinks to.
+     */
+    private final int initialSize;
+
+    /**
+     * The size an adaptive buffer grows to, or 0 if it does not adapt.
+     */
+    private final int maxSize;
+
     /**
      * Creates a new buffer around the given stream.
      * 
@@ -59,9 +75,30 @@ public class VisibleBufferedInputStream extends InputStream {
      * @param bufferSize The initial size of the buffer. 
      */
     public VisibleBufferedInputStream(InputStream in, int bufferSize) {
+        this(in, bufferSize, 0);
+    }
+
+    /**
+     * Creates a new buffer around the given stream.
+     * 
+     * @param in The stream to buffer.
+     * @param bufferSize The initial size of the buffer. 
+     * @param maxBufferSize The size the buffer may grow to when the
+     * stream has more data waiting than fits, or 0 for a buffer that only
+     * grows to hold what a caller asks for.
+     */
+    public VisibleBufferedInputStream(InputStream in, int bufferSize, int maxBufferSize) {
         wrapped = in;
-        buffer = new byte[bufferSize < MINIMUM_READ ?
-                          MINIMUM_READ : bufferSize];
+        initialSize = bufferSize < MINIMUM_READ ? MINIMUM_READ : bufferSize;
+        maxSize = maxBufferSize > initialSize ? maxBufferSize : 0;
+        buffer = new byte[initialSize];
+    }
+
+    /**
+     * @return the current size of the buffer
+     */
+    public int getBufferSize() {
+        return buffer.length;
     }
 
     /**
@@ -145,9 +182,27 @@ public class VisibleBufferedInputStream extends InputStream {
             return false;
         }
         endIndex += read;
+        if (maxSize > 0 && read == canFit && buffer.length < maxSize) {
+            // The stream has more waiting: grow.
+            byte[] buf = new byte[(int) Math.min((long) buffer.length * 2, maxSize)];
+            moveBufferTo(buf);
+            buffer = buf;
+        }
         return true;
     }
 
+    /**
+     * Return an adaptive buffer that grew to its initial size, unless it
+     * holds more unread bytes than that.
+     */
+    public void shrink() {
+        if (maxSize > 0 && buffer.length > initialSize && endIndex - index <= initialSize) {
+            byte[] buf = new byte[initialSize];
+            moveBufferTo(buf);
+            buffer = buf;
+        }
+    }
+
     /**
      * Doubles the size of the buffer.
      */
@@ -0,0 +1,146 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Iterator;
+
+/**
+ * An in-process server that answers every connection with the backend
+ * messages of a trace. Before sending a backend message it waits until the
+ * client has sent as many messages as the frontend had sent at that point
+ * of the trace; what the client sends is otherwise not checked. Pointing
+ * the driver at a fake backend and running the workload that was captured
+ * exercises the driver's protocol handling without a server.
+ *<p>
+ * SSL cannot be replayed: an SSLRequest is always refused.
+ */
+public class FakeBackend
+{
+    private final ProtocolTrace trace;
+    private final ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    public FakeBackend(ProtocolTrace trace) throws IOException
+    {
+        this.trace = trace;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptor = new Thread("PostgreSQL JDBC fake backend") {
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the port the fake backend listens on, on 127.0.0.1
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    public void close() throws IOException
+    {
+        closed = true;
+        serverSocket.close();
+    }
+
+    private void accept()
+    {
+        while (!closed)
+        {
+            final Socket socket;
+            try
+            {
+                socket = serverSocket.accept();
+            }
+            catch (IOException ioe)
+            {
+                return;
+            }
+
+            Thread session = new Thread("PostgreSQL JDBC fake backend session") {
+                public void run() {
+                    try
+                    {
+                        serve(socket);
+                    }
+                    catch (IOException ioe)
+                    {
+                        // the client went away
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            socket.close();
+                        }
+                        catch (IOException ioe)
+                        {
+                        }
+                    }
+                }
+            };
+            session.setDaemon(true);
+            session.start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException
+    {
+        socket.setTcpNoDelay(true);
+        InputStream in = new BufferedInputStream(socket.getInputStream(), 8192);
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        boolean typed = false;
+
+        for (Iterator i = trace.getMessages().iterator(); i.hasNext(); )
+        {
+            ProtocolTrace.Message message = (ProtocolTrace.Message) i.next();
+            if (message.isFrontend())
+            {
+                // Everything up to here answers the previous messages.
+                out.flush();
+                byte[] received = ProtocolTrace.readMessage(in, typed);
+                if (received == null)
+                    return;
+                if (!typed)
+                {
+                    int code = ProtocolTrace.int4(received, 4);
+                    if (code == ProtocolTrace.PROTOCOL_V3)
+                        typed = true;
+                    else if (code == ProtocolTrace.CANCEL_REQUEST)
+                        return;
+                }
+                else if (received[0] == 'X')
+                {
+                    return;
+                }
+            }
+            else if (message.getType() == 0)
+            {
+                out.write('N');
+            }
+            else
+            {
+                out.write(message.getData());
+            }
+        }
+        out.flush();
+    }
+}
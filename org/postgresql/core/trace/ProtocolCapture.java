@@ -0,0 +1,162 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the bytes a connection sends and receives to a trace file, as
+ * they pass through the socket. A trace starts with {@link #MAGIC}, followed
+ * by one record per socket read or write:
+ *<pre>
+ *   byte    'F' for bytes sent by the frontend, 'B' for the backend
+ *   varlong nanoseconds since the previous record
+ *   varint  length
+ *   byte[]  data
+ *</pre>
+ * Variable length integers use 7 bits per byte, low bits first, with the
+ * high bit set on all but the last byte.
+ *<p>
+ * Passwords are not recorded: the body of every PasswordMessage the
+ * frontend sends is written as zero bytes of the same length.
+ *
+ * @see ProtocolTrace
+ */
+public class ProtocolCapture
+{
+    public static final byte[] MAGIC = { 'P', 'G', 'T', 'R', 'A', 'C', 'E', '1' };
+
+    public static final byte FRONTEND = 'F';
+    public static final byte BACKEND = 'B';
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final OutputStream out;
+    private long lastNanos;
+    private boolean failed;
+
+    // Where the frontend is in its messages: the header of the current
+    // message collected so far, and how much of its body is still to come.
+    // The first message, the startup packet, has no type byte.
+    private final byte[] header = new byte[5];
+    private int headerCount;
+    private boolean startupSent;
+    private long bodyRemaining;
+    private boolean redactBody;
+
+    public ProtocolCapture(OutputStream out) throws IOException
+    {
+        this.out = out;
+        this.lastNanos = System.nanoTime();
+        out.write(MAGIC);
+    }
+
+    /**
+     * Create a new trace file in a directory, named after the current time
+     * and a counter so that concurrent connections do not collide.
+     */
+    public static ProtocolCapture create(File directory) throws IOException
+    {
+        File file = new File(directory, "pgtrace-" + System.currentTimeMillis() + "-" + nextId.incrementAndGet() + ".trace");
+        return new ProtocolCapture(new BufferedOutputStream(new FileOutputStream(file), 65536));
+    }
+
+    public synchronized void sent(byte[] b, int off, int len)
+    {
+        byte[] redacted = null;
+        int i = off;
+        int end = off + len;
+        while (i < end)
+        {
+            if (bodyRemaining > 0)
+            {
+                int n = (int) Math.min(bodyRemaining, end - i);
+                if (redactBody)
+                {
+                    if (redacted == null)
+                    {
+                        redacted = new byte[len];
+                        System.arraycopy(b, off, redacted, 0, len);
+                    }
+                    Arrays.fill(redacted, i - off, i - off + n, (byte) 0);
+                }
+                bodyRemaining -= n;
+                i += n;
+                continue;
+            }
+
+            header[headerCount++] = b[i++];
+            int headerSize = (startupSent ? 5 : 4);
+            if (headerCount == headerSize)
+            {
+                int at = headerSize - 4;
+                int length = ((header[at] & 0xFF) << 24) | ((header[at + 1] & 0xFF) << 16)
+                             | ((header[at + 2] & 0xFF) << 8) | (header[at + 3] & 0xFF);
+                bodyRemaining = Math.max(0, length - 4);
+                redactBody = startupSent && header[0] == 'p';
+                startupSent = true;
+                headerCount = 0;
+            }
+        }
+
+        if (redacted != null)
+            record(FRONTEND, redacted, 0, len);
+        else
+            record(FRONTEND, b, off, len);
+    }
+
+    public void received(byte[] b, int off, int len)
+    {
+        record(BACKEND, b, off, len);
+    }
+
+    /*
+     * A trace is a diagnostic aid: if it cannot be written, stop writing
+     * it rather than failing the connection.
+     */
+    private synchronized void record(byte direction, byte[] b, int off, int len)
+    {
+        if (failed || len <= 0)
+            return;
+
+        long now = System.nanoTime();
+        try
+        {
+            out.write(direction);
+            writeVarLong(now - lastNanos);
+            writeVarLong(len);
+            out.write(b, off, len);
+        }
+        catch (IOException ioe)
+        {
+            failed = true;
+        }
+        lastNanos = now;
+    }
+
+    private void writeVarLong(long v) throws IOException
+    {
+        while ((v & ~0x7FL) != 0)
+        {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    public synchronized void close() throws IOException
+    {
+        out.close();
+    }
+}
@@ -0,0 +1,234 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.postgresql.util.LatencyHistogram;
+
+/**
+ * Replays the frontend side of a trace against a server, or against a
+ * {@link FakeBackend} playing the backend side of the same trace, and
+ * reports throughput and, for each message type, latency compared with the
+ * latency that was captured. The latency of a backend message is the time
+ * from sending the frontend messages it answers until it arrives.
+ *<p>
+ * A trace replays against a real server only if the server answers as it
+ * did when the trace was captured: the same data, and an authentication
+ * method that needs no password, since passwords are not captured.
+ *<pre>
+ * java org.postgresql.core.trace.ProtocolReplay [-iterations n] trace [host:port]
+ *</pre>
+ */
+public class ProtocolReplay
+{
+    private final ProtocolTrace trace;
+    private final Map stats = new TreeMap();
+    private long messages;
+    private long bytes;
+    private long mismatches;
+
+    public ProtocolReplay(ProtocolTrace trace)
+    {
+        this.trace = trace;
+    }
+
+    private static class Stats
+    {
+        long count;
+        long bytes;
+        final LatencyHistogram replayed = new LatencyHistogram();
+        final LatencyHistogram captured = new LatencyHistogram();
+    }
+
+    private Stats stats(String typeName)
+    {
+        Stats s = (Stats) stats.get(typeName);
+        if (s == null)
+        {
+            s = new Stats();
+            stats.put(typeName, s);
+        }
+        return s;
+    }
+
+    /**
+     * Replay the trace once over a new connection.
+     */
+    public void replay(String host, int port) throws IOException
+    {
+        Socket socket = new Socket(host, port);
+        try
+        {
+            socket.setTcpNoDelay(true);
+            replay(new BufferedInputStream(socket.getInputStream(), 8192),
+                   new BufferedOutputStream(socket.getOutputStream(), 8192));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    private void replay(InputStream in, OutputStream out) throws IOException
+    {
+        boolean pending = false;
+        boolean skipSslResponse = false;
+        long sentNanos = System.nanoTime();
+        long capturedSentNanos = 0;
+
+        for (Iterator i = trace.getMessages().iterator(); i.hasNext(); )
+        {
+            ProtocolTrace.Message message = (ProtocolTrace.Message) i.next();
+            if (message.isFrontend())
+            {
+                String typeName = message.getTypeName();
+                if (typeName.equals("SSLRequest"))
+                {
+                    skipSslResponse = true;
+                    continue;
+                }
+                out.write(message.getData());
+                pending = true;
+                capturedSentNanos = message.getNanos();
+
+                Stats s = stats(">" + typeName);
+                s.count++;
+                s.bytes += message.getData().length;
+                messages++;
+                bytes += message.getData().length;
+                continue;
+            }
+
+            if (message.getType() == 0 && skipSslResponse)
+            {
+                skipSslResponse = false;
+                continue;
+            }
+
+            if (pending)
+            {
+                out.flush();
+                sentNanos = System.nanoTime();
+                pending = false;
+            }
+
+            byte[] received = ProtocolTrace.readMessage(in, true);
+            if (received == null)
+                throw new IOException("The backend closed the connection");
+            long latency = System.nanoTime() - sentNanos;
+
+            String typeName = ProtocolTrace.getTypeName(false, (char) received[0], received);
+            if (received[0] != message.getType())
+                mismatches++;
+
+            Stats s = stats("<" + typeName);
+            s.count++;
+            s.bytes += received.length;
+            s.replayed.record(latency / 1000);
+            s.captured.record((message.getNanos() - capturedSentNanos) / 1000);
+            messages++;
+            bytes += received.length;
+        }
+        out.flush();
+    }
+
+    /**
+     * Print, for each message type, the number and size of messages and
+     * the median and 99th percentile latencies, replayed and captured.
+     */
+    public void report(PrintStream out, long elapsedNanos)
+    {
+        double seconds = elapsedNanos / 1e9;
+        out.println("messages: " + messages + " in " + (elapsedNanos / 1000000) + " ms, "
+                    + Math.round(messages / seconds) + " messages/s, "
+                    + Math.round(bytes / seconds / 1024) + " KB/s");
+        if (mismatches > 0)
+            out.println("backend messages that differ in type from the trace: " + mismatches);
+
+        out.println(pad("type", 24) + pad("count", 10) + pad("bytes", 12)
+                    + pad("p50 us", 10) + pad("p99 us", 10) + pad("trace p50", 10) + pad("trace p99", 10));
+        for (Iterator i = stats.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry entry = (Map.Entry) i.next();
+            Stats s = (Stats) entry.getValue();
+            StringBuilder line = new StringBuilder();
+            line.append(pad((String) entry.getKey(), 24));
+            line.append(pad(String.valueOf(s.count), 10));
+            line.append(pad(String.valueOf(s.bytes), 12));
+            if (s.replayed.getCount() > 0)
+            {
+                line.append(pad(String.valueOf(s.replayed.getPercentile(50)), 10));
+                line.append(pad(String.valueOf(s.replayed.getPercentile(99)), 10));
+                line.append(pad(String.valueOf(s.captured.getPercentile(50)), 10));
+                line.append(pad(String.valueOf(s.captured.getPercentile(99)), 10));
+            }
+            out.println(line);
+        }
+    }
+
+    private static String pad(String s, int width)
+    {
+        StringBuilder sb = new StringBuilder(s);
+        while (sb.length() < width)
+            sb.append(' ');
+        return sb.append(' ').toString();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int iterations = 1;
+        int arg = 0;
+        if (args.length > 1 && args[0].equals("-iterations"))
+        {
+            iterations = Integer.parseInt(args[1]);
+            arg = 2;
+        }
+        if (args.length - arg < 1 || args.length - arg > 2)
+        {
+            System.err.println("usage: ProtocolReplay [-iterations n] trace [host:port]");
+            System.exit(1);
+        }
+
+        ProtocolTrace trace = ProtocolTrace.read(new File(args[arg]));
+        FakeBackend fake = null;
+        String host = "127.0.0.1";
+        int port;
+        if (args.length - arg == 2)
+        {
+            String address = args[arg + 1];
+            int colon = address.lastIndexOf(':');
+            host = address.substring(0, colon);
+            port = Integer.parseInt(address.substring(colon + 1));
+        }
+        else
+        {
+            fake = new FakeBackend(trace);
+            port = fake.getPort();
+        }
+
+        ProtocolReplay replay = new ProtocolReplay(trace);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i)
+            replay.replay(host, port);
+        replay.report(System.out, System.nanoTime() - start);
+
+        if (fake != null)
+            fake.close();
+    }
+}
@@ -0,0 +1,338 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trace written by {@link ProtocolCapture}, split into the protocol
+ * messages exchanged in each direction. Only version 3 of the protocol is
+ * understood.
+ */
+public class ProtocolTrace
+{
+    // Request codes of the untyped messages a frontend may start with.
+    static final int PROTOCOL_V3 = 196608;
+    static final int CANCEL_REQUEST = 80877102;
+    static final int SSL_REQUEST = 80877103;
+
+    /**
+     * One protocol message.
+     */
+    public static class Message
+    {
+        private final boolean frontend;
+        private final char type;
+        private final byte[] data;
+        private final long nanos;
+
+        Message(boolean frontend, char type, byte[] data, long nanos)
+        {
+            this.frontend = frontend;
+            this.type = type;
+            this.data = data;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return true if the message was sent by the frontend
+         */
+        public boolean isFrontend()
+        {
+            return frontend;
+        }
+
+        /**
+         * @return the message type, or 0 for the untyped messages that start
+         *   a connection, and the one byte answer to an SSLRequest
+         */
+        public char getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return the whole message as sent on the wire
+         */
+        public byte[] getData()
+        {
+            return data;
+        }
+
+        /**
+         * @return when the last byte of the message was captured, in
+         *   nanoseconds since the start of the trace
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        public String getTypeName()
+        {
+            return ProtocolTrace.getTypeName(frontend, type, data);
+        }
+    }
+
+    private final List messages;
+
+    private ProtocolTrace(List messages)
+    {
+        this.messages = messages;
+    }
+
+    /**
+     * @return the messages in the order they were sent or received
+     */
+    public List getMessages()
+    {
+        return messages;
+    }
+
+    public static ProtocolTrace read(File file) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+        try
+        {
+            return read(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    public static ProtocolTrace read(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[ProtocolCapture.MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, ProtocolCapture.MAGIC))
+            throw new IOException("Not a protocol trace");
+
+        List messages = new ArrayList();
+        Splitter frontend = new Splitter(true, messages);
+        Splitter backend = new Splitter(false, messages);
+        long nanos = 0;
+        while (true)
+        {
+            int direction = data.read();
+            if (direction < 0)
+                break;
+            nanos += readVarLong(data);
+            byte[] chunk = new byte[(int) readVarLong(data)];
+            data.readFully(chunk);
+
+            if (direction == ProtocolCapture.FRONTEND)
+            {
+                frontend.add(chunk, nanos);
+                if (frontend.sslRequested)
+                {
+                    frontend.sslRequested = false;
+                    backend.expectSslResponse = true;
+                }
+            }
+            else if (direction == ProtocolCapture.BACKEND)
+            {
+                backend.add(chunk, nanos);
+            }
+            else
+            {
+                throw new IOException("Corrupt protocol trace");
+            }
+        }
+        return new ProtocolTrace(messages);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long v = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+    }
+
+    /**
+     * Reassembles the messages of one direction from the captured chunks,
+     * which follow socket reads and writes rather than message boundaries.
+     */
+    private static class Splitter
+    {
+        private final boolean frontend;
+        private final List messages;
+        private byte[] buf = new byte[8192];
+        private int len;
+
+        // The frontend starts with untyped messages until the startup packet.
+        private boolean typed;
+        boolean sslRequested;
+        boolean expectSslResponse;
+
+        Splitter(boolean frontend, List messages)
+        {
+            this.frontend = frontend;
+            this.messages = messages;
+            this.typed = !frontend;
+        }
+
+        void add(byte[] chunk, long nanos)
+        {
+            if (len + chunk.length > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + chunk.length));
+            System.arraycopy(chunk, 0, buf, len, chunk.length);
+            len += chunk.length;
+
+            int pos = 0;
+            while (true)
+            {
+                int size;
+                if (expectSslResponse)
+                    size = 1;
+                else if (typed)
+                    size = len - pos >= 5 ? 1 + int4(buf, pos + 1) : -1;
+                else
+                    size = len - pos >= 4 ? int4(buf, pos) : -1;
+                if (size < 0 || len - pos < size)
+                    break;
+
+                byte[] data = Arrays.copyOfRange(buf, pos, pos + size);
+                char type = 0;
+                if (typed && !expectSslResponse)
+                {
+                    type = (char) data[0];
+                }
+                else if (frontend && size >= 8)
+                {
+                    int code = int4(data, 4);
+                    if (code == SSL_REQUEST)
+                        sslRequested = true;
+                    else if (code == PROTOCOL_V3)
+                        typed = true;
+                }
+                expectSslResponse = false;
+                messages.add(new Message(frontend, type, data, nanos));
+                pos += size;
+            }
+            System.arraycopy(buf, pos, buf, 0, len - pos);
+            len -= pos;
+        }
+    }
+
+    static int int4(byte[] b, int pos)
+    {
+        return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+    }
+
+    /**
+     * Read one message from a live stream.
+     *
+     * @param typed false for the untyped messages that start a connection
+     * @return the whole message, or null at the end of the stream
+     */
+    static byte[] readMessage(InputStream in, boolean typed) throws IOException
+    {
+        int header = typed ? 5 : 4;
+        byte[] head = new byte[header];
+        int n = 0;
+        while (n < header)
+        {
+            int r = in.read(head, n, header - n);
+            if (r < 0)
+            {
+                if (n == 0)
+                    return null;
+                throw new EOFException();
+            }
+            n += r;
+        }
+
+        int size = int4(head, header - 4) + header - 4;
+        byte[] data = Arrays.copyOf(head, size);
+        new DataInputStream(in).readFully(data, header, size - header);
+        return data;
+    }
+
+    static String getTypeName(boolean frontend, char type, byte[] data)
+    {
+        if (type == 0)
+        {
+            if (!frontend)
+                return "SSLResponse";
+            int code = data.length >= 8 ? int4(data, 4) : 0;
+            if (code == SSL_REQUEST)
+                return "SSLRequest";
+            if (code == CANCEL_REQUEST)
+                return "CancelRequest";
+            return "StartupMessage";
+        }
+
+        if (frontend)
+        {
+            switch (type)
+            {
+            case 'B': return "Bind";
+            case 'C': return "Close";
+            case 'D': return "Describe";
+            case 'E': return "Execute";
+            case 'F': return "FunctionCall";
+            case 'H': return "Flush";
+            case 'P': return "Parse";
+            case 'Q': return "Query";
+            case 'S': return "Sync";
+            case 'X': return "Terminate";
+            case 'c': return "CopyDone";
+            case 'd': return "CopyData";
+            case 'f': return "CopyFail";
+            case 'p': return "PasswordMessage";
+            }
+        }
+        else
+        {
+            switch (type)
+            {
+            case '1': return "ParseComplete";
+            case '2': return "BindComplete";
+            case '3': return "CloseComplete";
+            case 'A': return "NotificationResponse";
+            case 'C': return "CommandComplete";
+            case 'D': return "DataRow";
+            case 'E': return "ErrorResponse";
+            case 'G': return "CopyInResponse";
+            case 'H': return "CopyOutResponse";
+            case 'I': return "EmptyQueryResponse";
+            case 'K': return "BackendKeyData";
+            case 'N': return "NoticeResponse";
+            case 'R': return "Authentication";
+            case 'S': return "ParameterStatus";
+            case 'T': return "RowDescription";
+            case 'V': return "FunctionCallResponse";
+            case 'W': return "CopyBothResponse";
+            case 'Z': return "ReadyForQuery";
+            case 'c': return "CopyDone";
+            case 'd': return "CopyData";
+            case 'n': return "NoData";
+            case 's': return "PortalSuspended";
+            case 't': return "ParameterDescription";
+            }
+        }
+        return "'" + type + "'";
+    }
+}
@@ -119,10 +119,12 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
             runInitialQueries(protoConnection, info, logger);
 
             // And we're done.
+            HostHealthRegistry.reportSuccess(hostSpec);
             return protoConnection;
         }
         catch (ConnectException cex)
         {
+            HostHealthRegistry.reportFailure(hostSpec);
             // Added by Peter Mount <peter@retep.org.uk>
             // ConnectException is thrown when the connection cannot be made.
             // we trap this an return a more meaningful message for the end user
@@ -135,6 +137,7 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
         }
         catch (IOException ioe)
         {
+            HostHealthRegistry.reportFailure(hostSpec);
             if (newStream != null)
             {
                 try
@@ -154,6 +157,9 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
         }
         catch (SQLException se)
         {
+            // Only connection-class errors say anything about the host.
+            if (se.getSQLState() != null && se.getSQLState().startsWith("08"))
+                HostHealthRegistry.reportFailure(hostSpec);
             if (newStream != null)
             {
                 try
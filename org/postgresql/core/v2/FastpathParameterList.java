@@ -86,6 +86,17 @@ class FastpathParameterList implements ParameterList {
         paramValues[index - 1] = new StreamWrapper(stream, length);
     }
 
+    public void setBytea(int index, StreamWrapper value) throws SQLException {
+        if (index < 1 || index > paramValues.length)
+            throw new PSQLException(GT.tr("The column index is out of range: {0}, number of columns: {1}.", new Object[]{new Integer(index), new Integer(paramValues.length)}), PSQLState.INVALID_PARAMETER_VALUE );
+
+        paramValues[index - 1] = value;
+    }
+
+    public void setText(int index, StreamWrapper value, int oid) throws SQLException {
+        throw new IllegalArgumentException("can't setText() on a fastpath parameter");
+    }
+
     public void setNull(int index, int oid) throws SQLException {
         throw new IllegalArgumentException("can't setNull() on a v2 fastpath parameter");
     }
@@ -28,8 +28,8 @@ class ProtocolConnectionImpl implements ProtocolConnection {
         this.pgStream = pgStream;
         this.user = user;
         this.database = database;
-        this.logger = logger;
-        this.executor = new QueryExecutorImpl(this, pgStream, logger);
+        this.logger = logger.forCategory(Logger.PROTOCOL);
+        this.executor = new QueryExecutorImpl(this, pgStream, this.logger);
     }
 
     public HostSpec getHostSpec() {
@@ -212,6 +212,11 @@ class ProtocolConnectionImpl implements ProtocolConnection {
     	return cancelPid;
     }
 
+    public ConnectionMetrics getMetrics()
+    {
+        return pgStream.getMetrics();
+    }
+
     //
     // SQL Layer does not support protocol v2
     //
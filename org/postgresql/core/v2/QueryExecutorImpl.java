@@ -10,11 +10,16 @@ package org.postgresql.core.v2;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.Writer;
 import java.sql.*;
 
+import org.postgresql.DriverBase;
+import org.postgresql.PGQueryEvent;
+import org.postgresql.PGQueryListener;
 import org.postgresql.core.*;
+import org.postgresql.util.HashedWheelTimer;
 import org.postgresql.util.PSQLException;
 import org.postgresql.util.PSQLState;
 import org.postgresql.util.GT;
@@ -27,6 +32,8 @@ public class QueryExecutorImpl implements QueryExecutor {
     public QueryExecutorImpl(ProtocolConnectionImpl protoConnection, PGStream pgStream, Logger logger) {
         this.protoConnection = protoConnection;
         this.pgStream = pgStream;
+        this.metrics = pgStream.getMetrics();
+        this.tracer = new QueryTracer(metrics, logger);
         this.logger = logger;
     }
 
@@ -148,12 +155,22 @@ public class QueryExecutorImpl implements QueryExecutor {
         pgStream.flush();
     }
 
-    public synchronized void processNotifies() throws SQLException {
+    public void processNotifies() throws SQLException {
+        processNotifies(0);
+    }
+
+    public synchronized boolean processNotifies(int timeoutMillis) throws SQLException {
         // Asynchronous notifies only arrive when we are not in a transaction
         if (protoConnection.getTransactionState() != ProtocolConnection.TRANSACTION_IDLE)
-            return;
+            return false;
             
         try {
+            if (timeoutMillis > 0 && !pgStream.hasMessagePending()) {
+                // Input that is readable but not pending is end of stream.
+                if (pgStream.waitForInput(timeoutMillis) && !pgStream.hasMessagePending())
+                    throw new EOFException();
+            }
+
             while (pgStream.hasMessagePending()) {
                 int c = pgStream.ReceiveChar();
                 switch (c) {
@@ -173,6 +190,8 @@ public class QueryExecutorImpl implements QueryExecutor {
         } catch (IOException ioe) {
             throw new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, ioe);
         }
+
+        return true;
     }
 
     private byte[] receiveFastpathResult() throws IOException, SQLException {
@@ -255,7 +274,21 @@ public class QueryExecutorImpl implements QueryExecutor {
                                      int maxRows, int fetchSize, int flags)
     throws SQLException
     {
-        execute((V2Query)query, (SimpleParameterList)parameters, handler, maxRows, flags);
+        QueryTrace trace = null;
+        if (tracer.isEnabled() && (flags & QueryExecutor.QUERY_DESCRIBE_ONLY) == 0)
+        {
+            trace = tracer.start(PGQueryEvent.EXECUTE, query, 1);
+            handler = trace.wrap(handler);
+        }
+
+        try
+        {
+            execute((V2Query)query, (SimpleParameterList)parameters, handler, maxRows, flags);
+        }
+        finally
+        {
+            tracer.finish(trace);
+        }
     }
 
     // Nothing special yet, just run the queries one at a time.
@@ -287,12 +320,86 @@ public class QueryExecutorImpl implements QueryExecutor {
                       }
                   };
 
-        for (int i = 0; i < queries.length; ++i)
-            execute((V2Query)queries[i], (SimpleParameterList)parameters[i], handler, maxRows, flags);
+        QueryTrace trace = null;
+        if (tracer.isEnabled() && (flags & QueryExecutor.QUERY_DESCRIBE_ONLY) == 0)
+        {
+            trace = tracer.start(PGQueryEvent.BATCH, queries, queries.length);
+            handler = trace.wrap(handler);
+        }
+
+        try
+        {
+            for (int i = 0; i < queries.length; ++i)
+                execute((V2Query)queries[i], (SimpleParameterList)parameters[i], handler, maxRows, flags);
+        }
+        finally
+        {
+            tracer.finish(trace);
+        }
 
         delegateHandler.handleCompletion();
     }
 
+    public synchronized void execute(Query query,
+                                     ParameterList parameters,
+                                     ResultHandler handler,
+                                     int maxRows, int fetchSize, int flags, int timeout)
+    throws SQLException
+    {
+        HashedWheelTimer.Timeout cancelTimeout = startCancelTimer(timeout);
+        try
+        {
+            execute(query, parameters, handler, maxRows, fetchSize, flags);
+        }
+        finally
+        {
+            if (cancelTimeout != null)
+                cancelTimeout.cancel();
+        }
+    }
+
+    public synchronized void execute(Query[] queries,
+                                     ParameterList[] parameters,
+                                     ResultHandler handler,
+                                     int maxRows, int fetchSize, int flags, int timeout)
+    throws SQLException
+    {
+        HashedWheelTimer.Timeout cancelTimeout = startCancelTimer(timeout);
+        try
+        {
+            execute(queries, parameters, handler, maxRows, fetchSize, flags);
+        }
+        finally
+        {
+            if (cancelTimeout != null)
+                cancelTimeout.cancel();
+        }
+    }
+
+    private HashedWheelTimer.Timeout startCancelTimer(int timeout) {
+        if (timeout <= 0)
+            return null;
+
+        return DriverBase.scheduleTimeout(new Runnable() {
+                                              public void run() {
+                                                  try {
+                                                      protoConnection.sendQueryCancel();
+                                                  } catch (SQLException e) {
+                                                  }
+                                              }
+                                          }, timeout);
+    }
+
+    // The V2 protocol cannot pipeline queries; run them synchronously.
+    public void executeAsync(Query query,
+                             ParameterList parameters,
+                             ResultHandler handler,
+                             int maxRows, int flags)
+    throws SQLException
+    {
+        execute(query, parameters, handler, maxRows, 0, flags);
+    }
+
     public void fetch(ResultCursor cursor, ResultHandler handler, int rows) throws SQLException {
         throw org.postgresql.Driver.notImplemented(this.getClass(), "fetch(ResultCursor,ResultHandler,int)");
     }
@@ -433,6 +540,7 @@ public class QueryExecutorImpl implements QueryExecutor {
 
                     for (int i = 0; i < fields.length; i++)
                         fields[i].setFormat(Field.BINARY_FORMAT); //Set the field to binary format
+                    metrics.rowFetched();
                     if (maxRows == 0 || tuples.size() < maxRows)
                         tuples.add(tuple);
                 }
@@ -474,6 +582,7 @@ public class QueryExecutorImpl implements QueryExecutor {
                         if (maxRows == 0 || tuples.size() < maxRows)
                             handler.handleError(new PSQLException(GT.tr("Ran out of memory retrieving query results."), PSQLState.OUT_OF_MEMORY, oome));
                     }
+                    metrics.rowFetched();
                     if (maxRows == 0 || tuples.size() < maxRows)
                         tuples.add(tuple);
                 }
@@ -611,9 +720,23 @@ public class QueryExecutorImpl implements QueryExecutor {
 
     private final ProtocolConnectionImpl protoConnection;
     private final PGStream pgStream;
+    private final ConnectionMetrics metrics;
+    private final QueryTracer tracer;
     private final Logger logger;
 
     public CopyOperation startCopy(String sql, boolean suppressBegin) throws SQLException {
         throw new PSQLException(GT.tr("Copy not implemented for protocol version 2"), PSQLState.NOT_IMPLEMENTED);
     }
+
+    public void addQueryListener(PGQueryListener listener) {
+        tracer.addListener(listener);
+    }
+
+    public void removeQueryListener(PGQueryListener listener) {
+        tracer.removeListener(listener);
+    }
+
+    public void setDescriptionCache(DescriptionCache cache, String searchPath) {
+        // The V2 protocol does not describe statements.
+    }
 }
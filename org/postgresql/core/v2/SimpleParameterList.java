@@ -85,6 +85,43 @@ class SimpleParameterList implements ParameterList {
         paramValues[index - 1] = new StreamWrapper(stream, length);
     }
 
+    public void setBytea(int index, StreamWrapper value) throws SQLException {
+        if (index < 1 || index > paramValues.length)
+            throw new PSQLException(GT.tr("The column index is out of range: {0}, number of columns: {1}.", new Object[]{new Integer(index), new Integer(paramValues.length)}), PSQLState.INVALID_PARAMETER_VALUE );
+
+        paramValues[index - 1] = value;
+    }
+
+    public void setText(int index, StreamWrapper value, int oid) throws SQLException {
+        // The V2 protocol inlines parameters as escaped literals in the
+        // connection encoding, so the value has to be decoded here.
+        try
+        {
+            if (value.getBytes() != null)
+            {
+                setStringParameter(index, new String(value.getBytes(), value.getOffset(), value.getLength(), "UTF-8"), oid);
+                return;
+            }
+
+            int length = value.getLength();
+            byte[] data = new byte[length];
+            InputStream stream = value.getStream();
+            int read = 0;
+            while (read < length)
+            {
+                int n = stream.read(data, read, length - read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+            setStringParameter(index, new String(data, 0, read, "UTF-8"), oid);
+        }
+        catch (IOException ioe)
+        {
+            throw new PSQLException(GT.tr("Provided InputStream failed."), PSQLState.UNEXPECTED_ERROR, ioe);
+        }
+    }
+
     public void setNull(int index, int oid) throws SQLException {
         if (index < 1 || index > paramValues.length)
             throw new PSQLException(GT.tr("The column index is out of range: {0}, number of columns: {1}.", new Object[]{new Integer(index), new Integer(paramValues.length)}), PSQLState.INVALID_PARAMETER_VALUE );
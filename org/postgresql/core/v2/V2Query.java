@@ -107,6 +107,10 @@ class V2Query implements Query {
         return false;
     }
 
+    public int[] getColumnUsage(int columns) {
+        return null;
+    }
+
     private static final ParameterList NO_PARAMETERS = new SimpleParameterList(0, false);
 
     private final String[] fragments;      // Query fragments, length == # of parameters + 1
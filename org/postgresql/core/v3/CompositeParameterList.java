@@ -12,6 +12,7 @@ import org.postgresql.core.*;
 import org.postgresql.util.PSQLException;
 import org.postgresql.util.PSQLState;
 import org.postgresql.util.GT;
+import org.postgresql.util.StreamWrapper;
 
 import java.sql.SQLException;
 import java.io.InputStream;
@@ -97,6 +98,16 @@ class CompositeParameterList implements V3ParameterList {
         subparams[sub].setBytea(index - offsets[sub], stream, length);
     }
 
+    public void setBytea(int index, StreamWrapper value) throws SQLException {
+        int sub = findSubParam(index);
+        subparams[sub].setBytea(index - offsets[sub], value);
+    }
+
+    public void setText(int index, StreamWrapper value, int oid) throws SQLException {
+        int sub = findSubParam(index);
+        subparams[sub].setText(index - offsets[sub], value, oid);
+    }
+
     public void setNull(int index, int oid) throws SQLException {
         int sub = findSubParam(index);
         subparams[sub].setNull(index - offsets[sub], oid);
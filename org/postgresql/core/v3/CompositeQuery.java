@@ -62,6 +62,11 @@ class CompositeQuery implements V3Query {
         return true;
     }
 
+    public int[] getColumnUsage(int columns) {
+        // Each result is recorded against the subquery it came from.
+        return null;
+    }
+
     private final SimpleQuery[] subqueries;
     private final int[] offsets;
 }
@@ -12,10 +12,14 @@ import java.util.Properties;
 import java.util.TimeZone;
 
 import java.sql.SQLException;
+import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.postgresql.core.*;
+import org.postgresql.core.trace.ProtocolCapture;
 import org.postgresql.util.PSQLException;
 import org.postgresql.util.PSQLState;
 import org.postgresql.util.PSQLWarning;
@@ -85,9 +89,73 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
         //
         // Change by Chris Smith <cdsmith@twu.net>
 
+        // Parallel connection attempts, if requested.
+        int connectStagger = 0;
+        String connectStaggerProperty = info.getProperty("connectStaggerMillis", "0");
+        try {
+            connectStagger = Integer.parseInt(connectStaggerProperty);
+        } catch (NumberFormatException nfe) {
+            logger.info("Couldn't parse connectStaggerMillis value:" + connectStaggerProperty);
+        }
+
+        if (connectStagger > 0 && hostSpecs.length > 1)
+            return openConnectionParallel(hostSpecs, user, database, info, logger, trySSL, requireSSL, requireTCPKeepAlive, connectStagger);
+
         for (int whichHost = 0; whichHost < hostSpecs.length; ++whichHost) {
             HostSpec hostSpec = hostSpecs[whichHost];
-            
+
+            try
+            {
+                return openConnectionToHost(hostSpec, user, database, info, logger, trySSL, requireSSL, requireTCPKeepAlive);
+            }
+            catch (UnsupportedProtocolException upe)
+            {
+                // Swallow this and return null so ConnectionFactory tries the next protocol.
+                return null;
+            }
+            catch (ConnectException cex)
+            {
+                // Added by Peter Mount <peter@retep.org.uk>
+                // ConnectException is thrown when the connection cannot be made.
+                // we trap this an return a more meaningful message for the end user
+                if (whichHost + 1 < hostSpecs.length) {
+                    // still more addresses to try
+                    continue;
+                }
+                throw connectionFailure(cex);
+            }
+            catch (IOException ioe)
+            {
+                if (whichHost + 1 < hostSpecs.length) {
+                    // still more addresses to try
+                    continue;
+                }
+                throw connectionFailure(ioe);
+            }
+            catch (SQLException se)
+            {
+                if (whichHost + 1 < hostSpecs.length) {
+                    // still more addresses to try
+                    continue;
+                }
+                throw se;
+            }
+        }
+        throw new PSQLException (GT.tr("The connection url is invalid."), PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+    }
+
+    private static PSQLException connectionFailure(IOException ioe) {
+        if (ioe instanceof ConnectException)
+            return new PSQLException (GT.tr("Connection refused. Check that the hostname and port are correct and that the postmaster is accepting TCP/IP connections."), PSQLState.CONNECTION_UNABLE_TO_CONNECT, ioe);
+        return new PSQLException (GT.tr("The connection attempt failed."), PSQLState.CONNECTION_UNABLE_TO_CONNECT, ioe);
+    }
+
+    /**
+     * Open, authenticate and initialize a connection to a single host. On
+     * failure the partially opened stream is closed and the failure is
+     * recorded in the {@link HostHealthRegistry}.
+     */
+    private ProtocolConnectionImpl openConnectionToHost(HostSpec hostSpec, String user, String database, Properties info, Logger logger, boolean trySSL, boolean requireSSL, boolean requireTCPKeepAlive) throws IOException, SQLException {
         if (logger.logDebug())
             logger.debug("Trying to establish a protocol version 3 connection to " + hostSpec);
 
@@ -98,12 +166,24 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
         PGStream newStream = null;
         try
         {
-            newStream = new PGStream(hostSpec);
+            newStream = new PGStream(hostSpec, socketBufferSize(info, "receiveBufferSize", logger), socketBufferSize(info, "sendBufferSize", logger));
 
             // Construct and send an ssl startup packet if requested.
             if (trySSL)
                 newStream = enableSSL(newStream, requireSSL, info, logger);
-            
+
+            // Capture the rest of the conversation if requested; SSL has
+            // been negotiated, so the capture can be replayed. The capture
+            // blanks the password the authentication below sends.
+            String captureDirectory = info.getProperty("protocolCapture");
+            if (captureDirectory != null) {
+                try {
+                    newStream.setCapture(ProtocolCapture.create(new File(captureDirectory)));
+                } catch (IOException ioe) {
+                    logger.info("Couldn't create protocol capture in " + captureDirectory, ioe);
+                }
+            }
+
             // Set the socket timeout if the "socketTimeout" property has been set.
             String socketTimeoutProperty = info.getProperty("socketTimeout", "0");
             try {
@@ -118,41 +198,20 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
             // Enable TCP keep-alive probe if required.
             newStream.getSocket().setKeepAlive(requireTCPKeepAlive);
 
-            // Try to set SO_SNDBUF and SO_RECVBUF socket options, if requested.
-            // If receiveBufferSize and send_buffer_size are set to a value greater
-            // than 0, adjust. -1 means use the system default, 0 is ignored since not
-            // supported.
-
-            // Set SO_RECVBUF read buffer size
-            String receiveBufferSizeProperty = info.getProperty("receiveBufferSize", "-1");
-            try {
-                int receiveBufferSize = Integer.parseInt(receiveBufferSizeProperty);
-                if (receiveBufferSize > -1) {
-                    // value of 0 not a valid buffer size value
-                    if (receiveBufferSize > 0) {
-                        newStream.getSocket().setReceiveBufferSize(receiveBufferSize);
-                    } else {
-                        logger.info("Ignore invalid value for receiveBufferSize: " + receiveBufferSize);
-                    }
-                }
-            } catch (NumberFormatException nfe) {
-                logger.info("Couldn't parse receiveBufferSize value: " + receiveBufferSizeProperty);
+            // Size the buffers between the stream and its socket.
+            int inputBufferSize = intProperty(info, "inputBufferSize", 8192, logger);
+            int outputBufferSize = intProperty(info, "outputBufferSize", 8192, logger);
+            int maxInputBufferSize = intProperty(info, "maxInputBufferSize", 0, logger);
+            if (inputBufferSize <= 0) {
+                logger.info("Ignore invalid value for inputBufferSize: " + inputBufferSize);
+                inputBufferSize = 8192;
             }
-
-            // Set SO_SNDBUF write buffer size 
-            String sendBufferSizeProperty = info.getProperty("sendBufferSize", "-1");
-            try {
-                int sendBufferSize = Integer.parseInt(sendBufferSizeProperty);
-                if (sendBufferSize > -1) {
-                    if (sendBufferSize > 0) {
-                        newStream.getSocket().setSendBufferSize(sendBufferSize);
-                    } else {
-                        logger.info("Ignore invalid value for sendBufferSize: " + sendBufferSize);
-                    }
-                }
-            } catch (NumberFormatException nfe) {
-                logger.info("Couldn't parse sendBufferSize value: " + sendBufferSizeProperty);
+            if (outputBufferSize <= 0) {
+                logger.info("Ignore invalid value for outputBufferSize: " + outputBufferSize);
+                outputBufferSize = 8192;
             }
+            if (inputBufferSize != 8192 || outputBufferSize != 8192 || maxInputBufferSize > 0)
+                newStream.setBufferSizes(inputBufferSize, maxInputBufferSize, outputBufferSize);
 
             logger.info("Receive Buffer Size is " + newStream.getSocket().getReceiveBufferSize());
             logger.info("Send Buffer Size is " + newStream.getSocket().getSendBufferSize());
@@ -179,71 +238,166 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
             runInitialQueries(protoConnection, info, logger);
 
             // And we're done.
+            HostHealthRegistry.reportSuccess(hostSpec);
             return protoConnection;
         }
         catch (UnsupportedProtocolException upe)
         {
-            // Swallow this and return null so ConnectionFactory tries the next protocol.
             if (logger.logDebug())
                 logger.debug("Protocol not supported, abandoning connection.");
-            try
-            {
-                newStream.close();
-            }
-            catch (IOException e)
-            {
-            }
-            return null;
+            closeQuietly(newStream);
+            throw upe;
         }
-        catch (ConnectException cex)
+        catch (IOException ioe)
         {
-            // Added by Peter Mount <peter@retep.org.uk>
-            // ConnectException is thrown when the connection cannot be made.
-            // we trap this an return a more meaningful message for the end user
-            if (whichHost + 1 < hostSpecs.length) {
-                // still more addresses to try
-                continue;
-            }
-            throw new PSQLException (GT.tr("Connection refused. Check that the hostname and port are correct and that the postmaster is accepting TCP/IP connections."), PSQLState.CONNECTION_UNABLE_TO_CONNECT, cex);
+            HostHealthRegistry.reportFailure(hostSpec);
+            closeQuietly(newStream);
+            throw ioe;
         }
-        catch (IOException ioe)
+        catch (SQLException se)
+        {
+            // Only connection-class errors say anything about the host.
+            if (se.getSQLState() != null && se.getSQLState().startsWith("08"))
+                HostHealthRegistry.reportFailure(hostSpec);
+            closeQuietly(newStream);
+            throw se;
+        }
+    }
+
+    private static void closeQuietly(PGStream stream) {
+        if (stream == null)
+            return;
+        try
+        {
+            stream.close();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+    /**
+     * Result of one of the attempts started by
+     * {@link #openConnectionParallel}.
+     */
+    private static class ConnectAttempt {
+        final HostSpec hostSpec;
+        ProtocolConnectionImpl connection;
+        Exception failure;
+
+        ConnectAttempt(HostSpec hostSpec) {
+            this.hostSpec = hostSpec;
+        }
+    }
+
+    /**
+     * Try the hosts concurrently: an attempt is started on the next host
+     * whenever the previous one fails or has not completed within
+     * <code>stagger</code> milliseconds. The first connection to complete
+     * authentication and startup wins; connections completed by the other
+     * attempts afterwards are closed by the attempt threads themselves.
+     */
+    private ProtocolConnection openConnectionParallel(HostSpec[] hostSpecs, final String user, final String database, final Properties info, final Logger logger, final boolean trySSL, final boolean requireSSL, final boolean requireTCPKeepAlive, int stagger) throws SQLException {
+        final LinkedBlockingQueue results = new LinkedBlockingQueue();
+        final boolean[] done = new boolean[1];
+
+        int started = 0;
+        int finished = 0;
+        ConnectAttempt lastFailure = null;
+
+        try
         {
-            if (newStream != null)
+            while (finished < hostSpecs.length)
             {
-                try
+                if (started < hostSpecs.length && started == finished)
                 {
-                    newStream.close();
+                    // Nothing in flight: start the next attempt right away.
+                    startAttempt(new ConnectAttempt(hostSpecs[started++]), results, done, user, database, info, logger, trySSL, requireSSL, requireTCPKeepAlive);
                 }
-                catch (IOException e)
+
+                ConnectAttempt attempt;
+                if (started < hostSpecs.length)
+                    attempt = (ConnectAttempt) results.poll(stagger, TimeUnit.MILLISECONDS);
+                else
+                    attempt = (ConnectAttempt) results.take();
+
+                if (attempt == null)
                 {
+                    // The attempts in flight are slow; start another one.
+                    if (logger.logDebug())
+                        logger.debug("No connection after " + stagger + "ms, also trying " + hostSpecs[started]);
+                    startAttempt(new ConnectAttempt(hostSpecs[started++]), results, done, user, database, info, logger, trySSL, requireSSL, requireTCPKeepAlive);
+                    continue;
                 }
+
+                ++finished;
+                if (attempt.connection != null)
+                {
+                    if (logger.logDebug())
+                        logger.debug("Using connection to " + attempt.hostSpec);
+                    return attempt.connection;
+                }
+                lastFailure = attempt;
             }
-            if (whichHost + 1 < hostSpecs.length) {
-                // still more addresses to try
-                continue;
-            }
-            throw new PSQLException (GT.tr("The connection attempt failed."), PSQLState.CONNECTION_UNABLE_TO_CONNECT, ioe);
         }
-        catch (SQLException se)
+        catch (InterruptedException ie)
         {
-            if (newStream != null)
+            throw new PSQLException (GT.tr("The connection attempt failed."), PSQLState.CONNECTION_UNABLE_TO_CONNECT, ie);
+        }
+        finally
+        {
+            // Close connections that completed after the winner; attempts
+            // still in flight see the flag and close their own.
+            synchronized (done)
+            {
+                done[0] = true;
+            }
+            ConnectAttempt extra;
+            while ((extra = (ConnectAttempt) results.poll()) != null)
             {
+                if (extra.connection != null)
+                    extra.connection.close();
+            }
+        }
+
+        if (lastFailure.failure instanceof UnsupportedProtocolException)
+            return null;
+        if (lastFailure.failure instanceof IOException)
+            throw connectionFailure((IOException) lastFailure.failure);
+        throw (SQLException) lastFailure.failure;
+    }
+
+    private void startAttempt(final ConnectAttempt attempt, final LinkedBlockingQueue results, final boolean[] done, final String user, final String database, final Properties info, final Logger logger, final boolean trySSL, final boolean requireSSL, final boolean requireTCPKeepAlive) {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
                 try
                 {
-                    newStream.close();
+                    attempt.connection = openConnectionToHost(attempt.hostSpec, user, database, info, logger, trySSL, requireSSL, requireTCPKeepAlive);
                 }
-                catch (IOException e)
+                catch (Exception e)
                 {
+                    attempt.failure = e;
+                }
+
+                synchronized (done)
+                {
+                    if (!done[0])
+                    {
+                        results.add(attempt);
+                        return;
+                    }
+                }
+
+                if (attempt.connection != null)
+                {
+                    if (logger.logDebug())
+                        logger.debug("Closing surplus connection to " + attempt.hostSpec);
+                    attempt.connection.close();
                 }
             }
-            if (whichHost + 1 < hostSpecs.length) {
-                // still more addresses to try
-                continue;
-            }
-            throw se;
-        }
-        }
-        throw new PSQLException (GT.tr("The connection url is invalid."), PSQLState.CONNECTION_UNABLE_TO_CONNECT);
+        }, "PostgreSQL JDBC driver connection attempt to " + attempt.hostSpec);
+        t.setDaemon(true);
+        t.start();
     }
 
     /**
@@ -272,6 +426,33 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
         return start + tz.substring(4);
     }
 
+    /**
+     * @return the value of an integer property, or <code>defaultValue</code>
+     *   if it is not set or cannot be parsed
+     */
+    private static int intProperty(Properties info, String name, int defaultValue, Logger logger) {
+        String value = info.getProperty(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            logger.info("Couldn't parse " + name + " value: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the SO_RCVBUF or SO_SNDBUF size requested by a property, or
+     *   -1 for the system default. 0 is not a valid size, and is ignored.
+     */
+    private static int socketBufferSize(Properties info, String name, Logger logger) {
+        int size = intProperty(info, name, -1, logger);
+        if (size == 0)
+            logger.info("Ignore invalid value for " + name + ": " + size);
+        return size;
+    }
+
     private PGStream enableSSL(PGStream pgStream, boolean requireSSL, Properties info, Logger logger) throws IOException, SQLException {
         if (logger.logDebug())
             logger.debug(" FE=> SSLRequest");
@@ -296,7 +477,7 @@ public class ConnectionFactoryImpl extends ConnectionFactory {
 
             // We have to reconnect to continue.
             pgStream.close();
-            return new PGStream(pgStream.getHostSpec());
+            return new PGStream(pgStream.getHostSpec(), socketBufferSize(info, "receiveBufferSize", logger), socketBufferSize(info, "sendBufferSize", logger));
 
         case 'N':
             if (logger.logDebug())
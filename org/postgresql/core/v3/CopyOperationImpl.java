@@ -43,8 +43,11 @@ public class CopyOperationImpl implements CopyOperation {
     }
 
     public boolean isActive() {
-        synchronized(queryExecutor) {
+        queryExecutor.getMonitor().lock();
+        try {
             return queryExecutor.hasLock(this);
+        } finally {
+            queryExecutor.getMonitor().unlock();
         }
     }
     
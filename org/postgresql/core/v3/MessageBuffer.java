@@ -0,0 +1,213 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.core.v3;
+
+import java.io.IOException;
+
+import org.postgresql.core.PGStream;
+
+/**
+ * A growable buffer in which a connection assembles frontend messages, so
+ * that a Bind and the messages that follow it reach the PGStream in a
+ * single write. Strings are encoded as UTF-8 straight into the buffer.
+ *<p>
+ * Lengths that are only known once their contents are written are
+ * reserved with {@link #reserveLength()} and filled in afterwards.
+ */
+class MessageBuffer
+{
+    private static final int INITIAL_SIZE = 8192;
+
+    // A buffer grown beyond this by a large message is not kept for
+    // the next one.
+    private static final int MAX_RETAINED_SIZE = 65536;
+
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int pos;
+
+    /**
+     * @return the number of bytes written so far
+     */
+    int position()
+    {
+        return pos;
+    }
+
+    /**
+     * Discard everything written from <code>position</code> on.
+     */
+    void truncate(int position)
+    {
+        pos = position;
+    }
+
+    private void ensure(int needed)
+    {
+        if (needed <= buf.length - pos)
+            return;
+        long size = Math.max((long) buf.length * 2, (long) pos + needed);
+        if (size > Integer.MAX_VALUE - 8)
+        {
+            if ((long) pos + needed > Integer.MAX_VALUE - 8)
+                throw new OutOfMemoryError("Message too large to buffer");
+            size = Integer.MAX_VALUE - 8;
+        }
+        byte[] grown = new byte[(int) size];
+        System.arraycopy(buf, 0, grown, 0, pos);
+        buf = grown;
+    }
+
+    void writeByte(int val)
+    {
+        ensure(1);
+        buf[pos++] = (byte) val;
+    }
+
+    void writeInteger2(int val) throws IOException
+    {
+        if (val < Short.MIN_VALUE || val > Short.MAX_VALUE)
+            throw new IOException("Tried to send an out-of-range integer as a 2-byte value: " + val);
+
+        ensure(2);
+        buf[pos++] = (byte) (val >>> 8);
+        buf[pos++] = (byte) val;
+    }
+
+    void writeInteger4(int val)
+    {
+        ensure(4);
+        putInteger4(pos, val);
+        pos += 4;
+    }
+
+    private void putInteger4(int at, int val)
+    {
+        buf[at] = (byte) (val >>> 24);
+        buf[at + 1] = (byte) (val >>> 16);
+        buf[at + 2] = (byte) (val >>> 8);
+        buf[at + 3] = (byte) val;
+    }
+
+    void write(byte[] data)
+    {
+        write(data, 0, data.length);
+    }
+
+    void write(byte[] data, int off, int len)
+    {
+        ensure(len);
+        System.arraycopy(data, off, buf, pos, len);
+        pos += len;
+    }
+
+    /**
+     * Write a string as UTF-8. Unpaired surrogates are written as '?', as
+     * {@link org.postgresql.core.Utils#encodeUTF8} does.
+     */
+    void writeUTF8(String str)
+    {
+        int length = str.length();
+        int i = 0;
+        while (i < length)
+        {
+            // At most three bytes per char, a chunk at a time so that
+            // the reservation cannot overflow.
+            int end = Math.min(length, i + 4096);
+            ensure((end - i) * 3 + 1);
+            byte[] b = buf;
+            int p = pos;
+            for (; i < end; ++i)
+            {
+                char c = str.charAt(i);
+                if (c < 0x80)
+                {
+                    b[p++] = (byte) c;
+                }
+                else if (c < 0x800)
+                {
+                    b[p++] = (byte) (0xc0 | (c >> 6));
+                    b[p++] = (byte) (0x80 | (c & 0x3f));
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1)))
+                {
+                    // The pair may straddle the chunk; the extra byte
+                    // reserved above covers its fourth byte.
+                    int cp = Character.toCodePoint(c, str.charAt(++i));
+                    b[p++] = (byte) (0xf0 | (cp >> 18));
+                    b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    b[p++] = (byte) (0x80 | (cp & 0x3f));
+                }
+                else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+                {
+                    b[p++] = (byte) '?';
+                }
+                else
+                {
+                    b[p++] = (byte) (0xe0 | (c >> 12));
+                    b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    b[p++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            pos = p;
+        }
+    }
+
+    /**
+     * Reserve four bytes for a length to be filled in once the data it
+     * covers has been written.
+     *
+     * @return where the length goes, to pass to {@link #fillMessageLength}
+     *   or {@link #fillValueLength}
+     */
+    int reserveLength()
+    {
+        ensure(4);
+        int at = pos;
+        pos += 4;
+        return at;
+    }
+
+    /**
+     * Fill in the length of a message, which counts the length itself.
+     *
+     * @return the length
+     */
+    int fillMessageLength(int at)
+    {
+        int length = pos - at;
+        putInteger4(at, length);
+        return length;
+    }
+
+    /**
+     * Fill in the length of a value, which does not count the length itself.
+     */
+    void fillValueLength(int at)
+    {
+        putInteger4(at, pos - at - 4);
+    }
+
+    /**
+     * Write everything buffered to a stream and empty the buffer.
+     */
+    void sendTo(PGStream pgStream) throws IOException
+    {
+        try
+        {
+            if (pos > 0)
+                pgStream.Send(buf, 0, pos);
+        }
+        finally
+        {
+            pos = 0;
+            if (buf.length > MAX_RETAINED_SIZE)
+                buf = new byte[INITIAL_SIZE];
+        }
+    }
+}
@@ -31,8 +31,8 @@ class ProtocolConnectionImpl implements ProtocolConnection {
         this.pgStream = pgStream;
         this.user = user;
         this.database = database;
-        this.logger = logger;
-        this.executor = new QueryExecutorImpl(this, pgStream, info, logger);
+        this.logger = logger.forCategory(Logger.PROTOCOL);
+        this.executor = new QueryExecutorImpl(this, pgStream, info, this.logger);
         // default value for server versions that don't report standard_conforming_strings
         this.standardConformingStrings = false;
     }
@@ -220,6 +220,11 @@ class ProtocolConnectionImpl implements ProtocolConnection {
     	return cancelPid;
     }
 
+    public ConnectionMetrics getMetrics()
+    {
+        return pgStream.getMetrics();
+    }
+
     public boolean useBinaryForReceive(int oid) {
         return useBinaryForOids.contains(oid);
     }
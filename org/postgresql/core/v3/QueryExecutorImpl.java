@@ -8,15 +8,20 @@
 */
 package org.postgresql.core.v3;
 
+import org.postgresql.DriverBase;
 import org.postgresql.core.*;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import java.lang.ref.*;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.sql.*;
 import org.postgresql.util.PSQLException;
@@ -24,7 +29,10 @@ import org.postgresql.util.PSQLWarning;
 import org.postgresql.util.PSQLState;
 import org.postgresql.util.ServerErrorMessage;
 import org.postgresql.util.GT;
+import org.postgresql.util.HashedWheelTimer;
 import org.postgresql.copy.CopyOperation;
+import org.postgresql.PGQueryEvent;
+import org.postgresql.PGQueryListener;
 
 /**
  * QueryExecutor implementation for the V3 protocol.
@@ -33,6 +41,8 @@ public class QueryExecutorImpl implements QueryExecutor {
     public QueryExecutorImpl(ProtocolConnectionImpl protoConnection, PGStream pgStream, Properties info, Logger logger) {
         this.protoConnection = protoConnection;
         this.pgStream = pgStream;
+        this.metrics = pgStream.getMetrics();
+        this.tracer = new QueryTracer(metrics, logger);
         this.logger = logger;
 
         if (info.getProperty("allowEncodingChanges") != null) {
@@ -40,22 +50,72 @@ public class QueryExecutorImpl implements QueryExecutor {
         } else {
             this.allowEncodingChanges = false;
         }
+
+        String scrollableResultHeapBytes = info.getProperty("scrollableResultHeapBytes", "0");
+        long heapBytes = 0;
+        try {
+            heapBytes = Long.parseLong(scrollableResultHeapBytes);
+        } catch (NumberFormatException nfe) {
+            logger.info("Couldn't parse scrollableResultHeapBytes value: " + scrollableResultHeapBytes);
+        }
+        this.scrollableResultHeapBytes = heapBytes;
+        this.offHeapResultRows = Boolean.valueOf(info.getProperty("offHeapResultRows")).booleanValue();
+
+        String queryTimeoutMode = info.getProperty("queryTimeoutMode", "cancel");
+        this.socketQueryTimeout = "socket".equalsIgnoreCase(queryTimeoutMode);
+        if (!socketQueryTimeout && !"cancel".equalsIgnoreCase(queryTimeoutMode))
+            logger.info("Ignoring invalid queryTimeoutMode value: " + queryTimeoutMode);
+
+        long pipelinedBytes = MAX_PIPELINED_BYTES;
+        try {
+            pipelinedBytes = Math.min(pipelinedBytes, pgStream.getSocket().getSendBufferSize());
+        } catch (java.net.SocketException se) {
+            logger.debug("Couldn't get the socket send buffer size", se);
+        }
+        this.maxPipelinedBytes = pipelinedBytes;
     }
 
     /**
-     * Supplement to synchronization of public methods on current QueryExecutor.
+     * Guards the connection's state and stream. Every public method that
+     * talks to the backend holds it for the whole exchange. The one
+     * exception is the pipeline reader thread, which lets go of it while it
+     * waits for each message (see awaitPipelinedMessage).
+     *<p>
+     * This is a java.util.concurrent lock rather than synchronized methods
+     * so that a virtual thread blocked reading from the backend while
+     * holding it can be unmounted from its carrier thread.
+     */
+    private final ReentrantLock monitor = new ReentrantLock();
+
+    /**
+     * Signalled whenever lockedFor is released or the asynchronous pipeline
+     * makes progress.
+     */
+    private final Condition lockReleased = monitor.newCondition();
+
+    /**
+     * Supplement to the monitor lock of public methods on current QueryExecutor.
      * 
      * Necessary for keeping the connection intact between calls to public methods
      * sharing a state such as COPY subprotocol. waitOnLock() must be called at
      * beginning of each connection access point.
      *
-     * Public methods sharing that state must then be synchronized among themselves.
-     * Normal method synchronization typically suffices for that.
+     * Public methods sharing that state must then hold the monitor lock.
      * 
      * See notes on related methods as well as currentCopy() below.
      */
     private Object lockedFor = null;
 
+    /**
+     * Held in lockedFor while a thread waits for notifications without the
+     * monitor lock; see waitForNotifies().
+     */
+    private final Object notifyWait = new Object();
+    // Whether a Sync has been sent to end the current wait for notifications.
+    private boolean notifyWaitWoken;
+    // Syncs sent to end waits for notifications whose answers are unread.
+    private int notifyWakeSyncs;
+
     /**
      * Obtain lock over this connection for given object, blocking to wait if necessary.
      * @param obtainer object that gets the lock. Normally current thread.
@@ -77,21 +137,35 @@ public class QueryExecutorImpl implements QueryExecutor {
        if(lockedFor != holder)
            throw new PSQLException(GT.tr("Tried to break lock on database connection"), PSQLState.OBJECT_NOT_IN_STATE);
        lockedFor = null;
-       this.notify();
+       lockReleased.signalAll();
     }
 
     /**
      * Wait until our lock is released.
-     * Execution of a single synchronized method can then continue without further ado.
-     * Must be called at beginning of each synchronized public method.
+     * Execution of a single public method holding the monitor lock can then
+     * continue without further ado. Must be called at beginning of each such method.
      */
     private void waitOnLock() throws PSQLException {
-        while( lockedFor != null ) {
-            try {
-                this.wait();
-            } catch(InterruptedException ie) {
-                throw new PSQLException(GT.tr("Interrupted while waiting to obtain lock on database connection"), PSQLState.OBJECT_NOT_IN_STATE, ie);
+        if (lockedFor == null)
+            return;
+
+        // Only the reader thread can drain the pipeline.
+        if (lockedFor == asyncRequests && Thread.currentThread() == asyncReader)
+            throw new PSQLException(GT.tr("Statements cannot be executed synchronously from a listener of an asynchronous query."), PSQLState.OBJECT_NOT_IN_STATE);
+
+        long start = System.nanoTime();
+        try {
+            while( lockedFor != null ) {
+                if (lockedFor == notifyWait)
+                    wakeNotifyWait();
+                try {
+                    lockReleased.await();
+                } catch(InterruptedException ie) {
+                    throw new PSQLException(GT.tr("Interrupted while waiting to obtain lock on database connection"), PSQLState.OBJECT_NOT_IN_STATE, ie);
+                }
             }
+        } finally {
+            metrics.lockWait(System.nanoTime() - start);
         }
     }
     
@@ -103,6 +177,13 @@ public class QueryExecutorImpl implements QueryExecutor {
         return lockedFor == holder;
     }
 
+    /**
+     * @return the lock that guards this executor's state
+     */
+    ReentrantLock getMonitor() {
+        return monitor;
+    }
+
     //
     // Query parsing
     //
@@ -217,73 +298,201 @@ public class QueryExecutorImpl implements QueryExecutor {
     // Query execution
     //
 
-    public synchronized void execute(Query query,
-                                     ParameterList parameters,
-                                     ResultHandler handler,
-                                     int maxRows,
-                                     int fetchSize,
-                                     int flags)
+    public void execute(Query query,
+                        ParameterList parameters,
+                        ResultHandler handler,
+                        int maxRows,
+                        int fetchSize,
+                        int flags)
     throws SQLException
     {
-        waitOnLock();
-        if (logger.logDebug())
+        monitor.lock();
+        try
         {
-            logger.debug("simple execute, handler=" + handler +
-                         ", maxRows=" + maxRows + ", fetchSize=" + fetchSize + ", flags=" + flags);
-        }
+            waitOnLock();
+            long start = System.nanoTime();
+            if (logger.logDebug())
+            {
+                logger.debug("simple execute, handler=" + handler +
+                             ", maxRows=" + maxRows + ", fetchSize=" + fetchSize + ", flags=" + flags);
+            }
 
-        if (parameters == null)
-            parameters = SimpleQuery.NO_PARAMETERS;
+            if (parameters == null)
+                parameters = SimpleQuery.NO_PARAMETERS;
 
-        boolean describeOnly = (QUERY_DESCRIBE_ONLY & flags) != 0;
+            boolean describeOnly = (QUERY_DESCRIBE_ONLY & flags) != 0;
 
-        ((V3ParameterList)parameters).convertFunctionOutParameters();
+            ((V3ParameterList)parameters).convertFunctionOutParameters();
 
-        // Check parameters are all set..
-        if (!describeOnly)
-            ((V3ParameterList)parameters).checkAllParametersSet();
+            // Check parameters are all set..
+            if (!describeOnly)
+                ((V3ParameterList)parameters).checkAllParametersSet();
+
+            if (tracer.isEnabled() && !describeOnly)
+            {
+                currentTrace = tracer.start(PGQueryEvent.EXECUTE, query, 1);
+                handler = currentTrace.wrap(handler);
+            }
+
+            try
+            {
+                try
+                {
+                    handler = sendQueryPreamble(handler, flags);
+                    ErrorTrackingResultHandler trackingHandler = new ErrorTrackingResultHandler(handler);
+                    queryCount = 0;
+                    sendQuery((V3Query)query, (V3ParameterList)parameters, maxRows, fetchSize, flags, trackingHandler);
+                    sendSync();
+                    processResults(handler, flags);
+                }
+                catch (PGBindException se)
+                {
+                    // There are three causes of this error, an
+                    // invalid total Bind message length, a
+                    // BinaryStream that cannot provide the amount
+                    // of data claimed by the length arugment, and
+                    // a BinaryStream that throws an Exception
+                    // when reading.
+                    //
+                    // We simply do not send the Execute message
+                    // so we can just continue on as if nothing
+                    // has happened.  Perhaps we need to
+                    // introduce an error here to force the
+                    // caller to rollback if there is a
+                    // transaction in progress?
+                    //
+                    sendSync();
+                    processResults(handler, flags);
+                    handler.handleError(new PSQLException(GT.tr("Unable to bind parameter values for statement."), PSQLState.INVALID_PARAMETER_VALUE, se.getIOException()));
+                }
+            }
+            catch (IOException e)
+            {
+                protoConnection.close();
+                handler.handleError(new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e));
+            }
+            finally
+            {
+                metrics.query(System.nanoTime() - start);
+                finishTrace();
+            }
+            handler.handleCompletion();
+        }
+        finally
+        {
+            monitor.unlock();
+        }
+    }
 
+    public void execute(Query query,
+                        ParameterList parameters,
+                        ResultHandler handler,
+                        int maxRows,
+                        int fetchSize,
+                        int flags,
+                        int timeout)
+    throws SQLException
+    {
+        monitor.lock();
         try
         {
+            HashedWheelTimer.Timeout cancelTimeout = startTimeout(timeout);
             try
             {
-                handler = sendQueryPreamble(handler, flags);
-                ErrorTrackingResultHandler trackingHandler = new ErrorTrackingResultHandler(handler);
-                queryCount = 0;
-                sendQuery((V3Query)query, (V3ParameterList)parameters, maxRows, fetchSize, flags, trackingHandler);
-                sendSync();
-                processResults(handler, flags);
+                execute(query, parameters, handler, maxRows, fetchSize, flags);
             }
-            catch (PGBindException se)
+            finally
             {
-                // There are three causes of this error, an
-                // invalid total Bind message length, a
-                // BinaryStream that cannot provide the amount
-                // of data claimed by the length arugment, and
-                // a BinaryStream that throws an Exception
-                // when reading.
-                //
-                // We simply do not send the Execute message
-                // so we can just continue on as if nothing
-                // has happened.  Perhaps we need to
-                // introduce an error here to force the
-                // caller to rollback if there is a
-                // transaction in progress?
-                //
-                sendSync();
-                processResults(handler, flags);
-                handler.handleError(new PSQLException(GT.tr("Unable to bind parameter values for statement."), PSQLState.INVALID_PARAMETER_VALUE, se.getIOException()));
+                stopTimeout(cancelTimeout);
             }
         }
-        catch (IOException e)
+        finally
         {
-            protoConnection.close();
-            handler.handleError(new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e));
+            monitor.unlock();
         }
+    }
+
+    //
+    // Query timeouts
+    //
+    // By default a timed execution schedules a cancel request on the driver's
+    // timeout wheel. With queryTimeoutMode=socket nothing is scheduled at all:
+    // processResults() instead arms a read deadline on the stream once per
+    // round trip, and the reading thread sends the cancel request itself
+    // once the deadline has passed. The cancellation error is then read as
+    // usual.
+    //
+
+    private HashedWheelTimer.Timeout startTimeout(int timeout) {
+        if (timeout <= 0)
+            return null;
+
+        if (socketQueryTimeout)
+        {
+            readDeadline = System.currentTimeMillis() + timeout;
+            return null;
+        }
+
+        return DriverBase.scheduleTimeout(new Runnable() {
+                                              public void run() {
+                                                  try {
+                                                      protoConnection.sendQueryCancel();
+                                                  } catch (SQLException e) {
+                                                  }
+                                              }
+                                          }, timeout);
+    }
+
+    //
+    // Query listeners
+    //
+
+    public void addQueryListener(PGQueryListener listener) {
+        tracer.addListener(listener);
+    }
+
+    public void removeQueryListener(PGQueryListener listener) {
+        tracer.removeListener(listener);
+    }
+
+    public void setDescriptionCache(DescriptionCache cache, String searchPath) {
+        this.descriptionSearchPath = searchPath;
+        this.descriptionCache = cache;
+    }
 
-        handler.handleCompletion();
+    private void finishTrace() {
+        QueryTrace trace = currentTrace;
+        currentTrace = null;
+        tracer.finish(trace);
     }
 
+    private void stopTimeout(HashedWheelTimer.Timeout cancelTimeout) {
+        readDeadline = 0;
+        if (cancelTimeout != null)
+            cancelTimeout.cancel();
+    }
+
+    /**
+     * Cancels the running query once the read deadline has passed, and
+     * disarms the deadline.
+     */
+    private final Runnable readDeadlineCancel = new Runnable() {
+        public void run() {
+            readDeadline = 0;
+            if (logger.logDebug())
+                logger.debug("Query timeout expired, sending cancel request");
+
+            try
+            {
+                protoConnection.sendQueryCancel();
+            }
+            catch (SQLException e)
+            {
+                // Same as a lost cancel request: the query just runs to completion.
+            }
+        }
+    };
+
     // Deadlock avoidance:
     //
     // It's possible for the send and receive streams to get "deadlocked" against each other since
@@ -355,63 +564,110 @@ public class QueryExecutorImpl implements QueryExecutor {
         }
     }
 
-    public synchronized void execute(Query[] queries,
-                                     ParameterList[] parameterLists,
-                                     ResultHandler handler,
-                                     int maxRows,
-                                     int fetchSize,
-                                     int flags)
+    public void execute(Query[] queries,
+                        ParameterList[] parameterLists,
+                        ResultHandler handler,
+                        int maxRows,
+                        int fetchSize,
+                        int flags)
     throws SQLException
     {
-        waitOnLock();
-        if (logger.logDebug())
+        monitor.lock();
+        try
         {
-            logger.debug("batch execute " + queries.length + " queries, handler=" + handler +
-                         ", maxRows=" + maxRows + ", fetchSize=" + fetchSize + ", flags=" + flags);
-        }
-
-        boolean describeOnly = (QUERY_DESCRIBE_ONLY & flags) != 0;
-        // Check parameters and resolve OIDs.
-        if (!describeOnly) {
-            for (int i = 0; i < parameterLists.length; ++i)
+            waitOnLock();
+            long start = System.nanoTime();
+            if (logger.logDebug())
             {
-                if (parameterLists[i] != null)
-                    ((V3ParameterList)parameterLists[i]).checkAllParametersSet();
+                logger.debug("batch execute " + queries.length + " queries, handler=" + handler +
+                             ", maxRows=" + maxRows + ", fetchSize=" + fetchSize + ", flags=" + flags);
             }
-        }
 
-        try
-        {
-            handler = sendQueryPreamble(handler, flags);
-            ErrorTrackingResultHandler trackingHandler = new ErrorTrackingResultHandler(handler);
-            queryCount = 0;
+            boolean describeOnly = (QUERY_DESCRIBE_ONLY & flags) != 0;
+            // Check parameters and resolve OIDs.
+            if (!describeOnly) {
+                for (int i = 0; i < parameterLists.length; ++i)
+                {
+                    if (parameterLists[i] != null)
+                        ((V3ParameterList)parameterLists[i]).checkAllParametersSet();
+                }
+            }
+
+            if (tracer.isEnabled() && !describeOnly)
+            {
+                currentTrace = tracer.start(PGQueryEvent.BATCH, queries, queries.length);
+                handler = currentTrace.wrap(handler);
+            }
 
-            for (int i = 0; i < queries.length; ++i)
+            try
             {
-                V3Query query = (V3Query)queries[i];
-                V3ParameterList parameters = (V3ParameterList)parameterLists[i];
-                if (parameters == null)
-                    parameters = SimpleQuery.NO_PARAMETERS;
+                handler = sendQueryPreamble(handler, flags);
+                ErrorTrackingResultHandler trackingHandler = new ErrorTrackingResultHandler(handler);
+                queryCount = 0;
 
-                sendQuery(query, parameters, maxRows, fetchSize, flags, trackingHandler);
+                for (int i = 0; i < queries.length; ++i)
+                {
+                    V3Query query = (V3Query)queries[i];
+                    V3ParameterList parameters = (V3ParameterList)parameterLists[i];
+                    if (parameters == null)
+                        parameters = SimpleQuery.NO_PARAMETERS;
 
-                if (trackingHandler.hasErrors())
-                    break;
-            }
+                    sendQuery(query, parameters, maxRows, fetchSize, flags, trackingHandler);
 
-            if (!trackingHandler.hasErrors())
+                    if (trackingHandler.hasErrors())
+                        break;
+                }
+
+                if (!trackingHandler.hasErrors())
+                {
+                    sendSync();
+                    processResults(handler, flags);
+                }
+            }
+            catch (IOException e)
             {
-                sendSync();
-                processResults(handler, flags);
+                protoConnection.close();
+                handler.handleError(new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e));
+            }
+            finally
+            {
+                metrics.query(System.nanoTime() - start);
+                finishTrace();
             }
+            handler.handleCompletion();
         }
-        catch (IOException e)
+        finally
         {
-            protoConnection.close();
-            handler.handleError(new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e));
+            monitor.unlock();
         }
+    }
 
-        handler.handleCompletion();
+    public void execute(Query[] queries,
+                        ParameterList[] parameterLists,
+                        ResultHandler handler,
+                        int maxRows,
+                        int fetchSize,
+                        int flags,
+                        int timeout)
+    throws SQLException
+    {
+        monitor.lock();
+        try
+        {
+            HashedWheelTimer.Timeout cancelTimeout = startTimeout(timeout);
+            try
+            {
+                execute(queries, parameterLists, handler, maxRows, fetchSize, flags);
+            }
+            finally
+            {
+                stopTimeout(cancelTimeout);
+            }
+        }
+        finally
+        {
+            monitor.unlock();
+        }
     }
 
     private ResultHandler sendQueryPreamble(final ResultHandler delegateHandler, int flags) throws IOException {
@@ -471,22 +727,27 @@ public class QueryExecutorImpl implements QueryExecutor {
     // Fastpath
     //
 
-    public synchronized byte[]
+    public byte[]
     fastpathCall(int fnid, ParameterList parameters, boolean suppressBegin) throws SQLException {
-        waitOnLock();
-        if (!suppressBegin)
-        {
-            doSubprotocolBegin();
-        }
-        try
-        {
-            sendFastpathCall(fnid, (SimpleParameterList)parameters);
-            return receiveFastpathResult();
-        }
-        catch (IOException ioe)
-        {
-            protoConnection.close();
-            throw new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, ioe);
+        monitor.lock();
+        try {
+            waitOnLock();
+            if (!suppressBegin)
+            {
+                doSubprotocolBegin();
+            }
+            try
+            {
+                sendFastpathCall(fnid, (SimpleParameterList)parameters);
+                return receiveFastpathResult();
+            }
+            catch (IOException ioe)
+            {
+                protoConnection.close();
+                throw new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, ioe);
+            }
+        } finally {
+            monitor.unlock();
         }
     }
 
@@ -564,7 +825,7 @@ public class QueryExecutorImpl implements QueryExecutor {
 
     private void sendFastpathCall(int fnid, SimpleParameterList params) throws SQLException, IOException {
         if (logger.logDebug())
-            logger.debug(" FE=> FunctionCall(" + fnid + ", " + params.getParameterCount() + " params)");
+            logger.debug(" FE=> FunctionCall({0}, {1} params)", Integer.valueOf(fnid), Integer.valueOf(params.getParameterCount()));
 
         //
         // Total size = 4 (length)
@@ -607,35 +868,104 @@ public class QueryExecutorImpl implements QueryExecutor {
         pgStream.flush();
     }
 
-    public synchronized void processNotifies() throws SQLException {
-        waitOnLock();
-        // Asynchronous notifies only arrive when we are not in a transaction
-        if (protoConnection.getTransactionState() != ProtocolConnection.TRANSACTION_IDLE)
-            return;
+    public void processNotifies() throws SQLException {
+        processNotifies(0);
+    }
 
+    public boolean processNotifies(int timeoutMillis) throws SQLException {
+        monitor.lock();
         try {
-            while (pgStream.hasMessagePending()) {
-                int c = pgStream.ReceiveChar();
-                switch (c) {
-                case 'A':  // Asynchronous Notify
-                    receiveAsyncNotify();
-                    break;
-                case 'E':  // Error Response (response to pretty much everything; backend then skips until Sync)
-                    throw receiveErrorResponse();
-                    // break;
-                case 'N':  // Notice Response (warnings / info)
-                    SQLWarning warning = receiveNoticeResponse();
-                    protoConnection.addWarning(warning);
-                    break;
-                default:
-                    throw new PSQLException(GT.tr("Unknown Response Type {0}.", new Character((char) c)), PSQLState.CONNECTION_FAILURE);
+            waitOnLock();
+            // Asynchronous notifies only arrive when we are not in a transaction
+            if (protoConnection.getTransactionState() != ProtocolConnection.TRANSACTION_IDLE)
+                return false;
+
+            try {
+                if (timeoutMillis > 0 && !pgStream.hasMessagePending()) {
+                    // Input that is readable but not pending is end of stream.
+                    if (waitForNotifies(timeoutMillis) && !pgStream.hasMessagePending())
+                        throw new EOFException();
                 }
+
+                // The answers to wake-up Syncs must be read before anyone
+                // else reads; the server sends them promptly.
+                while (notifyWakeSyncs > 0 || pgStream.hasMessagePending()) {
+                    int c = pgStream.ReceiveChar();
+                    switch (c) {
+                    case 'A':  // Asynchronous Notify
+                        receiveAsyncNotify();
+                        break;
+                    case 'Z':  // Ready For Query, the answer to a wake-up Sync
+                        receiveRFQ();
+                        if (notifyWakeSyncs > 0)
+                            notifyWakeSyncs--;
+                        break;
+                    case 'E':  // Error Response (response to pretty much everything; backend then skips until Sync)
+                        throw receiveErrorResponse();
+                        // break;
+                    case 'N':  // Notice Response (warnings / info)
+                        SQLWarning warning = receiveNoticeResponse();
+                        protoConnection.addWarning(warning);
+                        break;
+                    default:
+                        throw new PSQLException(GT.tr("Unknown Response Type {0}.", new Character((char) c)), PSQLState.CONNECTION_FAILURE);
+                    }
+                }
+            } catch (IOException ioe) {
+                throw new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, ioe);
             }
-        } catch (IOException ioe) {
-            throw new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, ioe);
+
+            return true;
+        } finally {
+            monitor.unlock();
         }
     }
     
+    /**
+     * Wait for input on an idle connection without holding the monitor
+     * lock, so that the wait costs other threads nothing. The connection
+     * is locked for the wait meanwhile, so that nothing else reads; a
+     * thread that needs the connection ends the wait early by sending a
+     * Sync, which the server answers (see waitOnLock). Called with the
+     * monitor lock held.
+     *
+     * @return true if input (or EOF) is available, false if the wait timed out
+     */
+    private boolean waitForNotifies(int timeoutMillis) throws IOException {
+        lockedFor = notifyWait;
+        monitor.unlock();
+        try
+        {
+            return pgStream.waitForInput(timeoutMillis);
+        }
+        finally
+        {
+            monitor.lock();
+            lockedFor = null;
+            notifyWaitWoken = false;
+            lockReleased.signalAll();
+        }
+    }
+
+    /**
+     * End a wait for notifications by having the server send something.
+     * Called with the monitor lock held.
+     */
+    private void wakeNotifyWait() {
+        if (notifyWaitWoken)
+            return;
+        notifyWaitWoken = true;
+        try
+        {
+            sendSync();
+            notifyWakeSyncs++;
+        }
+        catch (IOException ioe)
+        {
+            // The wait just runs its course; reading will report the error.
+        }
+    }
+
     private byte[] receiveFastpathResult() throws IOException, SQLException {
         boolean endQuery = false;
         SQLException error = null;
@@ -674,7 +1004,7 @@ public class QueryExecutorImpl implements QueryExecutor {
                 int valueLen = pgStream.ReceiveInteger4();
 
                 if (logger.logDebug())
-                    logger.debug(" <=BE FunctionCallResponse(" + valueLen + " bytes)");
+                    logger.debug(" <=BE FunctionCallResponse({0} bytes)", Integer.valueOf(valueLen));
 
                 if (valueLen != -1)
                 {
@@ -708,26 +1038,51 @@ public class QueryExecutorImpl implements QueryExecutor {
      * @return CopyIn or CopyOut operation object
      * @throws SQLException on failure
      */
-    public synchronized CopyOperation startCopy(String sql, boolean suppressBegin) throws SQLException {
-        waitOnLock();
-        if (!suppressBegin) {
-            doSubprotocolBegin();
-        }
-        byte buf[] = Utils.encodeUTF8(sql);
-
+    public CopyOperation startCopy(String sql, boolean suppressBegin) throws SQLException {
+        monitor.lock();
         try {
-            if (logger.logDebug())
-                logger.debug(" FE=> Query(CopyStart)");
+            waitOnLock();
+            if (!suppressBegin) {
+                doSubprotocolBegin();
+            }
+            byte buf[] = Utils.encodeUTF8(sql);
 
-            pgStream.SendChar('Q');
-            pgStream.SendInteger4(buf.length + 4 + 1);
-            pgStream.Send(buf);
-            pgStream.SendChar(0);
-            pgStream.flush();
+            currentTrace = tracer.start(PGQueryEvent.COPY, sql, 1);
+            try {
+                if (logger.logDebug())
+                    logger.debug(" FE=> Query(CopyStart)");
 
-            return processCopyResults(null, true); // expect a CopyInResponse or CopyOutResponse to our query above
-        } catch(IOException ioe) {
-            throw new PSQLException(GT.tr("Database connection failed when starting copy"), PSQLState.CONNECTION_FAILURE, ioe);
+                pgStream.SendChar('Q');
+                pgStream.SendInteger4(buf.length + 4 + 1);
+                pgStream.Send(buf);
+                pgStream.SendChar(0);
+                pgStream.flush();
+
+                if (currentTrace == null)
+                    return processCopyResults(null, true); // expect a CopyInResponse or CopyOutResponse to our query above
+
+                long start = System.nanoTime();
+                long networkBefore = metrics.getNetworkNanos();
+                long firstByte = awaitFirstByte();
+                try {
+                    return processCopyResults(null, true);
+                } finally {
+                    currentTrace.results(firstByte - start, metrics.getNetworkNanos() - networkBefore, System.nanoTime() - start);
+                }
+            } catch(IOException ioe) {
+                PSQLException e = new PSQLException(GT.tr("Database connection failed when starting copy"), PSQLState.CONNECTION_FAILURE, ioe);
+                if (currentTrace != null)
+                    currentTrace.error(e);
+                throw e;
+            } catch(SQLException e) {
+                if (currentTrace != null)
+                    currentTrace.error(e);
+                throw e;
+            } finally {
+                finishTrace();
+            }
+        } finally {
+            monitor.unlock();
         }
     }
 
@@ -738,17 +1093,22 @@ public class QueryExecutorImpl implements QueryExecutor {
      * @throws SQLException on locking failure
      * @throws IOException on database connection failure
      */
-    private synchronized void initCopy(CopyOperationImpl op) throws SQLException, IOException {
-        pgStream.ReceiveInteger4(); // length not used
-        int rowFormat = pgStream.ReceiveChar();
-        int numFields = pgStream.ReceiveInteger2();
-        int[] fieldFormats = new int[numFields];
+    private void initCopy(CopyOperationImpl op) throws SQLException, IOException {
+        monitor.lock();
+        try {
+            pgStream.ReceiveInteger4(); // length not used
+            int rowFormat = pgStream.ReceiveChar();
+            int numFields = pgStream.ReceiveInteger2();
+            int[] fieldFormats = new int[numFields];
 
-        for(int i=0; i<numFields; i++)
-            fieldFormats[i] = pgStream.ReceiveInteger2();
+            for(int i=0; i<numFields; i++)
+                fieldFormats[i] = pgStream.ReceiveInteger2();
 
-        lock(op);
-        op.init(this, rowFormat, fieldFormats);
+            lock(op);
+            op.init(this, rowFormat, fieldFormats);
+        } finally {
+            monitor.unlock();
+        }
     }
 
     /**
@@ -765,7 +1125,8 @@ public class QueryExecutorImpl implements QueryExecutor {
 
         try {
             if(op instanceof CopyInImpl) {
-                synchronized (this) {
+                monitor.lock();
+                try {
                     if (logger.logDebug()) {
                         logger.debug("FE => CopyFail");
                     }
@@ -789,6 +1150,8 @@ public class QueryExecutorImpl implements QueryExecutor {
                             error = se; 
                         }
                     } while(hasLock(op));
+                } finally {
+                    monitor.unlock();
                 }
             } else if (op instanceof CopyOutImpl) {
                 protoConnection.sendQueryCancel();
@@ -813,22 +1176,27 @@ public class QueryExecutorImpl implements QueryExecutor {
      * @return number of rows updated for server versions 8.2 or newer
      * @throws SQLException on failure
      */
-    public synchronized long endCopy(CopyInImpl op) throws SQLException {
-        if(!hasLock(op))
-                throw new PSQLException(GT.tr("Tried to end inactive copy"), PSQLState.OBJECT_NOT_IN_STATE);
-
+    public long endCopy(CopyInImpl op) throws SQLException {
+        monitor.lock();
         try {
-            if (logger.logDebug())
-                logger.debug(" FE=> CopyDone");
+            if(!hasLock(op))
+                    throw new PSQLException(GT.tr("Tried to end inactive copy"), PSQLState.OBJECT_NOT_IN_STATE);
 
-            pgStream.SendChar('c'); // CopyDone
-            pgStream.SendInteger4(4);
-            pgStream.flush();
+            try {
+                if (logger.logDebug())
+                    logger.debug(" FE=> CopyDone");
 
-            processCopyResults(op, true);
-            return op.getHandledRowCount();
-        } catch(IOException ioe) {
-            throw new PSQLException(GT.tr("Database connection failed when ending copy"), PSQLState.CONNECTION_FAILURE, ioe);
+                pgStream.SendChar('c'); // CopyDone
+                pgStream.SendInteger4(4);
+                pgStream.flush();
+
+                processCopyResults(op, true);
+                return op.getHandledRowCount();
+            } catch(IOException ioe) {
+                throw new PSQLException(GT.tr("Database connection failed when ending copy"), PSQLState.CONNECTION_FAILURE, ioe);
+            }
+        } finally {
+            monitor.unlock();
         }
     }
 
@@ -841,33 +1209,43 @@ public class QueryExecutorImpl implements QueryExecutor {
      * @param siz number of bytes to send (usually data.length)
      * @throws SQLException on failure
      */
-    public synchronized void writeToCopy(CopyInImpl op, byte[] data, int off, int siz) throws SQLException {
-        if(!hasLock(op))
-            throw new PSQLException(GT.tr("Tried to write to an inactive copy operation"), PSQLState.OBJECT_NOT_IN_STATE);
+    public void writeToCopy(CopyInImpl op, byte[] data, int off, int siz) throws SQLException {
+        monitor.lock();
+        try {
+            if(!hasLock(op))
+                throw new PSQLException(GT.tr("Tried to write to an inactive copy operation"), PSQLState.OBJECT_NOT_IN_STATE);
 
-        if (logger.logDebug())
-            logger.debug(" FE=> CopyData(" + siz + ")");
+            if (logger.logDebug())
+                logger.debug(" FE=> CopyData({0})", Integer.valueOf(siz));
 
-        try {
-            pgStream.SendChar('d');
-            pgStream.SendInteger4(siz + 4);
-            pgStream.Send(data, off, siz);
+            try {
+                pgStream.SendChar('d');
+                pgStream.SendInteger4(siz + 4);
+                pgStream.Send(data, off, siz);
 
-            processCopyResults(op, false); // collect any pending notifications without blocking
-        } catch(IOException ioe) {
-            throw new PSQLException(GT.tr("Database connection failed when writing to copy"), PSQLState.CONNECTION_FAILURE, ioe);
+                processCopyResults(op, false); // collect any pending notifications without blocking
+            } catch(IOException ioe) {
+                throw new PSQLException(GT.tr("Database connection failed when writing to copy"), PSQLState.CONNECTION_FAILURE, ioe);
+            }
+        } finally {
+            monitor.unlock();
         }
     }
 
-    public synchronized void flushCopy(CopyInImpl op) throws SQLException {
-        if(!hasLock(op))
-            throw new PSQLException(GT.tr("Tried to write to an inactive copy operation"), PSQLState.OBJECT_NOT_IN_STATE);
-
+    public void flushCopy(CopyInImpl op) throws SQLException {
+        monitor.lock();
         try {
-            pgStream.flush();
-            processCopyResults(op, false); // collect any pending notifications without blocking
-        } catch(IOException ioe) {
-            throw new PSQLException(GT.tr("Database connection failed when writing to copy"), PSQLState.CONNECTION_FAILURE, ioe);
+            if(!hasLock(op))
+                throw new PSQLException(GT.tr("Tried to write to an inactive copy operation"), PSQLState.OBJECT_NOT_IN_STATE);
+
+            try {
+                pgStream.flush();
+                processCopyResults(op, false); // collect any pending notifications without blocking
+            } catch(IOException ioe) {
+                throw new PSQLException(GT.tr("Database connection failed when writing to copy"), PSQLState.CONNECTION_FAILURE, ioe);
+            }
+        } finally {
+            monitor.unlock();
         }
     }
 
@@ -877,14 +1255,19 @@ public class QueryExecutorImpl implements QueryExecutor {
      * @param op the copy operation presumably currently holding lock on this connection
      * @throws SQLException on any failure
      */
-    synchronized void readFromCopy(CopyOutImpl op) throws SQLException {
-        if(!hasLock(op))
-            throw new PSQLException(GT.tr("Tried to read from inactive copy"), PSQLState.OBJECT_NOT_IN_STATE);
-
+    void readFromCopy(CopyOutImpl op) throws SQLException {
+        monitor.lock();
         try {
-            processCopyResults(op, true); // expect a call to handleCopydata() to store the data
-        } catch(IOException ioe) {
-            throw new PSQLException(GT.tr("Database connection failed when reading from copy"), PSQLState.CONNECTION_FAILURE, ioe);
+            if(!hasLock(op))
+                throw new PSQLException(GT.tr("Tried to read from inactive copy"), PSQLState.OBJECT_NOT_IN_STATE);
+
+            try {
+                processCopyResults(op, true); // expect a call to handleCopydata() to store the data
+            } catch(IOException ioe) {
+                throw new PSQLException(GT.tr("Database connection failed when reading from copy"), PSQLState.CONNECTION_FAILURE, ioe);
+            }
+        } finally {
+            monitor.unlock();
         }
     }
 
@@ -1149,7 +1532,10 @@ public class QueryExecutorImpl implements QueryExecutor {
         // Already parsed, or we have a Parse pending and the types are right?
         int[] typeOIDs = params.getTypeOIDs();
         if (query.isPreparedFor(typeOIDs))
+        {
+            metrics.preparedStatementHit();
             return;
+        }
 
         // Clean up any existing statement, as we can't use it.
         query.unprepare();
@@ -1244,6 +1630,25 @@ public class QueryExecutorImpl implements QueryExecutor {
             pgStream.SendInteger4(params.getTypeOID(i));
 
         pendingParseQueue.add(new Object[]{query, query.getStatementName()});
+        metrics.parse();
+
+        // Another connection may have described the statement already.
+        // An unnamed statement is described anyway, as its portal would
+        // otherwise go without a Describe on every execution.
+        DescriptionCache cache = descriptionCache;
+        String searchPath = descriptionSearchPath;
+        if (cache != null && searchPath != null)
+        {
+            String key = DescriptionCache.statementKey(protoConnection.getUser(), searchPath, query.getNativeSql(), typeOIDs);
+            query.setDescriptionKey(key, cache.getGeneration());
+            if (!oneShot)
+            {
+                query.setFields(cache.getFields(key));
+                int[] inferredTypes = cache.getParameterTypes(key);
+                if (inferredTypes != null)
+                    query.setStatementTypes((int[])inferredTypes.clone());
+            }
+        }
     }
 
     private void sendBind(SimpleQuery query, SimpleParameterList params,
@@ -1267,6 +1672,56 @@ public class QueryExecutorImpl implements QueryExecutor {
             logger.debug(sbuf.toString());
         }
 
+        // This is not the number of binary fields, but the total number
+        // of fields if any of them are binary or zero if all of them
+        // are text.
+        //
+        // The formats are chosen from the fields cached by an earlier
+        // execution; the first execution of a statement has none and
+        // receives text. Result sets of earlier executions share the
+        // cached Field objects, so a change of format replaces them with
+        // copies rather than changing them.
+        //
+        // A column that result sets of the query have only read with
+        // getString is received as text even if its type could be binary,
+        // as getString would otherwise decode the binary value and format
+        // it as text again. Any other getter brings binary back. This is
+        // only done for types whose two getString renderings are the same
+        // (see isSameAsText); floats and date/time types differ.
+        // Only server-prepared queries record how columns are read.
+
+        int numBinaryFields = 0;
+        Field[] fields = query.getFields();
+        if (fields != null) {
+            Field[] formatted = null;
+            for (int i = 0; i < fields.length; ++i) {
+                int format = (!noBinaryTransfer && useBinary(fields[i]) && !(query.isReadOnlyAsString(i) && isSameAsText(fields[i].getOID()))) ? Field.BINARY_FORMAT : Field.TEXT_FORMAT;
+                if (format == Field.BINARY_FORMAT)
+                    numBinaryFields = fields.length;
+                if (format != fields[i].getFormat()) {
+                    if (formatted == null)
+                        formatted = (Field[]) fields.clone();
+                    formatted[i] = fields[i].copyWithFormat(format);
+                }
+            }
+            if (formatted != null) {
+                fields = formatted;
+                query.setFields(fields);
+            }
+        }
+
+        if (!params.hasStreams())
+        {
+            sendBufferedBind(params, encodedStatementName, encodedPortalName, fields, numBinaryFields);
+            pendingBindQueue.add(portal);
+            metrics.bind();
+            return;
+        }
+
+        // Parameters read from streams are sent as they are read, so the
+        // message size is worked out beforehand and the message written
+        // directly.
+        //
         // Total size = 4 (size field) + N + 1 (destination portal)
         //            + N + 1 (statement name)
         //            + 2 (param format code count) + N * 2 (format codes)
@@ -1281,21 +1736,6 @@ public class QueryExecutorImpl implements QueryExecutor {
                 encodedSize += (long)4 + params.getV3Length(i);
         }
 
-        // This is not the number of binary fields, but the total number
-        // of fields if any of them are binary or zero if all of them
-        // are text.
-
-        int numBinaryFields = 0;
-        Field[] fields = query.getFields();
-        if (!noBinaryTransfer && fields != null) {
-            for (int i = 0; i < fields.length; ++i) {
-                if (useBinary(fields[i])) {
-                    fields[i].setFormat(Field.BINARY_FORMAT);
-                    numBinaryFields = fields.length;
-                }
-            }
-        }
-
         encodedSize = 4
                       + (encodedPortalName == null ? 0 : encodedPortalName.length) + 1
                       + (encodedStatementName == null ? 0 : encodedStatementName.length) + 1
@@ -1362,6 +1802,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         }
 
         pendingBindQueue.add(portal);
+        metrics.bind();
 
         if (bindException != null)
         {
@@ -1369,6 +1810,65 @@ public class QueryExecutorImpl implements QueryExecutor {
         }
     }
 
+    /**
+     * Assemble a Bind in the message buffer, encoding the parameters
+     * straight into it. It is sent along with the Execute that follows.
+     */
+    private void sendBufferedBind(SimpleParameterList params, byte[] encodedStatementName, byte[] encodedPortalName,
+                                  Field[] fields, int numBinaryFields) throws IOException {
+        int start = messages.position();
+        boolean assembled = false;
+        try
+        {
+            messages.writeByte('B');                   // Bind
+            int lengthAt = messages.reserveLength();   // Message size
+            if (encodedPortalName != null)
+                messages.write(encodedPortalName);     // Destination portal name.
+            messages.writeByte(0);                     // End of portal name.
+            if (encodedStatementName != null)
+                messages.write(encodedStatementName);  // Source statement name.
+            messages.writeByte(0);                     // End of statement name.
+
+            messages.writeInteger2(params.getParameterCount());      // # of parameter format codes
+            for (int i = 1; i <= params.getParameterCount(); ++i)
+                messages.writeInteger2(params.isBinary(i) ? 1 : 0);  // Parameter format code
+
+            messages.writeInteger2(params.getParameterCount());      // # of parameter values
+            for (int i = 1; i <= params.getParameterCount(); ++i)
+            {
+                if (params.isNull(i))
+                {
+                    messages.writeInteger4( -1);                      // Magic size of -1 means NULL
+                }
+                else
+                {
+                    int valueAt = messages.reserveLength();           // Parameter size
+                    params.writeV3Value(i, messages);                 // Parameter value
+                    messages.fillValueLength(valueAt);
+                }
+            }
+
+            messages.writeInteger2(numBinaryFields);   // # of result format codes
+            for (int i = 0; i < numBinaryFields; ++i)
+                messages.writeInteger2(fields[i].getFormat());
+
+            int encodedSize = messages.fillMessageLength(lengthAt);
+
+            // See sendBind.
+            if (encodedSize > 0x3fffffff)
+            {
+                throw new PGBindException(new IOException(GT.tr("Bind message length {0} too long.  This can be caused by very large or incorrect length specifications on InputStream parameters.", new Long(encodedSize))));
+            }
+            assembled = true;
+        }
+        finally
+        {
+            // Never leave part of a message to be sent.
+            if (!assembled)
+                messages.truncate(start);
+        }
+    }
+
     /**
      * Returns true if the specified field should be retrieved using binary
      * encoding.
@@ -1382,27 +1882,43 @@ public class QueryExecutorImpl implements QueryExecutor {
         return protoConnection.useBinaryForReceive(oid);
     }
 
+    /**
+     * @return whether getString gives the same string for a value of the
+     *   given type received in binary as for one received as text
+     */
+    private static boolean isSameAsText(int oid) {
+        switch (oid) {
+        case Oid.INT2:
+        case Oid.INT4:
+        case Oid.INT8:
+        case Oid.OID:
+        case Oid.TEXT:
+        case Oid.VARCHAR:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     private void sendDescribePortal(SimpleQuery query, Portal portal) throws IOException {
         //
         // Send Describe.
         //
 
-        if (logger.logDebug())
-        {
-            logger.debug(" FE=> Describe(portal=" + portal + ")");
-        }
+        logger.debug(" FE=> Describe(portal={0})", portal);
 
         byte[] encodedPortalName = (portal == null ? null : portal.getEncodedPortalName());
 
         // Total size = 4 (size field) + 1 (describe type, 'P') + N + 1 (portal name)
         int encodedSize = 4 + 1 + (encodedPortalName == null ? 0 : encodedPortalName.length) + 1;
 
-        pgStream.SendChar('D');               // Describe
-        pgStream.SendInteger4(encodedSize); // message size
-        pgStream.SendChar('P');               // Describe (Portal)
+        // Buffered to go with the Bind before it and the Execute after it.
+        messages.writeByte('D');               // Describe
+        messages.writeInteger4(encodedSize);   // message size
+        messages.writeByte('P');               // Describe (Portal)
         if (encodedPortalName != null)
-            pgStream.Send(encodedPortalName); // portal name to close
-        pgStream.SendChar(0);                 // end of portal name
+            messages.write(encodedPortalName); // portal name to close
+        messages.writeByte(0);                 // end of portal name
 
         pendingDescribePortalQueue.add(query);
         query.setPortalDescribed(true);
@@ -1411,10 +1927,7 @@ public class QueryExecutorImpl implements QueryExecutor {
     private void sendDescribeStatement(SimpleQuery query, SimpleParameterList params, boolean describeOnly) throws IOException {
         // Send Statement Describe
 
-        if (logger.logDebug())
-        {
-            logger.debug(" FE=> Describe(statement=" + query.getStatementName()+")");
-        }
+        logger.debug(" FE=> Describe(statement={0})", query.getStatementName());
 
         byte[] encodedStatementName = query.getEncodedStatementName();
 
@@ -1440,22 +1953,22 @@ public class QueryExecutorImpl implements QueryExecutor {
         //
 
         if (logger.logDebug())
-        {
-            logger.debug(" FE=> Execute(portal=" + portal + ",limit=" + limit + ")");
-        }
+            logger.debug(" FE=> Execute(portal={0},limit={1})", portal, Integer.valueOf(limit));
 
         byte[] encodedPortalName = (portal == null ? null : portal.getEncodedPortalName());
         int encodedSize = (encodedPortalName == null ? 0 : encodedPortalName.length);
 
         // Total size = 4 (size field) + 1 + N (source portal) + 4 (max rows)
-        pgStream.SendChar('E');              // Execute
-        pgStream.SendInteger4(4 + 1 + encodedSize + 4);  // message size
+        messages.writeByte('E');              // Execute
+        messages.writeInteger4(4 + 1 + encodedSize + 4);  // message size
         if (encodedPortalName != null)
-            pgStream.Send(encodedPortalName); // portal name
-        pgStream.SendChar(0);                 // portal name terminator
-        pgStream.SendInteger4(limit);       // row limit
+            messages.write(encodedPortalName); // portal name
+        messages.writeByte(0);                 // portal name terminator
+        messages.writeInteger4(limit);        // row limit
+        messages.sendTo(pgStream);            // along with any Bind and Describe before it
 
         pendingExecuteQueue.add(new Object[] { query, portal });
+        metrics.execute();
     }
 
     private void sendClosePortal(String portalName) throws IOException {
@@ -1463,10 +1976,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         // Send Close.
         //
 
-        if (logger.logDebug())
-        {
-            logger.debug(" FE=> ClosePortal(" + portalName + ")");
-        }
+        logger.debug(" FE=> ClosePortal({0})", portalName);
 
         byte[] encodedPortalName = (portalName == null ? null : Utils.encodeUTF8(portalName));
         int encodedSize = (encodedPortalName == null ? 0 : encodedPortalName.length);
@@ -1485,10 +1995,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         // Send Close.
         //
 
-        if (logger.logDebug())
-        {
-            logger.debug(" FE=> CloseStatement(" + statementName + ")");
-        }
+        logger.debug(" FE=> CloseStatement({0})", statementName);
 
         byte[] encodedStatementName = Utils.encodeUTF8(statementName);
 
@@ -1677,6 +2184,100 @@ public class QueryExecutorImpl implements QueryExecutor {
     }
 
     protected void processResults(ResultHandler handler, int flags) throws IOException {
+        // Time not spent waiting on the socket is time spent decoding.
+        long start = System.nanoTime();
+        long networkBefore = metrics.getNetworkNanos();
+        long firstByte = start;
+        metrics.roundTrip();
+        if (readDeadline != 0)
+            pgStream.setReadDeadline(readDeadline, readDeadlineCancel);
+        try
+        {
+            if (currentTrace != null)
+                firstByte = awaitFirstByte();
+            receiveResults(handler, flags);
+        }
+        finally
+        {
+            pgStream.clearReadDeadline();
+            long elapsed = System.nanoTime() - start;
+            long network = metrics.getNetworkNanos() - networkBefore;
+            metrics.decode(elapsed - network);
+            if (currentTrace != null)
+                currentTrace.results(firstByte - start, network, elapsed);
+        }
+    }
+
+    /**
+     * Block until the server starts to answer, so that a trace can tell
+     * the time the server took from the time spent receiving.
+     *
+     * @return the time the first byte arrived, as System.nanoTime()
+     */
+    private long awaitFirstByte() throws IOException {
+        pgStream.PeekChar();
+        return System.nanoTime();
+    }
+
+    /**
+     * On the pipeline reader thread, wait for the next message of the
+     * request being read without holding the monitor lock, so that
+     * executeAsync can send more requests meanwhile. Other threads do not
+     * read while requests are pending, and senders only append to the
+     * pending queues, so the state receiveResults works on is unchanged
+     * when the lock is taken again. The lock is kept when the reader reads
+     * on behalf of its own executeAsync, which holds it already.
+     */
+    private void awaitPipelinedMessage() throws IOException {
+        if (receivingRequest == null
+                || Thread.currentThread() != asyncReader
+                || monitor.getHoldCount() != 1
+                || pgStream.hasMessagePending())
+            return;
+
+        monitor.unlock();
+        try
+        {
+            pgStream.PeekChar();
+        }
+        finally
+        {
+            monitor.lock();
+        }
+    }
+
+    /**
+     * @return a list to collect the rows of a result in; the rows of a
+     *   scrollable result set may be spilled to a temporary file, and
+     *   otherwise may be kept off the heap
+     */
+    private List newTupleList(int flags) {
+        if ((flags & QueryExecutor.QUERY_SPILL_ROWS) != 0 && scrollableResultHeapBytes > 0)
+            return new SpillingRowList(scrollableResultHeapBytes, logger);
+        if (offHeapResultRows)
+            return new OffHeapRowList();
+        return new ArrayList();
+    }
+
+    /**
+     * Receive a DataRow straight into off-heap storage, without making
+     * an array for each of its fields.
+     */
+    private void receiveOffHeapRow(OffHeapRowList tuples, ResultHandler handler) throws IOException {
+        int length = pgStream.ReceiveInteger4() - 4;
+        try {
+            tuples.receive(pgStream, length);
+            metrics.rowFetched();
+        } catch (OutOfMemoryError oome) {
+            pgStream.Skip(length);
+            handler.handleError(new PSQLException(GT.tr("Ran out of memory retrieving query results."), PSQLState.OUT_OF_MEMORY, oome));
+        }
+
+        if (logger.logDebug())
+            logger.debug(" <=BE DataRow(len=" + length + ")");
+    }
+
+    private void receiveResults(ResultHandler handler, int flags) throws IOException {
         boolean noResults = (flags & QueryExecutor.QUERY_NO_RESULTS) != 0;
         boolean bothRowsAndStatus = (flags & QueryExecutor.QUERY_BOTH_ROWS_AND_STATUS) != 0;
 
@@ -1701,6 +2302,7 @@ public class QueryExecutorImpl implements QueryExecutor {
 
         while (!endQuery)
         {
+            awaitPipelinedMessage();
             c = pgStream.ReceiveChar();
             switch (c)
             {
@@ -1716,8 +2318,7 @@ public class QueryExecutorImpl implements QueryExecutor {
                 SimpleQuery parsedQuery = (SimpleQuery)parsedQueryAndStatement[0];
                 String parsedStatementName = (String)parsedQueryAndStatement[1];
 
-                if (logger.logDebug())
-                    logger.debug(" <=BE ParseComplete [" + parsedStatementName + "]");
+                logger.debug(" <=BE ParseComplete [{0}]", parsedStatementName);
 
                 registerParsedQuery(parsedQuery, parsedStatementName);
                 break;
@@ -1749,6 +2350,8 @@ public class QueryExecutorImpl implements QueryExecutor {
                     //
                     if ((origStatementName == null && query.getStatementName() == null) || (origStatementName != null && origStatementName.equals(query.getStatementName()))) {
                         query.setStatementTypes((int[])params.getTypeOIDs().clone());
+                        if (descriptionCache != null && descriptionSearchPath != null && query.getDescriptionKey() != null)
+                            descriptionCache.putParameterTypes(query.getDescriptionKey(), query.getDescriptionGeneration(), (int[])params.getTypeOIDs().clone());
                     }
 
                     if (describeOnly)
@@ -1762,8 +2365,7 @@ public class QueryExecutorImpl implements QueryExecutor {
                 pgStream.ReceiveInteger4(); // len, discarded
 
                 Portal boundPortal = (Portal)pendingBindQueue.get(bindIndex++);
-                if (logger.logDebug())
-                    logger.debug(" <=BE BindComplete [" + boundPortal + "]");
+                logger.debug(" <=BE BindComplete [{0}]", boundPortal);
 
                 registerOpenPortal(boundPortal);
                 break;
@@ -1825,11 +2427,19 @@ public class QueryExecutorImpl implements QueryExecutor {
 
                 doneAfterRowDescNoData = false;
 
+                if (descriptionCache != null && DescriptionCache.isSchemaChange(status))
+                    descriptionCache.invalidate();
+
                 {
                     Object[] executeData = (Object[])pendingExecuteQueue.get(executeIndex++);
                     SimpleQuery currentQuery = (SimpleQuery)executeData[0];
                     Portal currentPortal = (Portal)executeData[1];
 
+                    // The search path is part of the description key;
+                    // once it is unknown, stop sharing descriptions.
+                    if (descriptionSearchPath != null && DescriptionCache.isSearchPathChange(status, currentQuery.getNativeSql()))
+                        descriptionSearchPath = null;
+
                     Field[] fields = currentQuery.getFields();
                     if (fields != null && !noResults && tuples == null)
                         tuples = new ArrayList();
@@ -1853,9 +2463,21 @@ public class QueryExecutorImpl implements QueryExecutor {
                 break;
 
             case 'D':  // Data Transfer (ongoing Execute response)
+                if (!noResults && offHeapResultRows)
+                {
+                    if (tuples == null)
+                        tuples = newTupleList(flags);
+                    if (tuples instanceof OffHeapRowList)
+                    {
+                        receiveOffHeapRow((OffHeapRowList) tuples, handler);
+                        break;
+                    }
+                }
+
                 byte[][] tuple = null;
                 try {
                     tuple = pgStream.ReceiveTupleV3();
+                    metrics.rowFetched();
                 } catch(OutOfMemoryError oome) {
                     if (!noResults) {
                         handler.handleError(new PSQLException(GT.tr("Ran out of memory retrieving query results."), PSQLState.OUT_OF_MEMORY, oome));
@@ -1866,7 +2488,7 @@ public class QueryExecutorImpl implements QueryExecutor {
                 if (!noResults)
                 {
                     if (tuples == null)
-                        tuples = new ArrayList();
+                        tuples = newTupleList(flags);
                     tuples.add(tuple);
                 }
 
@@ -1888,6 +2510,8 @@ public class QueryExecutorImpl implements QueryExecutor {
 
             case 'E':  // Error Response (response to pretty much everything; backend then skips until Sync)
                 SQLException error = receiveErrorResponse();
+                if (descriptionCache != null && DescriptionCache.isSchemaChangeError(error.getSQLState()))
+                    descriptionCache.invalidate();
                 handler.handleError(error);
 
                 // keep processing
@@ -1920,8 +2544,7 @@ public class QueryExecutorImpl implements QueryExecutor {
                     int l_len = pgStream.ReceiveInteger4();
                     String name = pgStream.ReceiveString();
                     String value = pgStream.ReceiveString();
-                    if (logger.logDebug())
-                        logger.debug(" <=BE ParameterStatus(" + name + " = " + value + ")");
+                    logger.debug(" <=BE ParameterStatus({0} = {1})", name, value);
 
                     if (name.equals("client_encoding") && !value.equalsIgnoreCase("UTF8") && !allowEncodingChanges)
                     {
@@ -1955,10 +2578,12 @@ public class QueryExecutorImpl implements QueryExecutor {
 
             case 'T':  // Row Description (response to Describe)
                 Field[] fields = receiveFields();
-                tuples = new ArrayList();
+                tuples = newTupleList(flags);
 
                 SimpleQuery query = (SimpleQuery)pendingDescribePortalQueue.get(describePortalIndex++);
                 query.setFields(fields);
+                if (descriptionCache != null && descriptionSearchPath != null && query.getDescriptionKey() != null)
+                    descriptionCache.putFields(query.getDescriptionKey(), query.getDescriptionGeneration(), fields);
 
                 if (doneAfterRowDescNoData) {
                     Object describeData[] = (Object[])pendingDescribeStatementQueue.get(describeIndex++);
@@ -1975,18 +2600,34 @@ public class QueryExecutorImpl implements QueryExecutor {
                 endQuery = true;
 
                 // Reset the statement name of Parses that failed.
-                while (parseIndex < pendingParseQueue.size())
+                int parses = pendingParseQueue.size();
+                if (receivingRequest != null)
+                    parses = receivingRequest.pending[0];
+                while (parseIndex < parses)
                 {
                     Object[] failedQueryAndStatement = (Object[])pendingParseQueue.get(parseIndex++);
                     SimpleQuery failedQuery = (SimpleQuery)failedQueryAndStatement[0];
                     failedQuery.unprepare();
                 }
 
-                pendingParseQueue.clear();              // No more ParseComplete messages expected.
-                pendingDescribeStatementQueue.clear();  // No more ParameterDescription messages expected.
-                pendingDescribePortalQueue.clear();     // No more RowDescription messages expected.
-                pendingBindQueue.clear();               // No more BindComplete messages expected.
-                pendingExecuteQueue.clear();            // No more query executions expected.
+                if (receivingRequest == null)
+                {
+                    pendingParseQueue.clear();              // No more ParseComplete messages expected.
+                    pendingDescribeStatementQueue.clear();  // No more ParameterDescription messages expected.
+                    pendingDescribePortalQueue.clear();     // No more RowDescription messages expected.
+                    pendingBindQueue.clear();               // No more BindComplete messages expected.
+                    pendingExecuteQueue.clear();            // No more query executions expected.
+                }
+                else
+                {
+                    // Later pipelined requests are still waiting for theirs.
+                    int[] sent = receivingRequest.pending;
+                    pendingParseQueue.subList(0, sent[0]).clear();
+                    pendingDescribeStatementQueue.subList(0, sent[1]).clear();
+                    pendingDescribePortalQueue.subList(0, sent[2]).clear();
+                    pendingBindQueue.subList(0, sent[3]).clear();
+                    pendingExecuteQueue.subList(0, sent[4]).clear();
+                }
                 break;
 
             case 'G':  // CopyInResponse
@@ -2050,55 +2691,437 @@ public class QueryExecutorImpl implements QueryExecutor {
         pgStream.Skip(l_len - 4);
     }
  
-    public synchronized void fetch(ResultCursor cursor, ResultHandler handler, int fetchSize)
-    throws SQLException {
-        waitOnLock();
-        final Portal portal = (Portal)cursor;
+    //
+    // Pipelined execution
+    //
+
+    /**
+     * A query sent by executeAsync whose results have not been read yet.
+     */
+    private static class AsyncRequest {
+        final ResultHandler handler;
+        final int flags;
+        final int statements;
+        final long bytes;
+        final long startNanos;
+        final QueryTrace trace;
+        // How many entries the request added to each pending queue.
+        final int[] pending;
+
+        AsyncRequest(ResultHandler handler, int flags, int statements, long bytes, long startNanos, QueryTrace trace, int[] pending) {
+            this.handler = handler;
+            this.flags = flags;
+            this.statements = statements;
+            this.bytes = bytes;
+            this.startNanos = startNanos;
+            this.trace = trace;
+            this.pending = pending;
+        }
+    }
+
+    // Requests are sent while holding the monitor lock, which the reader
+    // thread needs to process results. If a send blocked because the server
+    // stopped reading while it waited for us to read its results, neither
+    // side could proceed. So while requests are pending, a request is only
+    // sent if the bytes of all pending requests stay below what the socket
+    // buffers hold (see MAX_BUFFERED_QUERIES), and a send cannot block.
+    // The limit is lowered to the socket's send buffer when that is smaller,
+    // as the sendBufferSize property may make it.
+    private static final long MAX_PIPELINED_BYTES = 64000;
+    private final long maxPipelinedBytes;
+
+    // Requests in the order they were sent. While it is not empty, the
+    // connection is locked for it (see lock()), so that other executions
+    // wait until the pipeline has drained.
+    private final LinkedList asyncRequests = new LinkedList();
+    private int asyncStatements;
+    private long asyncBytes;
+    private boolean asyncInTransaction;
+    private Thread asyncReader;
+    // The request whose results are being read, or null.
+    private AsyncRequest receivingRequest;
+
+    public void executeAsync(Query query,
+                             ParameterList parameters,
+                             ResultHandler handler,
+                             int maxRows,
+                             int flags)
+    throws SQLException
+    {
+        monitor.lock();
+        try
+        {
+            if (parameters == null)
+                parameters = SimpleQuery.NO_PARAMETERS;
 
-        // Insert a ResultHandler that turns bare command statuses into empty datasets
-        // (if the fetch returns no rows, we see just a CommandStatus..)
-        final ResultHandler delegateHandler = handler;
-        handler = new ResultHandler() {
-                      public void handleResultRows(Query fromQuery, Field[] fields, List tuples, ResultCursor cursor) {
-                          delegateHandler.handleResultRows(fromQuery, fields, tuples, cursor);
-                      }
+            ((V3ParameterList)parameters).convertFunctionOutParameters();
+            ((V3ParameterList)parameters).checkAllParametersSet();
 
-                      public void handleCommandStatus(String status, int updateCount, long insertOID) {
-                          handleResultRows(portal.getQuery(), null, new ArrayList(), null);
-                      }
+            SimpleQuery[] subqueries = ((V3Query)query).getSubqueries();
+            SimpleParameterList[] subparams = ((V3ParameterList)parameters).getSubparams();
+            int statements = (subqueries == null ? 1 : subqueries.length);
+            long bytes;
+            if (subqueries == null)
+            {
+                bytes = estimateSize((SimpleQuery)query, (SimpleParameterList)parameters);
+            }
+            else
+            {
+                bytes = 0;
+                for (int i = 0; i < subqueries.length; ++i)
+                    bytes += estimateSize(subqueries[i], subparams == null ? SimpleQuery.NO_PARAMETERS : subparams[i]);
+            }
 
-                      public void handleWarning(SQLWarning warning) {
-                          delegateHandler.handleWarning(warning);
-                      }
+            // Wait out a COPY, and bound what the pipeline holds. The reader
+            // thread cannot wait for itself, so it reads the results of
+            // earlier requests instead.
+            while (true)
+            {
+                if (lockedFor != null && lockedFor != asyncRequests)
+                    waitOnLock();
+                else if (!asyncRequests.isEmpty()
+                         && (asyncStatements + statements > MAX_BUFFERED_QUERIES || asyncBytes + bytes > maxPipelinedBytes))
+                {
+                    if (Thread.currentThread() == asyncReader)
+                        readAsyncRequest();
+                    else
+                        waitForPipeline();
+                }
+                else
+                    break;
+            }
+
+            // The transaction state is only known once earlier requests are
+            // answered; a BEGIN already in the pipeline is enough.
+            if (asyncInTransaction)
+                flags |= QueryExecutor.QUERY_SUPPRESS_BEGIN;
+            else if ((flags & QueryExecutor.QUERY_SUPPRESS_BEGIN) == 0)
+                asyncInTransaction = true;
+
+            long start = System.nanoTime();
+            QueryTrace trace = null;
+            if (tracer.isEnabled())
+            {
+                trace = tracer.start(PGQueryEvent.EXECUTE, query, 1);
+                handler = trace.wrap(handler);
+            }
+
+            int[] before = pendingCounts();
+            try
+            {
+                handler = sendQueryPreamble(handler, flags);
+                if (subqueries == null)
+                {
+                    sendOneQuery((SimpleQuery)query, (SimpleParameterList)parameters, maxRows, 0, flags);
+                }
+                else
+                {
+                    for (int i = 0; i < subqueries.length; ++i)
+                        sendOneQuery(subqueries[i], subparams == null ? SimpleQuery.NO_PARAMETERS : subparams[i], maxRows, 0, flags);
+                }
+                sendSync();
+            }
+            catch (IOException e)
+            {
+                protoConnection.close();
+                PSQLException error = new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e);
+                if (trace != null)
+                    trace.error(error);
+                tracer.finish(trace);
+                throw error;
+            }
+
+            int[] pending = pendingCounts();
+            for (int i = 0; i < pending.length; ++i)
+                pending[i] -= before[i];
+            asyncRequests.addLast(new AsyncRequest(handler, flags, statements, bytes, start, trace, pending));
+            asyncStatements += statements;
+            asyncBytes += bytes;
+
+            if (lockedFor == null)
+                lockedFor = asyncRequests;
+            if (asyncReader == null)
+            {
+                asyncReader = new Thread("PostgreSQL JDBC pipeline reader") {
+                    public void run() {
+                        readAsyncResults();
+                    }
+                };
+                asyncReader.setDaemon(true);
+                asyncReader.start();
+            }
+        }
+        finally
+        {
+            monitor.unlock();
+        }
+    }
 
-                      public void handleError(SQLException error) {
-                          delegateHandler.handleError(error);
-                      }
+    /**
+     * @return an upper bound on the bytes a query and its parameters take
+     *   to send: the statement text, at most three bytes a character in
+     *   UTF-8, the parameter values, and the message headers
+     */
+    private static long estimateSize(SimpleQuery query, SimpleParameterList params) {
+        long size = 128 + (long) query.getNativeSql().length() * 3;
+        for (int i = 1; i <= params.getParameterCount(); ++i)
+        {
+            size += 6;
+            if (!params.isNull(i))
+                size += params.getV3Length(i);
+        }
+        return size;
+    }
 
-                      public void handleCompletion() throws SQLException{
-                          delegateHandler.handleCompletion();
-                      }
-                  };
+    private void waitForPipeline() throws PSQLException {
+        try {
+            lockReleased.await();
+        } catch(InterruptedException ie) {
+            throw new PSQLException(GT.tr("Interrupted while waiting to obtain lock on database connection"), PSQLState.OBJECT_NOT_IN_STATE, ie);
+        }
+    }
 
-        // Now actually run it.
+    /**
+     * @return the sizes of the pending Parse, Describe statement, Describe
+     *   portal, Bind and Execute queues
+     */
+    private int[] pendingCounts() {
+        return new int[] {
+                   pendingParseQueue.size(),
+                   pendingDescribeStatementQueue.size(),
+                   pendingDescribePortalQueue.size(),
+                   pendingBindQueue.size(),
+                   pendingExecuteQueue.size()
+               };
+    }
 
+    /**
+     * Body of the reader thread: read the results of pipelined requests
+     * in order until there are none left. The thread waits for the server,
+     * before and between the messages of each result, without holding the
+     * connection's monitor lock, so more requests can be sent meanwhile; no
+     * other thread reads while requests are pending.
+     */
+    private void readAsyncResults() {
         try
         {
-            processDeadParsedQueries();
-            processDeadPortals();
+            while (true)
+            {
+                monitor.lock();
+                try
+                {
+                    if (asyncRequests.isEmpty())
+                    {
+                        endPipeline();
+                        return;
+                    }
+                }
+                finally
+                {
+                    monitor.unlock();
+                }
 
-            sendExecute(portal.getQuery(), portal, fetchSize);
-            sendSync();
+                try
+                {
+                    pgStream.PeekChar();
+                }
+                catch (IOException e)
+                {
+                    // reported by processResults below
+                }
+
+                readAsyncRequest();
+            }
+        }
+        catch (Throwable t)
+        {
+            // Whatever failed, the pipeline must not be left locking the
+            // connection with nobody to read it.
+            logger.info("Reading the results of pipelined queries failed", t);
+            failPipeline(new PSQLException(GT.tr("Reading the results of pipelined queries failed."), PSQLState.CONNECTION_FAILURE, t));
+        }
+    }
 
-            processResults(handler, 0);
+    /**
+     * Read the results of the oldest pipelined request and complete it.
+     * If reading fails other than by an I/O error, which leaves the
+     * connection closed and the remaining requests to fail as they are
+     * read, the connection may be out of step with the server, so it is
+     * closed and all the remaining requests fail.
+     */
+    private void readAsyncRequest() {
+        AsyncRequest request;
+        Throwable failure = null;
+        monitor.lock();
+        try
+        {
+            request = (AsyncRequest) asyncRequests.removeFirst();
+            receivingRequest = request;
+            currentTrace = request.trace;
+            tracer.countRowsFromNow(request.trace);
+            try
+            {
+                processResults(request.handler, request.flags);
+            }
+            catch (IOException e)
+            {
+                protoConnection.close();
+                request.handler.handleError(new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e));
+            }
+            catch (Throwable t)
+            {
+                failure = t;
+                protoConnection.close();
+                request.handler.handleError(new PSQLException(GT.tr("Reading the results of pipelined queries failed."), PSQLState.CONNECTION_FAILURE, t));
+            }
+            finally
+            {
+                receivingRequest = null;
+                currentTrace = null;
+            }
+            asyncStatements -= request.statements;
+            asyncBytes -= request.bytes;
+            metrics.query(System.nanoTime() - request.startNanos);
+            tracer.finish(request.trace);
+            lockReleased.signalAll();
         }
-        catch (IOException e)
+        finally
+        {
+            monitor.unlock();
+        }
+
+        // Outside the monitor lock, unless the reader thread is reading
+        // here on behalf of its own executeAsync, so that the handler may
+        // send more.
+        completeAsyncRequest(request);
+
+        if (failure != null)
+        {
+            logger.info("Reading the results of pipelined queries failed", failure);
+            failPipeline(new PSQLException(GT.tr("Reading the results of pipelined queries failed."), PSQLState.CONNECTION_FAILURE, failure));
+        }
+    }
+
+    /**
+     * Close the connection and fail every request still in the pipeline.
+     */
+    private void failPipeline(SQLException error) {
+        List failed;
+        monitor.lock();
+        try
         {
             protoConnection.close();
-            handler.handleError(new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e));
+            failed = new ArrayList(asyncRequests);
+            asyncRequests.clear();
+            asyncStatements = 0;
+            asyncBytes = 0;
+            for (int i = 0; i < failed.size(); ++i)
+            {
+                AsyncRequest request = (AsyncRequest) failed.get(i);
+                request.handler.handleError(error);
+                tracer.finish(request.trace);
+            }
+            endPipeline();
+        }
+        finally
+        {
+            monitor.unlock();
+        }
+
+        for (int i = 0; i < failed.size(); ++i)
+            completeAsyncRequest((AsyncRequest) failed.get(i));
+    }
+
+    /**
+     * Release the connection once the pipeline is empty. Called with the
+     * monitor lock held.
+     */
+    private void endPipeline() {
+        asyncReader = null;
+        asyncInTransaction = false;
+        if (lockedFor == asyncRequests)
+            lockedFor = null;
+        lockReleased.signalAll();
+    }
+
+    private void completeAsyncRequest(AsyncRequest request) {
+        try
+        {
+            request.handler.handleCompletion();
+        }
+        catch (SQLException e)
+        {
+            logger.debug("Asynchronous query handler failed", e);
         }
+        catch (RuntimeException e)
+        {
+            logger.info("Asynchronous query handler failed", e);
+        }
+    }
+
+    public void fetch(ResultCursor cursor, ResultHandler handler, int fetchSize)
+    throws SQLException {
+        monitor.lock();
+        try {
+            waitOnLock();
+            final Portal portal = (Portal)cursor;
+
+            // Insert a ResultHandler that turns bare command statuses into empty datasets
+            // (if the fetch returns no rows, we see just a CommandStatus..)
+            final ResultHandler delegateHandler = handler;
+            handler = new ResultHandler() {
+                          public void handleResultRows(Query fromQuery, Field[] fields, List tuples, ResultCursor cursor) {
+                              delegateHandler.handleResultRows(fromQuery, fields, tuples, cursor);
+                          }
+
+                          public void handleCommandStatus(String status, int updateCount, long insertOID) {
+                              handleResultRows(portal.getQuery(), null, new ArrayList(), null);
+                          }
+
+                          public void handleWarning(SQLWarning warning) {
+                              delegateHandler.handleWarning(warning);
+                          }
+
+                          public void handleError(SQLException error) {
+                              delegateHandler.handleError(error);
+                          }
+
+                          public void handleCompletion() throws SQLException{
+                              delegateHandler.handleCompletion();
+                          }
+                      };
+
+            if (tracer.isEnabled())
+            {
+                currentTrace = tracer.start(PGQueryEvent.FETCH, portal.getQuery(), 1);
+                handler = currentTrace.wrap(handler);
+            }
+
+            // Now actually run it.
+
+            try
+            {
+                processDeadParsedQueries();
+                processDeadPortals();
+
+                sendExecute(portal.getQuery(), portal, fetchSize);
+                sendSync();
 
-        handler.handleCompletion();
+                processResults(handler, 0);
+            }
+            catch (IOException e)
+            {
+                protoConnection.close();
+                handler.handleError(new PSQLException(GT.tr("An I/O error occurred while sending to the backend."), PSQLState.CONNECTION_FAILURE, e));
+            }
+            finally
+            {
+                finishTrace();
+            }
+            handler.handleCompletion();
+        } finally {
+            monitor.unlock();
+        }
     }
 
     /*
@@ -2111,7 +3134,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         Field[] fields = new Field[size];
 
         if (logger.logDebug())
-            logger.debug(" <=BE RowDescription(" + size + ")");
+            logger.debug(" <=BE RowDescription({0})", Integer.valueOf(size));
 
         for (int i = 0; i < fields.length; i++)
         {
@@ -2142,7 +3165,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         protoConnection.addNotification(new org.postgresql.core.Notification(msg, pid, param));
 
         if (logger.logDebug())
-            logger.debug(" <=BE AsyncNotify(" + pid + "," + msg + "," + param + ")");
+            logger.debug(" <=BE AsyncNotify({0},{1},{2})", new Object[] { Integer.valueOf(pid), msg, param });
     }
 
     private SQLException receiveErrorResponse() throws IOException {
@@ -2155,8 +3178,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         String totalMessage = pgStream.ReceiveString(elen - 4);
         ServerErrorMessage errorMsg = new ServerErrorMessage(totalMessage, logger.getLogLevel());
 
-        if (logger.logDebug())
-            logger.debug(" <=BE ErrorMessage(" + errorMsg.toString() + ")");
+        logger.debug(" <=BE ErrorMessage({0})", errorMsg);
 
         return new PSQLException(errorMsg);
     }
@@ -2165,8 +3187,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         int nlen = pgStream.ReceiveInteger4();
         ServerErrorMessage warnMsg = new ServerErrorMessage(pgStream.ReceiveString(nlen - 4), logger.getLogLevel());
 
-        if (logger.logDebug())
-            logger.debug(" <=BE NoticeResponse(" + warnMsg.toString() + ")");
+        logger.debug(" <=BE NoticeResponse({0})", warnMsg);
 
         return new PSQLWarning(warnMsg);
     }
@@ -2179,8 +3200,7 @@ public class QueryExecutorImpl implements QueryExecutor {
         //now read and discard the trailing \0
         pgStream.Receive(1);
 
-        if (logger.logDebug())
-            logger.debug(" <=BE CommandStatus(" + status + ")");
+        logger.debug(" <=BE CommandStatus({0})", status);
 
         return status;
     }
@@ -2221,7 +3241,7 @@ public class QueryExecutorImpl implements QueryExecutor {
 
         char tStatus = (char)pgStream.ReceiveChar();
         if (logger.logDebug())
-            logger.debug(" <=BE ReadyForQuery(" + tStatus + ")");
+            logger.debug(" <=BE ReadyForQuery({0})", Character.valueOf(tStatus));
 
         // Update connection state.
         switch (tStatus)
@@ -2238,6 +3258,9 @@ public class QueryExecutorImpl implements QueryExecutor {
         default:
             throw new IOException("unexpected transaction state in ReadyForQuery message: " + (int)tStatus);
         }
+
+        // The response is over; an input buffer it made grow can go.
+        pgStream.shrinkInputBuffer();
     }
 
     private final ArrayList pendingParseQueue = new ArrayList(); // list of SimpleQuery instances
@@ -2246,11 +3269,33 @@ public class QueryExecutorImpl implements QueryExecutor {
     private final ArrayList pendingDescribeStatementQueue = new ArrayList(); // list of {SimpleQuery, SimpleParameterList, Boolean} object arrays
     private final ArrayList pendingDescribePortalQueue = new ArrayList(); // list of SimpleQuery
 
+    // Statement descriptions shared with other connections, or null, and
+    // the search path that is part of their keys, or null if it changed.
+    private volatile DescriptionCache descriptionCache;
+    private volatile String descriptionSearchPath;
+
     private long nextUniqueID = 1;
     private final ProtocolConnectionImpl protoConnection;
     private final PGStream pgStream;
+    private final MessageBuffer messages = new MessageBuffer(); // Bind, Describe Portal and Execute, sent by sendExecute
+    private final ConnectionMetrics metrics;
+    private final QueryTracer tracer;
     private final Logger logger;
     private final boolean allowEncodingChanges;
+    private final boolean socketQueryTimeout;
+    private final long scrollableResultHeapBytes; // 0 keeps all rows on the heap
+    private final boolean offHeapResultRows;
+
+    /**
+     * Time (as System.currentTimeMillis()) after which the query being
+     * executed is cancelled, or 0 if no socket read deadline is armed.
+     */
+    private long readDeadline;
+
+    /**
+     * The trace of the execution in progress, if there are query listeners.
+     */
+    private QueryTrace currentTrace;
 
     /**
      * The number of queries executed so far without processing any results.
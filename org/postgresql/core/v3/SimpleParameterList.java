@@ -133,6 +133,16 @@ class SimpleParameterList implements V3ParameterList {
         bind(index, new StreamWrapper(stream, length), Oid.BYTEA, BINARY);
     }
 
+    public void setBytea(int index, StreamWrapper value) throws SQLException {
+        bind(index, value, Oid.BYTEA, BINARY);
+    }
+
+    public void setText(int index, StreamWrapper value, int oid) throws SQLException {
+        // The v3 protocol always runs with client_encoding UTF8, so the
+        // bytes can be sent as they are.
+        bind(index, value, oid, TEXT);
+    }
+
     public void setNull(int index, int oid) throws SQLException {
         bind(index, NULL_OBJECT, oid, BINARY);
     }
@@ -172,6 +182,10 @@ class SimpleParameterList implements V3ParameterList {
             }
             return "?";
         }
+        else if (paramValues[index] instanceof StreamWrapper)
+        {
+            return paramValues[index].toString();
+        }
         else
         {
             String param = paramValues[index].toString();
@@ -300,7 +314,7 @@ class SimpleParameterList implements V3ParameterList {
         if (paramValues[index] instanceof byte[])
             return ((byte[]) paramValues[index]).length;
 
-        // Binary-format bytea?
+        // Streamed bytea or text?
         if (paramValues[index] instanceof StreamWrapper)
             return ((StreamWrapper) paramValues[index]).getLength();
 
@@ -328,7 +342,7 @@ class SimpleParameterList implements V3ParameterList {
             return ;
         }
 
-        // Binary-format bytea?
+        // Streamed bytea or text?
         if (paramValues[index] instanceof StreamWrapper)
         {
             streamBytea(pgStream, (StreamWrapper)paramValues[index]);
@@ -341,6 +355,49 @@ class SimpleParameterList implements V3ParameterList {
         pgStream.Send(encoded[index]);
     }
 
+    /**
+     * @return whether a parameter must be read from an InputStream, and so
+     *   cannot be assembled into a {@link MessageBuffer}
+     */
+    boolean hasStreams() {
+        for (int i = 0; i < paramValues.length; ++i)
+        {
+            if (paramValues[i] instanceof StreamWrapper && ((StreamWrapper) paramValues[i]).getBytes() == null)
+                return true;
+        }
+        return false;
+    }
+
+    void writeV3Value(int index, MessageBuffer buffer) {
+        --index;
+
+        // Null?
+        if (paramValues[index] == NULL_OBJECT)
+            throw new IllegalArgumentException("can't writeV3Value() on a null parameter");
+
+        // Directly encoded?
+        if (paramValues[index] instanceof byte[])
+        {
+            buffer.write((byte[])paramValues[index]);
+            return ;
+        }
+
+        // Bytea from an array?
+        if (paramValues[index] instanceof StreamWrapper)
+        {
+            StreamWrapper wrapper = (StreamWrapper)paramValues[index];
+            buffer.write(wrapper.getBytes(), wrapper.getOffset(), wrapper.getLength());
+            return ;
+        }
+
+        // String, encoded straight into the buffer unless an earlier
+        // getV3Length already encoded it.
+        if (encoded[index] != null)
+            buffer.write(encoded[index]);
+        else
+            buffer.writeUTF8(paramValues[index].toString());
+    }
+
     private int SqlTypeToOID (int sqlType) throws PSQLException {
         int oid = Oid.UNSPECIFIED;
         
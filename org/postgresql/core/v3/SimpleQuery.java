@@ -71,6 +71,35 @@ class SimpleQuery implements V3Query {
         return fragments;
     }
 
+    /**
+     * @return the query text as sent in Parse, with $n placeholders
+     */
+    String getNativeSql() {
+        if (nativeSql == null)
+        {
+            StringBuffer sbuf = new StringBuffer(fragments[0]);
+            for (int i = 1; i < fragments.length; ++i)
+                sbuf.append('$').append(i).append(fragments[i]);
+            nativeSql = sbuf.toString();
+        }
+        return nativeSql;
+    }
+
+    // The key of this query's description in a DescriptionCache, and the
+    // generation of the cache when the query was last parsed.
+    void setDescriptionKey(String descriptionKey, int descriptionGeneration) {
+        this.descriptionKey = descriptionKey;
+        this.descriptionGeneration = descriptionGeneration;
+    }
+
+    String getDescriptionKey() {
+        return descriptionKey;
+    }
+
+    int getDescriptionGeneration() {
+        return descriptionGeneration;
+    }
+
   
     
     void setStatementName(String statementName) {
@@ -137,6 +166,30 @@ class SimpleQuery implements V3Query {
         return fields;
     }
 
+    public int[] getColumnUsage(int columns) {
+        // Only a server-prepared statement is executed with the formats
+        // chosen from it.
+        if (statementName == null)
+            return null;
+        int[] usage = columnUsage;
+        if (usage == null || usage.length != columns)
+        {
+            usage = new int[columns];
+            columnUsage = usage;
+        }
+        return usage;
+    }
+
+    /**
+     * @param column the column, starting from 0
+     * @return whether result sets of this query have read the column with
+     *  getString and nothing else
+     */
+    boolean isReadOnlyAsString(int column) {
+        int[] usage = columnUsage;
+        return usage != null && column < usage.length && usage[column] == READ_AS_STRING;
+    }
+
     // Have we sent a Describe Portal message for this query yet?
     boolean isPortalDescribed() {
         return portalDescribed;
@@ -175,6 +228,7 @@ class SimpleQuery implements V3Query {
         fields = null;
         portalDescribed = false;
         statementDescribed = false;
+        descriptionKey = null;
     }
 
     private final String[] fragments;
@@ -186,10 +240,19 @@ class SimpleQuery implements V3Query {
      * if executed before. Always null for non-prepared statements.
      */
     private Field[] fields;
+    /**
+     * How result sets of this query read each column; see
+     * {@link Query#getColumnUsage}. Updated without synchronization, as
+     * a lost update only costs a less suitable format.
+     */
+    private int[] columnUsage;
     private boolean portalDescribed;
     private boolean statementDescribed;
     private PhantomReference cleanupRef;
     private int[] preparedTypes;
+    private String nativeSql;
+    private String descriptionKey;
+    private int descriptionGeneration;
 
     final static SimpleParameterList NO_PARAMETERS = new SimpleParameterList(0, null);
 }
@@ -10,6 +10,12 @@ package org.postgresql.ds.common;
 import javax.naming.*;
 
 import org.postgresql.DriverBase;
+import org.postgresql.PGConnection;
+import org.postgresql.PGMetrics;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.ConnectionMetrics;
+import org.postgresql.core.DescriptionCache;
+import org.postgresql.core.Logger;
 
 import java.sql.*;
 
@@ -21,6 +27,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.Properties;
 
+import javax.management.ObjectName;
+
 /**
  * Base class for data sources and related classes.
  *
@@ -61,6 +69,9 @@ public abstract class BaseDataSource implements Referenceable
     private int socketTimeout = 0; // in seconds
     private int receiveBufferSize = -1; // off (-1), not in use
     private int sendBufferSize = -1; // off (-1), not in use
+    private int inputBufferSize = 8192;
+    private int maxInputBufferSize = 0; // fixed size
+    private int outputBufferSize = 8192;
     private boolean ssl = false;
     private String sslfactory=null;
     private boolean tcpKeepAlive = false;
@@ -70,6 +81,16 @@ public abstract class BaseDataSource implements Referenceable
     private String applicationName;
     private String stringType=null;
     private boolean logLevelSet = false;      
+    private String loadBalanceHosts;
+    private int hostRecheckSeconds = -1; // driver default (-1), not in use
+    private boolean jmxMetrics = false;
+    private int descriptionCacheSize = 0; // off
+
+    // Metrics of the connections made so far, and their MBean if any.
+    private transient DataSourceMetrics metrics;
+    private transient ObjectName metricsMBean;
+    // Statement descriptions shared by the connections made so far.
+    private transient DescriptionCache descriptionCache;
 
     /**
      * Gets a connection to the PostgreSQL database.  The database is identified by the
@@ -100,6 +121,20 @@ public abstract class BaseDataSource implements Referenceable
         try
         {
             Connection con = DriverManager.getConnection(getUrl(), user, password);
+            getDataSourceMetrics().add((ConnectionMetrics) ((PGConnection) con).getMetrics());
+            DescriptionCache cache = getDescriptionCache();
+            if (cache != null)
+            {
+                try
+                {
+                    ((BaseConnection) con).setDescriptionCache(cache);
+                }
+                catch (SQLException e)
+                {
+                    con.close();
+                    throw e;
+                }
+            }
             if (logger != null)
             {
                 logger.println("Created a non-pooled connection for " + user + " at " + getUrl());
@@ -334,6 +369,60 @@ public abstract class BaseDataSource implements Referenceable
         this.sendBufferSize = nbytes;
     }
 
+    /**
+     * Gets the initial size of the driver's buffer for data read from the
+     * socket.
+     */
+    public int getInputBufferSize()
+    {
+        return inputBufferSize;
+    }
+
+    /**
+     * Sets the initial size of the driver's buffer for data read from the
+     * socket. The default is 8192.
+     */
+    public void setInputBufferSize(int nbytes)
+    {
+        this.inputBufferSize = nbytes;
+    }
+
+    /**
+     * Gets the size the driver's input buffer may grow to.
+     */
+    public int getMaxInputBufferSize()
+    {
+        return maxInputBufferSize;
+    }
+
+    /**
+     * Sets the size the driver's input buffer may grow to while the server
+     * sends more than fits in it. The buffer shrinks back to its initial
+     * size at the end of each response. The default, 0, keeps
+     * it at its initial size.
+     */
+    public void setMaxInputBufferSize(int nbytes)
+    {
+        this.maxInputBufferSize = nbytes;
+    }
+
+    /**
+     * Gets the size of the driver's buffer for data written to the socket.
+     */
+    public int getOutputBufferSize()
+    {
+        return outputBufferSize;
+    }
+
+    /**
+     * Sets the size of the driver's buffer for data written to the socket.
+     * The default is 8192.
+     */
+    public void setOutputBufferSize(int nbytes)
+    {
+        this.outputBufferSize = nbytes;
+    }
+
     /**
      * Gets the default threshold for enabling server-side prepare.
      *
@@ -508,6 +597,138 @@ public abstract class BaseDataSource implements Referenceable
         return stringType;
     }
 
+    /**
+     * Sets how the hosts of a multi-host serverName (for example
+     * <code>node1:15432,node2:15432</code>) are ordered for each connection:
+     * <code>none</code>, <code>random</code>, <code>roundRobin</code> or
+     * <code>leastRecentlyFailed</code>.
+     *
+     * @see org.postgresql.core.HostChooser
+     */
+    public void setLoadBalanceHosts(String loadBalanceHosts)
+    {
+        this.loadBalanceHosts = loadBalanceHosts;
+    }
+
+    /**
+     * @see #setLoadBalanceHosts(String)
+     */
+    public String getLoadBalanceHosts()
+    {
+        return loadBalanceHosts;
+    }
+
+    /**
+     * Sets how long, in seconds, a host that failed to connect is only
+     * tried after the other hosts. The period doubles with each
+     * consecutive failure. It only applies when load balancing is
+     * enabled with {@link #setLoadBalanceHosts(String)}.
+     */
+    public void setHostRecheckSeconds(int seconds)
+    {
+        this.hostRecheckSeconds = seconds;
+    }
+
+    /**
+     * @see #setHostRecheckSeconds(int)
+     */
+    public int getHostRecheckSeconds()
+    {
+        return hostRecheckSeconds;
+    }
+
+    /**
+     * Sets whether to publish the metrics of each connection this
+     * DataSource makes, as MXBeans on the platform MBean server, until the
+     * connection is closed. The summed metrics of the DataSource itself are
+     * published only by a pooling DataSource, from initialize() until
+     * close(), as other DataSources are never closed.
+     *
+     * @see #getMetrics()
+     */
+    public void setJmxMetrics(boolean enabled)
+    {
+        this.jmxMetrics = enabled;
+    }
+
+    /**
+     * @see #setJmxMetrics(boolean)
+     */
+    public boolean getJmxMetrics()
+    {
+        return jmxMetrics;
+    }
+
+    /**
+     * Sets how many statement descriptions the connections made by this
+     * DataSource share, so that a statement one connection has executed
+     * is neither described by the others nor has its columns' metadata
+     * looked up again. 0, the default, shares nothing.
+     *<p>
+     * Descriptions are discarded when a connection runs DDL, but not when
+     * another client changes the schema; call
+     * <code>getDescriptionCache().invalidate()</code> after that.
+     */
+    public void setDescriptionCacheSize(int descriptionCacheSize)
+    {
+        this.descriptionCacheSize = descriptionCacheSize;
+    }
+
+    /**
+     * @see #setDescriptionCacheSize(int)
+     */
+    public int getDescriptionCacheSize()
+    {
+        return descriptionCacheSize;
+    }
+
+    /**
+     * @return the statement descriptions shared by the connections made by
+     *   this DataSource, or null if descriptionCacheSize is 0
+     */
+    public synchronized DescriptionCache getDescriptionCache()
+    {
+        if (descriptionCache == null && descriptionCacheSize > 0)
+            descriptionCache = new DescriptionCache(descriptionCacheSize);
+        return descriptionCache;
+    }
+
+    /**
+     * Return the counters and timings of all connections made by this
+     * DataSource, summed; closed connections are included.
+     */
+    public PGMetrics getMetrics()
+    {
+        return getDataSourceMetrics();
+    }
+
+    private synchronized DataSourceMetrics getDataSourceMetrics()
+    {
+        if (metrics == null)
+            metrics = new DataSourceMetrics();
+        return metrics;
+    }
+
+    /**
+     * Publish this DataSource's metrics as an MBean if jmxMetrics is set.
+     * Only DataSources that call {@link #unregisterMetricsMBean} when they
+     * are closed may call this.
+     */
+    protected synchronized void registerMetricsMBean()
+    {
+        if (jmxMetrics && metricsMBean == null)
+            metricsMBean = ConnectionMetrics.registerMBean(getDataSourceMetrics(), "DataSource", serverName + "/" + databaseName, new Logger());
+    }
+
+    /**
+     * Remove the MBean registered for this DataSource's metrics, if any.
+     */
+    protected synchronized void unregisterMetricsMBean()
+    {
+        ConnectionMetrics.unregisterMBean(metricsMBean, new Logger());
+        metricsMBean = null;
+    }
+
     public void setStringType(String stringType)
     {
         this.stringType = stringType;
@@ -548,6 +769,15 @@ public abstract class BaseDataSource implements Referenceable
         if (sendBufferSize != -1) {
             sb.append("&sendBufferSize=").append(sendBufferSize);
         }
+        if (inputBufferSize != 8192) {
+            sb.append("&inputBufferSize=").append(inputBufferSize);
+        }
+        if (maxInputBufferSize != 0) {
+            sb.append("&maxInputBufferSize=").append(maxInputBufferSize);
+        }
+        if (outputBufferSize != 8192) {
+            sb.append("&outputBufferSize=").append(outputBufferSize);
+        }
         sb.append("&tcpKeepAlive=").append(tcpKeepAlive);
         if (compatible != null) {
             sb.append("&compatible="+compatible);
@@ -569,6 +799,15 @@ public abstract class BaseDataSource implements Referenceable
         if (binaryTransferDisable != null) {
             sb.append("&binaryTransferDisable=").append(binaryTransferDisable);
         }
+        if (loadBalanceHosts != null) {
+            sb.append("&loadBalanceHosts=").append(loadBalanceHosts);
+        }
+        if (hostRecheckSeconds != -1) {
+            sb.append("&hostRecheckSeconds=").append(hostRecheckSeconds);
+        }
+        if (jmxMetrics) {
+            sb.append("&jmxMetrics=true");
+        }
         
         return sb.toString();
     }
@@ -595,11 +834,17 @@ public abstract class BaseDataSource implements Referenceable
      	sslfactory = p.getProperty("sslfactory");
      	receiveBufferSize = Integer.parseInt(p.getProperty("receiveBufferSize", "-1"));
      	sendBufferSize = Integer.parseInt(p.getProperty("sendBufferSize", "-1"));
+     	inputBufferSize = Integer.parseInt(p.getProperty("inputBufferSize", "8192"));
+     	maxInputBufferSize = Integer.parseInt(p.getProperty("maxInputBufferSize", "0"));
+     	outputBufferSize = Integer.parseInt(p.getProperty("outputBufferSize", "8192"));
      	tcpKeepAlive = Boolean.parseBoolean(p.getProperty("tcpKeepAlive"));
      	compatible = p.getProperty("compatible");
      	applicationName = p.getProperty("ApplicationName");
         stringType = p.getProperty("stringtype");
      	binaryTransfer = Boolean.parseBoolean(p.getProperty("binaryTransfer"));
+     	loadBalanceHosts = p.getProperty("loadBalanceHosts");
+     	hostRecheckSeconds = Integer.parseInt(p.getProperty("hostRecheckSeconds", "-1"));
+     	jmxMetrics = Boolean.parseBoolean(p.getProperty("jmxMetrics"));
     }
 
     /**
@@ -653,6 +898,9 @@ public abstract class BaseDataSource implements Referenceable
 
         ref.add(new StringRefAddr("receiveBufferSize", Integer.toString(receiveBufferSize)));
         ref.add(new StringRefAddr("sendBufferSize", Integer.toString(sendBufferSize)));
+        ref.add(new StringRefAddr("inputBufferSize", Integer.toString(inputBufferSize)));
+        ref.add(new StringRefAddr("maxInputBufferSize", Integer.toString(maxInputBufferSize)));
+        ref.add(new StringRefAddr("outputBufferSize", Integer.toString(outputBufferSize)));
         ref.add(new StringRefAddr("tcpKeepAlive", Boolean.toString(tcpKeepAlive)));
         if (compatible != null)
         {
@@ -671,6 +919,13 @@ public abstract class BaseDataSource implements Referenceable
         {
             ref.add(new StringRefAddr("ApplicationName", applicationName));
         }
+        if (loadBalanceHosts != null)
+        {
+            ref.add(new StringRefAddr("loadBalanceHosts", loadBalanceHosts));
+        }
+        ref.add(new StringRefAddr("hostRecheckSeconds", Integer.toString(hostRecheckSeconds)));
+        ref.add(new StringRefAddr("jmxMetrics", Boolean.toString(jmxMetrics)));
+        ref.add(new StringRefAddr("descriptionCacheSize", Integer.toString(descriptionCacheSize)));
 
         return ref;
     }
@@ -701,6 +956,13 @@ public abstract class BaseDataSource implements Referenceable
         out.writeObject(binaryTransferDisable);
         out.writeBoolean(logLevelSet);
         out.writeObject(protocol);
+        out.writeObject(loadBalanceHosts);
+        out.writeInt(hostRecheckSeconds);
+        out.writeBoolean(jmxMetrics);
+        out.writeInt(descriptionCacheSize);
+        out.writeInt(inputBufferSize);
+        out.writeInt(maxInputBufferSize);
+        out.writeInt(outputBufferSize);
     }
 
     protected void readBaseObject(ObjectInputStream in) throws IOException, ClassNotFoundException
@@ -729,6 +991,13 @@ public abstract class BaseDataSource implements Referenceable
         binaryTransferDisable = (String)in.readObject();
         logLevelSet = in.readBoolean();
         protocol = (String)in.readObject();
+        loadBalanceHosts = (String)in.readObject();
+        hostRecheckSeconds = in.readInt();
+        jmxMetrics = in.readBoolean();
+        descriptionCacheSize = in.readInt();
+        inputBufferSize = in.readInt();
+        maxInputBufferSize = in.readInt();
+        outputBufferSize = in.readInt();
     }
 
     public void initializeFrom(BaseDataSource source) throws IOException, ClassNotFoundException {
@@ -739,5 +1008,12 @@ public abstract class BaseDataSource implements Referenceable
         ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
         ObjectInputStream ois = new ObjectInputStream(bais);
         readBaseObject(ois);
+        // Connections made here count towards the source's metrics, and
+        // share its statement descriptions.
+        synchronized (this)
+        {
+            metrics = source.getDataSourceMetrics();
+            descriptionCache = source.getDescriptionCache();
+        }
     }
 }
@@ -0,0 +1,31 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.ds.common;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hook called by the pooling DataSource for every new physical connection
+ * before it is added to the pool, so that the cost of priming it (running
+ * setup statements, filling caches) is not paid by the first caller.
+ *
+ * @see org.postgresql.ds.jdbc23.AbstractJdbc23PoolingDataSource#setConnectionWarmer(ConnectionWarmer)
+ */
+public interface ConnectionWarmer
+{
+    /**
+     * Prime a new connection. The connection is in autocommit mode and
+     * must be left that way; it is not yet visible to any other thread.
+     *
+     * @param connection the new connection
+     * @throws SQLException if the connection cannot be used; it is then
+     *   closed instead of being added to the pool
+     */
+    public void warmUp(Connection connection) throws SQLException;
+}
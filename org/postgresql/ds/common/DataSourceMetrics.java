@@ -0,0 +1,216 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.ds.common;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.postgresql.PGMetrics;
+import org.postgresql.core.ConnectionMetrics;
+import org.postgresql.util.LatencyHistogram;
+
+/**
+ * The metrics of all connections made by a DataSource. Nothing is
+ * recorded here directly: reading a value sums the metrics of the open
+ * connections and the totals of those already closed, so connections do
+ * not contend on shared counters. Each counter is summed on its own, and
+ * only the latency getters merge histograms, so that a monitoring tool
+ * reading every attribute does not copy every counter for each.
+ */
+public class DataSourceMetrics implements PGMetrics
+{
+    // Totals of connections that have been closed.
+    private final ConnectionMetrics retired = new ConnectionMetrics();
+    // WeakReferences to the ConnectionMetrics of open connections; a
+    // connection that is dropped without being closed is forgotten.
+    private final List connections = new ArrayList();
+
+    synchronized void add(ConnectionMetrics metrics)
+    {
+        metrics();
+        connections.add(new WeakReference(metrics));
+    }
+
+    /**
+     * Move closed connections into the retired totals.
+     *
+     * @return the retired totals followed by the metrics of the open
+     *   connections
+     */
+    private synchronized ConnectionMetrics[] metrics()
+    {
+        ArrayList open = new ArrayList(connections.size() + 1);
+        open.add(retired);
+        for (Iterator i = connections.iterator(); i.hasNext(); )
+        {
+            ConnectionMetrics metrics = (ConnectionMetrics) ((WeakReference) i.next()).get();
+            if (metrics == null)
+            {
+                i.remove();
+            }
+            else if (metrics.isClosed())
+            {
+                metrics.addTo(retired);
+                i.remove();
+            }
+            else
+            {
+                open.add(metrics);
+            }
+        }
+        return (ConnectionMetrics[]) open.toArray(new ConnectionMetrics[open.size()]);
+    }
+
+    private LatencyHistogram queryLatency()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        LatencyHistogram total = new LatencyHistogram();
+        for (int i = 0; i < metrics.length; ++i)
+            metrics[i].addQueryLatencyTo(total);
+        return total;
+    }
+
+    public long getRoundTrips()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getRoundTrips();
+        return total;
+    }
+
+    public long getBytesSent()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getBytesSent();
+        return total;
+    }
+
+    public long getBytesReceived()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getBytesReceived();
+        return total;
+    }
+
+    public long getParseCount()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getParseCount();
+        return total;
+    }
+
+    public long getBindCount()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getBindCount();
+        return total;
+    }
+
+    public long getExecuteCount()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getExecuteCount();
+        return total;
+    }
+
+    public long getPreparedStatementHits()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getPreparedStatementHits();
+        return total;
+    }
+
+    public long getRowsFetched()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getRowsFetched();
+        return total;
+    }
+
+    public long getQueryCount()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getQueryCount();
+        return total;
+    }
+
+    public long getQueryNanos()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getQueryNanos();
+        return total;
+    }
+
+    public long getLockWaitNanos()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getLockWaitNanos();
+        return total;
+    }
+
+    public long getNetworkNanos()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getNetworkNanos();
+        return total;
+    }
+
+    public long getDecodeNanos()
+    {
+        ConnectionMetrics[] metrics = metrics();
+        long total = 0;
+        for (int i = 0; i < metrics.length; ++i)
+            total += metrics[i].getDecodeNanos();
+        return total;
+    }
+
+    public long getQueryLatencyMedianMicros()
+    {
+        return queryLatency().getPercentile(50);
+    }
+
+    public long getQueryLatency99thPercentileMicros()
+    {
+        return queryLatency().getPercentile(99);
+    }
+
+    public long getQueryLatencyMaxMicros()
+    {
+        return queryLatency().getMax();
+    }
+
+    public long getQueryLatencyPercentileMicros(double percentile)
+    {
+        return queryLatency().getPercentile(percentile);
+    }
+}
@@ -81,6 +81,17 @@ public class PGObjectFactory implements ObjectFactory
         {
             pds.setMaxConnections(Integer.parseInt(max));
         }
+        String minIdle = getProperty(ref, "minIdleConnections");
+        if (minIdle != null)
+        {
+            pds.setMinIdleConnections(Integer.parseInt(minIdle));
+        }
+        String refillThreads = getProperty(ref, "refillThreads");
+        if (refillThreads != null)
+        {
+            pds.setRefillThreads(Integer.parseInt(refillThreads));
+        }
+        pds.setWarmUpStatements(getProperty(ref, "warmUpStatements"));
         return pds;
     }
 
@@ -125,6 +136,42 @@ public class PGObjectFactory implements ObjectFactory
         if (binaryTransferDisable != null)
             ds.setBinaryTransferDisable(binaryTransferDisable);
 
+        String loadBalanceHosts = getProperty(ref, "loadBalanceHosts");
+        if (loadBalanceHosts != null)
+            ds.setLoadBalanceHosts(loadBalanceHosts);
+
+        String hostRecheckSeconds = getProperty(ref, "hostRecheckSeconds");
+        if (hostRecheckSeconds != null)
+            ds.setHostRecheckSeconds(Integer.parseInt(hostRecheckSeconds));
+
+        String jmxMetrics = getProperty(ref, "jmxMetrics");
+        if (jmxMetrics != null)
+            ds.setJmxMetrics(Boolean.valueOf(jmxMetrics).booleanValue());
+
+        String descriptionCacheSize = getProperty(ref, "descriptionCacheSize");
+        if (descriptionCacheSize != null)
+            ds.setDescriptionCacheSize(Integer.parseInt(descriptionCacheSize));
+
+        String receiveBufferSize = getProperty(ref, "receiveBufferSize");
+        if (receiveBufferSize != null)
+            ds.setReceiveBufferSize(Integer.parseInt(receiveBufferSize));
+
+        String sendBufferSize = getProperty(ref, "sendBufferSize");
+        if (sendBufferSize != null)
+            ds.setSendBufferSize(Integer.parseInt(sendBufferSize));
+
+        String inputBufferSize = getProperty(ref, "inputBufferSize");
+        if (inputBufferSize != null)
+            ds.setInputBufferSize(Integer.parseInt(inputBufferSize));
+
+        String maxInputBufferSize = getProperty(ref, "maxInputBufferSize");
+        if (maxInputBufferSize != null)
+            ds.setMaxInputBufferSize(Integer.parseInt(maxInputBufferSize));
+
+        String outputBufferSize = getProperty(ref, "outputBufferSize");
+        if (outputBufferSize != null)
+            ds.setOutputBufferSize(Integer.parseInt(outputBufferSize));
+
         return ds;
     }
 
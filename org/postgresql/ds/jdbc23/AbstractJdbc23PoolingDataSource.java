@@ -10,7 +10,14 @@ package org.postgresql.ds.jdbc23;
 import javax.sql.*;
 import javax.naming.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
 import org.postgresql.util.GT;
@@ -37,6 +44,14 @@ import org.postgresql.ds.common.*;
  * be normal non-pooled connections, and will not count against the maximum pool
  * size limit.</p>
  *
+ * <p>By default a caller that finds no idle connection opens a new one
+ * itself. If minIdleConnections or refillThreads is set, new connections
+ * are instead opened in the background, up to refillThreads at a time,
+ * so that minIdleConnections stay idle and callers waiting for a
+ * connection are served as soon as one is ready. Every new connection can
+ * be primed before it is pooled, see {@link #setWarmUpStatements(String)}
+ * and {@link #setConnectionWarmer(ConnectionWarmer)}.</p>
+ *
  * <p>If you put this DataSource in JNDI, and access it from different JVMs (or
  * otherwise load this class from different ClassLoaders), you'll end up with one
  * pool per ClassLoader or VM. This is another area where a server-specific
@@ -60,6 +75,10 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
     protected String dataSourceName;  // Must be protected for subclasses to sync updates to it
     private int initialConnections = 0;
     private int maxConnections = 0;
+    private int minIdleConnections = 0;
+    private int refillThreads = 0;
+    private String warmUpStatements;
+    private ConnectionWarmer connectionWarmer;
     // State variables
     private boolean initialized = false;
     private Stack available = new Stack();
@@ -67,6 +86,12 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
     private Object lock = new Object()
                               ;
     private PGConnectionPoolDataSource source;
+    // Background refill state, all guarded by lock
+    private ExecutorService refillExecutor;
+    private int pendingCreates = 0;
+    private int waiters = 0;
+    private long createFailures = 0;
+    private SQLException lastCreateFailure;
 
     /**
      * Gets a description of this DataSource.
@@ -224,6 +249,113 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
         this.maxConnections = maxConnections;
     }
 
+    /**
+     * Gets the number of idle connections the pool tries to keep ready.
+     */
+    public int getMinIdleConnections()
+    {
+        return minIdleConnections;
+    }
+
+    /**
+     * Sets the number of idle connections the pool tries to keep ready by
+     * opening new ones in the background, within the maxConnections limit.
+     *
+     * @throws java.lang.IllegalStateException
+     *     The Minimum Idle Connections cannot be changed after the DataSource
+     *     has been used.
+     */
+    public void setMinIdleConnections(int minIdleConnections)
+    {
+        if (initialized)
+        {
+            throw new IllegalStateException("Cannot set Data Source properties after DataSource has been used");
+        }
+        this.minIdleConnections = minIdleConnections;
+    }
+
+    /**
+     * Gets the maximum number of connections opened concurrently in the
+     * background.
+     */
+    public int getRefillThreads()
+    {
+        return refillThreads;
+    }
+
+    /**
+     * Sets the maximum number of connections opened concurrently in the
+     * background. If both this and minIdleConnections are 0 (the default),
+     * callers open new connections themselves.
+     *
+     * @throws java.lang.IllegalStateException
+     *     The Refill Threads cannot be changed after the DataSource has been
+     *     used.
+     */
+    public void setRefillThreads(int refillThreads)
+    {
+        if (initialized)
+        {
+            throw new IllegalStateException("Cannot set Data Source properties after DataSource has been used");
+        }
+        this.refillThreads = refillThreads;
+    }
+
+    /**
+     * Gets the statements prepared on every new connection.
+     *
+     * @see #setWarmUpStatements(String)
+     */
+    public String getWarmUpStatements()
+    {
+        return warmUpStatements;
+    }
+
+    /**
+     * Sets SQL statements, separated by semicolons, to prepare on every new
+     * connection before it is pooled. Each statement is described by the
+     * server without being executed, which also loads the types of its
+     * result columns into the connection's type cache.
+     *
+     * @throws java.lang.IllegalStateException
+     *     The Warm Up Statements cannot be changed after the DataSource has
+     *     been used.
+     */
+    public void setWarmUpStatements(String warmUpStatements)
+    {
+        if (initialized)
+        {
+            throw new IllegalStateException("Cannot set Data Source properties after DataSource has been used");
+        }
+        this.warmUpStatements = warmUpStatements;
+    }
+
+    /**
+     * Gets the hook called for every new connection.
+     */
+    public ConnectionWarmer getConnectionWarmer()
+    {
+        return connectionWarmer;
+    }
+
+    /**
+     * Sets a hook called for every new connection, after any warm-up
+     * statements, before the connection is pooled. This property is not
+     * part of the JNDI reference.
+     *
+     * @throws java.lang.IllegalStateException
+     *     The Connection Warmer cannot be changed after the DataSource has
+     *     been used.
+     */
+    public void setConnectionWarmer(ConnectionWarmer connectionWarmer)
+    {
+        if (initialized)
+        {
+            throw new IllegalStateException("Cannot set Data Source properties after DataSource has been used");
+        }
+        this.connectionWarmer = connectionWarmer;
+    }
+
     /**
      * Gets the name of this DataSource.  This uniquely identifies the DataSource.
      * You cannot use more than one DataSource in the same VM with the same name.
@@ -294,13 +426,164 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
 
             while (available.size() < initialConnections)
             {
-                available.push(source.getPooledConnection());
+                available.push(createPooledConnection());
             }
 
+            if (refillThreads > 0 || minIdleConnections > 0)
+            {
+                int threads = Math.max(refillThreads, 1);
+                refillExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                                        new LinkedBlockingQueue(), new ThreadFactory() {
+                                                            public Thread newThread(Runnable r) {
+                                                                Thread t = new Thread(r, "PostgreSQL JDBC driver pool refill for " + dataSourceName);
+                                                                t.setDaemon(true);
+                                                                return t;
+                                                            }
+                                                        });
+                ((ThreadPoolExecutor) refillExecutor).allowCoreThreadTimeOut(true);
+                scheduleRefill();
+            }
+
+            registerMetricsMBean();
             initialized = true;
         }
     }
 
+    /**
+     * Opens and warms up a new physical connection.
+     */
+    private PooledConnection createPooledConnection() throws SQLException
+    {
+        PooledConnection pc = source.getPooledConnection();
+        if (warmUpStatements == null && connectionWarmer == null)
+            return pc;
+
+        try
+        {
+            Connection con = pc.getConnection();
+            try
+            {
+                warmUp(con);
+            }
+            finally
+            {
+                con.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            try
+            {
+                pc.close();
+            }
+            catch (SQLException e2)
+            {
+            }
+            throw e;
+        }
+        return pc;
+    }
+
+    private void warmUp(Connection con) throws SQLException
+    {
+        if (warmUpStatements != null)
+        {
+            StringTokenizer tokenizer = new StringTokenizer(warmUpStatements, ";");
+            while (tokenizer.hasMoreTokens())
+            {
+                String sql = tokenizer.nextToken().trim();
+                if (sql.length() == 0)
+                    continue;
+
+                PreparedStatement ps = con.prepareStatement(sql);
+                try
+                {
+                    ResultSetMetaData rsmd = ps.getMetaData();
+                    if (rsmd != null)
+                    {
+                        for (int i = 1; i <= rsmd.getColumnCount(); ++i)
+                            rsmd.getColumnTypeName(i);
+                    }
+                }
+                finally
+                {
+                    ps.close();
+                }
+            }
+        }
+
+        if (connectionWarmer != null)
+            connectionWarmer.warmUp(con);
+    }
+
+    /**
+     * Submits background creates so that the idle connections plus those
+     * being created cover minIdleConnections and every waiting caller,
+     * within maxConnections. Must be called holding lock.
+     */
+    private void scheduleRefill()
+    {
+        if (refillExecutor == null || available == null)
+            return;
+
+        int deficit = minIdleConnections + waiters - available.size() - pendingCreates;
+        while (deficit > 0 && (maxConnections == 0 || available.size() + used.size() + pendingCreates < maxConnections))
+        {
+            ++pendingCreates;
+            --deficit;
+            refillExecutor.execute(new Runnable() {
+                public void run() {
+                    refill();
+                }
+            });
+        }
+    }
+
+    private void refill()
+    {
+        PooledConnection pc = null;
+        SQLException failure = null;
+        try
+        {
+            pc = createPooledConnection();
+        }
+        catch (SQLException e)
+        {
+            failure = e;
+        }
+
+        synchronized (lock)
+        {
+            --pendingCreates;
+            if (available == null)
+            {
+                // DataSource has been closed meanwhile.
+                if (pc != null)
+                {
+                    try
+                    {
+                        pc.close();
+                    }
+                    catch (SQLException e)
+                    {
+                    }
+                }
+                return ;
+            }
+
+            if (pc != null)
+            {
+                available.push(pc);
+            }
+            else
+            {
+                lastCreateFailure = failure;
+                ++createFailures;
+            }
+            lock.notifyAll();
+        }
+    }
+
     protected boolean isInitialized() {
         return initialized;
     }
@@ -361,6 +644,13 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
     {
         synchronized (lock )
         {
+            if (refillExecutor != null)
+            {
+                refillExecutor.shutdownNow();
+                refillExecutor = null;
+            }
+            // Wake up callers waiting for a connection.
+            lock.notifyAll();
             while (available.size() > 0)
             {
                 PGPooledConnection pci = (PGPooledConnection)available.pop();
@@ -388,6 +678,7 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
             used = null;
         }
         removeStoredDataSource();
+        unregisterMetricsMBean();
     }
 
     protected void removeStoredDataSource() {
@@ -414,17 +705,45 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
                 throw new PSQLException(GT.tr("DataSource has been closed."),
                                         PSQLState.CONNECTION_DOES_NOT_EXIST);
             }
+            long failuresAtStart = createFailures;
             while (true)
             {
+                if (available == null)
+                {
+                    throw new PSQLException(GT.tr("DataSource has been closed."),
+                                            PSQLState.CONNECTION_DOES_NOT_EXIST);
+                }
                 if (available.size() > 0)
                 {
                     pc = (PooledConnection)available.pop();
                     used.push(pc);
                     break;
                 }
-                if (maxConnections == 0 || used.size() < maxConnections)
+                if (refillExecutor != null)
+                {
+                    // A background create failed and none is in progress:
+                    // report the failure rather than retrying forever.
+                    if (createFailures != failuresAtStart && pendingCreates == 0)
+                        throw lastCreateFailure;
+
+                    ++waiters;
+                    try
+                    {
+                        scheduleRefill();
+                        // Wake up every second at a minimum
+                        lock.wait(1000L);
+                    }
+                    catch (InterruptedException e)
+                    {
+                    }
+                    finally
+                    {
+                        --waiters;
+                    }
+                }
+                else if (maxConnections == 0 || used.size() < maxConnections)
                 {
-                    pc = source.getPooledConnection();
+                    pc = createPooledConnection();
                     used.push(pc);
                     break;
                 }
@@ -440,6 +759,8 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
                     }
                 }
             }
+            // Replace the connection just taken.
+            scheduleRefill();
         }
         pc.addConnectionEventListener(connectionEventListener);
         return pc.getConnection();
@@ -490,6 +811,7 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
                         }
                         used.remove(event.getSource());
                         // We're now at least 1 connection under the max
+                        scheduleRefill();
                         lock.notify();
                     }
                 }
@@ -511,6 +833,18 @@ public abstract class AbstractJdbc23PoolingDataSource extends BaseDataSource
         {
             ref.add(new StringRefAddr("maxConnections", Integer.toString(maxConnections)));
         }
+        if (minIdleConnections > 0)
+        {
+            ref.add(new StringRefAddr("minIdleConnections", Integer.toString(minIdleConnections)));
+        }
+        if (refillThreads > 0)
+        {
+            ref.add(new StringRefAddr("refillThreads", Integer.toString(refillThreads)));
+        }
+        if (warmUpStatements != null)
+        {
+            ref.add(new StringRefAddr("warmUpStatements", warmUpStatements));
+        }
         return ref;
     }
 }
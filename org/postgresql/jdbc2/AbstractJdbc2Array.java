@@ -7,6 +7,7 @@
 */
 package org.postgresql.jdbc2;
 
+import org.postgresql.PGArray;
 import org.postgresql.core.*;
 import org.postgresql.util.ByteConverter;
 import org.postgresql.util.PSQLException;
@@ -37,7 +38,7 @@ import java.util.Map;
  *
  * @see ResultSet#getArray
  */
-public abstract class AbstractJdbc2Array
+public abstract class AbstractJdbc2Array implements PGArray
 {
 
     /**
@@ -168,7 +169,7 @@ public abstract class AbstractJdbc2Array
             throw new PSQLException(GT.tr("The array index is out of range: {0}, number of elements: {1}.", new Object[] { new Long(index + count), new Long(arrayList.size()) }), PSQLState.DATA_ERROR);
         }
 
-        return buildArray(arrayList, (int) index, count);
+        return buildArray(arrayList, (int) index, count, useObjects);
     }
 
     private Object readBinaryArray(int index, int count) throws SQLException {
@@ -227,6 +228,9 @@ public abstract class AbstractJdbc2Array
                     case Oid.FLOAT8:
                         arr[i] = new Double(ByteConverter.float8(fieldBytes, pos));
                         break;
+                    case Oid.BOOL:
+                        arr[i] = Boolean.valueOf(fieldBytes[pos] != 0);
+                        break;
                     case Oid.TEXT:
                     case Oid.VARCHAR:
                         Encoding encoding = connection.getEncoding();
@@ -352,6 +356,8 @@ public abstract class AbstractJdbc2Array
                 return Float.class;
             case Oid.FLOAT8:
                 return Double.class;
+            case Oid.BOOL:
+                return Boolean.class;
             case Oid.TEXT:
             case Oid.VARCHAR:
                 return String.class;
@@ -508,12 +514,32 @@ public abstract class AbstractJdbc2Array
         }
     }
 
+    public Object getPrimitiveArray() throws SQLException
+    {
+        if (fieldBytes != null)
+            return ArrayEncoding.decodePrimitive(fieldBytes);
+
+        buildArrayList();
+
+        if (arrayList.dimensionsCount > 1)
+            throw new PSQLException(GT.tr("Only one-dimensional arrays can be returned as primitive arrays."), PSQLState.DATA_TYPE_MISMATCH);
+        if (arrayList.contains(null))
+            throw new PSQLException(GT.tr("Arrays containing NULL cannot be returned as primitive arrays."), PSQLState.DATA_TYPE_MISMATCH);
+
+        Object ret = buildArray(arrayList, 0, arrayList.size(), false);
+        if (!ret.getClass().getComponentType().isPrimitive())
+            throw new PSQLException(GT.tr("Arrays of type {0} cannot be returned as primitive arrays.", getBaseTypeName()), PSQLState.DATA_TYPE_MISMATCH);
+        return ret;
+    }
+
     /**
      * Convert {@link ArrayList} to array.
      *
      * @param input list to be converted into array
+     * @param useObjects whether to return boxed rather than primitive
+     *   elements for one-dimensional arrays
      */
-    private Object buildArray (PgArrayList input, int index, int count) throws SQLException
+    private Object buildArray (PgArrayList input, int index, int count, boolean useObjects) throws SQLException
     {
 
         if (count < 0)
@@ -560,7 +586,7 @@ public abstract class AbstractJdbc2Array
 
                 if (dims > 1 || useObjects)
                 {
-                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1) : new Boolean(AbstractJdbc2ResultSet.toBoolean((String) o)));
+                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1, useObjects) : new Boolean(AbstractJdbc2ResultSet.toBoolean((String) o)));
                 }
                 else
                 {
@@ -589,7 +615,7 @@ public abstract class AbstractJdbc2Array
 
                 if (dims > 1 || useObjects)
                 {
-                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1) : new Integer(AbstractJdbc2ResultSet.toInt((String) o)));
+                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1, useObjects) : new Integer(AbstractJdbc2ResultSet.toInt((String) o)));
                 }
                 else
                 {
@@ -619,7 +645,7 @@ public abstract class AbstractJdbc2Array
 
                 if (dims > 1 || useObjects)
                 {
-                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1) : new Long(AbstractJdbc2ResultSet.toLong((String) o)));
+                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1, useObjects) : new Long(AbstractJdbc2ResultSet.toLong((String) o)));
                 }
                 else
                 {
@@ -636,7 +662,7 @@ public abstract class AbstractJdbc2Array
             for (; count > 0; count--)
             {
                 Object v = input.get(index++);
-                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1) : (v == null ? null : AbstractJdbc2ResultSet.toBigDecimal((String) v, -1));
+                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1, useObjects) : (v == null ? null : AbstractJdbc2ResultSet.toBigDecimal((String) v, -1));
             }
         }
 
@@ -660,7 +686,7 @@ public abstract class AbstractJdbc2Array
 
                 if (dims > 1 || useObjects)
                 {
-                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1) : new Float(AbstractJdbc2ResultSet.toFloat((String) o)));
+                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1, useObjects) : new Float(AbstractJdbc2ResultSet.toFloat((String) o)));
                 }
                 else
                 {
@@ -689,7 +715,7 @@ public abstract class AbstractJdbc2Array
 
                 if (dims > 1 || useObjects)
                 {
-                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1) : new Double(AbstractJdbc2ResultSet.toDouble((String) o)));
+                    oa[length++] = o == null ? null : (dims > 1 ? buildArray((PgArrayList) o, 0, -1, useObjects) : new Double(AbstractJdbc2ResultSet.toDouble((String) o)));
                 }
                 else
                 {
@@ -706,7 +732,7 @@ public abstract class AbstractJdbc2Array
             for (; count > 0; count--)
             {
                 Object v = input.get(index++);
-                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1) : v;
+                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1, useObjects) : v;
             }
         }
 
@@ -718,7 +744,7 @@ public abstract class AbstractJdbc2Array
             for (; count > 0; count--)
             {
                 Object v = input.get(index++);
-                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1) : (v == null ? null : connection.getTimestampUtils().toDate(null, (String) v));
+                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1, useObjects) : (v == null ? null : connection.getTimestampUtils().toDate(null, (String) v));
             }
         }
 
@@ -730,7 +756,7 @@ public abstract class AbstractJdbc2Array
             for (; count > 0; count--)
             {
                 Object v = input.get(index++);
-                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1) : (v == null ? null : connection.getTimestampUtils().toTime(null, (String) v));
+                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1, useObjects) : (v == null ? null : connection.getTimestampUtils().toTime(null, (String) v));
             }
         }
 
@@ -742,7 +768,7 @@ public abstract class AbstractJdbc2Array
             for (; count > 0; count--)
             {
                 Object v = input.get(index++);
-                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1) : (v == null ? null : connection.getTimestampUtils().toTimestamp(null, (String) v));
+                oa[length++] = dims > 1 && v != null ? buildArray((PgArrayList) v, 0, -1, useObjects) : (v == null ? null : connection.getTimestampUtils().toTimestamp(null, (String) v));
             }
         }
 
@@ -757,7 +783,7 @@ public abstract class AbstractJdbc2Array
             for (; count > 0; count--)
             {
                 Object v = input.get(index++);
-                oa[length++] = (dims > 1 && v != null) ? buildArray((PgArrayList) v, 0, -1)
+                oa[length++] = (dims > 1 && v != null) ? buildArray((PgArrayList) v, 0, -1, useObjects)
                         : (v == null ? null : arrAssistant.buildElement((String) v));
             }
         }
@@ -879,6 +905,20 @@ public abstract class AbstractJdbc2Array
 
     public String toString()
     {
+        if (fieldString == null && fieldBytes != null)
+        {
+            // Binary arrays are only rendered as text when asked to.
+            try
+            {
+                StringBuffer sb = new StringBuffer();
+                ArrayEncoding.appendLiteral(sb, readBinaryArray(1, 0), connection.getTypeInfo().getArrayDelimiter(oid));
+                fieldString = sb.toString();
+            }
+            catch (SQLException sqle)
+            {
+                return null;
+            }
+        }
         return fieldString;
     }
 
@@ -15,7 +15,12 @@ import java.util.*;
 import org.postgresql.core.*;
 
 import org.postgresql.DriverBase;
+import org.postgresql.PGMetrics;
 import org.postgresql.PGNotification;
+import org.postgresql.PGNotificationListener;
+import org.postgresql.PGQueryFuture;
+import org.postgresql.PGQueryListener;
+import org.postgresql.PGStatement;
 import org.postgresql.fastpath.Fastpath;
 import org.postgresql.largeobject.LargeObjectManager;
 import org.postgresql.util.*;
@@ -64,6 +69,14 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
 
     // Default statement prepare threshold.
     protected int prepareThreshold;
+    // How long the notification dispatcher holds the connection per wait.
+    private int notificationWaitMillis;
+    // Delivers notifications to listeners; created on demand.
+    private NotificationDispatcher notificationDispatcher;
+    // Name of the MBean publishing this connection's metrics, if any.
+    private javax.management.ObjectName metricsMBean;
+    // Statement descriptions shared with other connections, if any.
+    private DescriptionCache descriptionCache;
     // Connection's autocommit state.
     public boolean autoCommit = true;
     // Connection's readonly state.
@@ -72,6 +85,9 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
     // Bind String to UNSPECIFIED or VARCHAR?
     public final boolean bindStringAsVarchar;
 
+    // Return hstore values as lazily decoded read-only maps?
+    private final boolean lazyHStore;
+
     // Current warnings; there might be more on protoConnection too.
     public SQLWarning firstWarning = null;
 
@@ -108,12 +124,19 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
             }
         }
 
+        LogHandler logHandler = getLogHandler(info.getProperty("logHandler"));
+        if (logHandler instanceof JdkLogHandler && connectionLogLevel == null)
+            logLevel = Math.max(logLevel, ((JdkLogHandler) logHandler).getLogLevel(null));
+        Map categoryLevels = parseCategoryLevels(info.getProperty("logCategories"));
+        if (Boolean.valueOf(info.getProperty("logAsync")).booleanValue())
+            logHandler = AsyncLogHandler.forHandler(logHandler);
+
         synchronized (AbstractJdbc2Connection.class) {
-            logger = new Logger(nextConnectionID++);
+            logger = new Logger(nextConnectionID++, logHandler, categoryLevels);
             logger.setLogLevel(logLevel);
         }
 
-        if (logLevel > 0)
+        if ((logLevel > 0 || maxLevel(categoryLevels) > 0) && logHandler == DriverManagerLogHandler.INSTANCE)
             enableDriverManagerLogging();
 
         prepareThreshold = 5;
@@ -126,6 +149,18 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
         catch (Exception e)
         {
         }
+
+        notificationWaitMillis = 100;
+        try
+        {
+            notificationWaitMillis = Integer.parseInt(info.getProperty("notificationWaitMillis", "100"));
+            if (notificationWaitMillis < 1)
+                notificationWaitMillis = 1;
+        }
+        catch (Exception e)
+        {
+        }
+
         boolean binaryTransfer = true;
         try
         {
@@ -202,8 +237,10 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
             binaryOids.remove(Oid.TEXT_ARRAY);
         }
 
-        binaryOids.addAll(getOidSet(info.getProperty("binaryTransferEnable", "")));
-        binaryOids.removeAll(getOidSet(info.getProperty("binaryTransferDisable", "")));
+        Set<String> binaryEnableTypes = new HashSet<String>();
+        Set<String> binaryDisableTypes = new HashSet<String>();
+        binaryOids.addAll(getOidSet(info.getProperty("binaryTransferEnable", ""), binaryEnableTypes));
+        binaryOids.removeAll(getOidSet(info.getProperty("binaryTransferDisable", ""), binaryDisableTypes));
 
         // split for receive and send for better control
         useBinarySendForOids = new HashSet<Integer>();
@@ -247,6 +284,8 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
             bindStringAsVarchar = haveMinimumCompatibleVersion("8.0");
         }
 
+        lazyHStore = Boolean.valueOf(info.getProperty("lazyHStore", "false")).booleanValue();
+
         // Initialize timestamp stuff
         if (isFoundationDBServer()) {
             // false to timezones on times, false to seconds on time zones 
@@ -274,18 +313,66 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
         _typeCache = createTypeInfo(this, unknownLength);
         initObjectTypes(info);
 
+        // Extension types such as hstore have no fixed oid, so their names
+        // can only be resolved once the type cache can ask the server.
+        if (!binaryEnableTypes.isEmpty() || !binaryDisableTypes.isEmpty()) {
+            for (String typeName : binaryEnableTypes) {
+                int oid = _typeCache.getPGType(typeName);
+                if (oid == Oid.UNSPECIFIED)
+                    throw new PSQLException(GT.tr("oid type {0} not known and not a number", typeName), PSQLState.INVALID_PARAMETER_VALUE);
+                useBinarySendForOids.add(oid);
+                useBinaryReceiveForOids.add(oid);
+            }
+            for (String typeName : binaryDisableTypes) {
+                int oid = _typeCache.getPGType(typeName);
+                if (oid == Oid.UNSPECIFIED)
+                    throw new PSQLException(GT.tr("oid type {0} not known and not a number", typeName), PSQLState.INVALID_PARAMETER_VALUE);
+                useBinarySendForOids.remove(oid);
+                useBinaryReceiveForOids.remove(oid);
+            }
+            protoConnection.setBinaryReceiveOids(useBinaryReceiveForOids);
+
+            if (logger.logDebug())
+            {
+                logger.debug("    types using binary send = " + oidsToString(useBinarySendForOids));
+                logger.debug("    types using binary receive = " + oidsToString(useBinaryReceiveForOids));
+            }
+        }
+
+        String queryListener = info.getProperty("queryListener");
+        if (queryListener != null) {
+            try {
+                addQueryListener((PGQueryListener) Class.forName(queryListener).newInstance());
+            } catch (Exception e) {
+                throw new PSQLException(GT.tr("The query listener class {0} could not be instantiated.", queryListener), PSQLState.CONNECTION_FAILURE, e);
+            }
+        }
+
+        if (Boolean.valueOf(info.getProperty("jmxMetrics")).booleanValue()) {
+            metricsMBean = ConnectionMetrics.registerMBean(getMetrics(), "Connection",
+                                                           protoConnection.getHostSpec() + "/" + protoConnection.getDatabase(),
+                                                           logger);
+        }
+
         if (Boolean.valueOf(info.getProperty("logUnclosedConnections")).booleanValue()) {
             openStackTrace = new Throwable("Connection was created at this point:");
             enableDriverManagerLogging();
         }
     }
 
-    private Set<Integer> getOidSet(String oidList) throws PSQLException {
+    /**
+     * @param typeNames receives the names that are neither numbers nor
+     *   known to {@link Oid}, to be looked up on the server
+     */
+    private Set<Integer> getOidSet(String oidList, Set<String> typeNames) throws PSQLException {
         Set oids = new HashSet();
         StringTokenizer tokenizer = new StringTokenizer(oidList, ",");
         while (tokenizer.hasMoreTokens()) {
-            String oid = tokenizer.nextToken();
-            oids.add(Oid.valueOf(oid));
+            String oid = tokenizer.nextToken().trim();
+            if (Oid.isKnown(oid))
+                oids.add(Oid.valueOf(oid));
+            else
+                typeNames.add(oid);
         }
         return oids;
     }
@@ -672,7 +759,13 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
      */
     public void close()
     {
+        synchronized (this) {
+            if (notificationDispatcher != null)
+                notificationDispatcher.stop();
+        }
         protoConnection.close();
+        ConnectionMetrics.unregisterMBean(metricsMBean, logger);
+        metricsMBean = null;
         openStackTrace = null;
     }
 
@@ -1200,6 +1293,60 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
         return (notifications.length == 0 ? null : notifications);
     }
 
+    public PGNotification[] getNotifications(int timeoutMillis) throws SQLException
+    {
+        checkClosed();
+        if (timeoutMillis < 0)
+            throw new PSQLException(GT.tr("Timeout must be a value greater than or equal to 0."), PSQLState.INVALID_PARAMETER_VALUE);
+
+        long deadline = (timeoutMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMillis);
+        PGNotification[] notifications;
+        for (;;)
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            boolean idle = getQueryExecutor().processNotifies((int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE)));
+            notifications = protoConnection.getNotifications();
+            if (notifications.length > 0 || !idle || System.currentTimeMillis() >= deadline)
+                break;
+        }
+        return (notifications.length == 0 ? null : notifications);
+    }
+
+    public synchronized void addNotificationListener(PGNotificationListener listener) throws SQLException
+    {
+        checkClosed();
+        if (notificationDispatcher == null)
+            notificationDispatcher = new NotificationDispatcher(getQueryExecutor(), protoConnection, logger, notificationWaitMillis);
+        notificationDispatcher.addListener(listener);
+    }
+
+    public synchronized void removeNotificationListener(PGNotificationListener listener)
+    {
+        if (notificationDispatcher != null)
+            notificationDispatcher.removeListener(listener);
+    }
+
+    protected abstract Array makeArray(int oid, byte[] fieldBytes) throws SQLException;
+    protected abstract Array makeArray(int oid, String fieldString) throws SQLException;
+
+    public Array createArrayOf(String typeName, Object elements) throws SQLException
+    {
+        checkClosed();
+        int oid = getTypeInfo().getPGArrayType(typeName);
+        if (oid == Oid.UNSPECIFIED)
+            throw new PSQLException(GT.tr("Unable to find server array type for provided name {0}.", typeName), PSQLState.INVALID_NAME);
+        if (elements == null || !elements.getClass().isArray())
+            throw new PSQLException(GT.tr("Cannot cast an instance of {0} to type {1}", new Object[]{elements == null ? "null" : elements.getClass().getName(), "Types.ARRAY"}), PSQLState.INVALID_PARAMETER_TYPE);
+
+        int elementOid = getTypeInfo().getPGArrayElement(oid);
+        if (binaryTransferSend(oid) && ArrayEncoding.canEncode(elementOid))
+            return makeArray(oid, ArrayEncoding.encode(this, elementOid, elements));
+
+        StringBuffer sb = new StringBuffer();
+        ArrayEncoding.appendLiteral(sb, elements, getTypeInfo().getArrayDelimiter(oid));
+        return makeArray(oid, sb.toString());
+    }
+
     //
     // Handler for transaction queries
     //
@@ -1259,6 +1406,62 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
         }
     }
 
+    // Handlers named by class, so that connections share one instance.
+    private static final Map logHandlers = new HashMap();
+
+    private static LogHandler getLogHandler(String name) throws SQLException
+    {
+        if (name == null || name.equals("driverManager"))
+            return DriverManagerLogHandler.INSTANCE;
+        if (name.equals("jdk"))
+            return JdkLogHandler.INSTANCE;
+
+        synchronized (logHandlers) {
+            LogHandler handler = (LogHandler) logHandlers.get(name);
+            if (handler == null) {
+                try {
+                    handler = (LogHandler) Class.forName(name).newInstance();
+                } catch (Exception e) {
+                    throw new PSQLException(GT.tr("The log handler class {0} could not be instantiated.", name), PSQLState.CONNECTION_FAILURE, e);
+                }
+                logHandlers.put(name, handler);
+            }
+            return handler;
+        }
+    }
+
+    /**
+     * Parse a list such as <code>protocol=2,connection=1</code>.
+     */
+    private static Map parseCategoryLevels(String value) throws SQLException
+    {
+        if (value == null)
+            return Collections.EMPTY_MAP;
+
+        Map levels = new HashMap();
+        StringTokenizer st = new StringTokenizer(value, ",");
+        while (st.hasMoreTokens()) {
+            String entry = st.nextToken().trim();
+            int eq = entry.indexOf('=');
+            try {
+                if (eq < 0)
+                    throw new NumberFormatException(entry);
+                levels.put(entry.substring(0, eq).trim(), Integer.valueOf(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException nfe) {
+                throw new PSQLException(GT.tr("Invalid log category level: {0}", entry), PSQLState.INVALID_PARAMETER_VALUE, nfe);
+            }
+        }
+        return levels;
+    }
+
+    private static int maxLevel(Map categoryLevels)
+    {
+        int max = 0;
+        for (Iterator i = categoryLevels.values().iterator(); i.hasNext(); )
+            max = Math.max(max, ((Integer) i.next()).intValue());
+        return max;
+    }
+
     public int getProtocolVersion()
     {
         return protoConnection.getProtocolVersion();
@@ -1269,6 +1472,11 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
         return bindStringAsVarchar;
     }
 
+    public boolean getLazyHStore()
+    {
+        return lazyHStore;
+    }
+
     private CopyManager copyManager = null;
     public CopyManager getCopyAPI() throws SQLException
     {
@@ -1286,6 +1494,85 @@ public abstract class AbstractJdbc2Connection implements BaseConnection
     {
     	return protoConnection.getBackendPID();
     }
+
+    public PGMetrics getMetrics()
+    {
+        return protoConnection.getMetrics();
+    }
+
+    public void addQueryListener(PGQueryListener listener)
+    {
+        getQueryExecutor().addQueryListener(listener);
+    }
+
+    public void removeQueryListener(PGQueryListener listener)
+    {
+        getQueryExecutor().removeQueryListener(listener);
+    }
+
+    public DescriptionCache getDescriptionCache()
+    {
+        return descriptionCache;
+    }
+
+    public void setDescriptionCache(DescriptionCache cache) throws SQLException
+    {
+        String searchPath = null;
+        if (cache != null)
+        {
+            // Statements mean different things under different search paths.
+            ResultSet rs = execSQLQuery(isFoundationDBServer() ? "SELECT CURRENT_SCHEMA" : "SHOW search_path");
+            try
+            {
+                if (rs.next())
+                    searchPath = rs.getString(1);
+            }
+            finally
+            {
+                rs.close();
+            }
+            if (searchPath == null)
+                searchPath = "";
+        }
+        descriptionCache = cache;
+        getQueryExecutor().setDescriptionCache(cache, searchPath);
+    }
+
+    public PGQueryFuture executeAsync(String sql, Object[] params) throws SQLException
+    {
+        final PreparedStatement ps = prepareStatement(sql);
+        PGQueryFuture future;
+        try
+        {
+            if (params != null)
+            {
+                for (int i = 0; i < params.length; ++i)
+                    ps.setObject(i + 1, params[i]);
+            }
+            future = ((PGStatement) ps).executeAsync();
+        }
+        catch (SQLException e)
+        {
+            ps.close();
+            throw e;
+        }
+
+        // The statement is only needed until its results are in; closing
+        // it leaves the future's result set open.
+        future.addListener(new Runnable() {
+            public void run() {
+                try
+                {
+                    ps.close();
+                }
+                catch (SQLException e)
+                {
+                    // Nothing to do; the statement is unusable anyway.
+                }
+            }
+        });
+        return future;
+    }
     
     public String getDriverVersion() 
     {
@@ -29,8 +29,10 @@ import org.postgresql.core.*;
 import org.postgresql.largeobject.*;
 import org.postgresql.util.ByteConverter;
 import org.postgresql.util.HStoreConverter;
+import org.postgresql.util.HStoreMap;
 import org.postgresql.util.PGobject;
 import org.postgresql.util.PGbytea;
+import org.postgresql.util.PGbyteaInputStream;
 import org.postgresql.util.PGtokenizer;
 import org.postgresql.util.PSQLException;
 import org.postgresql.util.PSQLState;
@@ -62,6 +64,7 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
     private Statement realStatement;    // the real statement we belong to (when using forced binary prepared statement test hack)
     protected final Field fields[];          // Field metadata for this resultset.
     protected final Query originalQuery;        // Query we originated from
+    private final int[] columnUsage;            // How each column is read, recorded in originalQuery; may be null
 
     protected final int maxRows;            // Maximum rows in this resultset (might be 0).
     protected final int maxFieldSize;       // Maximum field size in this resultset (might be 0).
@@ -86,6 +89,14 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
 
     private HashMap columnNameIndexMap; // Speed up findColumn by caching lookups
 
+    // Values decoded from cells of the current row, so that reading a column
+    // again does not decode it again. An entry is valid while the cell still
+    // holds the byte[] it was decoded from (updates replace the byte[]).
+    // Allocated on first use and cleared when the cursor moves.
+    private byte[][] decodedFrom;
+    private String[] decodedStrings;
+    private Object[] decodedObjects;
+
     private ResultSetMetaData rsMetaData;
 
     protected abstract ResultSetMetaData createMetaData() throws SQLException;
@@ -104,6 +115,7 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
                                   int rsType, int rsConcurrency) throws SQLException
     {
         this.originalQuery = originalQuery;
+        this.columnUsage = (originalQuery == null || fields == null ? null : originalQuery.getColumnUsage(fields.length));
         this.connection = (BaseConnection) statement.getConnection();
         this.statement = statement;
         this.fields = fields;
@@ -217,10 +229,14 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
                 return rs;
             }
             if ("hstore".equals(type)) {
+                byte[] value = this_row[columnIndex - 1];
+                if (connection.getLazyHStore()) {
+                    return HStoreConverter.view(value, isBinary(columnIndex), connection.getEncoding());
+                }
                 if (isBinary(columnIndex)) {
-                    return HStoreConverter.fromBytes(this_row[columnIndex - 1], connection.getEncoding());
+                    return HStoreConverter.fromBytes(value, connection.getEncoding());
                 }
-                return HStoreConverter.fromString(getString(columnIndex));
+                return HStoreConverter.fromText(value, connection.getEncoding());
             }
 
             // Caller determines what to do (JDBC3 overrides in this case)
@@ -341,11 +357,57 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
         if (wasNullFlag)
             return null;
 
+        // The Array keeps its parsed elements, so handing out the same
+        // instance again saves parsing the value again.
+        validateDecoded(i - 1);
+        if (decodedObjects[i - 1] instanceof Array)
+            return (Array) decodedObjects[i - 1];
+
+        Array array;
         int oid = fields[i - 1].getOID();
         if (isBinary(i)) {
-            return makeArray(oid, this_row[i - 1]);
+            array = makeArray(oid, this_row[i - 1]);
+        } else {
+            array = makeArray(oid, getFixedString(i));
+        }
+        // Shared with getObject, which must not see an Array for other types.
+        if (getSQLType(i) == Types.ARRAY)
+            decodedObjects[i - 1] = array;
+        return array;
+    }
+
+    /**
+     * Make the decoded value slots of the given column valid for the
+     * current contents of its cell.
+     *
+     * @param col the 0-based column index
+     */
+    private void validateDecoded(int col)
+    {
+        if (decodedFrom == null)
+        {
+            decodedFrom = new byte[fields.length][];
+            decodedStrings = new String[fields.length];
+            decodedObjects = new Object[fields.length];
         }
-        return makeArray(oid, getFixedString(i));
+
+        byte[] raw = this_row[col];
+        if (decodedFrom[col] != raw)
+        {
+            decodedFrom[col] = raw;
+            decodedStrings[col] = null;
+            decodedObjects[col] = null;
+        }
+    }
+
+    private void clearDecoded()
+    {
+        if (decodedFrom == null)
+            return;
+
+        java.util.Arrays.fill(decodedFrom, null);
+        java.util.Arrays.fill(decodedStrings, null);
+        java.util.Arrays.fill(decodedObjects, null);
     }
 
 
@@ -397,8 +459,20 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
             //As the spec/javadoc for this method indicate this is to be used for
             //large text values (i.e. LONGVARCHAR) PG doesn't have a separate
             //long string datatype, but with toast the text datatype is capable of
-            //handling very large values.  Thus the implementation ends up calling
-            //getString() since there is no current way to stream the value from the server
+            //handling very large values.  The value has already been received
+            //in full, but text values are decoded as they are read instead of
+            //being copied into a String first.
+            if (!isBinary(i) && !(maxFieldSize > 0 && isColumnTrimmable(i)))
+            {
+                try
+                {
+                    return connection.getEncoding().getDecodingReader(new ByteArrayInputStream(this_row[i - 1]));
+                }
+                catch (IOException ioe)
+                {
+                    throw new PSQLException(GT.tr("Invalid character data was found.  This is most likely caused by stored data containing characters that are invalid for the character set the database was created in.  The most common example of this is storing 8bit data in a SQL_ASCII database."), PSQLState.DATA_ERROR, ioe);
+                }
+            }
             return new CharArrayReader(getString(i).toCharArray());
         }
         else
@@ -1802,6 +1876,9 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
                 case Types.VARBINARY:
                     if (isBinary(columnIndex + 1)) {
                         rowBuffer[columnIndex] = (byte[]) valueObject;
+                    } else if (connection.haveMinimumServerVersion("9.0")) {
+                        // the format the server sends by default since 9.0
+                        rowBuffer[columnIndex] = PGbytea.toPGHexBytes((byte[]) valueObject);
                     } else {
                         try {
                             rowBuffer[columnIndex] = PGbytea.toPGString((byte[]) valueObject).getBytes("ISO-8859-1");
@@ -1824,6 +1901,9 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
         private SQLException error;
 
         public void handleResultRows(Query fromQuery, Field[] fields, List tuples, ResultCursor cursor) {
+            // Free the direct memory or file of the block being replaced.
+            if (tuples != AbstractJdbc2ResultSet.this.rows)
+                closeRows();
             AbstractJdbc2ResultSet.this.rows = tuples;
             AbstractJdbc2ResultSet.this.cursor = cursor;
         }
@@ -1941,6 +2021,7 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
     public void close() throws SQLException
     {
         //release resources held (memory for tuples)
+        closeRows();
         rows = null;        
         if (cursor != null) {
             cursor.close();
@@ -1948,6 +2029,14 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
         }
     }
 
+    private void closeRows()
+    {
+        if (rows instanceof SpillingRowList)
+            ((SpillingRowList) rows).close();
+        else if (rows instanceof OffHeapRowList)
+            ((OffHeapRowList) rows).close();
+    }
+
     public boolean wasNull() throws SQLException
     {
         checkClosed();
@@ -1956,10 +2045,22 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
 
     public String getString(int columnIndex) throws SQLException
     {
-        checkResultSet( columnIndex );
+        checkResultSet( columnIndex, Query.READ_AS_STRING );
         if (wasNullFlag)
             return null;
 
+        validateDecoded(columnIndex - 1);
+        String value = decodedStrings[columnIndex - 1];
+        if (value == null)
+        {
+            value = decodeString(columnIndex);
+            decodedStrings[columnIndex - 1] = value;
+        }
+        return value;
+    }
+
+    private String decodeString(int columnIndex) throws SQLException
+    {
         // varchar in binary is same as text, other binary fields are converted to their text format
         if (isBinary(columnIndex) && getSQLType(columnIndex) != Types.VARCHAR) {
             Object obj = internalGetObject(columnIndex, fields[columnIndex - 1]);
@@ -2547,11 +2648,13 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
             //As the spec/javadoc for this method indicate this is to be used for
             //large binary values (i.e. LONGVARBINARY) PG doesn't have a separate
             //long binary datatype, but with toast the bytea datatype is capable of
-            //handling very large values.  Thus the implementation ends up calling
-            //getBytes() since there is no current way to stream the value from the server
-            byte b[] = getBytes(columnIndex);
-            if (b != null)
-                return new ByteArrayInputStream(b);
+            //handling very large values.  The value has already been received
+            //in full, but it is decoded as it is read instead of into a copy.
+            byte raw[] = this_row[columnIndex - 1];
+            int limit = (!isBinary(columnIndex) && maxFieldSize > 0 && isColumnTrimmable(columnIndex)) ? maxFieldSize : -1;
+            if (!isBinary(columnIndex) && fields[columnIndex - 1].getOID() == Oid.BYTEA)
+                return new PGbyteaInputStream(raw, limit);
+            return new ByteArrayInputStream(raw, 0, (limit < 0 || raw.length < limit) ? raw.length : limit);
         }
         else
         {
@@ -2704,14 +2807,49 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
             return null;
         }
 
-        Object result = internalGetObject(columnIndex, field);
-        if (result != null)
-            return result;
+        validateDecoded(columnIndex - 1);
+        Object result = decodedObjects[columnIndex - 1];
+        if (result == null)
+        {
+            result = internalGetObject(columnIndex, field);
+            if (result == null)
+            {
+                if (isBinary(columnIndex)) {
+                    result = connection.getObject(getPGType(columnIndex), null, this_row[columnIndex - 1]);
+                } else {
+                    result = connection.getObject(getPGType(columnIndex), getString(columnIndex), null);
+                }
+            }
 
-        if (isBinary(columnIndex)) {
-            return connection.getObject(getPGType(columnIndex), null, this_row[columnIndex - 1]);
+            if (isCacheable(result))
+                decodedObjects[columnIndex - 1] = result;
         }
-        return connection.getObject(getPGType(columnIndex), getString(columnIndex), null);
+
+        // hstore values are mutable Maps; hand out a copy of the cached one.
+        if (result != null && result.getClass() == HashMap.class)
+            return new HashMap((Map) result);
+        return result;
+    }
+
+    /**
+     * @return true if a value returned by getObject may be handed out again
+     *   for the same cell, because the caller cannot modify it (or, for
+     *   HashMaps, because a copy is handed out)
+     */
+    private static boolean isCacheable(Object value)
+    {
+        return value instanceof String
+            || value instanceof Integer
+            || value instanceof Long
+            || value instanceof Short
+            || value instanceof Double
+            || value instanceof Float
+            || value instanceof BigDecimal
+            || value instanceof Boolean
+            || value instanceof java.util.UUID
+            || value instanceof Array
+            || value instanceof HStoreMap
+            || value != null && value.getClass() == HashMap.class;
     }
 
     public Object getObject(String columnName) throws SQLException
@@ -2858,6 +2996,20 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
      * @throws SQLException If state or column is invalid.
      */
     protected void checkResultSet( int column ) throws SQLException
+    {
+        checkResultSet(column, Query.READ_AS_VALUE);
+    }
+
+    /**
+     * Does what {@link #checkResultSet(int)} does, and records how the
+     * column is read so that later executions of the query can choose its
+     * result format.
+     *
+     * @param column The column number to check. Range starts from 1.
+     * @param usage One of the READ_AS_ flags of {@link Query}.
+     * @throws SQLException If state or column is invalid.
+     */
+    private void checkResultSet( int column, int usage ) throws SQLException
     {
         checkClosed();
         if ( this_row == null )
@@ -2865,6 +3017,8 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
                                     PSQLState.INVALID_CURSOR_STATE);
         checkColumnIndex(column);
         wasNullFlag = (this_row[column - 1] == null);
+        if (columnUsage != null && column <= columnUsage.length)
+            columnUsage[column - 1] |= usage;
     }
 
     /**
@@ -3046,9 +3200,21 @@ public abstract class AbstractJdbc2ResultSet implements BaseResultSet, org.postg
         return 0;  // SQL NULL
     }
 
-    private void initRowBuffer()
+    private void initRowBuffer() throws SQLException
     {
-        this_row = (byte[][]) rows.get(current_row);
+        clearDecoded();
+        try
+        {
+            this_row = (byte[][]) rows.get(current_row);
+        }
+        catch (IllegalStateException e)
+        {
+            // A row of a closed OffHeapRowList or SpillingRowList, or a
+            // spilled row that could not be read back.
+            if (e.getCause() instanceof IOException)
+                throw new PSQLException(GT.tr("An I/O error occurred while reading a result row."), PSQLState.IO_ERROR, e.getCause());
+            throw new PSQLException(GT.tr("This ResultSet is closed."), PSQLState.OBJECT_NOT_IN_STATE, e);
+        }
         // We only need a copy of the current row if we're going to
         // modify it via an updatable resultset.
         if (resultsetconcurrency == ResultSet.CONCUR_UPDATABLE) {
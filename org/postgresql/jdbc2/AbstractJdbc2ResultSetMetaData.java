@@ -194,6 +194,19 @@ public abstract class AbstractJdbc2ResultSetMetaData implements PGResultSetMetaD
 
         fieldInfoFetched = true;
 
+        // Use what another result, or another connection, looked up.
+        DescriptionCache cache = connection.getDescriptionCache();
+        int generation = 0;
+        boolean[] cached = new boolean[fields.length];
+        if (cache != null)
+        {
+            generation = cache.getGeneration();
+            for (int i=0; i<fields.length; i++) {
+                if (fields[i].getTableOid() != 0)
+                    cached[i] = cache.getColumn(fields[i]);
+            }
+        }
+
         StringBuffer sql = new StringBuffer();
         
         // Not supported in FoundationDB SQL Layer
@@ -215,7 +228,7 @@ public abstract class AbstractJdbc2ResultSetMetaData implements PGResultSetMetaD
             //
             boolean hasSourceInfo = false;
             for (int i=0; i<fields.length; i++) {
-                if (fields[i].getTableOid() == 0)
+                if (fields[i].getTableOid() == 0 || cached[i])
                     continue;
     
                 if (hasSourceInfo)
@@ -256,6 +269,8 @@ public abstract class AbstractJdbc2ResultSetMetaData implements PGResultSetMetaD
                     fields[i].setSchemaName(schemaName);
                     fields[i].setNullable(nullable);
                     fields[i].setAutoIncrement(autoIncrement);
+                    if (cache != null)
+                        cache.putColumn(fields[i], generation);
                 }
             }
         }
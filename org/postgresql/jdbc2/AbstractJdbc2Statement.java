@@ -16,11 +16,10 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TimerTask;
 import java.util.TimeZone;
 import java.util.Calendar;
 
-import org.postgresql.DriverBase;
+import org.postgresql.PGQueryFuture;
 import org.postgresql.largeobject.*;
 import org.postgresql.core.*;
 import org.postgresql.core.types.*;
@@ -31,6 +30,8 @@ import org.postgresql.util.PSQLException;
 import org.postgresql.util.PSQLState;
 import org.postgresql.util.PGobject;
 import org.postgresql.util.GT;
+import org.postgresql.util.StreamSpool;
+import org.postgresql.util.StreamWrapper;
 
 /**
  * This class defines methods of the jdbc2 specification.
@@ -46,7 +47,6 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     protected final int resultsettype;   // the resultset type to return (ResultSet.TYPE_xxx)
     protected final int concurrency;   // is it updateable or not?     (ResultSet.CONCUR_xxx)
     protected int fetchdirection = ResultSet.FETCH_FORWARD;  // fetch direction hint (currently ignored)
-    private volatile TimerTask cancelTimer=null;
 
     /**
      * Does the caller of execute/executeUpdate want generated keys for this
@@ -76,7 +76,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     /** Number of rows to get in a batch. */
     protected int fetchSize = 0;
 
-    /** Timeout (in seconds) for a query (not used) */
+    /** Timeout (in seconds) for a query, enforced by the QueryExecutor */
     protected int timeout = 0;
 
     protected boolean replaceProcessingEnabled = true;
@@ -133,6 +133,15 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     protected Object []callResult;
     protected int maxfieldSize = 0;
 
+    // Stream parameter values are collected until their length is known;
+    // this many bytes are kept in memory before spilling to a temporary file.
+    private static final int SPOOL_MEMORY_LIMIT = 1024 * 1024;
+
+    // The StreamSpool bound to each parameter, if any, and the spools
+    // that parameter lists waiting in the batch refer to.
+    private StreamSpool[] boundSpools = null;
+    private ArrayList batchSpools = null;
+
     public ResultSet createDriverResultSet(Field[] fields, List tuples)
     throws SQLException
     {
@@ -410,6 +419,28 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         return executeWithFlags(0);
     }
 
+    public PGQueryFuture executeAsync() throws SQLException
+    {
+        checkClosed();
+        if (preparedQuery == null)
+            throw new PSQLException(GT.tr("Can''t use query methods that take a query string on a PreparedStatement."),
+                                    PSQLState.WRONG_OBJECT_TYPE);
+        if (isFunction)
+            throw org.postgresql.Driver.notImplemented(this.getClass(), "executeAsync() with a function call");
+
+        // Pipelined statements are never server-prepared: preparing would
+        // need a round trip of its own.
+        int flags = QueryExecutor.QUERY_ONESHOT;
+        if (connection.getAutoCommit())
+            flags |= QueryExecutor.QUERY_SUPPRESS_BEGIN;
+        if (concurrency != ResultSet.CONCUR_READ_ONLY)
+            flags |= QueryExecutor.QUERY_NO_BINARY_TRANSFER;
+
+        QueryFuture future = new QueryFuture(new StatementResultHandler());
+        connection.getQueryExecutor().executeAsync(preparedQuery, preparedParameters, future, maxrows, flags);
+        return future;
+    }
+
     public boolean executeWithFlags(int flags) throws SQLException
     {
         checkClosed();
@@ -514,6 +545,10 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         if (fetchSize > 0 && !wantsScrollableResultSet() && !connection.getAutoCommit() && !wantsHoldableResultSet())
             flags |= QueryExecutor.QUERY_FORWARD_CURSOR;
 
+        // Scrollable results hold all their rows, which may be spilled.
+        if (wantsScrollableResultSet())
+            flags |= QueryExecutor.QUERY_SPILL_ROWS;
+
         if (wantsGeneratedKeysOnce || wantsGeneratedKeysAlways)
         {
             flags |= QueryExecutor.QUERY_BOTH_ROWS_AND_STATUS;
@@ -541,7 +576,11 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         if (concurrency != ResultSet.CONCUR_READ_ONLY)
             flags |= QueryExecutor.QUERY_NO_BINARY_TRANSFER;
 
-        if (ForceBinaryTransfers || (flags & QueryExecutor.QUERY_ONESHOT) == 0) {
+        // Named statements are not described first: the first execution
+        // sends Parse, Describe, Bind and Execute together and receives
+        // text, and later executions choose binary formats from the fields
+        // it described.
+        if (ForceBinaryTransfers) {
                 int flags2 = flags | QueryExecutor.QUERY_DESCRIBE_ONLY;
                 StatementResultHandler handler2 = new StatementResultHandler();
                 connection.getQueryExecutor().execute(queryToExecute, queryParameters, handler2, 0, 0, flags2);
@@ -553,21 +592,13 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
 
         StatementResultHandler handler = new StatementResultHandler();
         result = null;
-        try
-        {
-            
-        
         connection.getQueryExecutor().execute(queryToExecute,
                                               queryParameters,
                                               handler,
                                               maxrows,
                                               fetchSize,
-                                              flags);
-        }
-        finally
-        {
-            killTimer();
-        }
+                                              flags,
+                                              getQueryTimeoutMillis());
         result = firstUnclosedResult = handler.getResults();
 
         if (wantsGeneratedKeysOnce || wantsGeneratedKeysAlways)
@@ -718,29 +749,17 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             throw new PSQLException(GT.tr("Query timeout must be a value greater than or equals to 0."),
                                     PSQLState.INVALID_PARAMETER_VALUE);
 
-        if (seconds == 0) {
-            killTimer();
-            return;
-        }
-
-        cancelTimer = new TimerTask() {
-            public void run()
-            {
-                try {
-                    AbstractJdbc2Statement.this.cancel();
-                } catch (SQLException e) {
-                }
-                finally
-                {
-                    killTimer();
-                }
-            }
-        };
-        
-        DriverBase.addTimerTask( cancelTimer, seconds * 1000);
         timeout = seconds;
     }
 
+    /**
+     * @return the query timeout in milliseconds, as passed to the QueryExecutor
+     */
+    protected int getQueryTimeoutMillis()
+    {
+        return timeout > Integer.MAX_VALUE / 1000 ? Integer.MAX_VALUE : timeout * 1000;
+    }
+
     /**
      * This adds a warning to the warning chain.  We track the
      * tail of the warning chain as well to avoid O(N) behavior
@@ -859,13 +878,13 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         if (isClosed)
             return ;
 
-        killTimer();
-        
         closeForNextExecution();
 
         if (preparedQuery != null)
             preparedQuery.close();
 
+        releaseSpools(true);
+
         isClosed = true;
     }
 
@@ -1242,6 +1261,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         }
         if ( adjustIndex )
             parameterIndex--;
+        releaseSpool(parameterIndex);
         preparedParameters.setNull( parameterIndex, oid);
     }
 
@@ -1406,7 +1426,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         setString(parameterIndex, x, getStringType());
     }
 
-    private int getStringType() {
+    protected int getStringType() {
         return (connection.getStringVarcharFlag() ? Oid.VARCHAR : Oid.UNSPECIFIED);
     }
 
@@ -1418,6 +1438,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         {
             if ( adjustIndex )
                 parameterIndex--;
+            releaseSpool(parameterIndex);
             preparedParameters.setNull( parameterIndex, oid);
         }
         else
@@ -1453,6 +1474,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             //Version 7.2 supports the bytea datatype for byte arrays
             byte[] copy = new byte[x.length];
             System.arraycopy(x, 0, copy, 0, x.length);
+            releaseSpool(parameterIndex);
             preparedParameters.setBytea( parameterIndex, copy, 0, x.length);
         }
         else
@@ -1523,35 +1545,16 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         //As the spec/javadoc for this method indicate this is to be used for
         //large String values (i.e. LONGVARCHAR)  PG doesn't have a separate
         //long varchar datatype, but with toast all text datatypes are capable of
-        //handling very large values.  Thus the implementation ends up calling
-        //setString() since there is no current way to stream the value to the server
+        //handling very large values.  The value is re-encoded as UTF-8 while
+        //it is spooled and streamed to the server from there.
         try
         {
-            InputStreamReader l_inStream = new InputStreamReader(x, encoding);
-            char[] l_chars = new char[length];
-            int l_charsRead = 0;
-            while (true)
-            {
-                int n = l_inStream.read(l_chars, l_charsRead, length - l_charsRead);
-                if (n == -1)
-                    break;
-
-                l_charsRead += n;
-
-                if (l_charsRead == length)
-                    break;
-            }
-
-            setString(parameterIndex, new String(l_chars, 0, l_charsRead), Oid.VARCHAR);
+            setSpooledText(parameterIndex, new InputStreamReader(x, encoding), length, Oid.VARCHAR);
         }
         catch (UnsupportedEncodingException l_uee)
         {
             throw new PSQLException(GT.tr("The JVM claims not to support the {0} encoding.", encoding), PSQLState.UNEXPECTED_ERROR, l_uee);
         }
-        catch (IOException l_ioe)
-        {
-            throw new PSQLException(GT.tr("Provided InputStream failed."), PSQLState.UNEXPECTED_ERROR, l_ioe);
-        }
     }
 
     /*
@@ -1651,6 +1654,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             //long binary datatype, but with toast the bytea datatype is capable of
             //handling very large values.
 
+            releaseSpool(parameterIndex);
             preparedParameters.setBytea(parameterIndex, x, length);
         }
         else
@@ -1699,6 +1703,172 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     public void clearParameters() throws SQLException
     {
         preparedParameters.clear();
+
+        // Batched parameter lists may still refer to spooled values.
+        releaseSpools(false);
+    }
+
+    /**
+     * Bind a text parameter read from a Reader, encoding it as UTF-8 into a
+     * {@link StreamSpool} so that only a bounded amount is held in memory.
+     *
+     * @param parameterIndex the first parameter is 1...
+     * @param x the reader to read
+     * @param length the number of characters to read, or -1 to read to the
+     *   end of the reader
+     * @param oid the type to bind the value as
+     */
+    protected void setSpooledText(int parameterIndex, Reader x, long length, int oid) throws SQLException
+    {
+        checkClosed();
+
+        if (x == null)
+        {
+            setNull(parameterIndex, Types.VARCHAR);
+            return ;
+        }
+
+        StreamSpool spool = new StreamSpool(SPOOL_MEMORY_LIMIT);
+        try
+        {
+            spool.copyFrom(x, length);
+            preparedParameters.setText(parameterIndex, spool.toStreamWrapper(), oid);
+        }
+        catch (IOException l_ioe)
+        {
+            spool.release();
+            throw new PSQLException(GT.tr("Provided Reader failed."), PSQLState.UNEXPECTED_ERROR, l_ioe);
+        }
+        bindSpool(parameterIndex, spool);
+    }
+
+    /**
+     * Bind a bytea parameter read from an InputStream of unknown length,
+     * spooling it through a {@link StreamSpool} to find the length.
+     *
+     * @param parameterIndex the first parameter is 1...
+     * @param x the stream to read
+     * @param length the maximum number of bytes to read, or -1 to read to
+     *   the end of the stream
+     */
+    protected void setSpooledBytea(int parameterIndex, InputStream x, long length) throws SQLException
+    {
+        checkClosed();
+
+        if (x == null)
+        {
+            setNull(parameterIndex, Types.VARBINARY);
+            return ;
+        }
+
+        StreamSpool spool = new StreamSpool(SPOOL_MEMORY_LIMIT);
+        try
+        {
+            spool.copyFrom(x, length);
+            preparedParameters.setBytea(parameterIndex, spool.toStreamWrapper());
+        }
+        catch (IOException l_ioe)
+        {
+            spool.release();
+            throw new PSQLException(GT.tr("Provided InputStream failed."), PSQLState.UNEXPECTED_ERROR, l_ioe);
+        }
+        bindSpool(parameterIndex, spool);
+    }
+
+    /**
+     * Record the spool now bound to a parameter, releasing the one it
+     * replaces.
+     */
+    private void bindSpool(int parameterIndex, StreamSpool spool)
+    {
+        releaseSpool(parameterIndex);
+        if (boundSpools == null)
+            boundSpools = new StreamSpool[preparedParameters.getParameterCount()];
+        boundSpools[parameterIndex - 1] = spool;
+    }
+
+    /**
+     * Release the spool bound to a parameter, if any, unless the batch
+     * still refers to it. Called whenever the parameter is bound again.
+     *
+     * @param parameterIndex the first parameter is 1...
+     */
+    protected void releaseSpool(int parameterIndex)
+    {
+        if (boundSpools == null || parameterIndex < 1 || parameterIndex > boundSpools.length)
+            return;
+
+        StreamSpool spool = boundSpools[parameterIndex - 1];
+        boundSpools[parameterIndex - 1] = null;
+        if (spool != null && (batchSpools == null || !batchSpools.contains(spool)))
+            spool.release();
+    }
+
+    /**
+     * Keep the spools of the parameters just added to the batch until the
+     * batch is executed or cleared.
+     */
+    private void retainSpoolsForBatch()
+    {
+        if (boundSpools == null)
+            return;
+
+        for (int i = 0; i < boundSpools.length; ++i)
+        {
+            StreamSpool spool = boundSpools[i];
+            if (spool == null)
+                continue;
+            if (batchSpools == null)
+                batchSpools = new ArrayList();
+            if (!batchSpools.contains(spool))
+                batchSpools.add(spool);
+        }
+    }
+
+    /**
+     * Release the spools only the batch referred to, once it has been
+     * executed or cleared.
+     */
+    private void releaseBatchSpools()
+    {
+        if (batchSpools == null)
+            return;
+
+        for (int i = 0; i < batchSpools.size(); ++i)
+        {
+            StreamSpool spool = (StreamSpool) batchSpools.get(i);
+            if (!isBound(spool))
+                spool.release();
+        }
+        batchSpools.clear();
+    }
+
+    private boolean isBound(StreamSpool spool)
+    {
+        if (boundSpools != null)
+        {
+            for (int i = 0; i < boundSpools.length; ++i)
+            {
+                if (boundSpools[i] == spool)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release the spools of the bound parameters; the batch's are kept
+     * unless <code>includeBatch</code> is set.
+     */
+    private void releaseSpools(boolean includeBatch)
+    {
+        if (boundSpools != null)
+        {
+            for (int i = 1; i <= boundSpools.length; ++i)
+                releaseSpool(i);
+        }
+        if (includeBatch)
+            releaseBatchSpools();
     }
 
     private PGType createInternalType( Object x, int targetType ) throws PSQLException
@@ -1872,6 +2042,8 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             case Types.ARRAY:
                 if (in instanceof Array)
                     setArray(parameterIndex, (Array)in);
+                else if (ArrayEncoding.primitiveArrayOid(in) != Oid.UNSPECIFIED)
+                    setPrimitiveArray(parameterIndex, in);
                 else
                     throw new PSQLException(GT.tr("Cannot cast an instance of {0} to type {1}", new Object[]{in.getClass().getName(),"Types.ARRAY"}), PSQLState.INVALID_PARAMETER_TYPE);
                 break;
@@ -1940,6 +2112,8 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             setString(parameterIndex, ((Character)x).toString());
         else if (x instanceof Map)
             setMap(parameterIndex, (Map)x);
+        else if (ArrayEncoding.primitiveArrayOid(x) != Oid.UNSPECIFIED)
+            setPrimitiveArray(parameterIndex, x);
         else
         {
             // Can't infer a type.
@@ -2314,6 +2488,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     {
         if(adjustIndex)
             paramIndex--;
+        releaseSpool(paramIndex);
         preparedParameters.setLiteralParameter(paramIndex, s, oid);
     }
 
@@ -2321,6 +2496,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     {
         if(adjustIndex)
             paramIndex--;
+        releaseSpool(paramIndex);
         preparedParameters.setBinaryParameter(paramIndex, b, oid);
     }
 
@@ -2333,6 +2509,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     {
         if (adjustIndex)
             paramIndex--;
+        releaseSpool(paramIndex);
         preparedParameters.setStringParameter( paramIndex, s, oid);
     }
 
@@ -2703,6 +2880,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             batchStatements.clear();
             batchParameters.clear();
         }
+        releaseBatchSpools();
     }
 
     //
@@ -2893,12 +3071,15 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             flags = QueryExecutor.QUERY_NO_RESULTS;
         }
 
-        // Only use named statements after we hit the threshold
+        // Only use named statements after we hit the threshold, or when a
+        // PreparedStatement batch repeats its query, so that it is parsed
+        // once rather than for every row. A threshold of 0 turns them off.
         if (preparedQuery != null)
         {
             m_useCount += queries.length;
         }
-        if (m_prepareThreshold == 0 || m_useCount < m_prepareThreshold) {
+        boolean repeated = (preparedQuery != null && queries.length > 1);
+        if (m_prepareThreshold == 0 || (m_useCount < m_prepareThreshold && !repeated)) {
             flags |= QueryExecutor.QUERY_ONESHOT;
         } else {
             preDescribe = wantsGeneratedKeysAlways && !queries[0].isStatementDescribed();
@@ -2926,12 +3107,20 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
 		handler = new BatchResultHandler(queries, parameterLists, updateCounts, wantsGeneratedKeysAlways);
 	}
         
-        connection.getQueryExecutor().execute(queries,
-                                              parameterLists,
-                                              handler,
-                                              maxrows,
-                                              fetchSize,
-                                              flags);
+        try
+        {
+            connection.getQueryExecutor().execute(queries,
+                                                  parameterLists,
+                                                  handler,
+                                                  maxrows,
+                                                  fetchSize,
+                                                  flags,
+                                                  getQueryTimeoutMillis());
+        }
+        finally
+        {
+            releaseBatchSpools();
+        }
 
         if (wantsGeneratedKeysAlways) {
             generatedKeys = new ResultWrapper(((BatchResultHandler)handler).getGeneratedKeys());
@@ -3009,6 +3198,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         // we need to create copies of our parameters, otherwise the values can be changed
         batchStatements.add(preparedQuery);
         batchParameters.add(preparedParameters.copy());
+        retainSpoolsForBatch();
     }
 
     public ResultSetMetaData getMetaData() throws SQLException
@@ -3036,6 +3226,26 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
         return null;
     }
 
+    /**
+     * Bind a primitive array such as <code>int[]</code> or
+     * <code>double[]</code> as the matching array type, in binary where the
+     * connection sends that type in binary.
+     */
+    private void setPrimitiveArray(int parameterIndex, Object x) throws SQLException
+    {
+        int oid = ArrayEncoding.primitiveArrayOid(x);
+        if (connection.binaryTransferSend(oid))
+        {
+            int elementOid = connection.getTypeInfo().getPGArrayElement(oid);
+            bindBytes(parameterIndex, ArrayEncoding.encode(connection, elementOid, x), oid);
+            return;
+        }
+
+        StringBuffer sb = new StringBuffer();
+        ArrayEncoding.appendLiteral(sb, x, connection.getTypeInfo().getArrayDelimiter(oid));
+        setString(parameterIndex, sb.toString(), oid);
+    }
+
     public void setArray(int i, java.sql.Array x) throws SQLException
     {
         checkClosed();
@@ -3143,29 +3353,9 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             //As the spec/javadoc for this method indicate this is to be used for
             //large text values (i.e. LONGVARCHAR) PG doesn't have a separate
             //long varchar datatype, but with toast all the text datatypes are capable of
-            //handling very large values.  Thus the implementation ends up calling
-            //setString() since there is no current way to stream the value to the server
-            char[] l_chars = new char[length];
-            int l_charsRead = 0;
-            try
-            {
-                while (true)
-                {
-                    int n = x.read(l_chars, l_charsRead, length - l_charsRead);
-                    if (n == -1)
-                        break;
-
-                    l_charsRead += n;
-
-                    if (l_charsRead == length)
-                        break;
-                }
-            }
-            catch (IOException l_ioe)
-            {
-                throw new PSQLException(GT.tr("Provided Reader failed."), PSQLState.UNEXPECTED_ERROR, l_ioe);
-            }
-            setString(i, new String(l_chars, 0, l_charsRead));
+            //handling very large values.  The value is encoded as UTF-8 while
+            //it is spooled and streamed to the server from there.
+            setSpooledText(i, x, length, getStringType());
         }
         else
         {
@@ -3264,6 +3454,7 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
             byte[] val = new byte[4];
             TimeZone tz = cal != null ? cal.getTimeZone() : null;
             connection.getTimestampUtils().toBinDate(tz, val, d);
+            releaseSpool(i);
             preparedParameters.setBinaryParameter(i, val, Oid.DATE);
             return;
         }
@@ -3443,14 +3634,4 @@ public abstract class AbstractJdbc2Statement implements BaseStatement
     {
         throw org.postgresql.Driver.notImplemented(this.getClass(), "registerOutParameter(int,int,String)");
     }
-
-    private synchronized void killTimer()
-    {
-        if ( cancelTimer != null )
-        {
-            cancelTimer.cancel();
-            cancelTimer = null;
-        }
-            
-    }
 }
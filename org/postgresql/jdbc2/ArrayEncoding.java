@@ -0,0 +1,449 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.jdbc2;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+import org.postgresql.util.ByteConverter;
+import org.postgresql.util.GT;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+/**
+ * Converts Java arrays to and from the binary array representation used by
+ * array_send and array_recv:
+ * <pre>
+ *   int4 ndim, int4 flags (1 = has nulls), int4 element oid,
+ *   ndim * (int4 dimension, int4 lower bound),
+ *   elements as (int4 length or -1 for NULL, data)
+ * </pre>
+ * One-dimensional primitive arrays are converted directly, without boxing
+ * their elements.
+ */
+class ArrayEncoding
+{
+    private ArrayEncoding()
+    {
+    }
+
+    /**
+     * @return true if arrays of the given element type can be encoded
+     */
+    static boolean canEncode(int elementOid)
+    {
+        switch (elementOid)
+        {
+            case Oid.INT2:
+            case Oid.INT4:
+            case Oid.INT8:
+            case Oid.FLOAT4:
+            case Oid.FLOAT8:
+            case Oid.BOOL:
+            case Oid.TEXT:
+            case Oid.VARCHAR:
+                return true;
+            default:
+                return ArrayAssistantRegistry.getAssistant(elementOid) instanceof BinaryArrayAssistant;
+        }
+    }
+
+    /**
+     * @return the array type to use for a primitive array, or
+     *   {@link Oid#UNSPECIFIED} if <code>array</code> is not one
+     */
+    static int primitiveArrayOid(Object array)
+    {
+        if (array instanceof int[])
+            return Oid.INT4_ARRAY;
+        if (array instanceof long[])
+            return Oid.INT8_ARRAY;
+        if (array instanceof short[])
+            return Oid.INT2_ARRAY;
+        if (array instanceof double[])
+            return Oid.FLOAT8_ARRAY;
+        if (array instanceof float[])
+            return Oid.FLOAT4_ARRAY;
+        if (array instanceof boolean[])
+            return Oid.BOOL_ARRAY;
+        return Oid.UNSPECIFIED;
+    }
+
+    /**
+     * Encode a Java array in binary form.
+     *
+     * @param connection the connection the value is for
+     * @param elementOid the element type of the target array type
+     * @param array a primitive array, or an array of objects and, for
+     *   multi-dimensional values, nested arrays of the same length
+     */
+    static byte[] encode(BaseConnection connection, int elementOid, Object array) throws SQLException
+    {
+        int size = fixedSize(elementOid);
+        if (size > 0 && array.getClass().getComponentType().isPrimitive())
+            return encodePrimitive(elementOid, size, array);
+
+        List dims = new ArrayList();
+        for (Object a = array; a != null && a.getClass().isArray(); )
+        {
+            int length = java.lang.reflect.Array.getLength(a);
+            dims.add(new Integer(length));
+            a = length > 0 && !a.getClass().getComponentType().isPrimitive() ? java.lang.reflect.Array.get(a, 0) : null;
+        }
+        if (((Integer) dims.get(0)).intValue() == 0)
+            dims.clear();
+
+        List elements = new ArrayList();
+        if (!dims.isEmpty())
+            flatten(connection, elementOid, array, dims, 0, elements);
+
+        int length = 12 + 8 * dims.size();
+        boolean hasNulls = false;
+        for (int i = 0; i < elements.size(); ++i)
+        {
+            byte[] element = (byte[]) elements.get(i);
+            length += 4 + (element == null ? 0 : element.length);
+            hasNulls |= element == null;
+        }
+
+        byte[] bytes = new byte[length];
+        int pos = writeHeader(bytes, dims.size(), hasNulls, elementOid);
+        for (int d = 0; d < dims.size(); ++d)
+        {
+            ByteConverter.int4(bytes, pos, ((Integer) dims.get(d)).intValue());
+            ByteConverter.int4(bytes, pos + 4, 1);
+            pos += 8;
+        }
+        for (int i = 0; i < elements.size(); ++i)
+        {
+            byte[] element = (byte[]) elements.get(i);
+            if (element == null)
+            {
+                ByteConverter.int4(bytes, pos, -1);
+                pos += 4;
+            }
+            else
+            {
+                ByteConverter.int4(bytes, pos, element.length);
+                System.arraycopy(element, 0, bytes, pos + 4, element.length);
+                pos += 4 + element.length;
+            }
+        }
+        return bytes;
+    }
+
+    private static void flatten(BaseConnection connection, int elementOid, Object array, List dims, int dimension, List elements) throws SQLException
+    {
+        int length = java.lang.reflect.Array.getLength(array);
+        if (length != ((Integer) dims.get(dimension)).intValue())
+            throw new PSQLException(GT.tr("Multi-dimensional arrays must have sub-arrays with matching dimensions."), PSQLState.INVALID_PARAMETER_VALUE);
+
+        for (int i = 0; i < length; ++i)
+        {
+            Object element = java.lang.reflect.Array.get(array, i);
+            if (dimension < dims.size() - 1)
+            {
+                if (element == null || !element.getClass().isArray())
+                    throw new PSQLException(GT.tr("Multi-dimensional arrays must have sub-arrays with matching dimensions."), PSQLState.INVALID_PARAMETER_VALUE);
+                flatten(connection, elementOid, element, dims, dimension + 1, elements);
+            }
+            else
+            {
+                elements.add(element == null ? null : encodeElement(connection, elementOid, element));
+            }
+        }
+    }
+
+    private static byte[] encodeElement(BaseConnection connection, int elementOid, Object element) throws SQLException
+    {
+        try
+        {
+            byte[] bytes;
+            switch (elementOid)
+            {
+                case Oid.INT2:
+                    bytes = new byte[2];
+                    ByteConverter.int2(bytes, 0, toInt(toLong(element), elementOid));
+                    return bytes;
+                case Oid.INT4:
+                    bytes = new byte[4];
+                    ByteConverter.int4(bytes, 0, toInt(toLong(element), elementOid));
+                    return bytes;
+                case Oid.INT8:
+                    bytes = new byte[8];
+                    ByteConverter.int8(bytes, 0, toLong(element));
+                    return bytes;
+                case Oid.FLOAT4:
+                    bytes = new byte[4];
+                    ByteConverter.float4(bytes, 0, (float) toDouble(element));
+                    return bytes;
+                case Oid.FLOAT8:
+                    bytes = new byte[8];
+                    ByteConverter.float8(bytes, 0, toDouble(element));
+                    return bytes;
+                case Oid.BOOL:
+                    boolean b = element instanceof Boolean ? ((Boolean) element).booleanValue() : AbstractJdbc2ResultSet.toBoolean(element.toString());
+                    return new byte[] { (byte) (b ? 1 : 0) };
+                case Oid.TEXT:
+                case Oid.VARCHAR:
+                    return connection.getEncoding().encode(element.toString());
+                default:
+                    ArrayAssistant assistant = ArrayAssistantRegistry.getAssistant(elementOid);
+                    if (assistant instanceof BinaryArrayAssistant)
+                        return ((BinaryArrayAssistant) assistant).buildBytes(element);
+                    throw new PSQLException(GT.tr("Unsupported binary encoding of {0}.", "array element " + elementOid), PSQLState.INVALID_PARAMETER_TYPE);
+            }
+        }
+        catch (IllegalArgumentException iae)
+        {
+            // NumberFormatException, or an invalid literal for an assistant
+            throw new PSQLException(GT.tr("Cannot cast an instance of {0} to type {1}", new Object[]{element.getClass().getName(), "array element " + elementOid}), PSQLState.INVALID_PARAMETER_TYPE, iae);
+        }
+        catch (IOException ioe)
+        {
+            throw new PSQLException(GT.tr("Unable to translate data into the desired encoding."), PSQLState.DATA_ERROR, ioe);
+        }
+    }
+
+    private static long toLong(Object element)
+    {
+        if (element instanceof Number)
+            return ((Number) element).longValue();
+        return Long.parseLong(element.toString().trim());
+    }
+
+    /**
+     * @return the value, if it is in the range of the int2 or int4 element
+     *   type given
+     */
+    private static int toInt(long value, int elementOid) throws PSQLException
+    {
+        boolean int2 = elementOid == Oid.INT2;
+        if (value < (int2 ? Short.MIN_VALUE : Integer.MIN_VALUE) || value > (int2 ? Short.MAX_VALUE : Integer.MAX_VALUE))
+            throw new PSQLException(GT.tr("Bad value for type {0} : {1}", new Object[]{int2 ? "int2" : "int4", Long.toString(value)}),
+                                    PSQLState.NUMERIC_VALUE_OUT_OF_RANGE);
+        return (int) value;
+    }
+
+    private static double toDouble(Object element)
+    {
+        if (element instanceof Number)
+            return ((Number) element).doubleValue();
+        return Double.parseDouble(element.toString().trim());
+    }
+
+    private static int fixedSize(int elementOid)
+    {
+        switch (elementOid)
+        {
+            case Oid.BOOL:
+                return 1;
+            case Oid.INT2:
+                return 2;
+            case Oid.INT4:
+            case Oid.FLOAT4:
+                return 4;
+            case Oid.INT8:
+            case Oid.FLOAT8:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    private static int writeHeader(byte[] bytes, int dimensions, boolean hasNulls, int elementOid)
+    {
+        ByteConverter.int4(bytes, 0, dimensions);
+        ByteConverter.int4(bytes, 4, hasNulls ? 1 : 0);
+        ByteConverter.int4(bytes, 8, elementOid);
+        return 12;
+    }
+
+    private static byte[] encodePrimitive(int elementOid, int size, Object array) throws SQLException
+    {
+        int n = java.lang.reflect.Array.getLength(array);
+        byte[] bytes = new byte[12 + (n == 0 ? 0 : 8 + n * (4 + size))];
+        int pos = writeHeader(bytes, n == 0 ? 0 : 1, false, elementOid);
+        if (n == 0)
+            return bytes;
+
+        ByteConverter.int4(bytes, pos, n);
+        ByteConverter.int4(bytes, pos + 4, 1);
+        pos += 8;
+
+        if (array instanceof boolean[])
+        {
+            if (elementOid != Oid.BOOL)
+                throw cannotCast(array, elementOid);
+            boolean[] values = (boolean[]) array;
+            for (int i = 0; i < n; ++i, pos += 5)
+            {
+                ByteConverter.int4(bytes, pos, 1);
+                bytes[pos + 4] = (byte) (values[i] ? 1 : 0);
+            }
+            return bytes;
+        }
+
+        if (elementOid == Oid.BOOL)
+            throw cannotCast(array, elementOid);
+
+        if (array instanceof double[] || array instanceof float[])
+        {
+            if (elementOid != Oid.FLOAT4 && elementOid != Oid.FLOAT8)
+                throw cannotCast(array, elementOid);
+            double[] doubles = array instanceof double[] ? (double[]) array : null;
+            float[] floats = doubles == null ? (float[]) array : null;
+            for (int i = 0; i < n; ++i, pos += 4 + size)
+            {
+                ByteConverter.int4(bytes, pos, size);
+                double value = doubles != null ? doubles[i] : floats[i];
+                if (elementOid == Oid.FLOAT4)
+                    ByteConverter.float4(bytes, pos + 4, (float) value);
+                else
+                    ByteConverter.float8(bytes, pos + 4, value);
+            }
+            return bytes;
+        }
+
+        int[] ints = array instanceof int[] ? (int[]) array : null;
+        long[] longs = array instanceof long[] ? (long[]) array : null;
+        short[] shorts = array instanceof short[] ? (short[]) array : null;
+        if (ints == null && longs == null && shorts == null)
+            throw cannotCast(array, elementOid);
+        for (int i = 0; i < n; ++i, pos += 4 + size)
+        {
+            ByteConverter.int4(bytes, pos, size);
+            long value = ints != null ? ints[i] : (longs != null ? longs[i] : shorts[i]);
+            switch (elementOid)
+            {
+                case Oid.INT2:
+                    ByteConverter.int2(bytes, pos + 4, toInt(value, elementOid));
+                    break;
+                case Oid.INT4:
+                    ByteConverter.int4(bytes, pos + 4, toInt(value, elementOid));
+                    break;
+                case Oid.INT8:
+                    ByteConverter.int8(bytes, pos + 4, value);
+                    break;
+                case Oid.FLOAT4:
+                    ByteConverter.float4(bytes, pos + 4, (float) value);
+                    break;
+                default:
+                    ByteConverter.float8(bytes, pos + 4, (double) value);
+            }
+        }
+        return bytes;
+    }
+
+    private static PSQLException cannotCast(Object array, int elementOid)
+    {
+        return new PSQLException(GT.tr("Cannot cast an instance of {0} to type {1}", new Object[]{array.getClass().getName(), "array element " + elementOid}), PSQLState.INVALID_PARAMETER_TYPE);
+    }
+
+    /**
+     * Decode a one-dimensional binary array without NULL elements into a
+     * primitive array: <code>int[]</code> for int2 and int4,
+     * <code>long[]</code>, <code>float[]</code>, <code>double[]</code> or
+     * <code>boolean[]</code>.
+     */
+    static Object decodePrimitive(byte[] bytes) throws SQLException
+    {
+        int dimensions = ByteConverter.int4(bytes, 0);
+        int elementOid = ByteConverter.int4(bytes, 8);
+        if (dimensions > 1)
+            throw new PSQLException(GT.tr("Only one-dimensional arrays can be returned as primitive arrays."), PSQLState.DATA_TYPE_MISMATCH);
+
+        int n = dimensions == 0 ? 0 : ByteConverter.int4(bytes, 12);
+        int pos = dimensions == 0 ? 12 : 20;
+
+        Object result;
+        switch (elementOid)
+        {
+            case Oid.INT2:
+            case Oid.INT4:
+                result = new int[n];
+                break;
+            case Oid.INT8:
+                result = new long[n];
+                break;
+            case Oid.FLOAT4:
+                result = new float[n];
+                break;
+            case Oid.FLOAT8:
+                result = new double[n];
+                break;
+            case Oid.BOOL:
+                result = new boolean[n];
+                break;
+            default:
+                throw new PSQLException(GT.tr("Arrays of type {0} cannot be returned as primitive arrays.", new Integer(elementOid)), PSQLState.DATA_TYPE_MISMATCH);
+        }
+
+        for (int i = 0; i < n; ++i)
+        {
+            int len = ByteConverter.int4(bytes, pos);
+            pos += 4;
+            if (len == -1)
+                throw new PSQLException(GT.tr("Arrays containing NULL cannot be returned as primitive arrays."), PSQLState.DATA_TYPE_MISMATCH);
+
+            switch (elementOid)
+            {
+                case Oid.INT2:
+                    ((int[]) result)[i] = ByteConverter.int2(bytes, pos);
+                    break;
+                case Oid.INT4:
+                    ((int[]) result)[i] = ByteConverter.int4(bytes, pos);
+                    break;
+                case Oid.INT8:
+                    ((long[]) result)[i] = ByteConverter.int8(bytes, pos);
+                    break;
+                case Oid.FLOAT4:
+                    ((float[]) result)[i] = ByteConverter.float4(bytes, pos);
+                    break;
+                case Oid.FLOAT8:
+                    ((double[]) result)[i] = ByteConverter.float8(bytes, pos);
+                    break;
+                default:
+                    ((boolean[]) result)[i] = bytes[pos] != 0;
+            }
+            pos += len;
+        }
+        return result;
+    }
+
+    /**
+     * Build an array literal such as <code>{"1","2"}</code> from a Java
+     * array, for connections that do not send arrays in binary.
+     */
+    static void appendLiteral(StringBuffer sb, Object elements, char delim)
+    {
+        sb.append('{');
+
+        int nElements = java.lang.reflect.Array.getLength(elements);
+        for (int i=0; i<nElements; i++) {
+            if (i > 0) {
+                sb.append(delim);
+            }
+
+            Object o = java.lang.reflect.Array.get(elements, i);
+            if (o == null) {
+                sb.append("NULL");
+            } else if (o.getClass().isArray()) {
+                appendLiteral(sb, o, delim);
+            } else {
+                String s = o.toString();
+                AbstractJdbc2Array.escapeArrayElement(sb, s);
+            }
+        }
+        sb.append('}');
+    }
+}
@@ -0,0 +1,22 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.jdbc2;
+
+/**
+ * An {@link ArrayAssistant} that can also produce the binary form of an
+ * element, so that arrays of its type can be sent to the server in binary.
+ */
+public interface BinaryArrayAssistant extends ArrayAssistant {
+    /**
+     * build the binary bytes of an array element
+     *
+     * @param element a non-null element of {@link #baseType()} or its literal string
+     * @return the binary representation of the element
+     */
+    byte[] buildBytes(Object element);
+}
@@ -0,0 +1,153 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.jdbc2;
+
+import java.sql.SQLException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.postgresql.PGNotification;
+import org.postgresql.PGNotificationListener;
+import org.postgresql.core.Logger;
+import org.postgresql.core.ProtocolConnection;
+import org.postgresql.core.QueryExecutor;
+
+/**
+ * Background reader that delivers asynchronous notifications to registered
+ * listeners. While the connection is idle the reader thread waits on the
+ * socket in slices of <code>waitMillis</code>, without keeping other
+ * threads from the connection: one that executes a statement ends the wait
+ * straight away (see {@link QueryExecutor#processNotifies(int)}).
+ * Notifications picked up by statements executed in the meantime are
+ * queued by the protocol connection and delivered after the next slice.
+ */
+class NotificationDispatcher implements Runnable
+{
+    private final QueryExecutor executor;
+    private final ProtocolConnection protoConnection;
+    private final Logger logger;
+    private final int waitMillis;
+
+    private final CopyOnWriteArrayList listeners = new CopyOnWriteArrayList();
+
+    private Thread thread;
+
+    NotificationDispatcher(QueryExecutor executor, ProtocolConnection protoConnection, Logger logger, int waitMillis)
+    {
+        this.executor = executor;
+        this.protoConnection = protoConnection;
+        this.logger = logger;
+        this.waitMillis = waitMillis;
+    }
+
+    synchronized void addListener(PGNotificationListener listener)
+    {
+        if (listener == null)
+            throw new NullPointerException("listener");
+
+        listeners.addIfAbsent(listener);
+        if (thread == null)
+        {
+            thread = new Thread(this, "PostgreSQL JDBC driver notification dispatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    synchronized void removeListener(PGNotificationListener listener)
+    {
+        listeners.remove(listener);
+        if (listeners.isEmpty())
+            stop();
+    }
+
+    boolean hasListeners()
+    {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Stop the reader thread. It exits once its current wait finishes.
+     */
+    synchronized void stop()
+    {
+        thread = null;
+    }
+
+    private synchronized boolean isCurrent(Thread t)
+    {
+        return thread == t;
+    }
+
+    public void run()
+    {
+        Thread self = Thread.currentThread();
+
+        while (isCurrent(self) && !protoConnection.isClosed())
+        {
+            try
+            {
+                // While a transaction is open nothing can arrive; just
+                // check back later for notifications queued meanwhile.
+                if (!executor.processNotifies(waitMillis))
+                    Thread.sleep(waitMillis);
+            }
+            catch (InterruptedException ie)
+            {
+                // Re-check whether we have been stopped.
+            }
+            catch (SQLException sqle)
+            {
+                if (protoConnection.isClosed())
+                    break;
+
+                if (logger.logInfo())
+                    logger.info("Error waiting for notifications", sqle);
+
+                try
+                {
+                    Thread.sleep(waitMillis);
+                }
+                catch (InterruptedException ie)
+                {
+                }
+            }
+
+            dispatch();
+        }
+    }
+
+    private void dispatch()
+    {
+        PGNotification[] notifications;
+        try
+        {
+            notifications = protoConnection.getNotifications();
+        }
+        catch (SQLException sqle)
+        {
+            return;
+        }
+
+        for (int i = 0; i < notifications.length; ++i)
+        {
+            Object[] current = listeners.toArray();
+            for (int j = 0; j < current.length; ++j)
+            {
+                try
+                {
+                    ((PGNotificationListener) current[j]).notification(notifications[i]);
+                }
+                catch (RuntimeException re)
+                {
+                    if (logger.logInfo())
+                        logger.info("Notification listener threw an exception", re);
+                }
+            }
+        }
+    }
+}
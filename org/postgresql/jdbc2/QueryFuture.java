@@ -0,0 +1,144 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.jdbc2;
+
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.postgresql.PGQueryFuture;
+import org.postgresql.core.Field;
+import org.postgresql.core.Query;
+import org.postgresql.core.ResultCursor;
+import org.postgresql.core.ResultHandler;
+
+/**
+ * Collects the results of a pipelined statement through the statement's
+ * own result handler, and completes once the query executor calls
+ * handleCompletion.
+ */
+class QueryFuture implements PGQueryFuture, ResultHandler
+{
+    private final AbstractJdbc2Statement.StatementResultHandler results;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private List listeners = new ArrayList(); // null once complete
+    private Object value;
+    private SQLException error;
+
+    QueryFuture(AbstractJdbc2Statement.StatementResultHandler results)
+    {
+        this.results = results;
+    }
+
+    //
+    // ResultHandler
+    //
+
+    public void handleResultRows(Query fromQuery, Field[] fields, List tuples, ResultCursor cursor)
+    {
+        results.handleResultRows(fromQuery, fields, tuples, cursor);
+    }
+
+    public void handleCommandStatus(String status, int updateCount, long insertOID)
+    {
+        results.handleCommandStatus(status, updateCount, insertOID);
+    }
+
+    public void handleWarning(SQLWarning warning)
+    {
+        results.handleWarning(warning);
+    }
+
+    public void handleError(SQLException newError)
+    {
+        results.handleError(newError);
+    }
+
+    public void handleCompletion()
+    {
+        try
+        {
+            results.handleCompletion();
+            ResultWrapper result = results.getResults();
+            if (result != null)
+                value = (result.getResultSet() != null ? (Object) result.getResultSet() : new Integer(result.getUpdateCount()));
+        }
+        catch (SQLException e)
+        {
+            error = e;
+        }
+
+        List toRun;
+        synchronized (this)
+        {
+            toRun = listeners;
+            listeners = null;
+            done.countDown();
+        }
+        for (int i = 0; i < toRun.size(); ++i)
+            ((Runnable) toRun.get(i)).run();
+    }
+
+    //
+    // PGQueryFuture
+    //
+
+    public void addListener(Runnable listener)
+    {
+        synchronized (this)
+        {
+            if (listeners != null)
+            {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return false;
+    }
+
+    public boolean isCancelled()
+    {
+        return false;
+    }
+
+    public boolean isDone()
+    {
+        return done.getCount() == 0;
+    }
+
+    public Object get() throws InterruptedException, ExecutionException
+    {
+        done.await();
+        return result();
+    }
+
+    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if (!done.await(timeout, unit))
+            throw new TimeoutException();
+        return result();
+    }
+
+    private Object result() throws ExecutionException
+    {
+        if (error != null)
+            throw new ExecutionException(error);
+        return value;
+    }
+}
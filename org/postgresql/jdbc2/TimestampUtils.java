@@ -13,6 +13,7 @@ import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
 import java.util.SimpleTimeZone;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.postgresql.PGStatement;
 import org.postgresql.core.Oid;
@@ -31,6 +32,9 @@ public class TimestampUtils {
      */
     private static final int ONEDAY = 24 * 3600 * 1000;
 
+    // Guards sbuf, defaultCal and calCache, which conversions share.
+    private final ReentrantLock lock = new ReentrantLock();
+
     private StringBuffer sbuf = new StringBuffer();
 
     private Calendar defaultCal = new GregorianCalendar();
@@ -315,200 +319,239 @@ public class TimestampUtils {
     *
     * @throws SQLException if there is a problem parsing s.
     **/
-    public synchronized Timestamp toTimestamp(Calendar cal, String s) throws SQLException
+    public Timestamp toTimestamp(Calendar cal, String s) throws SQLException
     {
-        if (s == null)
-            return null;
+        lock.lock();
+        try
+        {
+            if (s == null)
+                return null;
 
-        int slen = s.length();
+            int slen = s.length();
 
-        // convert postgres's infinity values to internal infinity magic value
-        if (slen == 8 && s.equals("infinity")) {
-            return new Timestamp(PGStatement.DATE_POSITIVE_INFINITY);
-        }
+            // convert postgres's infinity values to internal infinity magic value
+            if (slen == 8 && s.equals("infinity")) {
+                return new Timestamp(PGStatement.DATE_POSITIVE_INFINITY);
+            }
 
-        if (slen == 9 && s.equals("-infinity")) {
-            return new Timestamp(PGStatement.DATE_NEGATIVE_INFINITY);
-        }
+            if (slen == 9 && s.equals("-infinity")) {
+                return new Timestamp(PGStatement.DATE_NEGATIVE_INFINITY);
+            }
 
-        if (cal == null)
-            cal = defaultCal;
+            if (cal == null)
+                cal = defaultCal;
 
-        ParsedTimestamp ts = loadCalendar(cal, s, "timestamp");
-        Calendar useCal = (ts.tz == null ? cal : ts.tz);
-        useCal.set(Calendar.ERA,          ts.era);
-        useCal.set(Calendar.YEAR,         ts.year);
-        useCal.set(Calendar.MONTH,        ts.month-1);
-        useCal.set(Calendar.DAY_OF_MONTH, ts.day);
-        useCal.set(Calendar.HOUR_OF_DAY,  ts.hour);
-        useCal.set(Calendar.MINUTE,       ts.minute);
-        useCal.set(Calendar.SECOND,       ts.second);
-        useCal.set(Calendar.MILLISECOND,  0);
+            ParsedTimestamp ts = loadCalendar(cal, s, "timestamp");
+            Calendar useCal = (ts.tz == null ? cal : ts.tz);
+            useCal.set(Calendar.ERA,          ts.era);
+            useCal.set(Calendar.YEAR,         ts.year);
+            useCal.set(Calendar.MONTH,        ts.month-1);
+            useCal.set(Calendar.DAY_OF_MONTH, ts.day);
+            useCal.set(Calendar.HOUR_OF_DAY,  ts.hour);
+            useCal.set(Calendar.MINUTE,       ts.minute);
+            useCal.set(Calendar.SECOND,       ts.second);
+            useCal.set(Calendar.MILLISECOND,  0);
         
-        Timestamp result = new Timestamp(useCal.getTime().getTime());
-        result.setNanos(ts.nanos);
-        showParse("timestamp", s, cal, result, useCal);
-        return result;
+            Timestamp result = new Timestamp(useCal.getTime().getTime());
+            result.setNanos(ts.nanos);
+            showParse("timestamp", s, cal, result, useCal);
+            return result;
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized Time toTime(Calendar cal, String s) throws SQLException
+    public Time toTime(Calendar cal, String s) throws SQLException
     {
-        if (s == null)
-            return null;
+        lock.lock();
+        try
+        {
+            if (s == null)
+                return null;
 
-        int slen = s.length();
+            int slen = s.length();
 
-        // infinity cannot be represented as Time
-        // so there's not much we can do here.
-        if ((slen == 8 && s.equals("infinity")) || (slen == 9 && s.equals("-infinity"))) {
-            throw new PSQLException(GT.tr("Infinite value found for timestamp/date. This cannot be represented as time."),
-                                    PSQLState.DATETIME_OVERFLOW);
-        }
+            // infinity cannot be represented as Time
+            // so there's not much we can do here.
+            if ((slen == 8 && s.equals("infinity")) || (slen == 9 && s.equals("-infinity"))) {
+                throw new PSQLException(GT.tr("Infinite value found for timestamp/date. This cannot be represented as time."),
+                                        PSQLState.DATETIME_OVERFLOW);
+            }
 
-        if (cal == null)
-            cal = defaultCal;
+            if (cal == null)
+                cal = defaultCal;
 
-        ParsedTimestamp ts = loadCalendar(cal, s, "time");
+            ParsedTimestamp ts = loadCalendar(cal, s, "time");
         
-        Calendar useCal = (ts.tz == null ? cal : ts.tz);
-        useCal.set(Calendar.HOUR_OF_DAY,  ts.hour);
-        useCal.set(Calendar.MINUTE,       ts.minute);
-        useCal.set(Calendar.SECOND,       ts.second);
-        useCal.set(Calendar.MILLISECOND,  (ts.nanos + 500000) / 1000000);
+            Calendar useCal = (ts.tz == null ? cal : ts.tz);
+            useCal.set(Calendar.HOUR_OF_DAY,  ts.hour);
+            useCal.set(Calendar.MINUTE,       ts.minute);
+            useCal.set(Calendar.SECOND,       ts.second);
+            useCal.set(Calendar.MILLISECOND,  (ts.nanos + 500000) / 1000000);
         
-        if (ts.hasDate) {
-            // Rotate it into the requested timezone before we zero out the date
-            useCal.set(Calendar.ERA,          ts.era);
-            useCal.set(Calendar.YEAR,         ts.year);
-            useCal.set(Calendar.MONTH,        ts.month-1);
-            useCal.set(Calendar.DAY_OF_MONTH, ts.day);
-            cal.setTime(new Date(useCal.getTime().getTime()));
-            useCal = cal;
-        }
+            if (ts.hasDate) {
+                // Rotate it into the requested timezone before we zero out the date
+                useCal.set(Calendar.ERA,          ts.era);
+                useCal.set(Calendar.YEAR,         ts.year);
+                useCal.set(Calendar.MONTH,        ts.month-1);
+                useCal.set(Calendar.DAY_OF_MONTH, ts.day);
+                cal.setTime(new Date(useCal.getTime().getTime()));
+                useCal = cal;
+            }
         
-        useCal.set(Calendar.ERA,          GregorianCalendar.AD);
-        useCal.set(Calendar.YEAR,         1970);
-        useCal.set(Calendar.MONTH,        0);
-        useCal.set(Calendar.DAY_OF_MONTH, 1);                
+            useCal.set(Calendar.ERA,          GregorianCalendar.AD);
+            useCal.set(Calendar.YEAR,         1970);
+            useCal.set(Calendar.MONTH,        0);
+            useCal.set(Calendar.DAY_OF_MONTH, 1);                
         
-        Time result = new Time(useCal.getTime().getTime());
-        showParse("time", s, cal, result, useCal);
-        return result;
+            Time result = new Time(useCal.getTime().getTime());
+            showParse("time", s, cal, result, useCal);
+            return result;
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized Date toDate(Calendar cal, String s) throws SQLException
+    public Date toDate(Calendar cal, String s) throws SQLException
     {
-        if (s == null)
-            return null;
+        lock.lock();
+        try
+        {
+            if (s == null)
+                return null;
 
-        int slen = s.length();
+            int slen = s.length();
 
-        // convert postgres's infinity values to internal infinity magic value
-        if (slen == 8 && s.equals("infinity")) {
-            return new Date(PGStatement.DATE_POSITIVE_INFINITY);
-        }
+            // convert postgres's infinity values to internal infinity magic value
+            if (slen == 8 && s.equals("infinity")) {
+                return new Date(PGStatement.DATE_POSITIVE_INFINITY);
+            }
 
-        if (slen == 9 && s.equals("-infinity")) {
-            return new Date(PGStatement.DATE_NEGATIVE_INFINITY);
-        }
+            if (slen == 9 && s.equals("-infinity")) {
+                return new Date(PGStatement.DATE_NEGATIVE_INFINITY);
+            }
 
-        if (cal == null)
-            cal = defaultCal;
+            if (cal == null)
+                cal = defaultCal;
 
-        ParsedTimestamp ts = loadCalendar(cal, s, "date");
-        Calendar useCal = (ts.tz == null ? cal : ts.tz);
+            ParsedTimestamp ts = loadCalendar(cal, s, "date");
+            Calendar useCal = (ts.tz == null ? cal : ts.tz);
         
-        useCal.set(Calendar.ERA,          ts.era);
-        useCal.set(Calendar.YEAR,         ts.year);
-        useCal.set(Calendar.MONTH,        ts.month-1);
-        useCal.set(Calendar.DAY_OF_MONTH, ts.day);
+            useCal.set(Calendar.ERA,          ts.era);
+            useCal.set(Calendar.YEAR,         ts.year);
+            useCal.set(Calendar.MONTH,        ts.month-1);
+            useCal.set(Calendar.DAY_OF_MONTH, ts.day);
         
-        if (ts.hasTime) {
-            // Rotate it into the requested timezone before we zero out the time
-            useCal.set(Calendar.HOUR_OF_DAY,  ts.hour);
-            useCal.set(Calendar.MINUTE,       ts.minute);
-            useCal.set(Calendar.SECOND,       ts.second);
-            useCal.set(Calendar.MILLISECOND,  (ts.nanos + 500000) / 1000000);
-            cal.setTime(new Date(useCal.getTime().getTime()));
-            useCal = cal;
-        }
+            if (ts.hasTime) {
+                // Rotate it into the requested timezone before we zero out the time
+                useCal.set(Calendar.HOUR_OF_DAY,  ts.hour);
+                useCal.set(Calendar.MINUTE,       ts.minute);
+                useCal.set(Calendar.SECOND,       ts.second);
+                useCal.set(Calendar.MILLISECOND,  (ts.nanos + 500000) / 1000000);
+                cal.setTime(new Date(useCal.getTime().getTime()));
+                useCal = cal;
+            }
         
-        useCal.set(Calendar.HOUR_OF_DAY,  0);
-        useCal.set(Calendar.MINUTE,       0);
-        useCal.set(Calendar.SECOND,       0);
-        useCal.set(Calendar.MILLISECOND,  0);
+            useCal.set(Calendar.HOUR_OF_DAY,  0);
+            useCal.set(Calendar.MINUTE,       0);
+            useCal.set(Calendar.SECOND,       0);
+            useCal.set(Calendar.MILLISECOND,  0);
         
-        Date result = new Date(useCal.getTime().getTime());
-        showParse("date", s, cal, result, useCal);
-        return result;
+            Date result = new Date(useCal.getTime().getTime());
+            showParse("date", s, cal, result, useCal);
+            return result;
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized String toString(Calendar cal, Timestamp x) {
-        if (cal == null)
-            cal = defaultCal;
-
-        cal.setTime(x);
-        sbuf.setLength(0);
+    public String toString(Calendar cal, Timestamp x) {
+        lock.lock();
+        try {
+            if (cal == null)
+                cal = defaultCal;
+
+            cal.setTime(x);
+            sbuf.setLength(0);
+        
+            if (x.getTime() == PGStatement.DATE_POSITIVE_INFINITY) {
+                sbuf.append("infinity");
+            } else if (x.getTime() == PGStatement.DATE_NEGATIVE_INFINITY) {
+                sbuf.append("-infinity");
+            } else {
+                appendDate(sbuf, cal);
+                sbuf.append(' ');
+                appendTime(sbuf, cal, x.getNanos());
+                appendTimeZone(sbuf, cal);
+                appendEra(sbuf, cal);
+            }
         
-        if (x.getTime() == PGStatement.DATE_POSITIVE_INFINITY) {
-            sbuf.append("infinity");
-        } else if (x.getTime() == PGStatement.DATE_NEGATIVE_INFINITY) {
-            sbuf.append("-infinity");
-        } else {
-            appendDate(sbuf, cal);
-            sbuf.append(' ');
-            appendTime(sbuf, cal, x.getNanos());
-            appendTimeZone(sbuf, cal);
-            appendEra(sbuf, cal);
+            showString("timestamp", cal, x, sbuf.toString());        
+            return sbuf.toString();
+        } finally {
+            lock.unlock();
         }
-        
-        showString("timestamp", cal, x, sbuf.toString());        
-        return sbuf.toString();
     }
 
-    public synchronized String toString(Calendar cal, Date x) {
-        if (cal == null)
-            cal = defaultCal;
-
-        cal.setTime(x);
-        sbuf.setLength(0);
-        
-        if (x.getTime() == PGStatement.DATE_POSITIVE_INFINITY) {
-            sbuf.append("infinity");
-        } else if (x.getTime() == PGStatement.DATE_NEGATIVE_INFINITY) {
-            sbuf.append("-infinity");
-        } else {
-            appendDate(sbuf, cal);
-            appendEra(sbuf, cal);
-            appendTimeZone(sbuf, cal);
-        }
+    public String toString(Calendar cal, Date x) {
+        lock.lock();
+        try {
+            if (cal == null)
+                cal = defaultCal;
+
+            cal.setTime(x);
+            sbuf.setLength(0);
+        
+            if (x.getTime() == PGStatement.DATE_POSITIVE_INFINITY) {
+                sbuf.append("infinity");
+            } else if (x.getTime() == PGStatement.DATE_NEGATIVE_INFINITY) {
+                sbuf.append("-infinity");
+            } else {
+                appendDate(sbuf, cal);
+                appendEra(sbuf, cal);
+                appendTimeZone(sbuf, cal);
+            }
         
-        showString("date", cal, x, sbuf.toString());
+            showString("date", cal, x, sbuf.toString());
         
-        return sbuf.toString();
+            return sbuf.toString();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized String toString(Calendar cal, Time x) {
-        if (cal == null)
-            cal = defaultCal;
+    public String toString(Calendar cal, Time x) {
+        lock.lock();
+        try {
+            if (cal == null)
+                cal = defaultCal;
 
-        cal.setTime(x);
-        sbuf.setLength(0);
+            cal.setTime(x);
+            sbuf.setLength(0);
         
-        appendTime(sbuf, cal, cal.get(Calendar.MILLISECOND) * 1000000);
+            appendTime(sbuf, cal, cal.get(Calendar.MILLISECOND) * 1000000);
 
-        // The 'time' parser for <= 7.3 doesn't like timezones.
-        if (min74)
-            appendTimeZone(sbuf, cal);
+            // The 'time' parser for <= 7.3 doesn't like timezones.
+            if (min74)
+                appendTimeZone(sbuf, cal);
         
-        // FoundationDB time parser has no fractional seconds. 
-        if (isFoundationDBServer) {
-            sbuf.delete(sbuf.length()-7, sbuf.length());
-        }
+            // FoundationDB time parser has no fractional seconds. 
+            if (isFoundationDBServer) {
+                sbuf.delete(sbuf.length()-7, sbuf.length());
+            }
         
-        showString("time", cal, x, sbuf.toString());
+            showString("time", cal, x, sbuf.toString());
         
-        return sbuf.toString();
+            return sbuf.toString();
+        } finally {
+            lock.unlock();
+        }
     }
 
     private static void appendDate(StringBuffer sb, Calendar cal)
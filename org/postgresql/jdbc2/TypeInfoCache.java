@@ -13,6 +13,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Collections;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.ReentrantLock;
 import java.sql.Types;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -29,6 +30,11 @@ import org.postgresql.util.PSQLException;
 
 public class TypeInfoCache implements TypeInfo {
 
+    // Guards the maps below. Lookups of unknown types query the server
+    // while holding it, so it is a lock that a blocked virtual thread
+    // releases its carrier thread on, not the object's monitor.
+    private final ReentrantLock lock = new ReentrantLock();
+
     // pgname (String) -> java.sql.Types (Integer)
     private Map _pgNameToSQLType;
 
@@ -135,34 +141,50 @@ public class TypeInfoCache implements TypeInfo {
         _pgNameToJavaClass.put("hstore", Map.class.getName());
     }
 
-    public synchronized void addCoreType(String pgTypeName, Integer oid, Integer sqlType, String javaClass, Integer arrayOid)
+    public void addCoreType(String pgTypeName, Integer oid, Integer sqlType, String javaClass, Integer arrayOid)
     {
-        _pgNameToJavaClass.put(pgTypeName, javaClass);
-        _pgNameToOid.put(pgTypeName, oid);
-        _oidToPgName.put(oid, pgTypeName);
-        _pgArrayToPgType.put(arrayOid, oid);
-        _pgNameToSQLType.put(pgTypeName, sqlType);
-
-        // Currently we hardcode all core types array delimiter
-        // to a comma.  In a stock install the only exception is
-        // the box datatype and it's not a JDBC core type.
-        //
-        Character delim = new Character(',');
-        _arrayOidToDelimiter.put(oid, delim);
-
-        String pgArrayTypeName = "_" + pgTypeName;
-        _pgNameToJavaClass.put(pgArrayTypeName, "java.sql.Array");
-        _pgNameToSQLType.put(pgArrayTypeName, new Integer(Types.ARRAY));
+        lock.lock();
+        try
+        {
+            _pgNameToJavaClass.put(pgTypeName, javaClass);
+            _pgNameToOid.put(pgTypeName, oid);
+            _oidToPgName.put(oid, pgTypeName);
+            _pgArrayToPgType.put(arrayOid, oid);
+            _pgNameToSQLType.put(pgTypeName, sqlType);
+
+            // Currently we hardcode all core types array delimiter
+            // to a comma.  In a stock install the only exception is
+            // the box datatype and it's not a JDBC core type.
+            //
+            Character delim = new Character(',');
+            _arrayOidToDelimiter.put(oid, delim);
+
+            String pgArrayTypeName = "_" + pgTypeName;
+            _pgNameToJavaClass.put(pgArrayTypeName, "java.sql.Array");
+            _pgNameToSQLType.put(pgArrayTypeName, new Integer(Types.ARRAY));
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
 
-    public synchronized void addDataType(String type, Class klass) throws SQLException
+    public void addDataType(String type, Class klass) throws SQLException
     {
-        if (!PGobject.class.isAssignableFrom(klass))
-            throw new PSQLException(GT.tr("The class {0} does not implement org.postgresql.util.PGobject.", klass.toString()), PSQLState.INVALID_PARAMETER_TYPE);
-
-        _pgNameToPgObject.put(type, klass);
-        _pgNameToJavaClass.put(type, klass.getName());
+        lock.lock();
+        try
+        {
+            if (!PGobject.class.isAssignableFrom(klass))
+                throw new PSQLException(GT.tr("The class {0} does not implement org.postgresql.util.PGobject.", klass.toString()), PSQLState.INVALID_PARAMETER_TYPE);
+
+            _pgNameToPgObject.put(type, klass);
+            _pgNameToJavaClass.put(type, klass.getName());
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     public Iterator getPGTypeNamesWithSQLTypes()
@@ -175,221 +197,245 @@ public class TypeInfoCache implements TypeInfo {
         return getSQLType(getPGType(oid));
     }
 
-    public synchronized int getSQLType(String pgTypeName) throws SQLException
+    public int getSQLType(String pgTypeName) throws SQLException
     {
-        Integer i = (Integer)_pgNameToSQLType.get(pgTypeName);
-        if (i != null)
-            return i.intValue();
+        lock.lock();
+        try
+        {
+            Integer i = (Integer)_pgNameToSQLType.get(pgTypeName);
+            if (i != null)
+                return i.intValue();
 
-        Integer type = null;
+            Integer type = null;
 
             
-        if (((AbstractJdbc2Connection)_conn).isFoundationDBServer()) {
+            if (((AbstractJdbc2Connection)_conn).isFoundationDBServer()) {
+                if (_getTypeInfoStatement == null) {
+                    _getTypeInfoStatement = _conn.prepareStatement("SELECT jdbc_type_id FROM information_schema.types where type_name = ?");
+                }
+                _getTypeInfoStatement.setString(1, pgTypeName);
+                // Go through BaseStatement to avoid transaction start.
+                if (!((BaseStatement)_getTypeInfoStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
+                    throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+
+                ResultSet rs = _getTypeInfoStatement.getResultSet();
+                if (rs.next()) {
+                    type = rs.getInt(1);
+                }
+                rs.close();
+                if (type == null) {
+                    type = new Integer(Types.OTHER);
+               }
+                _pgNameToSQLType.put(pgTypeName, type);
+
+                return type.intValue();
+            }
             if (_getTypeInfoStatement == null) {
-                _getTypeInfoStatement = _conn.prepareStatement("SELECT jdbc_type_id FROM information_schema.types where type_name = ?");
+                // There's no great way of telling what's an array type.
+                // People can name their own types starting with _.
+                // Other types use typelem that aren't actually arrays, like box.
+                //
+                String sql;
+            
+                if (_conn.haveMinimumServerVersion("8.0")) {
+                    // in case of multiple records (in different schemas) choose the one from the current schema,
+                    // otherwise take the last version of a type that is at least more deterministic then before
+                    // (keeping old behaviour of finding types, that should not be found without correct search path)
+                    sql = "SELECT typinput='array_in'::regproc, typtype " +
+                          "  FROM pg_catalog.pg_type " +
+                          "  LEFT " +
+                          "  JOIN (select ns.oid as nspoid, ns.nspname, r.r " +
+                          "          from pg_namespace as ns " +
+                          "          join ( select s.r, (current_schemas(false))[s.r] as nspname " +
+                          //                  -- go with older way of unnesting array to be compatible with 8.0
+                          "                   from generate_series(1, array_upper(current_schemas(false), 1)) as s(r) ) as r " +
+                          "         using ( nspname ) " +
+                          "       ) as sp " +
+                          "    ON sp.nspoid = typnamespace " +
+                          " WHERE typname = ? " +
+                          " ORDER BY sp.r, pg_type.oid DESC LIMIT 1;";
+                } else if (_conn.haveMinimumServerVersion("7.3")) {
+                    sql = "SELECT typinput='array_in'::regproc, typtype FROM pg_catalog.pg_type WHERE typname = ? ORDER BY oid DESC LIMIT 1";
+                } else {
+                    sql = "SELECT typinput='array_in'::regproc, typtype FROM pg_type WHERE typname = ? LIMIT 1";
+                }
+
+                _getTypeInfoStatement = _conn.prepareStatement(sql);
             }
+
             _getTypeInfoStatement.setString(1, pgTypeName);
+
             // Go through BaseStatement to avoid transaction start.
             if (!((BaseStatement)_getTypeInfoStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
                 throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
 
             ResultSet rs = _getTypeInfoStatement.getResultSet();
+
             if (rs.next()) {
-                type = rs.getInt(1);
+                boolean isArray = rs.getBoolean(1);
+                String typtype = rs.getString(2);
+                if (isArray) {
+                    type = new Integer(Types.ARRAY);
+                } else if ("c".equals(typtype)) {
+                    type = new Integer(Types.STRUCT);
+                } else if ("d".equals(typtype)) {
+                    type = new Integer(Types.DISTINCT);
+                } else if ("e".equals(typtype)) {
+                    type = new Integer(Types.VARCHAR);
+                }
             }
-            rs.close();
-            if (type == null) {
-                type = new Integer(Types.OTHER);
-           }
-            _pgNameToSQLType.put(pgTypeName, type);
 
-            return type.intValue();
-        }
-        if (_getTypeInfoStatement == null) {
-            // There's no great way of telling what's an array type.
-            // People can name their own types starting with _.
-            // Other types use typelem that aren't actually arrays, like box.
-            //
-            String sql;
-            
-            if (_conn.haveMinimumServerVersion("8.0")) {
-                // in case of multiple records (in different schemas) choose the one from the current schema,
-                // otherwise take the last version of a type that is at least more deterministic then before
-                // (keeping old behaviour of finding types, that should not be found without correct search path)
-                sql = "SELECT typinput='array_in'::regproc, typtype " +
-                      "  FROM pg_catalog.pg_type " +
-                      "  LEFT " +
-                      "  JOIN (select ns.oid as nspoid, ns.nspname, r.r " +
-                      "          from pg_namespace as ns " +
-                      "          join ( select s.r, (current_schemas(false))[s.r] as nspname " +
-                      //                  -- go with older way of unnesting array to be compatible with 8.0
-                      "                   from generate_series(1, array_upper(current_schemas(false), 1)) as s(r) ) as r " +
-                      "         using ( nspname ) " +
-                      "       ) as sp " +
-                      "    ON sp.nspoid = typnamespace " +
-                      " WHERE typname = ? " +
-                      " ORDER BY sp.r, pg_type.oid DESC LIMIT 1;";
-            } else if (_conn.haveMinimumServerVersion("7.3")) {
-                sql = "SELECT typinput='array_in'::regproc, typtype FROM pg_catalog.pg_type WHERE typname = ? ORDER BY oid DESC LIMIT 1";
-            } else {
-                sql = "SELECT typinput='array_in'::regproc, typtype FROM pg_type WHERE typname = ? LIMIT 1";
+            if (type == null) {
+                 type = new Integer(Types.OTHER);
             }
+            rs.close();
 
-            _getTypeInfoStatement = _conn.prepareStatement(sql);
-        }
+            _pgNameToSQLType.put(pgTypeName, type);
 
-        _getTypeInfoStatement.setString(1, pgTypeName);
-
-        // Go through BaseStatement to avoid transaction start.
-        if (!((BaseStatement)_getTypeInfoStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
-            throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
-
-        ResultSet rs = _getTypeInfoStatement.getResultSet();
-
-        if (rs.next()) {
-            boolean isArray = rs.getBoolean(1);
-            String typtype = rs.getString(2);
-            if (isArray) {
-                type = new Integer(Types.ARRAY);
-            } else if ("c".equals(typtype)) {
-                type = new Integer(Types.STRUCT);
-            } else if ("d".equals(typtype)) {
-                type = new Integer(Types.DISTINCT);
-            } else if ("e".equals(typtype)) {
-                type = new Integer(Types.VARCHAR);
-            }
+            return type.intValue();
         }
-
-        if (type == null) {
-             type = new Integer(Types.OTHER);
+        finally
+        {
+            lock.unlock();
         }
-        rs.close();
-
-        _pgNameToSQLType.put(pgTypeName, type);
-
-        return type.intValue();
     }
 
-    public synchronized int getPGType(String pgTypeName) throws SQLException
+    public int getPGType(String pgTypeName) throws SQLException
     {
-        Integer oid = (Integer)_pgNameToOid.get(pgTypeName);
-        if (oid != null)
-            return oid.intValue();
+        lock.lock();
+        try
+        {
+            Integer oid = (Integer)_pgNameToOid.get(pgTypeName);
+            if (oid != null)
+                return oid.intValue();
 
         
-        if (((AbstractJdbc2Connection)_conn).isFoundationDBServer()) {
-            if (_getOidStatement == null) {
-                _getOidStatement = _conn.prepareStatement("SELECT postgres_oid FROM information_schema.types where type_name = ?");
-            }
+            if (((AbstractJdbc2Connection)_conn).isFoundationDBServer()) {
+                if (_getOidStatement == null) {
+                    _getOidStatement = _conn.prepareStatement("SELECT postgres_oid FROM information_schema.types where type_name = ?");
+                }
             
-        }        
-        if (_getOidStatement == null) {
-            String sql;
-            if (_conn.haveMinimumServerVersion("8.0")) {
-                // see comments in @getSQLType()
-                sql = "SELECT pg_type.oid " +
-                      "  FROM pg_catalog.pg_type " +
-                      "  LEFT " +
-                      "  JOIN (select ns.oid as nspoid, ns.nspname, r.r " +
-                      "          from pg_namespace as ns " +
-                      "          join ( select s.r, (current_schemas(false))[s.r] as nspname " +
-                      //                  -- go with older way of unnesting array to be compatible with 8.0
-                      "                   from generate_series(1, array_upper(current_schemas(false), 1)) as s(r) ) as r " +
-                      "         using ( nspname ) " +
-                      "       ) as sp " +
-                      "    ON sp.nspoid = typnamespace " +
-                      " WHERE typname = ? " +
-                      " ORDER BY sp.r, pg_type.oid DESC LIMIT 1;";
-            } else if (_conn.haveMinimumServerVersion("7.3")) {
-                sql = "SELECT oid FROM pg_catalog.pg_type WHERE typname = ? ORDER BY oid DESC LIMIT 1";
-            } else {
-                sql = "SELECT oid FROM pg_type WHERE typname = ? ORDER BY oid DESC LIMIT 1";
+            }        
+            if (_getOidStatement == null) {
+                String sql;
+                if (_conn.haveMinimumServerVersion("8.0")) {
+                    // see comments in @getSQLType()
+                    sql = "SELECT pg_type.oid " +
+                          "  FROM pg_catalog.pg_type " +
+                          "  LEFT " +
+                          "  JOIN (select ns.oid as nspoid, ns.nspname, r.r " +
+                          "          from pg_namespace as ns " +
+                          "          join ( select s.r, (current_schemas(false))[s.r] as nspname " +
+                          //                  -- go with older way of unnesting array to be compatible with 8.0
+                          "                   from generate_series(1, array_upper(current_schemas(false), 1)) as s(r) ) as r " +
+                          "         using ( nspname ) " +
+                          "       ) as sp " +
+                          "    ON sp.nspoid = typnamespace " +
+                          " WHERE typname = ? " +
+                          " ORDER BY sp.r, pg_type.oid DESC LIMIT 1;";
+                } else if (_conn.haveMinimumServerVersion("7.3")) {
+                    sql = "SELECT oid FROM pg_catalog.pg_type WHERE typname = ? ORDER BY oid DESC LIMIT 1";
+                } else {
+                    sql = "SELECT oid FROM pg_type WHERE typname = ? ORDER BY oid DESC LIMIT 1";
+                }
+
+                _getOidStatement = _conn.prepareStatement(sql);
             }
 
-            _getOidStatement = _conn.prepareStatement(sql);
-        }
+            _getOidStatement.setString(1, pgTypeName);
 
-        _getOidStatement.setString(1, pgTypeName);
+            // Go through BaseStatement to avoid transaction start.
+            if (!((BaseStatement)_getOidStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
+                throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
 
-        // Go through BaseStatement to avoid transaction start.
-        if (!((BaseStatement)_getOidStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
-            throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+            oid = new Integer(Oid.UNSPECIFIED);
+            ResultSet rs = _getOidStatement.getResultSet();
+            if (rs.next()) {
+                oid = new Integer((int)rs.getLong(1));
+                _oidToPgName.put(oid, pgTypeName);
+            }
+            _pgNameToOid.put(pgTypeName, oid);
+            rs.close();
 
-        oid = new Integer(Oid.UNSPECIFIED);
-        ResultSet rs = _getOidStatement.getResultSet();
-        if (rs.next()) {
-            oid = new Integer((int)rs.getLong(1));
-            _oidToPgName.put(oid, pgTypeName);
+            return oid.intValue();
+        }
+        finally
+        {
+            lock.unlock();
         }
-        _pgNameToOid.put(pgTypeName, oid);
-        rs.close();
-
-        return oid.intValue();
     }
 
     private void createFDBNameStatement () throws SQLException {
         _getNameStatement = _conn.prepareStatement("SELECT type_name FROM information_schema.types where postgres_oid = ?");
     }
-    public synchronized String getPGType(int oid) throws SQLException
+    public String getPGType(int oid) throws SQLException
     {
-        if (oid == Oid.UNSPECIFIED)
-            return null;
-
-        String pgTypeName = (String)_oidToPgName.get(new Integer(oid));
-        if (pgTypeName != null)
-            return pgTypeName;
-
-        if (((AbstractJdbc2Connection)_conn).isFoundationDBServer()) {
-            if (_getNameStatement == null) {
-                createFDBNameStatement();
-            }
-            
-        }        
-        if (_getNameStatement == null) {
-            String sql;
-            if (_conn.haveMinimumServerVersion("7.3")) {
-                sql = "SELECT typname FROM pg_catalog.pg_type WHERE oid = ?";
-            } else {
-                sql = "SELECT typname FROM pg_type WHERE oid = ?";
-            }
-
-            _getNameStatement = _conn.prepareStatement(sql);
-        }
-
-        boolean retryable = false;
-        do {
-            retryable = false;
-            boolean results = true;
-            _getNameStatement.setInt(1, oid);
-            try {
-                // Go through BaseStatement to avoid transaction start.
-                results = ((BaseStatement)_getNameStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN);
-            } catch (PSQLException ex) {
-                // The FDBServer return the STALE_STATEMENT error on DDL. 
-                // clear and recreate the statement for further execution. 
-                if ("0A50A".equals(ex.getSQLState())) {
-                    _getNameStatement.close();
-                    _getNameStatement = null;
+        lock.lock();
+        try
+        {
+            if (oid == Oid.UNSPECIFIED)
+                return null;
+
+            String pgTypeName = (String)_oidToPgName.get(new Integer(oid));
+            if (pgTypeName != null)
+                return pgTypeName;
+
+            if (((AbstractJdbc2Connection)_conn).isFoundationDBServer()) {
+                if (_getNameStatement == null) {
                     createFDBNameStatement();
-                    retryable = true;
-                    results = true;
+                }
+            
+            }        
+            if (_getNameStatement == null) {
+                String sql;
+                if (_conn.haveMinimumServerVersion("7.3")) {
+                    sql = "SELECT typname FROM pg_catalog.pg_type WHERE oid = ?";
                 } else {
-                    throw ex;
+                    sql = "SELECT typname FROM pg_type WHERE oid = ?";
                 }
+
+                _getNameStatement = _conn.prepareStatement(sql);
             }
-            if (!results) {
-                throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+
+            boolean retryable = false;
+            do {
+                retryable = false;
+                boolean results = true;
+                _getNameStatement.setInt(1, oid);
+                try {
+                    // Go through BaseStatement to avoid transaction start.
+                    results = ((BaseStatement)_getNameStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN);
+                } catch (PSQLException ex) {
+                    // The FDBServer return the STALE_STATEMENT error on DDL. 
+                    // clear and recreate the statement for further execution. 
+                    if ("0A50A".equals(ex.getSQLState())) {
+                        _getNameStatement.close();
+                        _getNameStatement = null;
+                        createFDBNameStatement();
+                        retryable = true;
+                        results = true;
+                    } else {
+                        throw ex;
+                    }
+                }
+                if (!results) {
+                    throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+                }
+            } while (retryable);
+            ResultSet rs = _getNameStatement.getResultSet();
+            if (rs.next()) {
+                pgTypeName = rs.getString(1);
+                _pgNameToOid.put(pgTypeName, new Integer(oid));
+                _oidToPgName.put(new Integer(oid), pgTypeName);
             }
-        } while (retryable);
-        ResultSet rs = _getNameStatement.getResultSet();
-        if (rs.next()) {
-            pgTypeName = rs.getString(1);
-            _pgNameToOid.put(pgTypeName, new Integer(oid));
-            _oidToPgName.put(new Integer(oid), pgTypeName);
-        }
-        rs.close();
+            rs.close();
 
-        return pgTypeName;
+            return pgTypeName;
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
     public int getPGArrayType(String elementTypeName) throws SQLException
@@ -405,113 +451,153 @@ public class TypeInfoCache implements TypeInfo {
      * mappings.  This is fine for it's intended uses where we only have
      * intimate knowledge of types that are already known to the driver.
      */
-    protected synchronized int convertArrayToBaseOid(int oid)
+    protected int convertArrayToBaseOid(int oid)
     {
-        Integer i = (Integer)_pgArrayToPgType.get(new Integer(oid));
-        if (i == null)
-            return oid;
-        return i.intValue();
+        lock.lock();
+        try
+        {
+            Integer i = (Integer)_pgArrayToPgType.get(new Integer(oid));
+            if (i == null)
+                return oid;
+            return i.intValue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized char getArrayDelimiter(int oid) throws SQLException
+    public char getArrayDelimiter(int oid) throws SQLException
     {
-        if (oid == Oid.UNSPECIFIED)
-            return ',';
-
-        Character delim = (Character) _arrayOidToDelimiter.get(new Integer(oid));
-        if (delim != null)
-            return delim.charValue();
-
-        if (_getArrayDelimiterStatement == null) {
-            String sql;
-            if (_conn.haveMinimumServerVersion("7.3")) {
-                sql = "SELECT e.typdelim FROM pg_catalog.pg_type t, pg_catalog.pg_type e WHERE t.oid = ? and t.typelem = e.oid";
-            } else {
-                sql = "SELECT e.typdelim FROM pg_type t, pg_type e WHERE t.oid = ? and t.typelem = e.oid";
+        lock.lock();
+        try
+        {
+            if (oid == Oid.UNSPECIFIED)
+                return ',';
+
+            Character delim = (Character) _arrayOidToDelimiter.get(new Integer(oid));
+            if (delim != null)
+                return delim.charValue();
+
+            if (_getArrayDelimiterStatement == null) {
+                String sql;
+                if (_conn.haveMinimumServerVersion("7.3")) {
+                    sql = "SELECT e.typdelim FROM pg_catalog.pg_type t, pg_catalog.pg_type e WHERE t.oid = ? and t.typelem = e.oid";
+                } else {
+                    sql = "SELECT e.typdelim FROM pg_type t, pg_type e WHERE t.oid = ? and t.typelem = e.oid";
+                }
+                _getArrayDelimiterStatement = _conn.prepareStatement(sql);
             }
-            _getArrayDelimiterStatement = _conn.prepareStatement(sql);
-        }
 
-        _getArrayDelimiterStatement.setInt(1, oid);
+            _getArrayDelimiterStatement.setInt(1, oid);
 
-        // Go through BaseStatement to avoid transaction start.
-        if (!((BaseStatement) _getArrayDelimiterStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
-            throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+            // Go through BaseStatement to avoid transaction start.
+            if (!((BaseStatement) _getArrayDelimiterStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
+                throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
 
-        ResultSet rs = _getArrayDelimiterStatement.getResultSet();
-        if (!rs.next())
-            throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+            ResultSet rs = _getArrayDelimiterStatement.getResultSet();
+            if (!rs.next())
+                throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
 
-        String s = rs.getString(1);
-        delim = new Character(s.charAt(0));
+            String s = rs.getString(1);
+            delim = new Character(s.charAt(0));
 
-        _arrayOidToDelimiter.put(new Integer(oid), delim);
+            _arrayOidToDelimiter.put(new Integer(oid), delim);
 
-        rs.close();
+            rs.close();
 
-        return delim.charValue();
+            return delim.charValue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized int getPGArrayElement (int oid) throws SQLException
+    public int getPGArrayElement (int oid) throws SQLException
     {
-        if (oid == Oid.UNSPECIFIED)
-            return Oid.UNSPECIFIED;
+        lock.lock();
+        try
+        {
+            if (oid == Oid.UNSPECIFIED)
+                return Oid.UNSPECIFIED;
 
-        Integer pgType = (Integer) _pgArrayToPgType.get(new Integer(oid));
+            Integer pgType = (Integer) _pgArrayToPgType.get(new Integer(oid));
 
-        if (pgType != null)
-            return pgType.intValue();
+            if (pgType != null)
+                return pgType.intValue();
 
-        if (_getArrayElementOidStatement == null) {
-            String sql;
-            if (_conn.haveMinimumServerVersion("7.3")) {
-                sql = "SELECT e.oid, e.typname FROM pg_catalog.pg_type t, pg_catalog.pg_type e WHERE t.oid = ? and t.typelem = e.oid";
-            } else {
-                sql = "SELECT e.oid, e.typname FROM pg_type t, pg_type e WHERE t.oid = ? and t.typelem = e.oid";
+            if (_getArrayElementOidStatement == null) {
+                String sql;
+                if (_conn.haveMinimumServerVersion("7.3")) {
+                    sql = "SELECT e.oid, e.typname FROM pg_catalog.pg_type t, pg_catalog.pg_type e WHERE t.oid = ? and t.typelem = e.oid";
+                } else {
+                    sql = "SELECT e.oid, e.typname FROM pg_type t, pg_type e WHERE t.oid = ? and t.typelem = e.oid";
+                }
+                _getArrayElementOidStatement = _conn.prepareStatement(sql);
             }
-            _getArrayElementOidStatement = _conn.prepareStatement(sql);
-        }
 
-        _getArrayElementOidStatement.setInt(1, oid);
+            _getArrayElementOidStatement.setInt(1, oid);
 
-        // Go through BaseStatement to avoid transaction start.
-        if (!((BaseStatement) _getArrayElementOidStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
-            throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+            // Go through BaseStatement to avoid transaction start.
+            if (!((BaseStatement) _getArrayElementOidStatement).executeWithFlags(QueryExecutor.QUERY_SUPPRESS_BEGIN))
+                throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
 
-        ResultSet rs = _getArrayElementOidStatement.getResultSet();
-        if (!rs.next())
-            throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
+            ResultSet rs = _getArrayElementOidStatement.getResultSet();
+            if (!rs.next())
+                throw new PSQLException(GT.tr("No results were returned by the query."), PSQLState.NO_DATA);
 
-        pgType = new Integer((int)rs.getLong(1));
-        _pgArrayToPgType.put(new Integer(oid), pgType);
-        _pgNameToOid.put(rs.getString(2), pgType);
-        _oidToPgName.put(pgType, rs.getString(2));
+            pgType = new Integer((int)rs.getLong(1));
+            _pgArrayToPgType.put(new Integer(oid), pgType);
+            _pgNameToOid.put(rs.getString(2), pgType);
+            _oidToPgName.put(pgType, rs.getString(2));
 
-        rs.close();
+            rs.close();
 
-        return pgType.intValue();
+            return pgType.intValue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized Class getPGobject(String type)
+    public Class getPGobject(String type)
     {
-        return (Class)_pgNameToPgObject.get(type);
+        lock.lock();
+        try
+        {
+            return (Class)_pgNameToPgObject.get(type);
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized String getJavaClass(int oid) throws SQLException
+    public String getJavaClass(int oid) throws SQLException
     {
-        String pgTypeName = getPGType(oid);
+        lock.lock();
+        try
+        {
+            String pgTypeName = getPGType(oid);
+
+            String result = (String)_pgNameToJavaClass.get(pgTypeName);
+            if (result != null) {
+                return result;
+            }
+
+            if (getSQLType(pgTypeName) == Types.ARRAY) {
+                result = "java.sql.Array";
+                _pgNameToJavaClass.put(pgTypeName, result);
+            }
 
-        String result = (String)_pgNameToJavaClass.get(pgTypeName);
-        if (result != null) {
             return result;
         }
-
-        if (getSQLType(pgTypeName) == Types.ARRAY) {
-            result = "java.sql.Array";
-            _pgNameToJavaClass.put(pgTypeName, result);
+        finally
+        {
+            lock.unlock();
         }
-
-        return result;
     }
 
     public String getTypeForAlias(String alias) {
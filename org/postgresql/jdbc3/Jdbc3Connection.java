@@ -62,4 +62,14 @@ public class Jdbc3Connection extends org.postgresql.jdbc3.AbstractJdbc3Connectio
         setTypeMapImpl(map);
     }
 
+    protected java.sql.Array makeArray(int oid, byte[] fieldBytes) throws SQLException
+    {
+        return new Jdbc3Array(this, oid, fieldBytes);
+    }
+
+    protected java.sql.Array makeArray(int oid, String fieldString) throws SQLException
+    {
+        return new Jdbc3Array(this, oid, fieldString);
+    }
+
 }
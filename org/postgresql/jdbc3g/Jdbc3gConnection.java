@@ -62,4 +62,14 @@ public class Jdbc3gConnection extends org.postgresql.jdbc3g.AbstractJdbc3gConnec
         setTypeMapImpl(map);
     }
 
+    protected java.sql.Array makeArray(int oid, byte[] fieldBytes) throws SQLException
+    {
+        return new Jdbc3gArray(this, oid, fieldBytes);
+    }
+
+    protected java.sql.Array makeArray(int oid, String fieldString) throws SQLException
+    {
+        return new Jdbc3gArray(this, oid, fieldString);
+    }
+
 }
@@ -21,7 +21,6 @@ import org.postgresql.util.GT;
 import org.postgresql.util.HostSpec;
 import org.postgresql.util.PSQLState;
 import org.postgresql.util.PSQLException;
-import org.postgresql.jdbc2.AbstractJdbc2Array;
 
 abstract class AbstractJdbc4Connection extends org.postgresql.jdbc3g.AbstractJdbc3gConnection
 {
@@ -77,41 +76,7 @@ abstract class AbstractJdbc4Connection extends org.postgresql.jdbc3g.AbstractJdb
 
     public Array createArrayOf(String typeName, Object[] elements) throws SQLException
     {
-        checkClosed();
-        int oid = getTypeInfo().getPGArrayType(typeName);
-        if (oid == Oid.UNSPECIFIED)
-            throw new PSQLException(GT.tr("Unable to find server array type for provided name {0}.", typeName), PSQLState.INVALID_NAME);
-
-        char delim = getTypeInfo().getArrayDelimiter(oid);
-        StringBuffer sb = new StringBuffer();
-        appendArray(sb, elements, delim);
-
-        // This will not work once we have a JDBC 5,
-        // but it'll do for now.
-        return new Jdbc4Array(this, oid, sb.toString());
-    }
-
-    private static void appendArray(StringBuffer sb, Object elements, char delim)
-    {
-        sb.append('{');
-
-        int nElements = java.lang.reflect.Array.getLength(elements);
-        for (int i=0; i<nElements; i++) {
-            if (i > 0) {
-                sb.append(delim);
-            }
-
-            Object o = java.lang.reflect.Array.get(elements, i);
-            if (o == null) {
-                sb.append("NULL");
-            } else if (o.getClass().isArray()) {
-                appendArray(sb, o, delim);
-            } else {
-                String s = o.toString();
-                AbstractJdbc2Array.escapeArrayElement(sb, s);
-            }
-        }
-        sb.append('}');
+        return createArrayOf(typeName, (Object) elements);
     }
 
     public boolean isValid(int timeout) throws SQLException
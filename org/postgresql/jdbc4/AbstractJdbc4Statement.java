@@ -11,6 +11,8 @@ import java.sql.*;
 
 import java.io.Reader;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 
 import org.postgresql.core.Oid;
 import org.postgresql.util.GT;
@@ -20,6 +22,8 @@ import org.postgresql.util.PSQLException;
 abstract class AbstractJdbc4Statement extends org.postgresql.jdbc3g.AbstractJdbc3gStatement
 {
 
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
     private boolean poolable;
 
     AbstractJdbc4Statement (Jdbc4Connection c, int rsType, int rsConcurrency, int rsHoldability) throws SQLException
@@ -87,6 +91,7 @@ abstract class AbstractJdbc4Statement extends org.postgresql.jdbc3g.AbstractJdbc
 
         if (adjustIndex)
             parameterIndex--;
+        releaseSpool(parameterIndex);
         preparedParameters.setNull(parameterIndex, oid);
     }
 
@@ -112,12 +117,15 @@ abstract class AbstractJdbc4Statement extends org.postgresql.jdbc3g.AbstractJdbc
 
     public void setCharacterStream(int parameterIndex, Reader value, long length) throws SQLException
     {
-        throw org.postgresql.Driver.notImplemented(this.getClass(), "setCharacterStream(int, Reader, long)");
+        if (length < 0)
+            throw new PSQLException(GT.tr("Invalid stream length {0}.", new Long(length)),
+                                    PSQLState.INVALID_PARAMETER_VALUE);
+        setSpooledText(parameterIndex, value, length, getStringType());
     }
 
     public void setCharacterStream(int parameterIndex, Reader value) throws SQLException
     {
-        throw org.postgresql.Driver.notImplemented(this.getClass(), "setCharacterStream(int, Reader)");
+        setSpooledText(parameterIndex, value, -1, getStringType());
     }
 
     public void setBinaryStream(int parameterIndex, InputStream value, long length) throws SQLException
@@ -126,22 +134,26 @@ abstract class AbstractJdbc4Statement extends org.postgresql.jdbc3g.AbstractJdbc
 	{
 	    throw new PSQLException(GT.tr("Object is too large to send over the protocol."), PSQLState.NUMERIC_CONSTANT_OUT_OF_RANGE);
 	}	
+        releaseSpool(parameterIndex);
         preparedParameters.setBytea(parameterIndex, value, (int)length);
     }
 
     public void setBinaryStream(int parameterIndex, InputStream value) throws SQLException
     {
-        throw org.postgresql.Driver.notImplemented(this.getClass(), "setBinaryStream(int, InputStream)");
+        setSpooledBytea(parameterIndex, value, -1);
     }
 
     public void setAsciiStream(int parameterIndex, InputStream value, long length) throws SQLException
     {
-        throw org.postgresql.Driver.notImplemented(this.getClass(), "setAsciiStream(int, InputStream, long)");
+        if (length < 0)
+            throw new PSQLException(GT.tr("Invalid stream length {0}.", new Long(length)),
+                                    PSQLState.INVALID_PARAMETER_VALUE);
+        setSpooledText(parameterIndex, value == null ? null : new InputStreamReader(value, ASCII), length, Oid.VARCHAR);
     }
 
     public void setAsciiStream(int parameterIndex, InputStream value) throws SQLException
     {
-        throw org.postgresql.Driver.notImplemented(this.getClass(), "setAsciiStream(int, InputStream)");
+        setSpooledText(parameterIndex, value == null ? null : new InputStreamReader(value, ASCII), -1, Oid.VARCHAR);
     }
 
     public void setNClob(int parameterIndex, NClob value) throws SQLException
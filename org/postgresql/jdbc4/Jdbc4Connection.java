@@ -62,4 +62,14 @@ public class Jdbc4Connection extends AbstractJdbc4Connection implements java.sql
         setTypeMapImpl(map);
     }
 
+    protected java.sql.Array makeArray(int oid, byte[] fieldBytes) throws SQLException
+    {
+        return new Jdbc4Array(this, oid, fieldBytes);
+    }
+
+    protected java.sql.Array makeArray(int oid, String fieldString) throws SQLException
+    {
+        return new Jdbc4Array(this, oid, fieldString);
+    }
+
 }
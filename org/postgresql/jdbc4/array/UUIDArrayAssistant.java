@@ -1,11 +1,11 @@
 package org.postgresql.jdbc4.array;
 
-import org.postgresql.jdbc2.ArrayAssistant;
+import org.postgresql.jdbc2.BinaryArrayAssistant;
 import org.postgresql.util.ByteConverter;
 
 import java.util.UUID;
 
-public class UUIDArrayAssistant implements ArrayAssistant {
+public class UUIDArrayAssistant implements BinaryArrayAssistant {
     @Override
     public Class baseType() {
         return UUID.class;
@@ -20,4 +20,13 @@ public class UUIDArrayAssistant implements ArrayAssistant {
     public Object buildElement(String literal) {
         return UUID.fromString(literal);
     }
+
+    @Override
+    public byte[] buildBytes(Object element) {
+        UUID uuid = element instanceof UUID ? (UUID) element : UUID.fromString(element.toString());
+        byte[] bytes = new byte[16];
+        ByteConverter.int8(bytes, 0, uuid.getMostSignificantBits());
+        ByteConverter.int8(bytes, 8, uuid.getLeastSignificantBits());
+        return bytes;
+    }
 }
@@ -11,9 +11,11 @@ import java.sql.*;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import junit.framework.TestCase;
 import org.postgresql.test.TestUtil;
+import org.postgresql.util.PSQLState;
 
 // SELECT 'hstore'::regtype::oid
 // SELECT 'hstore[]'::regtype::oid
@@ -80,4 +82,66 @@ public class HStoreTest extends TestCase {
         assertEquals("\"a\"=>\"t'e\ns\\\"t\"", rs.getString(1));
     }
 
+    public void testHStoreLazyView() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("lazyHStore", "true");
+        Connection conn = TestUtil.openDB(props);
+        try {
+            PreparedStatement pstmt = conn.prepareStatement("SELECT 'a=>1, \"b\\\"c\"=>NULL'::hstore");
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            Map map = (Map) rs.getObject(1);
+            assertEquals(2, map.size());
+            assertEquals("1", map.get("a"));
+            assertTrue(map.containsKey("b\"c"));
+            assertNull(map.get("b\"c"));
+            assertNull(map.get("x"));
+            try {
+                map.put("x", "y");
+                fail("the view should be read-only");
+            } catch (UnsupportedOperationException e) {
+            }
+            Map correct = new HashMap();
+            correct.put("a", "1");
+            correct.put("b\"c", null);
+            assertEquals(correct, map);
+        } finally {
+            TestUtil.closeDB(conn);
+        }
+    }
+
+    public void testHStoreBinaryTransfer() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("binaryTransferEnable", "hstore");
+        Connection conn = TestUtil.openDB(props);
+        try {
+            Map correct = new HashMap();
+            correct.put("a", "1");
+            correct.put("b", null);
+            PreparedStatement pstmt = conn.prepareStatement("SELECT ?");
+            pstmt.setObject(1, correct);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(correct, rs.getObject(1));
+            String str = rs.getString(1);
+            if (!("\"a\"=>\"1\", \"b\"=>NULL".equals(str) || "\"b\"=>NULL, \"a\"=>\"1\"".equals(str))) {
+                fail("Unexpected text form " + str);
+            }
+        } finally {
+            TestUtil.closeDB(conn);
+        }
+    }
+
+    public void testUnknownBinaryTransferType() throws Exception {
+        // Names are checked whether or not any are enabled.
+        Properties props = new Properties();
+        props.setProperty("binaryTransferDisable", "nosuchtype");
+        try {
+            TestUtil.closeDB(TestUtil.openDB(props));
+            fail("An unknown type name should be rejected");
+        } catch (SQLException e) {
+            assertEquals(PSQLState.INVALID_PARAMETER_VALUE.getState(), e.getSQLState());
+        }
+    }
+
 }
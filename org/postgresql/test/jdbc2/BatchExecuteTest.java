@@ -7,6 +7,9 @@
 */
 package org.postgresql.test.jdbc2;
 
+import org.postgresql.PGConnection;
+import org.postgresql.PGMetrics;
+import org.postgresql.PGStatement;
 import org.postgresql.test.TestUtil;
 import junit.framework.TestCase;
 import java.sql.*;
@@ -209,6 +212,59 @@ public class BatchExecuteTest extends TestCase
         pstmt.close();
     }
 
+    /**
+     * A PreparedStatement batch parses its statement once, even below the
+     * prepare threshold.
+     */
+    public void testPreparedBatchParsesOnce() throws Exception
+    {
+        PGMetrics metrics = ((PGConnection)con).getMetrics();
+        PreparedStatement pstmt = con.prepareStatement("UPDATE testbatch SET col1 = col1 + ? WHERE PK = ?");
+        ((PGStatement)pstmt).setPrepareThreshold(100);
+        for (int i = 0; i < 5; ++i)
+        {
+            pstmt.setInt(1, 1);
+            pstmt.setInt(2, 1);
+            pstmt.addBatch();
+        }
+
+        long parses = metrics.getParseCount();
+        int[] updateCounts = pstmt.executeBatch();
+        assertEquals(5, updateCounts.length);
+        for (int i = 0; i < updateCounts.length; ++i)
+            assertEquals(1, updateCounts[i]);
+        // The statement, and perhaps a BEGIN.
+        assertTrue(metrics.getParseCount() - parses <= 2);
+        assertCol1HasValue(5);
+
+        pstmt.close();
+    }
+
+    /**
+     * With server prepare turned off, a PreparedStatement batch parses
+     * every row as an unnamed statement.
+     */
+    public void testPreparedBatchWithoutServerPrepare() throws Exception
+    {
+        PGMetrics metrics = ((PGConnection)con).getMetrics();
+        PreparedStatement pstmt = con.prepareStatement("UPDATE testbatch SET col1 = col1 + ? WHERE PK = ?");
+        ((PGStatement)pstmt).setUseServerPrepare(false);
+        for (int i = 0; i < 5; ++i)
+        {
+            pstmt.setInt(1, 1);
+            pstmt.setInt(2, 1);
+            pstmt.addBatch();
+        }
+
+        long parses = metrics.getParseCount();
+        pstmt.executeBatch();
+        assertTrue(metrics.getParseCount() - parses >= 5);
+        assertFalse(((PGStatement)pstmt).isUseServerPrepare());
+        assertCol1HasValue(5);
+
+        pstmt.close();
+    }
+
     public void testTransactionalBehaviour() throws Exception
     {
         Statement stmt = con.createStatement();
@@ -11,6 +11,16 @@ import org.postgresql.test.TestUtil;
 import junit.framework.TestCase;
 import java.sql.*;
 
+import org.postgresql.PGConnection;
+import org.postgresql.PGMetrics;
+import org.postgresql.PGQueryFuture;
+import org.postgresql.PGQueryEvent;
+import org.postgresql.PGQueryListener;
+import org.postgresql.core.HostChooser;
+import org.postgresql.core.HostHealthRegistry;
+import org.postgresql.core.Logger;
+import org.postgresql.util.HostSpec;
+
 /*
  * TestCase to test the internal functionality of org.postgresql.jdbc2.Connection
  * and it's superclass.
@@ -307,4 +317,220 @@ public class ConnectionTest extends TestCase
         con.close();
         con.close();
     }
+
+    /**
+     * When load balancing, a host that failed recently is tried last
+     * while it is backing off; without load balancing the URL order is
+     * kept.
+     */
+    public void testLoadBalanceSkipsFailedHost() throws Exception
+    {
+        HostSpec dead = new HostSpec(TestUtil.getServer(), 1);
+        HostSpec live = new HostSpec(TestUtil.getServer(), TestUtil.getPort());
+        String url = TestUtil.getProtocol() + "//" + dead + "," + live + "/" + TestUtil.getDatabase()
+                     + "?loadBalanceHosts=roundRobin&hostRecheckSeconds=60";
+
+        HostHealthRegistry.clear();
+        try
+        {
+            HostHealthRegistry.reportFailure(dead);
+            for (int i = 0; i < 3; ++i)
+            {
+                con = DriverManager.getConnection(url, TestUtil.getUser(), TestUtil.getPassword());
+                TestUtil.closeDB(con);
+            }
+            // The dead host is backing off, so it should not have been tried.
+            assertEquals(1, HostHealthRegistry.getConsecutiveFailures(dead));
+            assertEquals(0, HostHealthRegistry.getConsecutiveFailures(live));
+
+            java.util.Properties info = new java.util.Properties();
+            info.setProperty("loadBalanceHosts", "roundRobin");
+            for (int i = 0; i < 2; ++i)
+            {
+                HostSpec[] order = HostChooser.orderHosts(new HostSpec[] { dead, live }, info, new Logger());
+                assertEquals(live, order[0]);
+                assertEquals(dead, order[1]);
+            }
+
+            HostSpec[] order = HostChooser.orderHosts(new HostSpec[] { dead, live }, new java.util.Properties(), new Logger());
+            assertEquals(dead, order[0]);
+            assertEquals(live, order[1]);
+        }
+        finally
+        {
+            HostHealthRegistry.clear();
+        }
+    }
+
+    /**
+     * With staggered parallel attempts a dead first host does not prevent
+     * connecting to the next one, and no surplus connection is returned.
+     */
+    public void testParallelConnect() throws Exception
+    {
+        HostSpec dead = new HostSpec(TestUtil.getServer(), 1);
+        HostSpec live = new HostSpec(TestUtil.getServer(), TestUtil.getPort());
+        String url = TestUtil.getProtocol() + "//" + dead + "," + live + "," + live + "/" + TestUtil.getDatabase()
+                     + "?connectStaggerMillis=50";
+
+        HostHealthRegistry.clear();
+        try
+        {
+            con = DriverManager.getConnection(url, TestUtil.getUser(), TestUtil.getPassword());
+            Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1");
+            assertTrue(rs.next());
+            rs.close();
+            stmt.close();
+            TestUtil.closeDB(con);
+        }
+        finally
+        {
+            HostHealthRegistry.clear();
+        }
+    }
+
+    /**
+     * Executions, rows and traffic show up in the connection's metrics.
+     */
+    public void testMetrics() throws Exception
+    {
+        con = TestUtil.openDB();
+        PGMetrics metrics = ((PGConnection) con).getMetrics();
+        long queries = metrics.getQueryCount();
+        long rows = metrics.getRowsFetched();
+        long received = metrics.getBytesReceived();
+
+        PreparedStatement pstmt = con.prepareStatement("SELECT ?");
+        for (int i = 0; i < 3; ++i)
+        {
+            pstmt.setInt(1, i);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue(rs.next());
+            rs.close();
+        }
+        pstmt.close();
+
+        assertTrue(metrics.getQueryCount() >= queries + 3);
+        assertTrue(metrics.getRowsFetched() >= rows + 3);
+        assertTrue(metrics.getBytesReceived() > received);
+        assertTrue(metrics.getRoundTrips() >= 3);
+        assertTrue(metrics.getQueryLatencyMaxMicros() >= metrics.getQueryLatencyMedianMicros());
+
+        TestUtil.closeDB(con);
+    }
+
+    public void testQueryListener() throws Exception
+    {
+        con = TestUtil.openDB();
+        final java.util.List events = new java.util.ArrayList();
+        PGQueryListener listener = new PGQueryListener() {
+            public void queryStarted(PGQueryEvent event) {
+            }
+
+            public void queryCompleted(PGQueryEvent event) {
+                events.add(event);
+            }
+        };
+        ((PGConnection) con).addQueryListener(listener);
+
+        PreparedStatement pstmt = con.prepareStatement("SELECT ?");
+        pstmt.setInt(1, 1);
+        ResultSet rs = pstmt.executeQuery();
+        assertTrue(rs.next());
+        rs.close();
+        pstmt.close();
+
+        ((PGConnection) con).removeQueryListener(listener);
+        Statement stmt = con.createStatement();
+        stmt.executeQuery("SELECT 2").close();
+        stmt.close();
+
+        assertEquals(1, events.size());
+        PGQueryEvent event = (PGQueryEvent) events.get(0);
+        assertEquals(PGQueryEvent.EXECUTE, event.getType());
+        assertEquals("SELECT ?", event.getSql());
+        assertEquals(1, event.getRowCount());
+        assertNull(event.getError());
+        assertTrue(event.getTotalNanos() > 0);
+        assertTrue(event.getTotalNanos() >= event.getServerWaitNanos() + event.getReceiveNanos() + event.getDecodeNanos());
+
+        TestUtil.closeDB(con);
+    }
+
+    public void testExecuteAsync() throws Exception
+    {
+        con = TestUtil.openDB();
+        PGConnection pgcon = (PGConnection) con;
+
+        PGQueryFuture[] futures = new PGQueryFuture[20];
+        for (int i = 0; i < futures.length; ++i)
+            futures[i] = pgcon.executeAsync("SELECT ?", new Object[] { new Integer(i) });
+        PGQueryFuture failed = pgcon.executeAsync("SELECT 1/0", null);
+        PGQueryFuture after = pgcon.executeAsync("SELECT 42", null);
+
+        // A synchronous statement waits for the pipeline.
+        Statement stmt = con.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT 1");
+        assertTrue(rs.next());
+        stmt.close();
+
+        for (int i = 0; i < futures.length; ++i)
+        {
+            assertTrue(futures[i].isDone());
+            rs = (ResultSet) futures[i].get();
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+
+        try
+        {
+            failed.get();
+            fail("division by zero should fail");
+        }
+        catch (java.util.concurrent.ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+
+        rs = (ResultSet) after.get();
+        assertTrue(rs.next());
+        assertEquals(42, rs.getInt(1));
+
+        final boolean[] ran = new boolean[1];
+        after.addListener(new Runnable() {
+            public void run() {
+                ran[0] = true;
+            }
+        });
+        assertTrue(ran[0]);
+
+        TestUtil.closeDB(con);
+    }
+
+    public void testExecuteAsyncLargeParameters() throws Exception
+    {
+        con = TestUtil.openDB();
+        PGConnection pgcon = (PGConnection) con;
+
+        // Together far more than the socket buffers hold, and each answered
+        // with as much again.
+        StringBuffer sb = new StringBuffer();
+        while (sb.length() < 100000)
+            sb.append("pipelined ");
+        String value = sb.toString();
+
+        PGQueryFuture[] futures = new PGQueryFuture[20];
+        for (int i = 0; i < futures.length; ++i)
+            futures[i] = pgcon.executeAsync("SELECT ?", new Object[] { value });
+
+        for (int i = 0; i < futures.length; ++i)
+        {
+            ResultSet rs = (ResultSet) futures[i].get();
+            assertTrue(rs.next());
+            assertEquals(value, rs.getString(1));
+        }
+
+        TestUtil.closeDB(con);
+    }
 }
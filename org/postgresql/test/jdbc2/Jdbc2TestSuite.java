@@ -102,10 +102,15 @@ public class Jdbc2TestSuite extends TestSuite
         }
         suite.addTestSuite(LoginTimeoutTest.class);
         suite.addTestSuite(TestACL.class);
+        suite.addTestSuite(LoggerTest.class);
+        suite.addTestSuite(PGbyteaTest.class);
         
         if (TestUtil.isProtocolVersion(conn, 3) && !TestUtil.isFoundationDBServer(conn)) {
             suite.addTestSuite(CopyTest.class);
         }
+        if (TestUtil.isProtocolVersion(conn, 3)) {
+            suite.addTestSuite(ProtocolCaptureTest.class);
+        }
         if (TestUtil.haveMinimumServerVersion(conn, "9.3")) {
             suite.addTestSuite(ServerErrorTest.class);
         }
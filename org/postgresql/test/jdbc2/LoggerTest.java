@@ -0,0 +1,170 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.test.jdbc2;
+
+import org.postgresql.DriverBase;
+import org.postgresql.core.AsyncLogHandler;
+import org.postgresql.core.LogHandler;
+import org.postgresql.core.Logger;
+import org.postgresql.test.TestUtil;
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class LoggerTest extends TestCase
+{
+    public LoggerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Keeps the messages it is given.
+     */
+    private static class CapturingHandler implements LogHandler
+    {
+        private final List messages = new ArrayList();
+
+        public synchronized void publish(long timeMillis, int level, String connectionID, String category, String message, Throwable t)
+        {
+            messages.add(category == null ? message : category + ": " + message);
+            notifyAll();
+        }
+
+        synchronized List getMessages()
+        {
+            return new ArrayList(messages);
+        }
+
+        synchronized void waitForMessages(int count) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + 5000;
+            while (messages.size() < count && System.currentTimeMillis() < end)
+                wait(100);
+        }
+    }
+
+    public void testFormat()
+    {
+        CapturingHandler handler = new CapturingHandler();
+        Logger logger = new Logger(1, handler, Collections.EMPTY_MAP);
+        logger.setLogLevel(DriverBase.DEBUG);
+
+        logger.debug("Bind({0})", "S_1");
+        logger.debug("{1} before {0}", "b", "a");
+        logger.debug("{0}, {1}, {2}", new Object[] { null, new Integer(2), "three" });
+        // Placeholders without a matching argument are left as they are.
+        logger.debug("{0} {1} {x} {} {", "only");
+        logger.info("level {0}", new Integer(1));
+
+        List messages = handler.getMessages();
+        assertEquals(5, messages.size());
+        assertEquals("Bind(S_1)", messages.get(0));
+        assertEquals("a before b", messages.get(1));
+        assertEquals("null, 2, three", messages.get(2));
+        assertEquals("only {1} {x} {} {", messages.get(3));
+        assertEquals("level 1", messages.get(4));
+    }
+
+    /**
+     * Arguments are not formatted when the message is not logged.
+     */
+    public void testLazyFormat()
+    {
+        CapturingHandler handler = new CapturingHandler();
+        Logger logger = new Logger(1, handler, Collections.EMPTY_MAP);
+        logger.setLogLevel(DriverBase.INFO);
+
+        Object unprintable = new Object() {
+            public String toString() {
+                throw new IllegalStateException("formatted");
+            }
+        };
+        logger.debug("value {0}", unprintable);
+        assertEquals(0, handler.getMessages().size());
+    }
+
+    public void testCategoryLevels()
+    {
+        CapturingHandler handler = new CapturingHandler();
+        Map levels = new HashMap();
+        levels.put(Logger.PROTOCOL, new Integer(DriverBase.DEBUG));
+        Logger logger = new Logger(1, handler, levels);
+        Logger protocol = logger.forCategory(Logger.PROTOCOL);
+        Logger other = logger.forCategory("other");
+
+        assertFalse(logger.logDebug());
+        assertTrue(protocol.logDebug());
+        assertFalse(other.logDebug());
+
+        logger.debug("dropped");
+        protocol.debug(" FE=> Sync");
+        other.debug("dropped");
+
+        // A category without its own level follows the connection's.
+        logger.setLogLevel(DriverBase.DEBUG);
+        assertTrue(other.logDebug());
+        other.debug("kept");
+        logger.setLogLevel(0);
+        assertFalse(other.logDebug());
+        assertTrue(protocol.logDebug());
+
+        List messages = handler.getMessages();
+        assertEquals(2, messages.size());
+        assertEquals("protocol:  FE=> Sync", messages.get(0));
+        assertEquals("other: kept", messages.get(1));
+    }
+
+    public void testAsyncLogHandler() throws Exception
+    {
+        CapturingHandler handler = new CapturingHandler();
+        AsyncLogHandler async = AsyncLogHandler.forHandler(handler);
+        assertSame(async, AsyncLogHandler.forHandler(handler));
+
+        Logger logger = new Logger(1, async, Collections.EMPTY_MAP);
+        logger.setLogLevel(DriverBase.DEBUG);
+        for (int i = 0; i < 100; ++i)
+            logger.debug("message {0}", new Integer(i));
+
+        handler.waitForMessages(100);
+        List messages = handler.getMessages();
+        assertEquals(100, messages.size());
+        for (int i = 0; i < 100; ++i)
+            assertEquals("message " + i, messages.get(i));
+    }
+
+    /**
+     * A category level alone turns on DriverManager output.
+     */
+    public void testCategoryLevelEnablesDriverManagerLogging() throws Exception
+    {
+        PrintWriter writer = DriverManager.getLogWriter();
+        DriverManager.setLogWriter(null);
+        try
+        {
+            Properties props = new Properties();
+            props.setProperty("loglevel", "0");
+            props.setProperty("logCategories", Logger.PROTOCOL + "=" + DriverBase.INFO);
+            Connection con = TestUtil.openDB(props);
+            TestUtil.closeDB(con);
+            assertNotNull(DriverManager.getLogWriter());
+        }
+        finally
+        {
+            DriverManager.setLogWriter(writer);
+        }
+    }
+}
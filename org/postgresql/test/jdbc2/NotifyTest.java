@@ -11,7 +11,9 @@ import org.postgresql.test.TestUtil;
 import junit.framework.TestCase;
 import java.sql.*;
 
+import org.postgresql.PGConnection;
 import org.postgresql.PGNotification;
+import org.postgresql.PGNotificationListener;
 
 public class NotifyTest extends TestCase
 {
@@ -93,4 +95,113 @@ public class NotifyTest extends TestCase
 
         stmt.close();
     }
+
+    public void testAsyncNotifyWithTimeout() throws Exception
+    {
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("LISTEN mynotification");
+        stmt.close();
+
+        // Nothing has been sent yet, so this should time out.
+        long start = System.currentTimeMillis();
+        assertNull(((PGConnection)conn).getNotifications(500));
+        assertTrue(System.currentTimeMillis() - start >= 500);
+
+        sendNotify("mynotification");
+
+        PGNotification notifications[] = ((PGConnection)conn).getNotifications(10000);
+        assertNotNull(notifications);
+        assertEquals(1, notifications.length);
+        assertEquals("mynotification", notifications[0].getName());
+    }
+
+    public void testNotificationListener() throws Exception
+    {
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("LISTEN mynotification");
+        stmt.close();
+
+        final java.util.concurrent.BlockingQueue received = new java.util.concurrent.LinkedBlockingQueue();
+        PGNotificationListener listener = new PGNotificationListener() {
+            public void notification(PGNotification notification) {
+                received.add(notification);
+            }
+        };
+        ((PGConnection)conn).addNotificationListener(listener);
+        try {
+            sendNotify("mynotification");
+
+            PGNotification notification = (PGNotification)received.poll(10, java.util.concurrent.TimeUnit.SECONDS);
+            assertNotNull(notification);
+            assertEquals("mynotification", notification.getName());
+
+            // The connection stays usable while the listener is registered.
+            stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1");
+            assertTrue(rs.next());
+            rs.close();
+            stmt.close();
+        } finally {
+            ((PGConnection)conn).removeNotificationListener(listener);
+        }
+    }
+
+    public void testNotificationListenerDoesNotDelayStatements() throws Exception
+    {
+        java.util.Properties props = new java.util.Properties();
+        props.setProperty("notificationWaitMillis", "10000");
+        Connection conn2 = TestUtil.openDB(props);
+        PGNotificationListener listener = new PGNotificationListener() {
+            public void notification(PGNotification notification) {
+            }
+        };
+        try {
+            ((PGConnection)conn2).addNotificationListener(listener);
+            // Let the background thread start waiting.
+            Thread.sleep(200);
+
+            long start = System.currentTimeMillis();
+            Statement stmt = conn2.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1");
+            assertTrue(rs.next());
+            rs.close();
+            stmt.close();
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            ((PGConnection)conn2).removeNotificationListener(listener);
+            TestUtil.closeDB(conn2);
+        }
+    }
+
+    public void testNotificationsLongerThanSocketTimeout() throws Exception
+    {
+        java.util.Properties props = new java.util.Properties();
+        props.setProperty("socketTimeout", "1");
+        Connection conn2 = TestUtil.openDB(props);
+        try {
+            // Waiting past the socket timeout must not break the connection.
+            assertNull(((PGConnection)conn2).getNotifications(1500));
+            assertFalse(conn2.isClosed());
+            Statement stmt = conn2.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1");
+            assertTrue(rs.next());
+            rs.close();
+            stmt.close();
+        } finally {
+            TestUtil.closeDB(conn2);
+        }
+    }
+
+    private static void sendNotify(String name) throws Exception
+    {
+        // Notify on a separate connection to get an async notify on the first.
+        Connection conn2 = TestUtil.openDB();
+        try {
+            Statement stmt2 = conn2.createStatement();
+            stmt2.executeUpdate("NOTIFY " + name);
+            stmt2.close();
+        } finally {
+            conn2.close();
+        }
+    }
 }
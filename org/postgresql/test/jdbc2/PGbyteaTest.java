@@ -0,0 +1,124 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.test.jdbc2;
+
+import org.postgresql.util.PGbytea;
+import org.postgresql.util.PGbyteaInputStream;
+import org.postgresql.util.PSQLState;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Encoding and decoding of the text representations of bytea, without a
+ * server.
+ */
+public class PGbyteaTest extends TestCase
+{
+    public PGbyteaTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Every byte value, in lengths on both sides of the eight bytes the
+     * hex decoder handles at a time.
+     */
+    private static byte[][] samples()
+    {
+        byte[][] samples = new byte[21][];
+        for (int length = 0; length < 20; ++length)
+        {
+            samples[length] = new byte[length];
+            for (int i = 0; i < length; ++i)
+                samples[length][i] = (byte) (i * 37 + length);
+        }
+        samples[20] = new byte[256];
+        for (int i = 0; i < 256; ++i)
+            samples[20][i] = (byte) i;
+        return samples;
+    }
+
+    public void testHexRoundTrip() throws Exception
+    {
+        byte[][] samples = samples();
+        for (int i = 0; i < samples.length; ++i)
+        {
+            byte[] encoded = PGbytea.toPGHexBytes(samples[i]);
+            assertTrue(Arrays.equals(samples[i], PGbytea.toBytes(encoded)));
+            assertTrue(Arrays.equals(samples[i], readAll(new PGbyteaInputStream(encoded, -1))));
+        }
+        assertTrue(Arrays.equals(new byte[] { (byte) 0xAB, (byte) 0xCD },
+                                 PGbytea.toBytes("\\xABcd".getBytes("US-ASCII"))));
+    }
+
+    public void testEscapeRoundTrip() throws Exception
+    {
+        byte[][] samples = samples();
+        for (int i = 0; i < samples.length; ++i)
+        {
+            byte[] encoded = PGbytea.toPGString(samples[i]).getBytes("US-ASCII");
+            assertTrue(Arrays.equals(samples[i], PGbytea.toBytes(encoded)));
+            assertTrue(Arrays.equals(samples[i], readAll(new PGbyteaInputStream(encoded, -1))));
+        }
+        assertEquals("a\\\\b\\000\\377", PGbytea.toPGString(new byte[] { 'a', '\\', 'b', 0, (byte) 0xFF }));
+    }
+
+    public void testInvalidHexDigit() throws Exception
+    {
+        // One bad digit in the eight byte groups, and one after them.
+        String[] values = { "\\x0g", "\\x00112233445566z7", "\\x0011223344556677 8" };
+        for (int i = 0; i < values.length; ++i)
+        {
+            byte[] encoded = values[i].getBytes("US-ASCII");
+            try
+            {
+                PGbytea.toBytes(encoded);
+                fail("Invalid hex was decoded: " + values[i]);
+            }
+            catch (SQLException e)
+            {
+                assertEquals(PSQLState.DATA_ERROR.getState(), e.getSQLState());
+            }
+
+            try
+            {
+                readAll(new PGbyteaInputStream(encoded, -1));
+                fail("Invalid hex was read: " + values[i]);
+            }
+            catch (IOException e)
+            {
+            }
+
+            InputStream in = new PGbyteaInputStream(encoded, -1);
+            try
+            {
+                while (in.read() >= 0)
+                    ;
+                fail("Invalid hex was read: " + values[i]);
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[5];
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) >= 0)
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
@@ -13,6 +13,7 @@ import junit.framework.TestCase;
 import java.io.*;
 import java.sql.*;
 import java.math.BigDecimal;
+import java.util.Arrays;
 
 
 public class PreparedStatementTest extends TestCase
@@ -68,6 +69,45 @@ public class PreparedStatementTest extends TestCase
         doSetBinaryStream(bais, 10);
     }
 
+    public void testGetBinaryAndCharacterStream() throws Exception
+    {
+        byte data[] = new byte[5000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte)i;
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 1000; i++)
+            sb.append("abc\u00e9\u4e2d");
+        String text = sb.toString();
+
+        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO streamtable (bin,str) VALUES (?,?)");
+        pstmt.setBytes(1, data);
+        pstmt.setString(2, text);
+        pstmt.executeUpdate();
+        pstmt.close();
+
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT bin, str FROM streamtable");
+        assertTrue(rs.next());
+
+        InputStream in = rs.getBinaryStream(1);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte buf[] = new byte[777];
+        int n;
+        while ((n = in.read(buf)) > 0)
+            read.write(buf, 0, n);
+        assertTrue(Arrays.equals(data, read.toByteArray()));
+
+        Reader reader = rs.getCharacterStream(2);
+        StringBuffer readText = new StringBuffer();
+        char cbuf[] = new char[333];
+        while ((n = reader.read(cbuf)) > 0)
+            readText.append(cbuf, 0, n);
+        assertEquals(text, readText.toString());
+
+        rs.close();
+        stmt.close();
+    }
+
     public void testSetAsciiStream() throws Exception
     {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -941,6 +981,35 @@ public class PreparedStatementTest extends TestCase
         ps.close();
     }
 
+    public void testSetStringEncoding() throws SQLException
+    {
+        // Large enough to outgrow the connection's message buffer,
+        // followed by a short one once the buffer has been replaced.
+        StringBuffer large = new StringBuffer();
+        while (large.length() < 100000)
+            large.append("a\u00e9\u4e2d");
+        String[] values = { large.toString(), "\u00fcber" };
+
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO texttable(te) VALUES (?)");
+        for (int i = 0; i < values.length; ++i)
+        {
+            ps.setString(1, values[i]);
+            assertEquals(1, ps.executeUpdate());
+        }
+        ps.close();
+
+        ps = conn.prepareStatement("SELECT te FROM texttable WHERE te = ?");
+        for (int i = 0; i < values.length; ++i)
+        {
+            ps.setString(1, values[i]);
+            ResultSet rs = ps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(values[i], rs.getString(1));
+            rs.close();
+        }
+        ps.close();
+    }
+
     /**
      * When we have parameters of unknown type and it's not using
      * the unnamed statement, we issue a protocol level statment
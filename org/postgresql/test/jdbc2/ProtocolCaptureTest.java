@@ -0,0 +1,155 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.test.jdbc2;
+
+import org.postgresql.core.trace.FakeBackend;
+import org.postgresql.core.trace.ProtocolCapture;
+import org.postgresql.core.trace.ProtocolTrace;
+import org.postgresql.test.TestUtil;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.*;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+
+public class ProtocolCaptureTest extends TestCase
+{
+    private File directory;
+
+    public ProtocolCaptureTest(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp() throws Exception
+    {
+        directory = File.createTempFile("pgtrace", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    protected void tearDown()
+    {
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; ++i)
+            files[i].delete();
+        directory.delete();
+    }
+
+    private static int selectOne(Connection con) throws SQLException
+    {
+        Statement stmt = con.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT 1");
+        assertTrue(rs.next());
+        int result = rs.getInt(1);
+        rs.close();
+        stmt.close();
+        return result;
+    }
+
+    public void testCaptureAndReplay() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("protocolCapture", directory.getPath());
+        Connection con = TestUtil.openDB(props);
+        assertEquals(1, selectOne(con));
+        TestUtil.closeDB(con);
+
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        ProtocolTrace trace = ProtocolTrace.read(files[0]);
+
+        Set types = new HashSet();
+        for (Iterator i = trace.getMessages().iterator(); i.hasNext(); )
+        {
+            ProtocolTrace.Message message = (ProtocolTrace.Message) i.next();
+            types.add((message.isFrontend() ? ">" : "<") + message.getTypeName());
+        }
+        assertTrue(types.contains(">StartupMessage"));
+        assertTrue(types.contains("<DataRow"));
+        assertTrue(types.contains("<ReadyForQuery"));
+        assertTrue(types.contains(">Terminate"));
+
+        // The same workload against the captured answers.
+        FakeBackend fake = new FakeBackend(trace);
+        try
+        {
+            String url = TestUtil.getURL().replaceFirst("//[^/]*/", "//127.0.0.1:" + fake.getPort() + "/");
+            props = new Properties();
+            props.setProperty("user", TestUtil.getUser());
+            props.setProperty("password", TestUtil.getPassword());
+            con = DriverManager.getConnection(url, props);
+            assertEquals(1, selectOne(con));
+            con.close();
+        }
+        finally
+        {
+            fake.close();
+        }
+    }
+
+    public void testPasswordNotCaptured() throws Exception
+    {
+        byte[] password = "md5secretsecretsecretsecret".getBytes("US-ASCII");
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(sent);
+        // StartupMessage, PasswordMessage, then a Query.
+        out.writeInt(4 + 4 + 5);
+        out.writeInt(196608);
+        out.write("user\0".getBytes("US-ASCII"));
+        out.writeByte('p');
+        out.writeInt(4 + password.length + 1);
+        out.write(password);
+        out.writeByte(0);
+        out.writeByte('Q');
+        out.writeInt(4 + 9);
+        out.write("SELECT 1\0".getBytes("US-ASCII"));
+        byte[] bytes = sent.toByteArray();
+
+        // Sent a few bytes at a time, so that the password is split.
+        ProtocolCapture capture = ProtocolCapture.create(directory);
+        for (int off = 0; off < bytes.length; off += 7)
+            capture.sent(bytes, off, Math.min(7, bytes.length - off));
+        capture.close();
+
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        String captured = new String(readFile(files[0]), "ISO-8859-1");
+        assertEquals(-1, captured.indexOf("secret"));
+
+        ProtocolTrace trace = ProtocolTrace.read(files[0]);
+        assertEquals(3, trace.getMessages().size());
+        ProtocolTrace.Message query = (ProtocolTrace.Message) trace.getMessages().get(2);
+        assertEquals("Query", query.getTypeName());
+    }
+
+    private static byte[] readFile(File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0)
+                data.write(buf, 0, n);
+            return data.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
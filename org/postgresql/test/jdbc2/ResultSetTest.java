@@ -7,12 +7,17 @@
 */
 package org.postgresql.test.jdbc2;
 
+import org.postgresql.core.OffHeapRowList;
+import org.postgresql.core.SpillingRowList;
+import org.postgresql.jdbc2.AbstractJdbc2ResultSet;
 import org.postgresql.test.TestUtil;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Locale;
+import java.util.Properties;
 
 import junit.framework.TestCase;
 
@@ -151,6 +156,111 @@ public class ResultSetTest extends TestCase
         stmt.close();
     }
 
+    public void testSpilledRows() throws Exception
+    {
+        // A budget this small keeps all but the most recent rows in a file.
+        Properties props = new Properties();
+        props.setProperty("scrollableResultHeapBytes", "64");
+        Connection spillCon = TestUtil.openDB(props);
+        try
+        {
+            Statement stmt = spillCon.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            ResultSet rs = stmt.executeQuery("SELECT id FROM testrs ORDER BY id");
+            assertTrue(((SpillingRowList) rowsOf(rs)).getSpilledRowCount() > 0);
+            int[] ids = { 1, 2, 3, 4, 6, 9 };
+
+            rs.afterLast();
+            for (int i = ids.length - 1; i >= 0; --i)
+            {
+                assertTrue(rs.previous());
+                assertEquals(ids[i], rs.getInt(1));
+            }
+            assertTrue(rs.absolute(5));
+            assertEquals(6, rs.getInt(1));
+            assertTrue(rs.absolute(2));
+            assertEquals(2, rs.getInt(1));
+            assertTrue(rs.last());
+            assertEquals(9, rs.getInt(1));
+
+            rs.close();
+            stmt.close();
+        }
+        finally
+        {
+            TestUtil.closeDB(spillCon);
+        }
+    }
+
+    public void testOffHeapRows() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty("offHeapResultRows", "true");
+        Connection offHeapCon = TestUtil.openDB(props);
+        try
+        {
+            int[] ids = { 1, 2, 3, 4, 6, 9 };
+            Statement stmt = offHeapCon.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT id, NULL FROM testrs ORDER BY id");
+            assertTrue(rowsOf(rs) instanceof OffHeapRowList);
+            for (int i = 0; i < ids.length; ++i)
+            {
+                assertTrue(rs.next());
+                assertEquals(ids[i], rs.getInt(1));
+                assertNull(rs.getString(2));
+            }
+            assertTrue(!rs.next());
+            rs.close();
+            stmt.close();
+
+            stmt = offHeapCon.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            rs = stmt.executeQuery("SELECT id FROM testrs ORDER BY id");
+            assertTrue(rs.absolute(5));
+            assertEquals(6, rs.getInt(1));
+            assertTrue(rs.previous());
+            assertEquals(4, rs.getInt(1));
+            rs.close();
+            stmt.close();
+
+            // Each block a cursor fetches replaces, and frees, the last.
+            offHeapCon.setAutoCommit(false);
+            stmt = offHeapCon.createStatement();
+            stmt.setFetchSize(2);
+            rs = stmt.executeQuery("SELECT id FROM testrs ORDER BY id");
+            List firstBlock = rowsOf(rs);
+            for (int i = 0; i < ids.length; ++i)
+            {
+                assertTrue(rs.next());
+                assertEquals(ids[i], rs.getInt(1));
+            }
+            assertTrue(rowsOf(rs) != firstBlock);
+            try
+            {
+                firstBlock.get(0);
+                fail("A replaced block should be closed.");
+            }
+            catch (IllegalStateException e)
+            {
+            }
+            rs.close();
+            stmt.close();
+            offHeapCon.commit();
+        }
+        finally
+        {
+            TestUtil.closeDB(offHeapCon);
+        }
+    }
+
+    /**
+     * @return the rows a driver ResultSet currently holds
+     */
+    private static List rowsOf(ResultSet rs) throws Exception
+    {
+        java.lang.reflect.Field rows = AbstractJdbc2ResultSet.class.getDeclaredField("rows");
+        rows.setAccessible(true);
+        return (List) rows.get(rs);
+    }
+
     public void testEmptyResult() throws SQLException
     {
         Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
@@ -762,4 +872,31 @@ public class ResultSetTest extends TestCase
         }
     }
 
+    public void testRepeatedGetUsesDecodedValue() throws SQLException
+    {
+        Statement stmt = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        ResultSet rs = stmt.executeQuery("SELECT id, 'x' || id AS s FROM testrs ORDER BY id");
+
+        assertTrue(rs.next());
+        String s = rs.getString(2);
+        assertEquals("x1", s);
+        assertSame(s, rs.getString("s"));
+        Object id = rs.getObject(1);
+        assertEquals(new Integer(1), id);
+        assertSame(id, rs.getObject(1));
+
+        // Moving the cursor must not return values of another row.
+        assertTrue(rs.next());
+        assertEquals("x2", rs.getString(2));
+        assertEquals(new Integer(2), rs.getObject(1));
+        assertTrue(rs.previous());
+        assertEquals("x1", rs.getString(2));
+        assertTrue(rs.last());
+        assertEquals("x9", rs.getString(2));
+        assertEquals(new Integer(9), rs.getObject(1));
+
+        rs.close();
+        stmt.close();
+    }
+
 }
@@ -7,6 +7,8 @@
 */
 package org.postgresql.test.jdbc2;
 
+import org.postgresql.PGConnection;
+import org.postgresql.PGMetrics;
 import org.postgresql.PGStatement;
 import org.postgresql.jdbc2.AbstractJdbc2Statement;
 import org.postgresql.test.TestUtil;
@@ -65,6 +67,30 @@ public class ServerPreparedStmtTest extends TestCase
         pstmt.close();
     }
 
+    /**
+     * Each execution of a server prepared statement, the first included,
+     * takes a single round trip, and the results are the same whether they
+     * arrive as text (the first time) or in binary.
+     */
+    public void testSingleRoundTripExecution() throws Exception
+    {
+        PGMetrics metrics = ((PGConnection)con).getMetrics();
+        PreparedStatement pstmt = con.prepareStatement("SELECT id, value FROM testsps WHERE id = ?");
+        ((PGStatement)pstmt).setUseServerPrepare(true);
+        for (int i=0; i<3; ++i) {
+            long roundTrips = metrics.getRoundTrips();
+            pstmt.setInt(1, 6);
+            ResultSet rs = pstmt.executeQuery();
+            assertEquals(roundTrips + 1, metrics.getRoundTrips());
+            assertTrue(rs.next());
+            assertEquals(6, rs.getInt(1));
+            assertTrue(rs.getBoolean(2));
+            assertFalse(rs.next());
+            rs.close();
+        }
+        pstmt.close();
+    }
+
     public void testPreparedExecuteCount() throws Exception
     {
         PreparedStatement pstmt = con.prepareStatement("UPDATE testsps SET id = id + 44");
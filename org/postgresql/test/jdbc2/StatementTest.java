@@ -576,6 +576,43 @@ public class StatementTest extends TestCase
     	}
     }
 
+    public void testSetQueryTimeoutSocketMode() throws Exception
+    {
+        java.util.Properties props = new java.util.Properties();
+        props.setProperty("queryTimeoutMode", "socket");
+        Connection con2 = TestUtil.openDB(props);
+        try
+        {
+            Statement stmt = con2.createStatement();
+            stmt.setQueryTimeout(1);
+            long start = System.currentTimeMillis();
+            try
+            {
+                if (TestUtil.isFoundationDBServer(con2)) {
+                    stmt.execute("select sleep(10000)");
+                } else {
+                    stmt.execute("select pg_sleep(10)");
+                }
+                fail("Query timeout should have occured");
+            }
+            catch (SQLException sqle)
+            {
+                assertTrue(System.currentTimeMillis() - start < 5000);
+            }
+
+            // The connection must still be usable after the cancel.
+            ResultSet rs = stmt.executeQuery("select 1");
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            rs.close();
+            stmt.close();
+        }
+        finally
+        {
+            TestUtil.closeDB(con2);
+        }
+    }
+
     public void testResultSetTwice() throws SQLException
     {
         Statement stmt = con.createStatement();
@@ -12,6 +12,8 @@ import org.postgresql.test.TestUtil;
 import org.postgresql.test.util.MiniJndiContextFactory;
 import org.postgresql.ds.common.BaseDataSource;
 import org.postgresql.PGConnection;
+import org.postgresql.PGStatement;
+import org.postgresql.core.DescriptionCache;
 
 import java.sql.*;
 import java.util.*;
@@ -182,6 +184,73 @@ public abstract class BaseDataSourceTest extends TestCase
         }
     }
 
+    /**
+     * Connections from a DataSource with a description cache share the
+     * descriptions of the statements they execute, until one runs DDL.
+     */
+    public void testDescriptionCache() throws SQLException
+    {
+        initializeDataSource();
+        bds.setDescriptionCacheSize(16);
+        for (int i = 0; i < 2; ++i)
+        {
+            con = getDataSourceConnection();
+            PreparedStatement ps = con.prepareStatement("SELECT id, name FROM poolingtest WHERE id = ?");
+            // Unnamed statements are described anyway.
+            ((PGStatement) ps).setPrepareThreshold(1);
+            ps.setInt(1, 2);
+            ResultSet rs = ps.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            assertEquals("Test Row 2", rs.getString(2));
+            assertFalse(rs.next());
+            rs.close();
+            ps.close();
+            con.close();
+        }
+
+        DescriptionCache cache = bds.getDescriptionCache();
+        assertTrue(cache.getHits() >= 1);
+
+        // A connection whose search path changed stops sharing.
+        long hits = cache.getHits();
+        con = getDataSourceConnection();
+        Statement stmt = con.createStatement();
+        stmt.execute("SET search_path TO public");
+        stmt.close();
+        PreparedStatement ps = con.prepareStatement("SELECT id, name FROM poolingtest WHERE id = ?");
+        ((PGStatement) ps).setPrepareThreshold(1);
+        ps.setInt(1, 2);
+        ps.executeQuery().close();
+        ps.close();
+        con.close();
+        assertEquals(hits, cache.getHits());
+
+        int generation = cache.getGeneration();
+        con = getDataSourceConnection();
+        TestUtil.createTable(con, "descriptioncachetest", "id int");
+        TestUtil.dropTable(con, "descriptioncachetest");
+        con.close();
+        assertTrue(cache.getGeneration() > generation);
+    }
+
+    /**
+     * Statements that may change how names resolve stop a connection
+     * sharing descriptions.
+     */
+    public void testSearchPathChange()
+    {
+        assertTrue(DescriptionCache.isSearchPathChange("SET", "SET search_path TO public"));
+        assertTrue(DescriptionCache.isSearchPathChange("SET", "SET SCHEMA 'public'"));
+        assertTrue(DescriptionCache.isSearchPathChange("SET", "SET ROLE reporting"));
+        assertTrue(DescriptionCache.isSearchPathChange("SET", "SET SESSION AUTHORIZATION other"));
+        assertTrue(DescriptionCache.isSearchPathChange("RESET", "RESET ROLE"));
+        assertTrue(DescriptionCache.isSearchPathChange("RESET", "RESET ALL"));
+        assertTrue(DescriptionCache.isSearchPathChange("DISCARD ALL", "DISCARD ALL"));
+        assertFalse(DescriptionCache.isSearchPathChange("SET", "SET statement_timeout = 0"));
+        assertFalse(DescriptionCache.isSearchPathChange("SELECT 1", "SELECT 'role'"));
+    }
+
     /**
      * A test to make sure the connections are not being pooled by the
      * current DataSource. Obviously need to be overridden in the case
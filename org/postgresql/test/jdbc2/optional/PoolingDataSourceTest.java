@@ -7,10 +7,14 @@
 */
 package org.postgresql.test.jdbc2.optional;
 
+import java.lang.management.ManagementFactory;
 import java.sql.*;
+import javax.management.ObjectName;
 import org.postgresql.test.TestUtil;
 import org.postgresql.jdbc2.optional.PoolingDataSource;
+import org.postgresql.jdbc2.optional.SimpleDataSource;
 import org.postgresql.ds.common.BaseDataSource;
+import org.postgresql.ds.common.ConnectionWarmer;
 
 /**
  * Minimal tests for pooling DataSource.  Needs many more.
@@ -67,6 +71,36 @@ public class PoolingDataSourceTest extends BaseDataSourceTest
         assertTrue("Pooled DS doesn't appear to be pooling connections!", name.equals(name2));
     }
 
+    /**
+     * Only a pooling DataSource, which is closed, publishes its metrics
+     * MBean, and it removes it when closed.
+     */
+    public void testMetricsMBean() throws Exception
+    {
+        int before = countDataSourceMBeans();
+
+        SimpleDataSource simple = new SimpleDataSource();
+        setupDataSource(simple);
+        simple.setJmxMetrics(true);
+        Connection simpleCon = simple.getConnection();
+        simpleCon.close();
+        assertEquals(before, countDataSourceMBeans());
+
+        PoolingDataSource pool = new PoolingDataSource();
+        setupDataSource(pool);
+        pool.setDataSourceName(DS_NAME + " metrics");
+        pool.setJmxMetrics(true);
+        pool.initialize();
+        assertEquals(before + 1, countDataSourceMBeans());
+        pool.close();
+        assertEquals(before, countDataSourceMBeans());
+    }
+
+    private static int countDataSourceMBeans() throws Exception
+    {
+        return ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("org.postgresql:type=DataSource,*"), null).size();
+    }
+
     /**
      * In this case, the desired behavior is dereferencing.
      */
@@ -150,4 +184,53 @@ public class PoolingDataSourceTest extends BaseDataSourceTest
         assertEquals(hc1, hc2);
     }
 
+    /**
+     * With background refill, idle connections are topped up and every
+     * new connection passes through the warm-up hook.
+     */
+    public void testBackgroundRefillAndWarmUp() throws Exception
+    {
+        final int[] warmed = new int[1];
+        PoolingDataSource pds = new PoolingDataSource();
+        setupDataSource(pds);
+        pds.setDataSourceName(DS_NAME + " refill");
+        pds.setMaxConnections(4);
+        pds.setMinIdleConnections(2);
+        pds.setRefillThreads(2);
+        pds.setWarmUpStatements("SELECT 1; SELECT 2");
+        pds.setConnectionWarmer(new ConnectionWarmer() {
+            public void warmUp(Connection connection) throws SQLException {
+                synchronized (warmed) {
+                    warmed[0]++;
+                }
+            }
+        });
+        try
+        {
+            Connection c1 = pds.getConnection();
+            Connection c2 = pds.getConnection();
+            Connection c3 = pds.getConnection();
+
+            // c3 leaves one idle slot under the max; wait for it to be filled.
+            for (int i = 0; i < 100; ++i)
+            {
+                synchronized (warmed) {
+                    if (warmed[0] >= 4)
+                        break;
+                }
+                Thread.sleep(100);
+            }
+            synchronized (warmed) {
+                assertEquals(4, warmed[0]);
+            }
+
+            c1.close();
+            c2.close();
+            c3.close();
+        }
+        finally
+        {
+            pds.close();
+        }
+    }
 }
@@ -7,11 +7,16 @@
 */
 package org.postgresql.test.jdbc3;
 
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.sql.*;
+import java.util.Properties;
 import junit.framework.TestCase;
 
+import org.postgresql.core.PGStream;
 import org.postgresql.jdbc2.AbstractJdbc2Connection;
 import org.postgresql.test.TestUtil;
+import org.postgresql.util.HostSpec;
 
 public class SendRecvBufferSizeTest extends TestCase {
 
@@ -47,5 +52,73 @@ public class SendRecvBufferSizeTest extends TestCase {
 		stmt.execute("select * from hold");
 		stmt.close();
 	}
+
+    public void testAdaptiveInputBuffer() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        try {
+            PGStream stream = new PGStream(new HostSpec("localhost", server.getLocalPort()));
+            Socket peer = server.accept();
+            try {
+                stream.setBufferSizes(1024, 65536, 1024);
+                assertEquals(1024, stream.getInputBufferSize());
+
+                // A large response that has fully arrived fills every read.
+                byte[] data = new byte[32768];
+                peer.getOutputStream().write(data);
+                peer.getOutputStream().flush();
+                while (stream.getSocket().getInputStream().available() < data.length)
+                    Thread.sleep(10);
+                for (int i = 0; i < data.length; ++i)
+                    assertEquals(0, stream.ReceiveChar());
+                assertTrue(stream.getInputBufferSize() > 1024);
+
+                stream.shrinkInputBuffer();
+                assertEquals(1024, stream.getInputBufferSize());
+            } finally {
+                peer.close();
+                stream.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testAdaptiveInputBufferRows() throws Exception {
+        StringBuffer value = new StringBuffer();
+        while (value.length() < 4000)
+            value.append("0123456789");
+
+        Properties props = new Properties();
+        props.setProperty("inputBufferSize", "1024");
+        props.setProperty("maxInputBufferSize", "65536");
+        props.setProperty("outputBufferSize", "1024");
+        Connection conn = TestUtil.openDB(props);
+        try {
+            TestUtil.createTable(conn, "bufferrows", "id int, val text");
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO bufferrows VALUES (?, ?)");
+            for (int i = 0; i < 100; ++i) {
+                ps.setInt(1, i);
+                ps.setString(2, value.toString());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            ps.close();
+
+            // Enough rows arriving together for the buffer to grow.
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT id, val FROM bufferrows ORDER BY id");
+            for (int i = 0; i < 100; ++i) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(value.toString(), rs.getString(2));
+            }
+            assertFalse(rs.next());
+            rs.close();
+            stmt.close();
+        } finally {
+            TestUtil.dropTable(conn, "bufferrows");
+            TestUtil.closeDB(conn);
+        }
+    }
 	
 }
\ No newline at end of file
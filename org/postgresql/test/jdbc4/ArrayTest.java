@@ -8,10 +8,14 @@
 package org.postgresql.test.jdbc4;
 
 import java.sql.*;
+import java.util.Arrays;
 import java.util.UUID;
 
 import junit.framework.TestCase;
+import org.postgresql.PGArray;
+import org.postgresql.PGConnection;
 import org.postgresql.test.TestUtil;
+import org.postgresql.util.PSQLState;
 import org.postgresql.geometric.PGbox;
 
 public class ArrayTest extends TestCase {
@@ -244,4 +248,50 @@ public class ArrayTest extends TestCase {
 
         pstmt.close();
     }
+
+    public void testPrimitiveArrays() throws SQLException {
+        double[] vector = new double[1000];
+        for (int i = 0; i < vector.length; ++i)
+            vector[i] = i / 7.0;
+
+        PreparedStatement pstmt = _conn.prepareStatement("SELECT ?::float8[], ?::int4[], ?::int8[]");
+        pstmt.setObject(1, vector);
+        pstmt.setArray(2, ((PGConnection) _conn).createArrayOf("int4", new int[] { 3, -1, 4 }));
+        pstmt.setObject(3, new long[0], Types.ARRAY);
+
+        ResultSet rs = pstmt.executeQuery();
+        assertTrue(rs.next());
+        assertTrue(Arrays.equals(vector, (double[]) ((PGArray) rs.getArray(1)).getPrimitiveArray()));
+        assertTrue(Arrays.equals(new int[] { 3, -1, 4 }, (int[]) ((PGArray) rs.getArray(2)).getPrimitiveArray()));
+        assertEquals(0, ((long[]) ((PGArray) rs.getArray(3)).getPrimitiveArray()).length);
+
+        Integer[] boxed = (Integer[]) rs.getArray(2).getArray();
+        assertEquals(-1, boxed[1].intValue());
+        rs.close();
+
+        rs = _conn.createStatement().executeQuery("SELECT '{1,NULL}'::int4[], '{{1,2},{3,4}}'::int4[]");
+        assertTrue(rs.next());
+        for (int col = 1; col <= 2; ++col) {
+            try {
+                ((PGArray) rs.getArray(col)).getPrimitiveArray();
+                fail("getPrimitiveArray() should reject NULL elements and multiple dimensions");
+            } catch (SQLException sqle) {
+                // Expected failure.
+            }
+        }
+        rs.close();
+        pstmt.close();
+    }
+
+    public void testPrimitiveArrayOutOfRange() throws SQLException {
+        PreparedStatement pstmt = _conn.prepareStatement("SELECT ?::int4[]");
+        try {
+            pstmt.setArray(1, ((PGConnection) _conn).createArrayOf("int4", new long[] { 1L << 40 }));
+            pstmt.executeQuery().close();
+            fail("An int8 value beyond the int4 range should be rejected");
+        } catch (SQLException sqle) {
+            assertEquals(PSQLState.NUMERIC_VALUE_OUT_OF_RANGE.getState(), sqle.getSQLState());
+        }
+        pstmt.close();
+    }
 }
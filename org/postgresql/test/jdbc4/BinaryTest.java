@@ -88,6 +88,47 @@ public class BinaryTest extends TestCase {
         assertEquals(Field.TEXT_FORMAT, getFormat(results));
     }
 
+    public void testColumnReadOnlyAsString() throws Exception {
+        ((PGStatement) statement).setPrepareThreshold(1);
+
+        results = statement.executeQuery();
+        assertEquals(Field.BINARY_FORMAT, getFormat(results));
+        assertTrue(results.next());
+        assertEquals("1", results.getString(1));
+
+        // Read only with getString, so received as text.
+        results = statement.executeQuery();
+        assertEquals(Field.TEXT_FORMAT, getFormat(results));
+        assertTrue(results.next());
+        assertEquals(1, results.getInt(1));
+
+        // Also read with getInt, so received as binary again.
+        results = statement.executeQuery();
+        assertEquals(Field.BINARY_FORMAT, getFormat(results));
+        assertTrue(results.next());
+        assertEquals("1", results.getString(1));
+
+        results = statement.executeQuery();
+        assertEquals(Field.BINARY_FORMAT, getFormat(results));
+    }
+
+    public void testFloatReadOnlyAsStringStaysBinary() throws Exception {
+        // getString renders a binary float8 differently from its text, so
+        // reading it only with getString must not change its format.
+        statement = connection.prepareStatement("select 10000000000::float8");
+        ((PGStatement) statement).setPrepareThreshold(1);
+
+        results = statement.executeQuery();
+        assertEquals(Field.BINARY_FORMAT, getFormat(results));
+        assertTrue(results.next());
+        String value = results.getString(1);
+
+        results = statement.executeQuery();
+        assertEquals(Field.BINARY_FORMAT, getFormat(results));
+        assertTrue(results.next());
+        assertEquals(value, results.getString(1));
+    }
+
     private int getFormat(ResultSet results) throws SQLException {
         return ((PGResultSetMetaData) results.getMetaData()).getFormat(1);
     }
@@ -36,6 +36,7 @@ public class Jdbc4TestSuite extends TestSuite
         suite.addTestSuite(ConnectionTest.class);
         suite.addTestSuite(WrapperTest.class);
         suite.addTestSuite(BinaryTest.class);
+        suite.addTestSuite(StreamParameterTest.class);
 
         try
         {
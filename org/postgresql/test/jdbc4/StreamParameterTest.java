@@ -0,0 +1,108 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.test.jdbc4;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+
+import org.postgresql.test.TestUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the stream setters that do not take a length, which spool the
+ * value (to a temporary file once it is large) before sending it.
+ */
+public class StreamParameterTest extends TestCase {
+    private Connection conn;
+
+    public StreamParameterTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        conn = TestUtil.openDB();
+        if (TestUtil.isFoundationDBServer(conn))
+            TestUtil.createTable(conn, "streamtable", "bin blob, str text");
+        else
+            TestUtil.createTable(conn, "streamtable", "bin bytea, str text");
+    }
+
+    protected void tearDown() throws Exception {
+        TestUtil.dropTable(conn, "streamtable");
+        TestUtil.closeDB(conn);
+    }
+
+    public void testUnknownLengthStreams() throws Exception {
+        // Larger than the in-memory spool limit, so this exercises the
+        // temporary file as well.
+        byte[] bin = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < bin.length; ++i)
+            bin[i] = (byte) i;
+        StringBuffer sb = new StringBuffer();
+        while (sb.length() < 2 * 1024 * 1024)
+            sb.append("gr\u00fc\u00dfe \u20ac ");
+        String str = sb.toString();
+
+        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO streamtable (bin, str) VALUES (?, ?)");
+        pstmt.setBinaryStream(1, new ByteArrayInputStream(bin));
+        pstmt.setCharacterStream(2, new StringReader(str));
+        assertEquals(1, pstmt.executeUpdate());
+
+        pstmt.setBinaryStream(1, new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        pstmt.setAsciiStream(2, new ByteArrayInputStream("ascii".getBytes("US-ASCII")));
+        assertEquals(1, pstmt.executeUpdate());
+
+        pstmt.setBinaryStream(1, new ByteArrayInputStream(new byte[] { 4, 5, 6 }));
+        pstmt.setCharacterStream(2, new StringReader("truncated"), 5L);
+        assertEquals(1, pstmt.executeUpdate());
+        pstmt.close();
+
+        ResultSet rs = conn.createStatement().executeQuery("SELECT bin, str FROM streamtable ORDER BY length(str) DESC");
+        assertTrue(rs.next());
+        assertTrue(Arrays.equals(bin, rs.getBytes(1)));
+        assertEquals(str, rs.getString(2));
+        assertTrue(rs.next());
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, rs.getBytes(1)));
+        assertEquals("ascii", rs.getString(2));
+        assertTrue(rs.next());
+        assertTrue(Arrays.equals(new byte[] { 4, 5, 6 }, rs.getBytes(1)));
+        assertEquals("trunc", rs.getString(2));
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    public void testExecuteStreamsAgain() throws Exception {
+        // Both a spilled and an in-memory value must be sent again by
+        // executions that do not bind them again.
+        byte[] bin = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < bin.length; ++i)
+            bin[i] = (byte) i;
+
+        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO streamtable (bin, str) VALUES (?, ?)");
+        pstmt.setBinaryStream(1, new ByteArrayInputStream(bin));
+        pstmt.setCharacterStream(2, new StringReader("again"), 5);
+        for (int i = 0; i < 3; ++i)
+            assertEquals(1, pstmt.executeUpdate());
+        pstmt.close();
+
+        ResultSet rs = conn.createStatement().executeQuery("SELECT bin, str FROM streamtable");
+        for (int i = 0; i < 3; ++i)
+        {
+            assertTrue(rs.next());
+            assertTrue(Arrays.equals(bin, rs.getBytes(1)));
+            assertEquals("again", rs.getString(2));
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+}
@@ -0,0 +1,81 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees the memory of a direct or mapped ByteBuffer straight away rather
+ * than when it is garbage collected, so that direct memory limits are not
+ * reached and mapped files can be deleted. The JDK offers no API for this;
+ * the cleaner of the buffer is run through reflection, using
+ * <code>sun.misc.Unsafe.invokeCleaner</code> where it exists (Java 9 and
+ * later) and the buffer's <code>cleaner()</code> method before that. Where
+ * neither works the buffer is left to the garbage collector.
+ */
+public class BufferReleaser
+{
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+
+    static
+    {
+        Object u = null;
+        Method m = null;
+        try
+        {
+            Class unsafeClass = Class.forName("sun.misc.Unsafe");
+            m = unsafeClass.getMethod("invokeCleaner", new Class[] { ByteBuffer.class });
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            u = theUnsafe.get(null);
+        }
+        catch (Exception e)
+        {
+            m = null;
+        }
+        unsafe = u;
+        invokeCleaner = m;
+    }
+
+    private BufferReleaser()
+    {
+    }
+
+    /**
+     * Free a direct or mapped buffer; other buffers are ignored. The
+     * buffer, and every buffer sharing its memory, must not be used
+     * afterwards.
+     *
+     * @param buffer the buffer to free, or null
+     */
+    public static void release(ByteBuffer buffer)
+    {
+        if (buffer == null || !buffer.isDirect())
+            return;
+        try
+        {
+            if (invokeCleaner != null)
+            {
+                invokeCleaner.invoke(unsafe, new Object[] { buffer });
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner", new Class[0]);
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer, new Object[0]);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean", new Class[0]).invoke(cleaner, new Object[0]);
+        }
+        catch (Exception e)
+        {
+            // Left to the garbage collector.
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.postgresql.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -11,63 +10,85 @@ import java.util.Map.Entry;
 import org.postgresql.core.Encoding;
 
 public class HStoreConverter {
+   /**
+    * Wrap an hstore value received from the server in a read-only map that
+    * decodes its keys and values only when they are accessed.
+    *
+    * @param b the raw value
+    * @param binary true if <code>b</code> is in the binary format, false
+    *   for the text format
+    * @param encoding the connection's encoding
+    */
+   public static Map view(byte[] b, boolean binary, Encoding encoding) throws SQLException {
+       return new HStoreMap(b, binary, encoding);
+   }
+
    public static Map fromBytes(byte[] b, Encoding encoding) throws SQLException {
-       Map m = new HashMap();
-       int pos = 0;
-       int numElements = ByteConverter.int4(b, pos); pos+=4;
+       return copy(new HStoreMap(b, true, encoding));
+   }
+
+   /**
+    * Decode the text format of an hstore value directly from the bytes
+    * received from the server.
+    */
+   public static Map fromText(byte[] b, Encoding encoding) throws SQLException {
+       return copy(new HStoreMap(b, false, encoding));
+   }
+
+   private static Map copy(HStoreMap view) throws SQLException {
        try {
-           for (int i = 0; i < numElements; ++i) {
-               int keyLen = ByteConverter.int4(b, pos); pos += 4;
-               String key = encoding.decode(b, pos, keyLen); pos += keyLen;
-               int valLen = ByteConverter.int4(b, pos); pos += 4;
-               String val;
-               if (valLen == -1) {
-                   val = null;
-               } else {
-                   val = encoding.decode(b, pos, valLen); pos += valLen;
-               }
-               m.put(key, val);
-           }
+           return new HashMap(view);
        }
-       catch (IOException ioe)
+       catch (IllegalStateException ise)
        {
-           throw new PSQLException(GT.tr("Invalid character data was found.  This is most likely caused by stored data containing characters that are invalid for the character set the database was created in.  The most common example of this is storing 8bit data in a SQL_ASCII database."), PSQLState.DATA_ERROR, ioe);
+           throw new PSQLException(ise.getMessage(), PSQLState.DATA_ERROR, ise);
        }
-       return m;
    }
-   
+
    public static byte[] toBytes(Map m, Encoding encoding) throws SQLException {
-       ByteArrayOutputStream baos = new ByteArrayOutputStream(4 + 10 * m.size());
-       byte[] lenBuf = new byte[4];
+       // Encode everything first so the result is allocated once, at its
+       // exact size.
+       byte[][] encoded = new byte[m.size() * 2][];
+       int length = 4;
+       int n = 0;
        try {
-           ByteConverter.int4(lenBuf, 0, m.size()); baos.write(lenBuf);
            for (Iterator i = m.entrySet().iterator(); i.hasNext(); ) {
                Entry e = (Entry) i.next();
                byte[] key = encoding.encode(e.getKey().toString());
-               ByteConverter.int4(lenBuf, 0, key.length); baos.write(lenBuf);
-               baos.write(key);
-               
-               if (e.getValue() == null) {
-                   ByteConverter.int4(lenBuf, 0, -1); baos.write(lenBuf);
-               } else {
-                   byte[] val = encoding.encode(e.getValue().toString());
-                   ByteConverter.int4(lenBuf, 0, val.length); baos.write(lenBuf);
-                   baos.write(val);
-               }
+               byte[] val = e.getValue() == null ? null : encoding.encode(e.getValue().toString());
+               encoded[n++] = key;
+               encoded[n++] = val;
+               length += 8 + key.length + (val == null ? 0 : val.length);
            }
        }
        catch (IOException ioe)
        {
            throw new PSQLException(GT.tr("Invalid character data was found.  This is most likely caused by stored data containing characters that are invalid for the character set the database was created in.  The most common example of this is storing 8bit data in a SQL_ASCII database."), PSQLState.DATA_ERROR, ioe);
        }
-       return baos.toByteArray();
+
+       byte[] b = new byte[length];
+       ByteConverter.int4(b, 0, n / 2);
+       int pos = 4;
+       for (int i = 0; i < n; ++i) {
+           byte[] part = encoded[i];
+           if (part == null) {
+               ByteConverter.int4(b, pos, -1);
+               pos += 4;
+           } else {
+               ByteConverter.int4(b, pos, part.length);
+               pos += 4;
+               System.arraycopy(part, 0, b, pos, part.length);
+               pos += part.length;
+           }
+       }
+       return b;
    }
 
    public static String toString(Map map) throws SQLException {
        if (map.isEmpty()) {
            return "";
        }
-       StringBuffer sb = new StringBuffer(map.size() * 8);
+       StringBuilder sb = new StringBuilder(map.size() * 16);
        for (Iterator i = map.entrySet().iterator(); i.hasNext(); ) {
            Entry e = (Entry) i.next();
            appendEscaped(sb, e.getKey());
@@ -79,17 +100,20 @@ public class HStoreConverter {
        return sb.toString();
    }
 
-   private static void appendEscaped(StringBuffer sb, Object val) throws SQLException {
+   private static void appendEscaped(StringBuilder sb, Object val) {
       if (val != null) {
           sb.append('"');
           String s = val.toString();
+          // copy the runs between characters that need escaping in one go
+          int start = 0;
           for (int pos = 0; pos < s.length(); pos++) {
               char ch = s.charAt(pos);
               if (ch == '"' || ch == '\\') {
-                  sb.append('\\');
+                  sb.append(s, start, pos).append('\\');
+                  start = pos;
               }
-              sb.append(ch);
           }
+          sb.append(s, start, s.length());
           sb.append('"');
       } else {
           sb.append("NULL");
@@ -99,42 +123,59 @@ public class HStoreConverter {
    public static Map fromString(String s) {
        Map m = new HashMap();
        int pos = 0;
-       StringBuffer sb = new StringBuffer();
        while (pos < s.length()) {
-           sb.setLength(0);
            int start = s.indexOf('"', pos);
-           int end = appendUntilQuote(sb, s, start);
-           String key = sb.toString();
-           pos = end + 3;
-           
+           if (start < 0) {
+               break;
+           }
+           int end = endOfQuoted(s, start);
+           String key = unescape(s, start + 1, end);
+           pos = s.indexOf("=>", end) + 2;
+           while (s.charAt(pos) == ' ') {
+               pos++;
+           }
+
            String val;
            if (s.charAt(pos) == 'N') {
                val = null;
-               pos += 4; 
+               pos += 4;
            } else {
-               sb.setLength(0);
-               end = appendUntilQuote(sb, s, pos);
-               val = sb.toString();
-               pos = end;
+               end = endOfQuoted(s, pos);
+               val = unescape(s, pos + 1, end);
+               pos = end + 1;
            }
-           pos++;
            m.put(key, val);
        }
        return m;
    }
 
-   private static int appendUntilQuote(StringBuffer sb, String s, int pos) {
+   private static int endOfQuoted(String s, int pos) {
        for (pos += 1; pos < s.length(); pos++) {
            char ch = s.charAt(pos);
            if (ch == '"') {
                break;
            }
+           if (ch == '\\') {
+               pos++;
+           }
+       }
+       return pos;
+   }
+
+   private static String unescape(String s, int start, int end) {
+       int backslash = s.indexOf('\\', start);
+       if (backslash < 0 || backslash >= end) {
+           return s.substring(start, end);
+       }
+       StringBuilder sb = new StringBuilder(end - start);
+       for (int pos = start; pos < end; pos++) {
+           char ch = s.charAt(pos);
            if (ch == '\\') {
                pos++;
                ch = s.charAt(pos);
            }
            sb.append(ch);
        }
-       return pos;
+       return sb.toString();
    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,397 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.util;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.postgresql.core.Encoding;
+
+/**
+ * A read-only view of an hstore value as received from the server, in
+ * either the binary or the text format. Creating the view only records
+ * where each key and value lies in the raw bytes; they are decoded into
+ * Strings the first time they are accessed.
+ *
+ * @see HStoreConverter#view(byte[], boolean, Encoding)
+ */
+public class HStoreMap extends AbstractMap
+{
+    // Per entry: key offset, key length, value offset, value length (-1
+    // for NULL) and flags.
+    private static final int SLOTS = 5;
+    private static final int KEY_ESCAPED = 1;
+    private static final int VALUE_ESCAPED = 2;
+
+    private final byte[] b;
+    private final Encoding encoding;
+    private final int[] entries;
+    private final int size;
+
+    private final String[] keys;
+    private final String[] values;
+
+    private Set entrySet;
+
+    HStoreMap(byte[] b, boolean binary, Encoding encoding) throws PSQLException
+    {
+        this.b = b;
+        this.encoding = encoding;
+        try
+        {
+            if (binary)
+            {
+                this.size = ByteConverter.int4(b, 0);
+                this.entries = indexBinary(b, size);
+            }
+            else
+            {
+                int[] index = indexText(b);
+                this.size = index.length / SLOTS;
+                this.entries = index;
+            }
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new PSQLException(GT.tr("Invalid hstore value."), PSQLState.DATA_ERROR, e);
+        }
+        this.keys = new String[size];
+        this.values = new String[size];
+    }
+
+    private static int[] indexBinary(byte[] b, int size)
+    {
+        int[] entries = new int[size * SLOTS];
+        int pos = 4;
+        for (int i = 0, e = 0; i < size; ++i, e += SLOTS)
+        {
+            int keyLen = ByteConverter.int4(b, pos);
+            pos += 4;
+            entries[e] = pos;
+            entries[e + 1] = keyLen;
+            pos += keyLen;
+
+            int valLen = ByteConverter.int4(b, pos);
+            pos += 4;
+            entries[e + 2] = pos;
+            entries[e + 3] = valLen;
+            if (valLen > 0)
+                pos += valLen;
+        }
+        if (pos > b.length)
+            throw new IndexOutOfBoundsException();
+        return entries;
+    }
+
+    /*
+     * The text format is a list of "key"=>"value" pairs separated by ", ",
+     * where a NULL value is written unquoted and quotes and backslashes
+     * inside the quotes are escaped with a backslash. Only ASCII bytes are
+     * matched, so this is safe for UTF-8 and every other server encoding.
+     */
+    private static int[] indexText(byte[] b)
+    {
+        int[] entries = new int[SLOTS * 4];
+        int e = 0;
+        int pos = skipSeparators(b, 0);
+        while (pos < b.length)
+        {
+            if (e == entries.length)
+            {
+                int[] grown = new int[entries.length * 2];
+                System.arraycopy(entries, 0, grown, 0, e);
+                entries = grown;
+            }
+
+            int end = endOfQuoted(b, pos);
+            entries[e] = pos + 1;
+            entries[e + 1] = end - pos - 1;
+            if (isEscaped(b, pos + 1, end))
+                entries[e + 4] |= KEY_ESCAPED;
+
+            // skip over the closing quote and "=>"
+            pos = end + 1;
+            while (b[pos] == ' ')
+                ++pos;
+            pos += 2;
+            while (b[pos] == ' ')
+                ++pos;
+
+            if (b[pos] == '"')
+            {
+                end = endOfQuoted(b, pos);
+                entries[e + 2] = pos + 1;
+                entries[e + 3] = end - pos - 1;
+                if (isEscaped(b, pos + 1, end))
+                    entries[e + 4] |= VALUE_ESCAPED;
+                pos = end + 1;
+            }
+            else
+            {
+                // NULL
+                entries[e + 2] = pos;
+                entries[e + 3] = -1;
+                pos += 4;
+            }
+
+            e += SLOTS;
+            pos = skipSeparators(b, pos);
+        }
+
+        if (e == entries.length)
+            return entries;
+        int[] exact = new int[e];
+        System.arraycopy(entries, 0, exact, 0, e);
+        return exact;
+    }
+
+    private static int skipSeparators(byte[] b, int pos)
+    {
+        while (pos < b.length && (b[pos] == ',' || b[pos] == ' '))
+            ++pos;
+        return pos;
+    }
+
+    /**
+     * @return the position of the quote closing the string that is opened
+     *   at <code>pos</code>
+     */
+    private static int endOfQuoted(byte[] b, int pos)
+    {
+        for (++pos; ; ++pos)
+        {
+            byte c = b[pos];
+            if (c == '"')
+                return pos;
+            if (c == '\\')
+                ++pos;
+        }
+    }
+
+    private static boolean isEscaped(byte[] b, int start, int end)
+    {
+        for (int i = start; i < end; ++i)
+        {
+            if (b[i] == '\\')
+                return true;
+        }
+        return false;
+    }
+
+    private String decode(int offset, int length, boolean escaped)
+    {
+        try
+        {
+            if (!escaped)
+                return encoding.decode(b, offset, length);
+
+            byte[] unescaped = new byte[length];
+            int n = 0;
+            for (int i = offset, end = offset + length; i < end; ++i)
+            {
+                if (b[i] == '\\')
+                    ++i;
+                unescaped[n++] = b[i];
+            }
+            return encoding.decode(unescaped, 0, n);
+        }
+        catch (IOException ioe)
+        {
+            // Map accessors cannot throw a checked exception.
+            throw new IllegalStateException(GT.tr("Invalid character data was found.  This is most likely caused by stored data containing characters that are invalid for the character set the database was created in.  The most common example of this is storing 8bit data in a SQL_ASCII database."));
+        }
+    }
+
+    private String key(int i)
+    {
+        String key = keys[i];
+        if (key == null)
+        {
+            int e = i * SLOTS;
+            key = decode(entries[e], entries[e + 1], (entries[e + 4] & KEY_ESCAPED) != 0);
+            keys[i] = key;
+        }
+        return key;
+    }
+
+    private String value(int i)
+    {
+        String value = values[i];
+        if (value == null)
+        {
+            int e = i * SLOTS;
+            if (entries[e + 3] < 0)
+                return null;
+            value = decode(entries[e + 2], entries[e + 3], (entries[e + 4] & VALUE_ESCAPED) != 0);
+            values[i] = value;
+        }
+        return value;
+    }
+
+    /**
+     * @return the index of the entry for <code>key</code>, or -1. Keys that
+     *   have not been decoded yet are compared in their encoded form, so a
+     *   lookup decodes at most the key it finds.
+     */
+    private int indexOf(Object key)
+    {
+        if (!(key instanceof String))
+            return -1;
+
+        String s = (String) key;
+        byte[] encoded = null;
+        for (int i = 0, e = 0; i < size; ++i, e += SLOTS)
+        {
+            if (keys[i] != null)
+            {
+                if (keys[i].equals(s))
+                    return i;
+                continue;
+            }
+            if ((entries[e + 4] & KEY_ESCAPED) != 0)
+            {
+                if (key(i).equals(s))
+                    return i;
+                continue;
+            }
+
+            if (encoded == null)
+            {
+                try
+                {
+                    encoded = encoding.encode(s);
+                }
+                catch (IOException ioe)
+                {
+                    return -1;
+                }
+            }
+            if (entries[e + 1] == encoded.length && regionMatches(entries[e], encoded))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int offset, byte[] encoded)
+    {
+        for (int i = 0; i < encoded.length; ++i)
+        {
+            if (b[offset + i] != encoded[i])
+                return false;
+        }
+        return true;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean containsKey(Object key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    public Object get(Object key)
+    {
+        int i = indexOf(key);
+        return i < 0 ? null : value(i);
+    }
+
+    public Set entrySet()
+    {
+        if (entrySet == null)
+        {
+            entrySet = new AbstractSet() {
+                public int size()
+                {
+                    return size;
+                }
+
+                public Iterator iterator()
+                {
+                    return new EntryIterator();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private class EntryIterator implements Iterator
+    {
+        private int next;
+
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+        public Object next()
+        {
+            if (next >= size)
+                throw new NoSuchElementException();
+            return new Entry(next++);
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class Entry implements Map.Entry
+    {
+        private final int i;
+
+        Entry(int i)
+        {
+            this.i = i;
+        }
+
+        public Object getKey()
+        {
+            return key(i);
+        }
+
+        public Object getValue()
+        {
+            return value(i);
+        }
+
+        public Object setValue(Object value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry other = (Map.Entry) o;
+            Object value = getValue();
+            return getKey().equals(other.getKey())
+                   && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        public int hashCode()
+        {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        public String toString()
+        {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A coarse grained timer for short lived timeouts such as query timeouts.
+ *<p>
+ * Timeouts are hashed into a fixed size wheel of buckets, each covering one
+ * tick. Scheduling and cancelling are O(1) and never contend on a shared
+ * heap: both only append to a lock-free queue that the worker thread drains
+ * once per tick. Cancelled timeouts are unlinked from their bucket on the
+ * next tick, so they are not retained until their original expiry.
+ *<p>
+ * Tasks run on the single worker thread and should not block for long.
+ */
+public class HashedWheelTimer {
+
+    private static final int ST_INIT = 0;
+    private static final int ST_EXPIRED = 1;
+    private static final int ST_CANCELLED = 2;
+
+    private final String threadName;
+    private final long tickMillis;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private final ConcurrentLinkedQueue pendingTimeouts = new ConcurrentLinkedQueue();
+    private final ConcurrentLinkedQueue cancelledTimeouts = new ConcurrentLinkedQueue();
+
+    private Thread worker;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param threadName name of the worker thread
+     * @param tickMillis resolution of the timer, in milliseconds
+     * @param wheelSize number of buckets; rounded up to a power of two
+     */
+    public HashedWheelTimer(String threadName, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        if (wheelSize <= 0)
+            throw new IllegalArgumentException("wheelSize must be positive: " + wheelSize);
+
+        int size = 1;
+        while (size < wheelSize)
+            size <<= 1;
+
+        this.threadName = threadName;
+        this.tickMillis = tickMillis;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; ++i)
+            wheel[i] = new Bucket();
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedule a task to run once after the given delay.
+     *
+     * @param task the task to run
+     * @param delayMillis the delay, in milliseconds
+     * @return a handle that can be used to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (task == null)
+            throw new NullPointerException("task");
+        if (stopped)
+            throw new IllegalStateException("Timer already stopped");
+
+        start();
+
+        Timeout timeout = new Timeout(this, task, System.currentTimeMillis() + Math.max(delayMillis, 0));
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the worker thread. Timeouts that have not yet expired are dropped.
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            stopped = true;
+            t = worker;
+        }
+        if (t != null)
+            t.interrupt();
+    }
+
+    private synchronized void start() {
+        if (worker != null)
+            return;
+
+        worker = new Thread(new Worker(), threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Handle for a scheduled task.
+     */
+    public static final class Timeout {
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // Owned by the worker thread.
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the task if it has not run yet.
+         *
+         * @return true if the task was cancelled, false if it had already
+         *  run or been cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED))
+                return false;
+
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED))
+                return;
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // The worker must survive a misbehaving task.
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts hashed to the same tick.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null)
+                timeout.prev.next = next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+
+            if (timeout == head) {
+                if (timeout == tail) {
+                    head = tail = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        void expireTimeouts() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                if (timeout.remainingRounds <= 0) {
+                    Timeout next = remove(timeout);
+                    timeout.expire();
+                    timeout = next;
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final long startTime = System.currentTimeMillis();
+        private long tick = 0;
+
+        public void run() {
+            while (!stopped) {
+                if (!waitForNextTick())
+                    break;
+
+                processCancelledTimeouts();
+                transferPendingTimeouts();
+                wheel[(int) (tick & mask)].expireTimeouts();
+                ++tick;
+            }
+        }
+
+        private boolean waitForNextTick() {
+            long target = startTime + (tick + 1) * tickMillis;
+            for (;;) {
+                long sleep = target - System.currentTimeMillis();
+                if (sleep <= 0)
+                    return true;
+
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException ie) {
+                    if (stopped)
+                        return false;
+                }
+            }
+        }
+
+        private void transferPendingTimeouts() {
+            Timeout timeout;
+            while ((timeout = (Timeout) pendingTimeouts.poll()) != null) {
+                if (timeout.isCancelled())
+                    continue;
+
+                long ticks = (timeout.deadline - startTime) / tickMillis;
+                // Never schedule into the past; an overdue timeout fires on this tick.
+                long targetTick = Math.max(ticks, tick);
+                timeout.remainingRounds = (targetTick - tick) / wheel.length;
+                wheel[(int) (targetTick & mask)].add(timeout);
+            }
+        }
+
+        private void processCancelledTimeouts() {
+            Timeout timeout;
+            while ((timeout = (Timeout) cancelledTimeouts.poll()) != null) {
+                // A timeout cancelled before it was transferred has no bucket
+                // and is simply skipped by transferPendingTimeouts().
+                if (timeout.bucket != null)
+                    timeout.bucket.remove(timeout);
+            }
+        }
+    }
+}
@@ -31,4 +31,15 @@ public class HostSpec {
     public String toString() {
         return host + ":" + port;
     }
+
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HostSpec))
+            return false;
+        HostSpec other = (HostSpec) obj;
+        return port == other.port && host.equals(other.host);
+    }
+
+    public int hashCode() {
+        return host.hashCode() * 31 + port;
+    }
 }
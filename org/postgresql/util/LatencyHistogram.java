@@ -0,0 +1,125 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in log-linear buckets, in the manner of an HDR
+ * histogram: values below 16 microseconds get a bucket each, and every
+ * power of two above that is split into eight buckets, so a percentile is
+ * accurate to within 12.5%. Recording is a single array increment.
+ */
+public class LatencyHistogram
+{
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 4; // log2(LINEAR)
+
+    // Enough for values up to 2^63 microseconds.
+    private static final int BUCKETS = LINEAR + (63 - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param micros the latency to record, in microseconds
+     */
+    public void record(long micros)
+    {
+        counts.incrementAndGet(bucketOf(Math.max(0, micros)));
+    }
+
+    /**
+     * Add the counts of another histogram to this one.
+     */
+    public void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKETS; ++i)
+        {
+            long n = other.counts.get(i);
+            if (n != 0)
+                counts.addAndGet(i, n);
+        }
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+            total += counts.get(i);
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound, in microseconds, of the bucket containing the
+     *   given percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = getCount();
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        if (rank < 1)
+            rank = 1;
+
+        long seen = 0;
+        int last = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+        {
+            long n = counts.get(i);
+            if (n == 0)
+                continue;
+            last = i;
+            seen += n;
+            if (seen >= rank)
+                return upperBoundOf(i);
+        }
+        // Values recorded while we were counting.
+        return upperBoundOf(last);
+    }
+
+    /**
+     * @return the upper bound, in microseconds, of the highest non-empty
+     *   bucket, or 0 if nothing has been recorded
+     */
+    public long getMax()
+    {
+        for (int i = BUCKETS - 1; i >= 0; --i)
+        {
+            if (counts.get(i) != 0)
+                return upperBoundOf(i);
+        }
+        return 0;
+    }
+
+    static int bucketOf(long micros)
+    {
+        if (micros < LINEAR)
+            return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket)
+    {
+        if (bucket < LINEAR)
+            return bucket;
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + FIRST_EXPONENT;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) * width) + width - 1;
+    }
+}
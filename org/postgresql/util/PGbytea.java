@@ -16,6 +16,26 @@ public class PGbytea
 {
     private static final int MAX_3_BUFF_SIZE = 2 * 1024 * 1024;
 
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    // The value of each hex digit, indexed by its ASCII code; -1 for
+    // everything else.
+    private static final byte[] HEX_VALUES = new byte[256];
+    static
+    {
+        java.util.Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++)
+            HEX_VALUES['0' + i] = (byte) i;
+        for (int i = 0; i < 6; i++)
+        {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
     /*
      * Converts a PG bytea raw value (i.e. the raw binary representation
      * of the bytea data type) into a java byte[]
@@ -35,33 +55,80 @@ public class PGbytea
         return toBytesHexEscaped(s);
     }
 
-    private static byte[] toBytesHexEscaped(byte[] s)
+    private static byte[] toBytesHexEscaped(byte[] s) throws SQLException
     {
         byte[] output = new byte[(s.length - 2) / 2];
-        for (int i=0; i<output.length; i++) {
-            byte b1 = gethex(s[2 + i*2]);
-            byte b2 = gethex(s[2 + i*2 + 1]);
-            output[i] = (byte)((b1 << 4) | b2);
+        int pos = 2;
+        int i = 0;
+
+        // Eight output bytes per iteration; a digit that is not valid hex
+        // makes its value negative, so one test covers the whole group.
+        int end8 = output.length & ~7;
+        for (; i < end8; i += 8, pos += 16)
+        {
+            int b0 = hexByte(s, pos);
+            int b1 = hexByte(s, pos + 2);
+            int b2 = hexByte(s, pos + 4);
+            int b3 = hexByte(s, pos + 6);
+            int b4 = hexByte(s, pos + 8);
+            int b5 = hexByte(s, pos + 10);
+            int b6 = hexByte(s, pos + 12);
+            int b7 = hexByte(s, pos + 14);
+            if ((b0 | b1 | b2 | b3 | b4 | b5 | b6 | b7) < 0)
+                throw invalidHex();
+            output[i] = (byte)b0;
+            output[i + 1] = (byte)b1;
+            output[i + 2] = (byte)b2;
+            output[i + 3] = (byte)b3;
+            output[i + 4] = (byte)b4;
+            output[i + 5] = (byte)b5;
+            output[i + 6] = (byte)b6;
+            output[i + 7] = (byte)b7;
+        }
+        for (; i < output.length; i++, pos += 2)
+        {
+            int b = hexByte(s, pos);
+            if (b < 0)
+                throw invalidHex();
+            output[i] = (byte)b;
         }
         return output;
     }
 
-    private static byte gethex(byte b) {
-        // 0-9 == 48-57
-        if (b <= 57)
-            return (byte)(b - 48);
+    /**
+     * @return the byte encoded by the two hex digits at <code>pos</code>,
+     *   or a negative value if either is not a hex digit
+     */
+    private static int hexByte(byte[] s, int pos)
+    {
+        return (HEX_VALUES[s[pos] & 0xFF] << 4) | HEX_VALUES[s[pos + 1] & 0xFF];
+    }
 
-        // a-f == 97-102
-        if (b >= 97)
-            return (byte)(b - 97 + 10);
+    /**
+     * @return the value of the hex digit <code>b</code>, or -1
+     */
+    static int hexValue(byte b)
+    {
+        return HEX_VALUES[b & 0xFF];
+    }
 
-        // A-F == 65-70
-        return (byte)(b - 65 + 10);
+    private static PSQLException invalidHex()
+    {
+        return new PSQLException(GT.tr("Invalid hex digit in bytea value."), PSQLState.DATA_ERROR);
     }
 
     private static byte[] toBytesOctalEscaped(byte[] s)
     {
         final int slength = s.length;
+        int first = indexOfBackslash(s, 0);
+        if (first < 0)
+        {
+            // nothing is escaped
+            byte[] copy = new byte[slength];
+            System.arraycopy(s, 0, copy, 0, slength);
+            return copy;
+        }
+
         byte[] buf = null;
         int correctSize = slength;
         if (slength > MAX_3_BUFF_SIZE)
@@ -91,33 +158,31 @@ public class PGbytea
         {
             buf = new byte[slength];
         }
-        int bufpos = 0;
-        int thebyte;
-        byte nextbyte;
-        byte secondbyte;
-        for (int i = 0; i < slength; i++)
+        // Copy the runs between escapes in one go.
+        System.arraycopy(s, 0, buf, 0, first);
+        int bufpos = first;
+        int i = first;
+        while (i < slength)
         {
-            nextbyte = s[i];
-            if (nextbyte == (byte)'\\')
+            byte secondbyte = s[i + 1];
+            if (secondbyte == (byte)'\\')
             {
-                secondbyte = s[++i];
-                if (secondbyte == (byte)'\\')
-                {
-                    //escaped \
-                    buf[bufpos++] = (byte)'\\';
-                }
-                else
-                {
-                    thebyte = (secondbyte - 48) * 64 + (s[++i] - 48) * 8 + (s[++i] - 48);
-                    if (thebyte > 127)
-                        thebyte -= 256;
-                    buf[bufpos++] = (byte)thebyte;
-                }
+                //escaped \
+                buf[bufpos++] = (byte)'\\';
+                i += 2;
             }
             else
             {
-                buf[bufpos++] = nextbyte;
+                buf[bufpos++] = (byte)((secondbyte - 48) * 64 + (s[i + 2] - 48) * 8 + (s[i + 3] - 48));
+                i += 4;
             }
+
+            int next = indexOfBackslash(s, i);
+            if (next < 0)
+                next = slength;
+            System.arraycopy(s, i, buf, bufpos, next - i);
+            bufpos += next - i;
+            i = next;
         }
         if (bufpos == correctSize)
         {
@@ -128,6 +193,37 @@ public class PGbytea
         return l_return;
     }
 
+    private static int indexOfBackslash(byte[] s, int from)
+    {
+        for (int i = from; i < s.length; i++)
+        {
+            if (s[i] == (byte)'\\')
+                return i;
+        }
+        return -1;
+    }
+
+    /*
+     * Converts a java byte[] into the hex format text representation of
+     * a bytea value (\x followed by two hex digits per byte), which
+     * toBytes() decodes. The result is ASCII.
+     */
+    public static byte[] toPGHexBytes(byte[] p_buf)
+    {
+        if (p_buf == null)
+            return null;
+        byte[] out = new byte[2 + 2 * p_buf.length];
+        out[0] = (byte)'\\';
+        out[1] = (byte)'x';
+        for (int i = 0, pos = 2; i < p_buf.length; i++, pos += 2)
+        {
+            int b = p_buf[i];
+            out[pos] = HEX_DIGITS[(b >> 4) & 0xF];
+            out[pos + 1] = HEX_DIGITS[b & 0xF];
+        }
+        return out;
+    }
+
     /*
      * Converts a java byte[] into a PG bytea string (i.e. the text
      * representation of the bytea data type)
@@ -136,39 +232,48 @@ public class PGbytea
     {
         if (p_buf == null)
             return null;
-        StringBuffer l_strbuf = new StringBuffer(2 * p_buf.length);
+
+        // Size the result exactly: four characters for an octal escape,
+        // two for a backslash, one otherwise.
+        int length = p_buf.length;
         for (int i = 0; i < p_buf.length; i++)
         {
-            int l_int = (int)p_buf[i];
-            if (l_int < 0)
-            {
-                l_int = 256 + l_int;
-            }
+            int l_int = p_buf[i] & 0xFF;
+            if (l_int < 040 || l_int > 0176)
+                length += 3;
+            else if (l_int == '\\')
+                length += 1;
+        }
+
+        char[] out = new char[length];
+        int pos = 0;
+        for (int i = 0; i < p_buf.length; i++)
+        {
+            int l_int = p_buf[i] & 0xFF;
             //we escape the same non-printable characters as the backend
             //we must escape all 8bit characters otherwise when convering
             //from java unicode to the db character set we may end up with
             //question marks if the character set is SQL_ASCII
             if (l_int < 040 || l_int > 0176)
             {
-                //escape charcter with the form \000, but need two \\ because of
-                //the Java parser
-                l_strbuf.append("\\");
-                l_strbuf.append((char)(((l_int >> 6) & 0x3) + 48));
-                l_strbuf.append((char)(((l_int >> 3) & 0x7) + 48));
-                l_strbuf.append((char)((l_int & 0x07) + 48));
+                //escape charcter with the form \000
+                out[pos++] = '\\';
+                out[pos++] = (char)(((l_int >> 6) & 0x3) + 48);
+                out[pos++] = (char)(((l_int >> 3) & 0x7) + 48);
+                out[pos++] = (char)((l_int & 0x07) + 48);
             }
-            else if (p_buf[i] == (byte)'\\')
+            else if (l_int == '\\')
             {
-                //escape the backslash character as \\, but need four \\\\ because
-                //of the Java parser
-                l_strbuf.append("\\\\");
+                //escape the backslash character as \\
+                out[pos++] = '\\';
+                out[pos++] = '\\';
             }
             else
             {
                 //other characters are left alone
-                l_strbuf.append((char)p_buf[i]);
+                out[pos++] = (char)l_int;
             }
         }
-        return l_strbuf.toString();
+        return new String(out);
     }
 }
@@ -0,0 +1,133 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the text representation of a bytea value (either the hex format
+ * or the older escape format) as it is read, so that a large value does
+ * not have to be decoded into a second array first.
+ *
+ * @see PGbytea#toBytes(byte[])
+ */
+public class PGbyteaInputStream extends InputStream
+{
+    private final byte[] s;
+    private final boolean hex;
+    private int pos;
+    private int remaining;
+
+    /**
+     * @param s the raw text representation received from the server
+     * @param limit the maximum number of decoded bytes to return, or
+     *   a negative value for no limit
+     */
+    public PGbyteaInputStream(byte[] s, int limit)
+    {
+        this.s = s;
+        this.hex = s.length >= 2 && s[0] == '\\' && s[1] == 'x';
+        this.pos = hex ? 2 : 0;
+        this.remaining = limit < 0 ? Integer.MAX_VALUE : limit;
+    }
+
+    public int read() throws IOException
+    {
+        if (remaining == 0 || pos >= (hex ? s.length - 1 : s.length))
+            return -1;
+
+        --remaining;
+        if (hex)
+        {
+            int b = hexByte(pos);
+            pos += 2;
+            return b;
+        }
+
+        return read0() & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if ((off | len | (off + len) | (b.length - (off + len))) < 0)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (remaining == 0 || pos >= (hex ? s.length - 1 : s.length))
+            return -1;
+
+        if (len > remaining)
+            len = remaining;
+
+        int n = 0;
+        if (hex)
+        {
+            int avail = (s.length - pos) / 2;
+            if (len > avail)
+                len = avail;
+            for (; n < len; ++n, pos += 2)
+                b[off + n] = (byte) hexByte(pos);
+        }
+        else
+        {
+            for (; n < len && pos < s.length; ++n)
+                b[off + n] = (byte) read0();
+        }
+
+        remaining -= n;
+        return n;
+    }
+
+    private int read0()
+    {
+        byte b = s[pos++];
+        if (b != '\\')
+            return b;
+
+        byte second = s[pos++];
+        if (second == '\\')
+            return '\\';
+
+        int value = (second - '0') * 64 + (s[pos] - '0') * 8 + (s[pos + 1] - '0');
+        pos += 2;
+        return value;
+    }
+
+    public long skip(long n) throws IOException
+    {
+        long skipped = 0;
+        while (skipped < n && read() >= 0)
+            ++skipped;
+        return skipped;
+    }
+
+    /**
+     * Exact for the hex format; a lower bound for the escape format, where
+     * every decoded byte takes between one and four input bytes.
+     */
+    public int available()
+    {
+        int left = s.length - pos;
+        int avail = hex ? left / 2 : (left > 0 ? Math.max(1, left / 4) : 0);
+        return Math.min(avail, remaining);
+    }
+
+    /**
+     * @return the byte encoded by the two hex digits at <code>at</code>
+     * @throws IOException if either is not a hex digit
+     */
+    private int hexByte(int at) throws IOException
+    {
+        int high = PGbytea.hexValue(s[at]);
+        int low = PGbytea.hexValue(s[at + 1]);
+        if ((high | low) < 0)
+            throw new IOException(GT.tr("Invalid hex digit in bytea value."));
+        return (high << 4) | low;
+    }
+}
@@ -0,0 +1,244 @@
+/*-------------------------------------------------------------------------
+*
+* Copyright (c) 2014, PostgreSQL Global Development Group
+*
+*
+*-------------------------------------------------------------------------
+*/
+package org.postgresql.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+
+/**
+ * Collects a parameter value of unknown length so that it can be sent with
+ * a length prefix. Up to <code>memoryLimit</code> bytes are kept on the
+ * heap; anything larger is moved to a temporary file, which is removed by
+ * {@link #release()}.
+ */
+public class StreamSpool extends OutputStream
+{
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final int memoryLimit;
+
+    private byte[] buffer;
+    private int count;
+    private long length;
+
+    private File file;
+    private OutputStream fileOut;
+    private InputStream fileIn;
+
+    /**
+     * @param memoryLimit the number of bytes to keep in memory before
+     *   spilling to a temporary file
+     */
+    public StreamSpool(int memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+        this.buffer = new byte[Math.min(memoryLimit, COPY_BUFFER_SIZE)];
+    }
+
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return;
+        if (length + len > Integer.MAX_VALUE)
+            throw new IOException(GT.tr("Object is too large to send over the protocol."));
+
+        length += len;
+        if (fileOut != null)
+        {
+            fileOut.write(b, off, len);
+            return;
+        }
+
+        if (count + len > memoryLimit)
+        {
+            file = File.createTempFile("pgjdbc", ".spool");
+            file.deleteOnExit();
+            fileOut = new BufferedOutputStream(new FileOutputStream(file), COPY_BUFFER_SIZE);
+            fileOut.write(buffer, 0, count);
+            fileOut.write(b, off, len);
+            buffer = null;
+            count = 0;
+            return;
+        }
+
+        if (count + len > buffer.length)
+        {
+            byte[] newBuffer = new byte[Math.min(memoryLimit, Math.max(count + len, buffer.length * 2))];
+            System.arraycopy(buffer, 0, newBuffer, 0, count);
+            buffer = newBuffer;
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    public void flush() throws IOException
+    {
+        if (fileOut != null)
+            fileOut.flush();
+    }
+
+    /**
+     * Copy bytes from a stream.
+     *
+     * @param in the stream to read
+     * @param limit the maximum number of bytes to copy, or a negative value
+     *   to copy until end of stream
+     */
+    public void copyFrom(InputStream in, long limit) throws IOException
+    {
+        byte[] chunk = new byte[COPY_BUFFER_SIZE];
+        long remaining = limit < 0 ? Long.MAX_VALUE : limit;
+        while (remaining > 0)
+        {
+            int n = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+            if (n < 0)
+                break;
+            write(chunk, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Copy characters from a reader, encoding them as UTF-8 as they are
+     * read.
+     *
+     * @param in the reader to read
+     * @param limit the maximum number of characters to copy, or a negative
+     *   value to copy until end of stream
+     */
+    public void copyFrom(Reader in, long limit) throws IOException
+    {
+        Writer out = new OutputStreamWriter(this, "UTF-8");
+        char[] chunk = new char[COPY_BUFFER_SIZE];
+        long remaining = limit < 0 ? Long.MAX_VALUE : limit;
+        while (remaining > 0)
+        {
+            int n = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+            if (n < 0)
+                break;
+            out.write(chunk, 0, n);
+            remaining -= n;
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public int getLength()
+    {
+        return (int) length;
+    }
+
+    /**
+     * @return true if the contents did not fit in memory
+     */
+    public boolean isSpilled()
+    {
+        return file != null;
+    }
+
+    /**
+     * Finish writing and wrap the contents for sending. Values that stayed
+     * in memory are wrapped directly. Spilled values are read back from the
+     * temporary file, which is opened again every time the wrapper's stream
+     * is got, so that the value can be sent by more than one execution.
+     */
+    public StreamWrapper toStreamWrapper() throws IOException
+    {
+        if (file == null)
+            return new StreamWrapper(buffer, 0, count);
+
+        fileOut.flush();
+        return new StreamWrapper(null, getLength()) {
+            public InputStream getStream() {
+                return new SpoolInputStream();
+            }
+        };
+    }
+
+    /**
+     * Discard the contents and remove the temporary file, if any.
+     */
+    public void release()
+    {
+        buffer = null;
+        try
+        {
+            if (fileOut != null)
+                fileOut.close();
+            if (fileIn != null)
+                fileIn.close();
+        }
+        catch (IOException ioe)
+        {
+            // Nothing more to do; the file is removed below.
+        }
+        if (file != null)
+            file.delete();
+        fileOut = null;
+        fileIn = null;
+        file = null;
+    }
+
+    /**
+     * Reads the temporary file, opening it on first use so that the error
+     * surfaces from read() rather than when the value is bound.
+     */
+    private class SpoolInputStream extends InputStream
+    {
+        private InputStream in;
+
+        private InputStream open() throws IOException
+        {
+            if (in == null)
+            {
+                if (file == null)
+                    throw new IOException(GT.tr("The spooled parameter value has been released."));
+                if (fileIn != null)
+                    fileIn.close();
+                in = fileIn = new FileInputStream(file);
+            }
+            return in;
+        }
+
+        public int read() throws IOException
+        {
+            return open().read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return open().read(b, off, len);
+        }
+
+        public void close() throws IOException
+        {
+            if (in != null)
+                in.close();
+        }
+    }
+
+    public void close() throws IOException
+    {
+        flush();
+    }
+}